@@ -0,0 +1,133 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.modeshape.jcr.RepositoryConfiguration;
+import org.modeshape.jcr.bus.RepositoryChangeBus;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetListener;
+import org.modeshape.jcr.cache.change.RecordingChanges;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the {@link RepositoryChangeBus}, when a number of producer threads concurrently publish change
+ * sets that are consumed by asynchronous listeners, for each of the wait strategies that can be configured for a repository.
+ * Each invocation publishes the same total number of change sets, split across the producers, and completes only when every
+ * listener has consumed all of them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChangeBusBenchmark {
+
+    private static final int CHANGE_SETS_PER_INVOCATION = 1 << 16;
+    private static final int LISTENERS = 2;
+
+    @Param( { "1", "2", "4", "8", "16", "32", "64" } )
+    public int producers;
+
+    @Param( { "blocking", "yielding", "busySpin", "phasedBackoff" } )
+    public String waitStrategy;
+
+    private ExecutorService producerPool;
+    private ExecutorService dispatcherPool;
+    private RepositoryChangeBus bus;
+    private CountingListener[] listeners;
+    private ChangeSet changeSet;
+
+    @Setup
+    public void setup() throws Exception {
+        RepositoryConfiguration config = RepositoryConfiguration.read("{ 'name' : 'bench', 'eventBusWaitStrategy' : '"
+                                                                      + waitStrategy + "' }");
+        producerPool = Executors.newFixedThreadPool(producers);
+        dispatcherPool = Executors.newCachedThreadPool();
+        bus = new RepositoryChangeBus(config.getName(), dispatcherPool, null, config.getEventBusSize(),
+                                      config.getEventBusWaitStrategy());
+        bus.start();
+        listeners = new CountingListener[LISTENERS];
+        for (int i = 0; i != LISTENERS; ++i) {
+            listeners[i] = new CountingListener();
+            bus.register(listeners[i]);
+        }
+        changeSet = new RecordingChanges("session", "process", "repository", "workspace", null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        bus.shutdown();
+        producerPool.shutdownNow();
+        dispatcherPool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( CHANGE_SETS_PER_INVOCATION )
+    public long publish() throws InterruptedException {
+        final int changeSetsPerProducer = CHANGE_SETS_PER_INVOCATION / producers;
+        final CountDownLatch done = new CountDownLatch(producers);
+        long target = listeners[0].consumed.get() + (long)changeSetsPerProducer * producers;
+        for (int p = 0; p != producers; ++p) {
+            producerPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i != changeSetsPerProducer; ++i) {
+                            bus.notify(changeSet);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        for (CountingListener listener : listeners) {
+            while (listener.consumed.get() < target) {
+                LockSupport.parkNanos(1000L);
+            }
+        }
+        return target;
+    }
+
+    private static final class CountingListener implements ChangeSetListener {
+        protected final AtomicLong consumed = new AtomicLong();
+
+        @Override
+        public void notify( ChangeSet changeSet ) {
+            consumed.incrementAndGet();
+        }
+    }
+}
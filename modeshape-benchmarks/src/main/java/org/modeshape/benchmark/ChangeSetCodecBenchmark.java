@@ -0,0 +1,178 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetCodec;
+import org.modeshape.jcr.cache.change.RecordingChanges;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.NameFactory;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.PathFactory;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.jcr.value.PropertyFactory;
+import org.modeshape.jcr.value.basic.ModeShapeDateTime;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares Java serialization with the {@link ChangeSetCodec binary format} for the change sets sent to the other members of a
+ * cluster, on change sets like the ones produced by bulk loads: nodes added under a common parent, each with a few properties.
+ * The message is optionally compressed, as done by the {@link org.modeshape.jcr.clustering.ClusteringService}. Besides the time
+ * needed to write and read a change set, the {@code encode} benchmark reports the number of bytes of each message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChangeSetCodecBenchmark {
+
+    private static final int CHANGE_SET_COUNT = 100;
+
+    @Param( { "java", "binary" } )
+    public String format;
+
+    @Param( { Codecs.NONE, Codecs.GZIP, Codecs.LZ4 } )
+    public String compression;
+
+    @Param( { "10", "1000" } )
+    public int nodeCount;
+
+    private Codec codec;
+    private ChangeSet[] changeSets;
+    private byte[][] messages;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = Codecs.forName(compression);
+        ExecutionContext context = new ExecutionContext();
+        changeSets = new ChangeSet[CHANGE_SET_COUNT];
+        messages = new byte[CHANGE_SET_COUNT][];
+        for (int i = 0; i != CHANGE_SET_COUNT; ++i) {
+            changeSets[i] = bulkLoad(context, i);
+            messages[i] = write(changeSets[i]);
+        }
+    }
+
+    @Benchmark
+    public byte[] encode( Sizes sizes ) throws IOException {
+        byte[] message = write(changeSets[next()]);
+        sizes.messageBytes += message.length;
+        return message;
+    }
+
+    @Benchmark
+    public ChangeSet decode() throws IOException, ClassNotFoundException {
+        byte[] body = Codecs.decode(messages[next()], codec);
+        if ("binary".equals(format)) {
+            return ChangeSetCodec.decode(body);
+        }
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(body))) {
+            return (ChangeSet)stream.readObject();
+        }
+    }
+
+    private byte[] write( ChangeSet changeSet ) throws IOException {
+        if ("binary".equals(format)) {
+            return Codecs.encode(codec, ChangeSetCodec.encode(changeSet));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(output)) {
+            stream.writeObject(changeSet);
+        }
+        return Codecs.encode(codec, output.toByteArray());
+    }
+
+    private ChangeSet bulkLoad( ExecutionContext context,
+                                int number ) {
+        NameFactory names = context.getValueFactories().getNameFactory();
+        PathFactory paths = context.getValueFactories().getPathFactory();
+        PropertyFactory properties = context.getPropertyFactory();
+        Name primaryType = names.create("nt:unstructured");
+        Set<Name> mixinTypes = Collections.singleton(names.create("mix:referenceable"));
+        NodeKey parent = new NodeKey("source1works1-" + UUID.randomUUID());
+        Path parentPath = paths.create("/content/batch" + number);
+
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", "journal");
+        Set<NodeKey> changedNodes = new HashSet<>();
+        for (int i = 0; i != nodeCount; ++i) {
+            NodeKey key = parent.withRandomId();
+            Map<Name, Property> props = new HashMap<>();
+            props.put(names.create("jcr:primaryType"), properties.create(names.create("jcr:primaryType"), primaryType));
+            props.put(names.create("jcr:uuid"), properties.create(names.create("jcr:uuid"), key.getIdentifier()));
+            props.put(names.create("title"), properties.create(names.create("title"), "Node number " + i));
+            props.put(names.create("size"), properties.create(names.create("size"), (long)i));
+            props.put(names.create("created"), properties.create(names.create("created"), new ModeShapeDateTime()));
+            changes.nodeCreated(key, parent, paths.create(parentPath, "node" + i), primaryType, mixinTypes, props);
+            changedNodes.add(key);
+        }
+        changes.freeze("admin", null, new ModeShapeDateTime());
+        changes.setChangedNodes(changedNodes);
+        return changes;
+    }
+
+    private int next() {
+        int next = index++;
+        if (index == CHANGE_SET_COUNT) {
+            index = 0;
+        }
+        return next;
+    }
+
+    /**
+     * Counts the number of bytes of the written messages, per benchmark iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long messageBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messageBytes = 0;
+        }
+    }
+}
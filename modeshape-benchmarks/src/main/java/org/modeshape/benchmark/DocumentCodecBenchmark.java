@@ -0,0 +1,143 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link Codec codecs} which can be used by the persistence providers, on node documents produced by the
+ * {@link org.modeshape.jcr.cache.document.DocumentTranslator}. Besides the time needed to encode and decode a document, the
+ * {@code encode} benchmark reports the number of input and output bytes, from which the compression ratio can be derived.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentCodecBenchmark {
+
+    private static final int DOCUMENT_COUNT = 1000;
+    private static final int DICTIONARY_SAMPLE_COUNT = 5000;
+    private static final int DICTIONARY_SIZE = 64 * 1024;
+
+    @Param( { Codecs.GZIP, Codecs.LZ4, Codecs.ZSTD, Codecs.ZSTD_DICTIONARY } )
+    public String codecName;
+
+    @Param( { "5", "50" } )
+    public int propertyCount;
+
+    @Param( { "0", "100" } )
+    public int childCount;
+
+    private Codec codec;
+    private byte[][] documents;
+    private byte[][] encodedDocuments;
+    private byte[][] storedDocuments;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        NodeDocuments nodes = new NodeDocuments();
+        if (Codecs.ZSTD_DICTIONARY.equals(codecName)) {
+            // train the dictionary on different documents than the ones used by the benchmark
+            List<byte[]> samples = new ArrayList<>(DICTIONARY_SAMPLE_COUNT);
+            for (Document sample : nodes.nodes(DOCUMENT_COUNT, DICTIONARY_SAMPLE_COUNT, propertyCount, childCount)) {
+                samples.add(Bson.write(sample));
+            }
+            codec = Codecs.zstdWithDictionary(Codecs.trainZstdDictionary(samples, DICTIONARY_SIZE));
+        } else {
+            codec = Codecs.forName(codecName);
+        }
+        documents = new byte[DOCUMENT_COUNT][];
+        encodedDocuments = new byte[DOCUMENT_COUNT][];
+        storedDocuments = new byte[DOCUMENT_COUNT][];
+        int i = 0;
+        for (Document document : nodes.nodes(0, DOCUMENT_COUNT, propertyCount, childCount)) {
+            documents[i] = Bson.write(document);
+            encodedDocuments[i] = codec.encode(documents[i]);
+            storedDocuments[i] = Codecs.encode(codec, documents[i]);
+            i++;
+        }
+    }
+
+    @Benchmark
+    public byte[] encode( Sizes sizes ) {
+        byte[] document = documents[next()];
+        byte[] encoded = codec.encode(document);
+        sizes.inputBytes += document.length;
+        sizes.outputBytes += encoded.length;
+        return encoded;
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        byte[] encoded = encodedDocuments[next()];
+        return codec.decode(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Measures the entire read path of a persistence provider: decoding the stored data and parsing the BSON document.
+     */
+    @Benchmark
+    public Document readDocument() throws IOException {
+        return Codecs.readDocument(storedDocuments[next()], codec);
+    }
+
+    private int next() {
+        int next = index++;
+        if (index == DOCUMENT_COUNT) {
+            index = 0;
+        }
+        return next;
+    }
+
+    /**
+     * Counts the number of bytes before and after encoding, per benchmark iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long inputBytes;
+        public long outputBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            inputBytes = 0;
+            outputBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.modeshape.jcr.cache.document.DocumentTranslator;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.CompactDocument;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the heap used by the node documents held in the workspace caches, before (the mutable documents read from the
+ * persistence providers) and after (the {@link CompactDocument compact copies}) they are compacted. The {@code footprint}
+ * benchmark loads a number of documents and reports the number of loaded documents and the heap they retain, from which the
+ * retained bytes per document can be derived, while {@code getProperty} and {@code getProperties} measure the cost of reading
+ * one or all of the properties of a node through the {@link DocumentTranslator}.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentFootprintBenchmark {
+
+    private static final int DOCUMENT_COUNT = 10000;
+
+    @Param( { "basic", "compact" } )
+    public String representation;
+
+    @Param( { "5", "50" } )
+    public int propertyCount;
+
+    @Param( { "0", "100" } )
+    public int childCount;
+
+    private DocumentTranslator translator;
+    private Name[] propertyNames;
+    private byte[][] storedDocuments;
+    private Document[] documents;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        NodeDocuments nodes = new NodeDocuments();
+        translator = nodes.translator();
+        storedDocuments = new byte[DOCUMENT_COUNT][];
+        int i = 0;
+        for (Document document : nodes.nodes(0, DOCUMENT_COUNT, propertyCount, childCount)) {
+            storedDocuments[i++] = Bson.write(document);
+        }
+        documents = load();
+        propertyNames = new Name[propertyCount];
+        for (i = 0; i < propertyCount; i++) {
+            propertyNames[i] = nodes.propertyName(i);
+        }
+    }
+
+    /**
+     * Loads all the documents, as the workspace caches would, and measures the heap they retain.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public Document[] footprint( Footprint footprint ) throws IOException {
+        documents = null;
+        long before = usedHeap();
+        Document[] loaded = load();
+        footprint.retainedBytes += usedHeap() - before;
+        footprint.documents += DOCUMENT_COUNT;
+        documents = loaded;
+        return loaded;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public Property getProperty() {
+        int next = index++;
+        if (index == DOCUMENT_COUNT) {
+            index = 0;
+        }
+        return translator.getProperty(documents[next], propertyNames[next % propertyNames.length]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public Map<Name, Property> getProperties() {
+        int next = index++;
+        if (index == DOCUMENT_COUNT) {
+            index = 0;
+        }
+        Map<Name, Property> result = new HashMap<>();
+        translator.getProperties(documents[next], result);
+        return result;
+    }
+
+    private Document[] load() throws IOException {
+        Document[] result = new Document[DOCUMENT_COUNT];
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            Document document = Bson.read(new ByteArrayInputStream(storedDocuments[i]));
+            result[i] = "compact".equals(representation) ? CompactDocument.copyOf(document) : document;
+        }
+        return result;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Counts the number of loaded documents and the heap they retain, per benchmark iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long documents;
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            documents = 0;
+            retainedBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import org.modeshape.jcr.JcrRepository;
+import org.modeshape.jcr.ModeShapeEngine;
+import org.modeshape.jcr.RepositoryConfiguration;
+
+/**
+ * Starts a repository which keeps its content in memory, using the in-memory {@code FileDb} persistence, so that benchmarks of
+ * the repository's code paths are not affected by the disks of the machine running them.
+ */
+public final class InMemoryRepository implements AutoCloseable {
+
+    private static final String CONFIGURATION = "{ 'name' : 'bench', 'storage' : { 'persistence' : { 'type' : 'mem' } } }";
+
+    private final ModeShapeEngine engine;
+    private final JcrRepository repository;
+
+    public InMemoryRepository() throws Exception {
+        this.engine = new ModeShapeEngine();
+        this.engine.start();
+        this.repository = engine.deploy(RepositoryConfiguration.read(CONFIGURATION));
+    }
+
+    /**
+     * Logs into the default workspace of the repository.
+     *
+     * @return the new session; never null
+     * @throws RepositoryException if the session cannot be created
+     */
+    public Session login() throws RepositoryException {
+        return repository.login();
+    }
+
+    @Override
+    public void close() throws Exception {
+        engine.shutdown().get();
+    }
+}
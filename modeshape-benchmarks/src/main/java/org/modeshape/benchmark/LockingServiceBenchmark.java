@@ -0,0 +1,110 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.locking.LockingService;
+import org.modeshape.jcr.locking.StandaloneLockingService;
+import org.modeshape.jcr.locking.StripedLockingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link LockingService} implementations which can be used in non-clustered mode, when multiple threads
+ * concurrently lock and unlock the keys of the nodes they save. Each thread works with its own keys, so the benchmark measures
+ * the overhead of the locking service itself rather than the contention on the same nodes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LockingServiceBenchmark {
+
+    private static final long LOCK_TIMEOUT_MILLIS = 10000;
+    private static final int SAVES_PER_THREAD = 64;
+
+    @Param( { "standalone", "striped" } )
+    public String implementation;
+
+    @Param( { "1", "100", "1000" } )
+    public int keysPerSave;
+
+    private LockingService service;
+
+    @Setup
+    public void setup() {
+        service = "striped".equals(implementation) ?
+                  new StripedLockingService(StripedLockingService.DEFAULT_STRIPES, LOCK_TIMEOUT_MILLIS) :
+                  new StandaloneLockingService(LOCK_TIMEOUT_MILLIS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public boolean lockAndUnlock( Saves saves ) throws InterruptedException {
+        String[] keys = saves.next();
+        if (!service.tryLock(keys)) {
+            throw new IllegalStateException("Unable to lock the keys of the save");
+        }
+        return service.unlock(keys);
+    }
+
+    /**
+     * The keys locked by the saves of one thread.
+     */
+    @State(Scope.Thread)
+    public static class Saves {
+        private String[][] keys;
+        private int index;
+
+        @Setup
+        public void setup( LockingServiceBenchmark benchmark ) {
+            keys = new String[SAVES_PER_THREAD][benchmark.keysPerSave];
+            for (String[] save : keys) {
+                for (int i = 0; i < save.length; i++) {
+                    save[i] = new NodeKey("bnch", "wksp", UUID.randomUUID().toString()).toString();
+                }
+            }
+        }
+
+        protected String[] next() {
+            String[] next = keys[index++];
+            if (index == SAVES_PER_THREAD) {
+                index = 0;
+            }
+            return next;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.JcrLexicon;
+import org.modeshape.jcr.JcrMixLexicon;
+import org.modeshape.jcr.JcrNtLexicon;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.document.DocumentConstants;
+import org.modeshape.jcr.cache.document.DocumentTranslator;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.NameFactory;
+import org.modeshape.jcr.value.PropertyFactory;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableArray;
+import org.modeshape.schematic.document.EditableDocument;
+
+/**
+ * Generates node documents which have the same structure as the ones persisted by a repository, using the
+ * {@link DocumentTranslator}. The generated data is deterministic, so that benchmark runs can be compared.
+ */
+public final class NodeDocuments {
+
+    private static final String NAMESPACE = "http://www.modeshape.org/benchmark/1.0";
+
+    private final ExecutionContext context;
+    private final DocumentTranslator translator;
+    private final NameFactory names;
+    private final PropertyFactory properties;
+
+    public NodeDocuments() {
+        this.context = new ExecutionContext();
+        // large strings are never stored as binaries, so no document store is needed
+        this.translator = new DocumentTranslator(context, null, Long.MAX_VALUE);
+        this.names = context.getValueFactories().getNameFactory();
+        this.properties = context.getPropertyFactory();
+    }
+
+    /**
+     * Returns the translator used to create the documents.
+     *
+     * @return the translator; never null
+     */
+    public DocumentTranslator translator() {
+        return translator;
+    }
+
+    /**
+     * Returns the key of the node with the given index.
+     *
+     * @param index the index of the node
+     * @return the node key; never null
+     */
+    public NodeKey key( int index ) {
+        return new NodeKey("bnch", "wksp", String.format("node-%010d", index));
+    }
+
+    /**
+     * Returns the name of a custom property of the nodes.
+     *
+     * @param index the index of the property
+     * @return the property name; never null
+     */
+    public Name propertyName( int index ) {
+        return names.create(NAMESPACE, "property" + index);
+    }
+
+    /**
+     * Creates the document of a single {@code nt:unstructured} node.
+     *
+     * @param index the index of the node, which determines its key and the values of its properties
+     * @param propertyCount the number of custom properties
+     * @param childCount the number of child references
+     * @return the document; never null
+     */
+    public Document node( int index, int propertyCount, int childCount ) {
+        EditableDocument document = Schematic.newDocument();
+        NodeKey key = key(index);
+        translator.setKey(document, key);
+        translator.setParents(document, key(index / 10), null, null);
+        set(document, JcrLexicon.PRIMARY_TYPE, JcrNtLexicon.UNSTRUCTURED);
+        Object[] mixins = { JcrMixLexicon.REFERENCEABLE, JcrMixLexicon.CREATED };
+        translator.setProperty(document, properties.create(JcrLexicon.MIXIN_TYPES, mixins), null, null);
+        set(document, JcrLexicon.UUID, key.getIdentifier());
+        set(document, JcrLexicon.CREATED, context.getValueFactories().getDateFactory().create(1451606400000L + index));
+        set(document, JcrLexicon.CREATED_BY, "admin");
+        for (int i = 0; i < propertyCount; i++) {
+            Name name = propertyName(i);
+            if (i % 3 == 0) {
+                set(document, name, (long) index * i);
+            } else {
+                set(document, name, "The value of property " + i + " on node " + index);
+            }
+        }
+        if (childCount > 0) {
+            EditableArray children = document.setArray(DocumentConstants.CHILDREN);
+            for (int i = 0; i < childCount; i++) {
+                children.add(translator.childReferenceDocument(key(index * 1000 + i), names.create("child" + i)));
+            }
+        }
+        return document.unwrap();
+    }
+
+    /**
+     * Creates the documents of a number of nodes.
+     *
+     * @param firstIndex the index of the first node
+     * @param count the number of nodes
+     * @param propertyCount the number of custom properties of each node
+     * @param childCount the number of child references of each node
+     * @return the documents; never null
+     */
+    public List<Document> nodes( int firstIndex, int count, int propertyCount, int childCount ) {
+        List<Document> result = new ArrayList<>(count);
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            result.add(node(i, propertyCount, childCount));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private void set( EditableDocument document, Name name, Object value ) {
+        translator.setProperty(document, properties.create(name, value), null, null);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.modeshape.jcr.cache.NodeKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of reconstituting {@link NodeKey}s from their string representation, as is done for every reference read
+ * from a node document, and of splitting them into their source, workspace and identifier parts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NodeKeyBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    @Param( { "uuid", "path" } )
+    public String identifier;
+
+    private String[] keys;
+    private int index;
+
+    @Setup
+    public void setup() {
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String id = "uuid".equals(identifier) ? UUID.randomUUID().toString() : "/benchmark/folder" + (i % 10) + "/node" + i;
+            keys[i] = new NodeKey("bnch", "wksp", id).toString();
+        }
+    }
+
+    @Benchmark
+    public NodeKey parse() {
+        return new NodeKey(next());
+    }
+
+    @Benchmark
+    public String parseAndSplit() {
+        NodeKey key = new NodeKey(next());
+        return key.getSourceKey() + key.getWorkspaceKey() + key.getIdentifier();
+    }
+
+    @Benchmark
+    public boolean isValidRandomIdentifier() {
+        return NodeKey.isValidRandomIdentifier(new NodeKey(next()).getIdentifier());
+    }
+
+    private String next() {
+        String next = keys[index++];
+        if (index == KEY_COUNT) {
+            index = 0;
+        }
+        return next;
+    }
+}
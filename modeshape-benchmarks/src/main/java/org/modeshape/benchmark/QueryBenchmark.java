@@ -0,0 +1,130 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.RowIterator;
+import org.modeshape.jcr.api.query.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the stages of a JCR-SQL2 query, without any index: {@code parse} only creates the query through the
+ * {@link QueryManager}, which parses the statement into the abstract query model, {@code plan} also {@link Query#explain()
+ * explains} it, which validates, plans and optimizes it, while {@code execute} runs the query against a repository which uses
+ * the in-memory persistence and reads all of the rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final int NODES_PER_FOLDER = 100;
+    private static final int NODES_PER_SAVE = 1000;
+
+    @Param( { "1000", "10000" } )
+    public int nodeCount;
+
+    @Param( { "criteria", "orderBy", "join" } )
+    public String query;
+
+    private InMemoryRepository repository;
+    private Session session;
+    private QueryManager queryManager;
+    private String statement;
+
+    @Setup
+    public void setup() throws Exception {
+        repository = new InMemoryRepository();
+        session = repository.login();
+        queryManager = session.getWorkspace().getQueryManager();
+        statement = statement(query);
+
+        Node root = session.getRootNode().addNode("benchmark");
+        Node folder = null;
+        for (int i = 0; i < nodeCount; i++) {
+            if (i % NODES_PER_FOLDER == 0) {
+                folder = root.addNode("folder" + i / NODES_PER_FOLDER);
+            }
+            Node node = folder.addNode("node" + i);
+            node.setProperty("property0", (long) i);
+            node.setProperty("property1", "The value of property 1 on node " + i);
+            node.setProperty("property2", "category" + i % 10);
+            if ((i + 1) % NODES_PER_SAVE == 0) {
+                session.save();
+            }
+        }
+        session.save();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        session.logout();
+        repository.close();
+    }
+
+    @Benchmark
+    public Query parse() throws Exception {
+        return (Query)queryManager.createQuery(statement, Query.JCR_SQL2);
+    }
+
+    @Benchmark
+    public String plan() throws Exception {
+        return parse().explain().getPlan();
+    }
+
+    @Benchmark
+    public long execute() throws Exception {
+        RowIterator rows = parse().execute().getRows();
+        long count = 0;
+        while (rows.hasNext()) {
+            rows.nextRow();
+            ++count;
+        }
+        return count;
+    }
+
+    private static String statement( String query ) {
+        switch (query) {
+            case "criteria":
+                return "SELECT [jcr:path] FROM [nt:unstructured] WHERE [property1] = 'The value of property 1 on node 42'";
+            case "orderBy":
+                return "SELECT [jcr:path], [property0] FROM [nt:unstructured] WHERE [property2] = 'category3' "
+                       + "ORDER BY [property0] DESC";
+            case "join":
+                return "SELECT child.[jcr:path] FROM [nt:unstructured] AS folder "
+                       + "JOIN [nt:unstructured] AS child ON ISCHILDNODE(child, folder) WHERE NAME(folder) = 'folder3'";
+            default:
+                throw new IllegalArgumentException("Unknown query: " + query);
+        }
+    }
+}
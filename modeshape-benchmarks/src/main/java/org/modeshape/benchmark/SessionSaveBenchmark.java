@@ -0,0 +1,99 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import javax.jcr.Node;
+import javax.jcr.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of saving a session, which is where the {@code WritableSessionCache} locks, validates and persists the
+ * changed nodes. Each invocation creates a folder with a number of {@code nt:unstructured} children and saves them all at once,
+ * in a repository which uses the in-memory persistence.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionSaveBenchmark {
+
+    @Param( { "1", "10", "100", "1000" } )
+    public int nodesPerSave;
+
+    @Param( { "5", "50" } )
+    public int propertyCount;
+
+    private InMemoryRepository repository;
+    private Session session;
+    private Node container;
+    private int saves;
+
+    @Setup
+    public void setup() throws Exception {
+        repository = new InMemoryRepository();
+        session = repository.login();
+    }
+
+    @Setup( Level.Iteration )
+    public void createContainer() throws Exception {
+        container = session.getRootNode().addNode("benchmark");
+        session.save();
+    }
+
+    @TearDown( Level.Iteration )
+    public void removeContainer() throws Exception {
+        container.remove();
+        session.save();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        session.logout();
+        repository.close();
+    }
+
+    @Benchmark
+    public Node save() throws Exception {
+        Node folder = container.addNode("save" + saves++);
+        for (int i = 0; i < nodesPerSave; i++) {
+            Node node = folder.addNode("node" + i);
+            for (int j = 0; j < propertyCount; j++) {
+                if (j % 3 == 0) {
+                    node.setProperty("property" + j, (long) i * j);
+                } else {
+                    node.setProperty("property" + j, "The value of property " + j + " on node " + i);
+                }
+            }
+        }
+        session.save();
+        return folder;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.benchmark;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.mapdb.BTreeKeySerializer;
+import org.mapdb.Serializer;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.query.BufferManager;
+import org.modeshape.jcr.query.BufferManager.SortingBuffer;
+import org.modeshape.jcr.query.model.TypeSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of sorting the rows of a query with the {@link SortingBuffer}s created by the {@link BufferManager}, on and
+ * off the heap, with and without duplicate sort keys. Each invocation fills a new buffer and reads it back in ascending order,
+ * which is what the query engine does for an {@code ORDER BY} clause.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortingBufferBenchmark {
+
+    @Param( { "1000", "10000", "100000" } )
+    public int rows;
+
+    @Param( { "true", "false" } )
+    public boolean useHeap;
+
+    @Param( { "unique", "duplicates" } )
+    public String keys;
+
+    private ExecutionContext context;
+    private BufferManager bufferManager;
+    private BTreeKeySerializer<String> keySerializer;
+    private Serializer<String> serializer;
+    private String[] sortKeys;
+    private String[] values;
+
+    @SuppressWarnings( "unchecked" )
+    @Setup
+    public void setup() {
+        context = new ExecutionContext();
+        bufferManager = new BufferManager(context);
+        TypeSystem types = context.getValueFactories().getTypeSystem();
+        keySerializer = (BTreeKeySerializer<String>)bufferManager.bTreeKeySerializerFor(types.getStringFactory(), false);
+        serializer = (Serializer<String>)bufferManager.serializerFor(types.getStringFactory());
+        Random random = new Random(rows);
+        // with duplicates, each sort key is shared by ten rows on average
+        int distinctKeys = Math.max(1, rows / 10);
+        sortKeys = new String[rows];
+        values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            if ("unique".equals(keys)) {
+                sortKeys[i] = String.format("key-%010d-%d", random.nextInt(Integer.MAX_VALUE), i);
+            } else {
+                sortKeys[i] = String.format("key-%010d", random.nextInt(distinctKeys));
+            }
+            values[i] = "/benchmark/node" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        bufferManager.close();
+    }
+
+    @Benchmark
+    public int sort() {
+        try (SortingBuffer<String, String> buffer = newBuffer()) {
+            for (int i = 0; i < rows; i++) {
+                buffer.put(sortKeys[i], values[i]);
+            }
+            int count = 0;
+            Iterator<String> iterator = buffer.ascending();
+            while (iterator.hasNext()) {
+                iterator.next();
+                ++count;
+            }
+            return count;
+        }
+    }
+
+    private SortingBuffer<String, String> newBuffer() {
+        if ("unique".equals(keys)) {
+            return bufferManager.createSortingBuffer(keySerializer, serializer).keepSize(true).useHeap(useHeap).make();
+        }
+        return bufferManager.<String, String>createSortingWithDuplicatesBuffer(serializer, null, serializer)
+                            .keepSize(true).useHeap(useHeap).make();
+    }
+}
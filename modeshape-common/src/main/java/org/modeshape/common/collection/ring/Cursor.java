@@ -69,6 +69,16 @@ public interface Cursor extends DependentOnPointers {
      */
     boolean publish( long position );
 
+    /**
+     * Publish all of the supplied positions that were {@link #claim(int) claimed} together, making them available for consumers.
+     * 
+     * @param lowPosition the lowest of the positions that are now available for consumers
+     * @param highPosition the highest of the positions that are now available for consumers
+     * @return true if the positions were published, or false if not
+     */
+    boolean publish( long lowPosition,
+                     long highPosition );
+
     /**
      * Get the highest published position that is equal to or between the supplied lower and upper positions.
      * 
@@ -0,0 +1,228 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.common.collection.ring;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import org.modeshape.common.collection.ring.GarbageCollectingConsumer.Collectable;
+import org.modeshape.common.util.CheckArg;
+
+/**
+ * A cursor for a ring buffer that can be used concurrently by multiple producer threads without any locking. Positions are
+ * {@link #claim() claimed} with a compare-and-set on the highest claimed position, and so threads only ever contend on a single
+ * atomic update. Because positions may be {@link #publish(long) published} in a different order than they were claimed, the
+ * cursor records for each slot in the buffer the "lap" of the last position published into that slot, and consumers only
+ * proceed up to the {@link #getHighestPublishedPosition(long, long) highest contiguously-published position}.
+ * <p>
+ * Like the {@link SingleProducerCursor}, this cursor ensures it does not pass the slowest {@link Pointer} that is consuming
+ * entries, and {@link WaitStrategy#signalAllWhenBlocking() signals} the supplied {@link WaitStrategy} as positions are published.
+ * </p>
+ *
+ * @since 5.1
+ */
+public class MultiProducerCursor implements Cursor {
+
+    private static final AtomicReferenceFieldUpdater<MultiProducerCursor, Pointer[]> STAY_BEHIND_UPDATER = AtomicReferenceFieldUpdater.newUpdater(MultiProducerCursor.class,
+                                                                                                                                                  Pointer[].class,
+                                                                                                                                                  "stayBehinds");
+
+    private final int bufferSize;
+    private final int mask;
+    private final int lapShift;
+    protected final Pointer claimed = new Pointer(Pointer.INITIAL_VALUE);
+    protected final WaitStrategy waitStrategy;
+    private final Pointer slowestConsumerPosition = new Pointer(Pointer.INITIAL_VALUE);
+    private final AtomicIntegerArray publishedLaps;
+    protected volatile long finalPosition = Long.MAX_VALUE;
+    protected volatile Pointer[] stayBehinds = new Pointer[0];
+
+    public MultiProducerCursor( int bufferSize,
+                                WaitStrategy waitStrategy ) {
+        CheckArg.isPositive(bufferSize, "cursor.getBufferSize()");
+        CheckArg.isPowerOfTwo(bufferSize, "cursor.getBufferSize()");
+        this.bufferSize = bufferSize;
+        this.mask = bufferSize - 1;
+        this.lapShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.waitStrategy = waitStrategy;
+        this.publishedLaps = new AtomicIntegerArray(bufferSize);
+        for (int i = 0; i != bufferSize; ++i) {
+            publishedLaps.set(i, -1);
+        }
+    }
+
+    @Override
+    public long getCurrent() {
+        return claimed.get();
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public long claim() {
+        return claimUpTo(1);
+    }
+
+    @Override
+    public long claim( int number ) {
+        return claimUpTo(number);
+    }
+
+    /**
+     * Claim up to the supplied number of positions.
+     *
+     * @param number the maximum number of positions to claim for writing; must be positive
+     * @return the highest position that were claimed
+     */
+    protected long claimUpTo( int number ) {
+        assert number > 0;
+        while (true) {
+            long currentPosition = claimed.get();
+            long maxPosition = currentPosition + number;
+            long wrapPoint = maxPosition - bufferSize;
+            long cachedSlowestConsumerPosition = slowestConsumerPosition.get();
+
+            if (wrapPoint > cachedSlowestConsumerPosition || cachedSlowestConsumerPosition > currentPosition) {
+                long minPosition = Pointers.getMinimum(stayBehinds, currentPosition);
+                if (wrapPoint > minPosition) {
+                    // This takes on the order of tens of nanoseconds, so it's a useful activity to pause a bit.
+                    LockSupport.parkNanos(1L);
+                    waitStrategy.signalAllWhenBlocking();
+                    continue;
+                }
+                slowestConsumerPosition.set(minPosition);
+            } else if (claimed.compareAndSet(currentPosition, maxPosition)) {
+                return maxPosition;
+            }
+        }
+    }
+
+    protected long positionOfSlowestConsumer() {
+        return slowestConsumerPosition.get();
+    }
+
+    @Override
+    public boolean publish( long position ) {
+        // Always mark the position as published, since consumers may already be waiting for it ...
+        publishedLaps.set((int)(position & mask), (int)(position >>> lapShift));
+        waitStrategy.signalAllWhenBlocking();
+        return position <= finalPosition;
+    }
+
+    @Override
+    public boolean publish( long lowPosition,
+                            long highPosition ) {
+        for (long position = lowPosition; position <= highPosition; ++position) {
+            publishedLaps.set((int)(position & mask), (int)(position >>> lapShift));
+        }
+        waitStrategy.signalAllWhenBlocking();
+        return highPosition <= finalPosition;
+    }
+
+    protected final boolean isPublished( long position ) {
+        return publishedLaps.get((int)(position & mask)) == (int)(position >>> lapShift);
+    }
+
+    @Override
+    public long getHighestPublishedPosition( long lowerPosition,
+                                             long upperPosition ) {
+        for (long position = lowerPosition; position <= upperPosition; ++position) {
+            if (!isPublished(position)) return position - 1;
+        }
+        return upperPosition;
+    }
+
+    @Override
+    public PointerBarrier newBarrier() {
+        return new PointerBarrier() {
+            private volatile boolean closed = false;
+
+            @Override
+            public long waitFor( long position ) throws InterruptedException, TimeoutException {
+                while (true) {
+                    if (position > finalPosition) {
+                        // The consumer is waiting for a position beyond the final position, meaning we're done ...
+                        return -1;
+                    }
+                    long availableSequence = waitStrategy.waitFor(position, claimed, claimed, this);
+                    if (availableSequence < position) {
+                        return availableSequence;
+                    }
+                    long highest = getHighestPublishedPosition(position, availableSequence);
+                    if (highest >= position || closed) {
+                        return highest;
+                    }
+                    // The position was claimed by a producer that has not yet published it, which will happen very shortly ...
+                    Thread.yield();
+                }
+            }
+
+            @Override
+            public boolean isComplete() {
+                return closed || MultiProducerCursor.this.isComplete();
+            }
+
+            @Override
+            public void close() {
+                this.closed = true;
+            }
+        };
+    }
+
+    @Override
+    public void signalConsumers() {
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    @Override
+    public void complete() {
+        finalPosition = claimed.get();
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    @Override
+    public boolean isComplete() {
+        long finalPosition = this.finalPosition;
+        if (finalPosition == Long.MAX_VALUE) return false;
+        return finalPosition < 0 || getHighestPublishedPosition(Math.max(0L, finalPosition - bufferSize + 1), finalPosition) == finalPosition;
+    }
+
+    @Override
+    public Pointer newPointer() {
+        Pointer result = new Pointer(claimed.get());
+        this.stayBehind(result);
+        return result;
+    }
+
+    @Override
+    public void stayBehind( Pointer... pointers ) {
+        Pointers.add(this, STAY_BEHIND_UPDATER, this, pointers);
+    }
+
+    @Override
+    public boolean ignore( Pointer pointer ) {
+        return Pointers.remove(this, STAY_BEHIND_UPDATER, pointer);
+    }
+
+    @Override
+    public GarbageCollectingConsumer createGarbageCollectingConsumer( Collectable collectable ) {
+        return new GarbageCollectingConsumer(this, claimed, waitStrategy, collectable);
+    }
+}
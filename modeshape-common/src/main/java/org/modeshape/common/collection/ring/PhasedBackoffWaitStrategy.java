@@ -0,0 +1,107 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.common.collection.ring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.modeshape.common.util.CheckArg;
+
+/**
+ * A {@link WaitStrategy} that backs off in phases: it first spins, then {@link Thread#yield() yields} the CPU, and when an entry
+ * has still not become available it falls back to another (usually blocking) strategy. This strategy has low latency when
+ * entries are added at a steady rate, but does not use any CPU time when the buffer is idle.
+ *
+ * @since 5.1
+ */
+public class PhasedBackoffWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 10000;
+
+    /**
+     * Create a strategy that spins and yields for the supplied periods of time and then blocks.
+     *
+     * @param spinTime the time to spin; may not be negative
+     * @param yieldTime the time to yield after spinning; may not be negative
+     * @param unit the unit of the times; may not be null
+     * @return the wait strategy; never null
+     */
+    public static PhasedBackoffWaitStrategy withBlocking( long spinTime,
+                                                          long yieldTime,
+                                                          TimeUnit unit ) {
+        return new PhasedBackoffWaitStrategy(spinTime, yieldTime, unit, new BlockingWaitStrategy());
+    }
+
+    private final long spinTimeoutNanos;
+    private final long yieldTimeoutNanos;
+    private final WaitStrategy fallbackStrategy;
+
+    /**
+     * @param spinTime the time to spin; may not be negative
+     * @param yieldTime the time to yield after spinning; may not be negative
+     * @param unit the unit of the times; may not be null
+     * @param fallbackStrategy the strategy used after spinning and yielding; may not be null
+     */
+    public PhasedBackoffWaitStrategy( long spinTime,
+                                      long yieldTime,
+                                      TimeUnit unit,
+                                      WaitStrategy fallbackStrategy ) {
+        CheckArg.isNonNegative(spinTime, "spinTime");
+        CheckArg.isNonNegative(yieldTime, "yieldTime");
+        CheckArg.isNotNull(unit, "unit");
+        CheckArg.isNotNull(fallbackStrategy, "fallbackStrategy");
+        this.spinTimeoutNanos = unit.toNanos(spinTime);
+        this.yieldTimeoutNanos = spinTimeoutNanos + unit.toNanos(yieldTime);
+        this.fallbackStrategy = fallbackStrategy;
+    }
+
+    @Override
+    public long waitFor( long position,
+                         Pointer pointer,
+                         Pointer dependentPointer,
+                         PointerBarrier barrier ) throws InterruptedException, TimeoutException {
+        long startTime = 0L;
+        int counter = SPIN_TRIES;
+        long availablePosition;
+        while ((availablePosition = dependentPointer.get()) < position && !barrier.isComplete()) {
+            if (--counter > 0) {
+                continue;
+            }
+            // Check the time only every so often while spinning, since that's more expensive than checking the pointer ...
+            if (startTime == 0L) {
+                startTime = System.nanoTime();
+                counter = SPIN_TRIES;
+                continue;
+            }
+            long elapsed = System.nanoTime() - startTime;
+            if (elapsed > yieldTimeoutNanos) {
+                return fallbackStrategy.waitFor(position, pointer, dependentPointer, barrier);
+            }
+            if (elapsed > spinTimeoutNanos) {
+                // Yield on every check from now on ...
+                Thread.yield();
+                counter = 1;
+            } else {
+                counter = SPIN_TRIES;
+            }
+        }
+        return availablePosition;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        fallbackStrategy.signalAllWhenBlocking();
+    }
+}
@@ -49,6 +49,11 @@ public class Pointer {
         return this.value.incrementAndGet();
     }
 
+    public boolean compareAndSet( long expectedValue,
+                                  long newValue ) {
+        return this.value.compareAndSet(expectedValue, newValue);
+    }
+
     @Override
     public String toString() {
         return super.toString() + "=" + value.get();
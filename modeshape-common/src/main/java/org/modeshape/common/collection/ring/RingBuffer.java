@@ -105,7 +105,7 @@ public final class RingBuffer<T, C> {
                 Executor executor,
                 ConsumerAdapter<T, C> consumerAdapter,
                 boolean gcEntries,
-                boolean singleProducer ) {
+                boolean lockFreeProducers ) {
         this.cursor = cursor;
         this.bufferSize = cursor.getBufferSize();
         CheckArg.isPositive(bufferSize, "cursor.getBufferSize()");
@@ -128,11 +128,12 @@ public final class RingBuffer<T, C> {
             this.gcConsumer = null;
         }
 
-        if (singleProducer) {
-            // There is but one thread calling 'add', so no need for alock. Create an impl that does nothing ...
+        if (lockFreeProducers) {
+            // There is but one thread calling 'add', or the cursor allows multiple threads to claim and publish without locking,
+            // so no need for a lock. Create an impl that does nothing ...
             producerLock = new NoOpLock();
         } else {
-            // Multiple threads can call 'add', so use a real lock ...
+            // Multiple threads can call 'add' on a cursor that only supports a single producer, so use a real lock ...
             producerLock = new ReentrantLock();
         }
     }
@@ -173,11 +174,12 @@ public final class RingBuffer<T, C> {
         try {
             producerLock.lock();
             long position = cursor.claim(entries.length); // blocks
+            long firstPosition = position - entries.length + 1;
             for (int i = 0; i != entries.length; ++i) {
-                int index = (int)(position & mask);
+                int index = (int)((firstPosition + i) & mask);
                 buffer[index] = entries[i];
             }
-            return cursor.publish(position);
+            return cursor.publish(firstPosition, position);
         } finally {
             producerLock.unlock();
         }
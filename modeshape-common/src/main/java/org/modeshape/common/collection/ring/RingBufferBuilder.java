@@ -163,15 +163,22 @@ public class RingBufferBuilder<T, C> {
         WaitStrategy waitStrategy = this.waitStrategy;
         if (waitStrategy == null) waitStrategy = defaultWaitStrategy();
         Cursor cursor = defaultCursor(bufferSize, waitStrategy);
-        return new RingBuffer<T, C>(name, cursor, executor, adapter, garbageCollect, singleProducer);
+        // Producers only need to be serialized when multiple threads share a cursor that doesn't support it ...
+        boolean lockFreeProducers = singleProducer || cursor instanceof MultiProducerCursor;
+        return new RingBuffer<T, C>(name, cursor, executor, adapter, garbageCollect, lockFreeProducers);
     }
 
     protected WaitStrategy defaultWaitStrategy() {
         return new BlockingWaitStrategy();
     }
 
+    protected boolean isSingleProducer() {
+        return singleProducer;
+    }
+
     protected Cursor defaultCursor( int bufferSize,
                                     WaitStrategy waitStrategy ) {
-        return new SingleProducerCursor(bufferSize, waitStrategy);
+        if (singleProducer) return new SingleProducerCursor(bufferSize, waitStrategy);
+        return new MultiProducerCursor(bufferSize, waitStrategy);
     }
 }
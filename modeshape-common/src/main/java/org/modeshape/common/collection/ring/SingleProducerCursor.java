@@ -116,6 +116,13 @@ public class SingleProducerCursor implements Cursor {
         return true;
     }
 
+    @Override
+    public boolean publish( long lowPosition,
+                            long highPosition ) {
+        // There is only one producer, so publishing the highest position publishes all of the lower positions ...
+        return publish(highPosition);
+    }
+
     @Override
     public long getHighestPublishedPosition( long lowerPosition,
                                              long upperPosition ) {
@@ -0,0 +1,50 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.common.collection.ring;
+
+/**
+ * A {@link WaitStrategy} that spins for a short while and then {@link Thread#yield() yields} the CPU until an entry is available
+ * for consumption. This strategy has low latency without occupying a CPU core when other threads need to run, but it still uses
+ * CPU time while waiting, so it is best suited when there are about as many cores as there are consumer threads.
+ *
+ * @since 5.1
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public long waitFor( long position,
+                         Pointer pointer,
+                         Pointer dependentPointer,
+                         PointerBarrier barrier ) {
+        int counter = SPIN_TRIES;
+        long availablePosition;
+        while ((availablePosition = dependentPointer.get()) < position && !barrier.isComplete()) {
+            if (counter == 0) {
+                Thread.yield();
+            } else {
+                --counter;
+            }
+        }
+        return availablePosition;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        // Nothing is ever blocked ...
+    }
+}
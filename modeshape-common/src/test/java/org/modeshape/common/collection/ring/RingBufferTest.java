@@ -21,9 +21,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.modeshape.common.FixFor;
@@ -302,6 +307,74 @@ public class RingBufferTest {
         assertEquals(1024, ringBuffer.getBufferSize());
     }
 
+    @Test
+    public void shouldConsumeAllEntriesAddedByMultipleProducersWithBlockingWaitStrategy() throws Exception {
+        assertMultipleProducers(new BlockingWaitStrategy(), 4, 1);
+    }
+
+    @Test
+    public void shouldConsumeAllEntriesAddedByMultipleProducersWithBusySpinWaitStrategy() throws Exception {
+        assertMultipleProducers(new BusySpinWaitStrategy(), 2, 1);
+    }
+
+    @Test
+    public void shouldConsumeAllEntriesAddedByMultipleProducersWithYieldingWaitStrategy() throws Exception {
+        assertMultipleProducers(new YieldingWaitStrategy(), 4, 1);
+    }
+
+    @Test
+    public void shouldConsumeAllEntriesAddedByMultipleProducersWithPhasedBackoffWaitStrategy() throws Exception {
+        assertMultipleProducers(PhasedBackoffWaitStrategy.withBlocking(10, 100, TimeUnit.MICROSECONDS), 4, 1);
+    }
+
+    @Test
+    public void shouldConsumeAllEntriesAddedInBatchesByMultipleProducers() throws Exception {
+        assertMultipleProducers(new BlockingWaitStrategy(), 4, 5);
+    }
+
+    protected void assertMultipleProducers( WaitStrategy waitStrategy,
+                                            int producerCount,
+                                            int batchSize ) throws Exception {
+        final int entriesPerProducer = 10000;
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            RingBuffer<Long, Consumer<Long>> ringBuffer = RingBufferBuilder.withMultipleProducers(executor, Long.class).ofSize(64)
+                                                                           .garbageCollect(true).waitUsing(waitStrategy)
+                                                                           .build();
+            OrderPerProducerConsumer consumer = new OrderPerProducerConsumer(producerCount, entriesPerProducer);
+            ringBuffer.addConsumer(consumer);
+
+            List<Future<?>> producers = new ArrayList<>();
+            for (int p = 0; p != producerCount; ++p) {
+                final long producer = p;
+                producers.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        Long[] batch = new Long[batchSize];
+                        for (int i = 0; i != entriesPerProducer; i += batchSize) {
+                            for (int j = 0; j != batchSize; ++j) {
+                                batch[j] = producer * entriesPerProducer + i + j;
+                            }
+                            if (batchSize == 1) {
+                                assertTrue(ringBuffer.add(batch[0]));
+                            } else {
+                                assertTrue(ringBuffer.add(batch));
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> producer : producers) {
+                producer.get(30, TimeUnit.SECONDS);
+            }
+            ringBuffer.shutdown();
+            assertTrue(consumer.isClosed());
+            assertThat(consumer.getCount(), is((long)producerCount * entriesPerProducer));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     protected void print( String message ) {
         if (print) System.out.println(message);
     }
@@ -377,6 +450,50 @@ public class RingBufferTest {
         }
     }
 
+    protected class OrderPerProducerConsumer extends Consumer<Long> {
+        private final long[] lastValues;
+        private final int entriesPerProducer;
+        private long lastPosition = -1L;
+        private long count = 0L;
+        private volatile boolean closed = false;
+
+        public OrderPerProducerConsumer( int producerCount,
+                                         int entriesPerProducer ) {
+            this.lastValues = new long[producerCount];
+            this.entriesPerProducer = entriesPerProducer;
+            for (int i = 0; i != producerCount; ++i) {
+                lastValues[i] = (long)i * entriesPerProducer - 1L;
+            }
+        }
+
+        @Override
+        public boolean consume( Long entry,
+                                long position,
+                                long max ) {
+            assertTrue(lastPosition == -1L || position == lastPosition + 1);
+            lastPosition = position;
+            int producer = (int)(entry.longValue() / entriesPerProducer);
+            assertThat(entry.longValue(), is(lastValues[producer] + 1));
+            lastValues[producer] = entry.longValue();
+            ++count;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            closed = true;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
     private static class LongConsumerAdapter implements RingBuffer.ConsumerAdapter<Long, MonotonicallyIncreasingConsumer> {
         protected static final LongConsumerAdapter INSTANCE = new LongConsumerAdapter();
 
@@ -15,6 +15,8 @@
  */
 package org.modeshape.jcr.api;
 
+import java.io.File;
+
 /**
  * Class which allows a customization of the backup process.
  * 
@@ -32,6 +34,11 @@ public abstract class BackupOptions {
      * The number of documents read form the persistent store and written in a backup file in one unit
      */
     public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    /**
+     * By default, the documents and binary values are written by a single thread.
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
     
     /**
      * Default backup options which will be used when a backup is performed without an explicit set of options.
@@ -71,6 +78,31 @@ public abstract class BackupOptions {
         return DEFAULT_BATCH_SIZE;
     }
 
+    /**
+     * Return the number of threads which write the documents and binary values to the backup. Each thread writes the documents
+     * it is given in its own sequence of backup files, so that the backup can also be restored by several threads.
+     *
+     * @return the number of threads; defaults to {@value #DEFAULT_PARALLELISM}
+     * @since 5.1
+     */
+    public int parallelism() {
+        return DEFAULT_PARALLELISM;
+    }
+
+    /**
+     * Return the directory of a previous backup of the same repository on which this backup is based. When such a backup is
+     * given, only the documents and binary values which have changed since it was made are written, together with the keys of the
+     * documents which have been removed since then. Such an incremental backup is restored together with all of the backups on
+     * which it is based, and requires the repository to have a journal which still holds all of these changes.
+     *
+     * @return the directory of the previous (full or incremental) backup, or {@code null} if a full backup should be made;
+     *         defaults to {@code null}
+     * @since 5.1
+     */
+    public File incrementalBase() {
+        return null;
+    }
+
     /**
      * Return whether or not each backup file (which contains multiple documents) should be compressed or not.
      *
@@ -87,6 +119,10 @@ public abstract class BackupOptions {
         builder.append(", batch size=").append(batchSize());
         builder.append(", documents per file=").append(documentsPerFile());
         builder.append(", compress=").append(compress());
+        builder.append(", parallelism=").append(parallelism());
+        if (incrementalBase() != null) {
+            builder.append(", incremental base=").append(incrementalBase());
+        }
         builder.append("]");
         return builder.toString();
     }
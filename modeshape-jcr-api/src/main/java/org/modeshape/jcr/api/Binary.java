@@ -16,6 +16,9 @@
 package org.modeshape.jcr.api;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import javax.jcr.RepositoryException;
 
@@ -71,4 +74,51 @@ public interface Binary extends javax.jcr.Binary {
      */
     public String getMimeType( String name ) throws IOException, RepositoryException;
 
+
+    /**
+     * Write part of the content of this binary value to a channel. Implementations whose content is held in files delegate to
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}, which avoids copying the content
+     * through buffers on the heap only when the target is itself a file or socket channel; for any other channel (such as one
+     * created by {@link java.nio.channels.Channels#newChannel(java.io.OutputStream)}) the content is still copied through a
+     * buffer. Other implementations read the content from the {@link #getStream() stream}.
+     *
+     * @param position the offset of the first byte to be written; must not be negative
+     * @param length the maximum number of bytes to be written; must not be negative
+     * @param target the channel to which the content is written; may not be null
+     * @return the number of bytes which have been written, which is smaller than {@code length} only if the end of the content
+     *         has been reached
+     * @throws IOException if there is a problem reading the content or writing it to the channel
+     * @throws RepositoryException if an error occurs.
+     * @since 5.1
+     */
+    public default long transferTo( long position,
+                                    long length,
+                                    WritableByteChannel target ) throws IOException, RepositoryException {
+        try (InputStream stream = getStream()) {
+            for (long skipped = 0L; skipped < position; ) {
+                long count = stream.skip(position - skipped);
+                if (count <= 0L) {
+                    if (stream.read() == -1) {
+                        return 0L;
+                    }
+                    count = 1L;
+                }
+                skipped += count;
+            }
+            byte[] bytes = new byte[(int)Math.min(8192L, Math.max(1L, length))];
+            long written = 0L;
+            while (written < length) {
+                int read = stream.read(bytes, 0, (int)Math.min(bytes.length, length - written));
+                if (read == -1) {
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                written += read;
+            }
+            return written;
+        }
+    }
 }
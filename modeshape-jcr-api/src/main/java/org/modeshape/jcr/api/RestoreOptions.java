@@ -26,6 +26,11 @@ public abstract class RestoreOptions {
      * The number of documents written in one unit (i.e. transaction) from the backup files into the persistent storage.
      */
     public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * By default, the documents and binary values are restored by a single thread.
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
     
     /**
      * The default options used during restore, if no explicit ones are given.
@@ -55,6 +60,18 @@ public abstract class RestoreOptions {
         return DEFAULT_BATCH_SIZE;
     }
 
+    /**
+     * Return the number of threads which restore the documents and binary values. Each of the sequences of backup files written
+     * by the threads of a backup is restored by a single thread, so using more threads than were used for the backup only helps
+     * to restore the binary values.
+     *
+     * @return the number of threads; defaults to {@value #DEFAULT_PARALLELISM}
+     * @since 5.1
+     */
+    public int parallelism() {
+        return DEFAULT_PARALLELISM;
+    }
+
     /**
      * Whether binaries should be restored or not. ModeShape uses references between documents and binary values, so 
      * depending on the context it may not always be desired for binary values to be restored. 
@@ -71,6 +88,7 @@ public abstract class RestoreOptions {
         builder.append("batch size=").append(batchSize());
         builder.append(", include binaries=").append(includeBinaries());
         builder.append(", reindex content on finish=").append(reindexContentOnFinish());
+        builder.append(", parallelism=").append(parallelism());
         builder.append("]");
         return builder.toString();
     }
@@ -104,7 +104,90 @@ public enum ValueMetric {
     /**
      * The metric that records the number of nodes that were sequenced.
      */
-    SEQUENCED_COUNT("sequenced-count", false, "Sequenced nodes", "The number of nodes that were sequenced during the window.");
+    SEQUENCED_COUNT("sequenced-count", false, "Sequenced nodes", "The number of nodes that were sequenced during the window."),
+    /**
+     * The metric that records the number of times a node was found in a workspace cache.
+     */
+    WORKSPACE_CACHE_HITS("workspace-cache-hits", false, "Workspace cache hits",
+                         "The number of times a node was found in a workspace cache during the window."),
+    /**
+     * The metric that records the number of times a node was not found in a workspace cache and had to be read from the
+     * persistent store.
+     */
+    WORKSPACE_CACHE_MISSES("workspace-cache-misses", false, "Workspace cache misses",
+                           "The number of times a node had to be read from the persistent store during the window."),
+    /**
+     * The metric that records the number of nodes which were evicted from (or not admitted into) full workspace caches.
+     */
+    WORKSPACE_CACHE_EVICTIONS("workspace-cache-evictions", false, "Workspace cache evictions",
+                              "The number of nodes which were evicted from full workspace caches during the window."),
+    /**
+     * The metric that records the total weight of the workspace caches, which is either the number of cached nodes or the
+     * estimated number of bytes of their documents, depending on how the caches are configured.
+     */
+    WORKSPACE_CACHE_WEIGHT("workspace-cache-weight", true, "Workspace cache weight",
+                           "The number of nodes (or the estimated number of bytes) held by all workspace caches during the window."),
+    /**
+     * The metric that records the number of times a document was found in the off-heap document cache.
+     */
+    DOCUMENT_CACHE_HITS("document-cache-hits", false, "Document cache hits",
+                        "The number of times a document was found in the off-heap document cache during the window."),
+    /**
+     * The metric that records the number of times a document was not found in the off-heap document cache and had to be read
+     * from the persistent store.
+     */
+    DOCUMENT_CACHE_MISSES("document-cache-misses", false, "Document cache misses",
+                          "The number of times a document was not found in the off-heap document cache during the window."),
+    /**
+     * The metric that records the number of bytes of off-heap memory used by the documents held in the off-heap document cache.
+     */
+    DOCUMENT_CACHE_OFF_HEAP_BYTES("document-cache-off-heap-bytes", true, "Document cache off-heap bytes",
+                                  "The number of bytes of off-heap memory used by the document cache during the window."),
+    /**
+     * The metric that records the number of times the optimized plan of a query was found in the query plan cache.
+     */
+    QUERY_PLAN_CACHE_HITS("query-plan-cache-hits", false, "Query plan cache hits",
+                          "The number of times the plan of a query was found in the query plan cache during the window."),
+    /**
+     * The metric that records the number of times the plan of a query was not found in the query plan cache, so that the query
+     * had to be planned and optimized.
+     */
+    QUERY_PLAN_CACHE_MISSES("query-plan-cache-misses", false, "Query plan cache misses",
+                            "The number of times the plan of a query was not found in the query plan cache during the window."),
+    /**
+     * The metric that records the number of nodes which have been written to the indexes by a full reindexing during the window.
+     */
+    REINDEXED_NODES("reindexed-nodes", false, "Reindexed nodes",
+                    "The number of nodes which have been reindexed during the window."),
+    /**
+     * The metric that records the number of partitions (subtrees) which a full reindexing still has to process.
+     */
+    REINDEXING_PARTITIONS_REMAINING("reindexing-partitions-remaining", true, "Remaining reindexing partitions",
+                                    "The number of partitions which still had to be reindexed during the window."),
+    /**
+     * The metric that records the number of cluster messages which were not sent because the change sets were sent together
+     * with other change sets in a batch.
+     */
+    CLUSTER_MESSAGES_SAVED("cluster-messages-saved", false, "Cluster messages saved",
+                           "The number of change sets which were sent to the cluster in a batch instead of in their own message during the window."),
+    /**
+     * The metric that records the number of microseconds by which change sets were held back before being sent to the cluster
+     * in a batch.
+     */
+    CLUSTER_BATCHING_DELAY("cluster-batching-delay", true, "Cluster batching delay",
+                           "The number of microseconds change sets waited to be sent to the cluster in a batch during the window."),
+    /**
+     * The metric that records the number of database transactions used by the relational persistence to commit groups of
+     * repository transactions, when group commit is enabled.
+     */
+    DB_GROUP_COMMITS("db-group-commits", false, "Database group commits",
+                     "The number of database transactions which committed groups of repository transactions during the window."),
+    /**
+     * The metric that records the number of repository transactions committed by the relational persistence as part of a
+     * group, when group commit is enabled.
+     */
+    DB_GROUP_COMMITTED_TRANSACTIONS("db-group-committed-transactions", false, "Group committed transactions",
+                                    "The number of repository transactions which were committed as part of a group during the window.");
 
     private static final Map<String, ValueMetric> BY_LITERAL;
     private static final Map<String, ValueMetric> BY_NAME;
@@ -20,47 +20,66 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.jcr.RepositoryException;
 import javax.transaction.SystemException;
+import org.modeshape.common.annotation.Immutable;
 import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.collection.Problems;
-import org.modeshape.common.collection.SimpleProblems;
+import org.modeshape.common.collection.ThreadSafeProblems;
 import org.modeshape.common.i18n.I18n;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.FileUtil;
-import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.util.NamedThreadFactory;
 import org.modeshape.jcr.JcrRepository.RunningState;
 import org.modeshape.jcr.api.BackupOptions;
 import org.modeshape.jcr.api.RestoreOptions;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.RepositoryCache;
+import org.modeshape.jcr.cache.document.DocumentConstants;
 import org.modeshape.jcr.cache.document.LocalDocumentStore;
+import org.modeshape.jcr.journal.ChangeJournal;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.BinaryValue;
 import org.modeshape.jcr.value.binary.BinaryStore;
 import org.modeshape.jcr.value.binary.BinaryStoreException;
+import org.modeshape.jcr.value.binary.FileSystemBinaryStore;
 import org.modeshape.schematic.Schematic;
 import org.modeshape.schematic.SchematicEntry;
 import org.modeshape.schematic.document.Document;
@@ -81,9 +100,24 @@ public class BackupService {
     protected static final String SUMMARY_FILE_NAME = "summary_of_changes.json";
     protected static final String BINARY_EXTENSION = ".bin";
     protected static final int NUM_CHARS_IN_FILENAME_SUFFIX = 6;
+    protected static final String MANIFEST_FILE_NAME = "manifest.json";
+    protected static final String REMOVED_DOCUMENTS_FILE_NAME = "removed_documents.json";
+    protected static final int MANIFEST_VERSION = 1;
 
     protected static class FieldName {
         public static final String UNUSED_BINARY_KEYS = "unusedBinaryKeys";
+        public static final String MANIFEST_VERSION = "version";
+        public static final String PARALLELISM = "parallelism";
+        public static final String COMPRESSED = "compressed";
+        public static final String DOCUMENT_FILES = "documentFiles";
+        public static final String DOCUMENT_COUNT = "documentCount";
+        public static final String BINARY_VALUE_COUNT = "binaryValueCount";
+        public static final String BINARY_BYTES = "binaryBytes";
+        public static final String WATERMARK = "watermark";
+        public static final String BASE = "base";
+        public static final String SINCE = "since";
+        public static final String SYSTEM_WORKSPACE_KEY = "systemWorkspaceKey";
+        public static final String REMOVED_DOCUMENT_KEYS = "removedDocumentKeys";
     }
 
     private final RunningState runningState;
@@ -192,7 +226,7 @@ public class BackupService {
      */
     public BackupActivity createBackupActivity( File backupDirectory,
                                                 BackupOptions options ) {
-        return new BackupActivity(backupDirectory, documentStore, binaryStore, repositoryCache, options);
+        return new BackupActivity(backupDirectory, documentStore, binaryStore, repositoryCache, options, runningState.journal());
     }
 
     /**
@@ -207,6 +241,151 @@ public class BackupService {
         return new RestoreActivity(backupDirectory, documentStore, binaryStore, repositoryCache, options);
     }
 
+    /**
+     * Read the manifest of a backup.
+     *
+     * @param backupDirectory the directory of the backup; may not be null
+     * @return the manifest, or null if the backup has none because it was made by a previous version
+     * @throws IOException if the manifest cannot be read
+     */
+    protected static Document readManifest( File backupDirectory ) throws IOException {
+        File file = new File(backupDirectory, MANIFEST_FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream stream = new FileInputStream(file)) {
+            return Json.read(stream);
+        }
+    }
+
+    /**
+     * Get the backups which have to be restored in order to restore a given backup: the backup itself if it is a full backup, or
+     * otherwise all of the backups on which it is (directly or not) based, starting with the full backup.
+     *
+     * @param backupDirectory the directory of the backup; may not be null
+     * @return the directories of the backups, in the order in which they have to be restored; never empty
+     * @throws IOException if a manifest cannot be read or a backup on which another one is based cannot be found
+     */
+    protected static List<File> backupChain( File backupDirectory ) throws IOException {
+        LinkedList<File> chain = new LinkedList<>();
+        Set<File> visited = new HashSet<>();
+        for (File backup = backupDirectory; backup != null; ) {
+            if (!visited.add(backup.getCanonicalFile())) {
+                throw new IOException("The backup at " + backup + " is based on itself");
+            }
+            chain.addFirst(backup);
+            Document manifest = readManifest(backup);
+            String base = manifest != null ? manifest.getString(FieldName.BASE) : null;
+            backup = base != null ? resolveBase(backup, base) : null;
+        }
+        return chain;
+    }
+
+    private static File resolveBase( File backupDirectory,
+                                     String base ) throws IOException {
+        File baseDirectory = new File(base);
+        if (!baseDirectory.isDirectory()) {
+            // the backups may have been moved together to another location ...
+            baseDirectory = new File(backupDirectory.getAbsoluteFile().getParentFile(), baseDirectory.getName());
+        }
+        if (!baseDirectory.isDirectory()) {
+            throw new FileNotFoundException(base);
+        }
+        return baseDirectory;
+    }
+
+    /**
+     * Determine whether a document holds a node of a given workspace.
+     *
+     * @param documentKey the key of the document; may not be null
+     * @param workspaceKey the key of the workspace; may not be null
+     * @return true if the document is the document of a node in that workspace, or false otherwise
+     */
+    protected static boolean isInWorkspace( String documentKey,
+                                            String workspaceKey ) {
+        return NodeKey.isValidFormat(documentKey) && workspaceKey.equals(new NodeKey(documentKey).getWorkspaceKey());
+    }
+
+    /**
+     * The amount of content copied by a backup or restore {@link Activity activity}, and the time it took.
+     */
+    @Immutable
+    public static final class Throughput {
+        private final long documentCount;
+        private final long binaryValueCount;
+        private final long binaryBytes;
+        private final long elapsedMillis;
+        private final int threads;
+
+        protected Throughput( long documentCount,
+                              long binaryValueCount,
+                              long binaryBytes,
+                              long elapsedMillis,
+                              int threads ) {
+            this.documentCount = documentCount;
+            this.binaryValueCount = binaryValueCount;
+            this.binaryBytes = binaryBytes;
+            this.elapsedMillis = elapsedMillis;
+            this.threads = threads;
+        }
+
+        /**
+         * @return the number of documents which have been copied
+         */
+        public long getDocumentCount() {
+            return documentCount;
+        }
+
+        /**
+         * @return the number of binary values which have been copied
+         */
+        public long getBinaryValueCount() {
+            return binaryValueCount;
+        }
+
+        /**
+         * @return the total size of the binary values which have been copied, in bytes
+         */
+        public long getBinaryBytes() {
+            return binaryBytes;
+        }
+
+        /**
+         * @return the duration of the activity, in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return the number of threads which copied the content
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @return the average number of documents copied per second
+         */
+        public double getDocumentsPerSecond() {
+            return documentCount * 1000d / Math.max(1L, elapsedMillis);
+        }
+
+        /**
+         * @return the average number of bytes of binary values copied per second
+         */
+        public double getBinaryBytesPerSecond() {
+            return binaryBytes * 1000d / Math.max(1L, elapsedMillis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d documents and %d binary values (%d bytes) in %d ms using %d threads (%.1f documents/s, %.1f MB/s)",
+                                 documentCount, binaryValueCount, binaryBytes, elapsedMillis, threads, getDocumentsPerSecond(),
+                                 getBinaryBytesPerSecond() / (1024 * 1024));
+        }
+    }
+
     /**
      * An abstract activity used for the various backup and restore operations.
      */
@@ -218,8 +397,11 @@ public class BackupService {
         protected final File binaryDirectory;
         protected final LocalDocumentStore documentStore;
         protected final BinaryStore binaryStore;
-        protected final SimpleProblems problems;
+        protected final ThreadSafeProblems problems;
+        protected final AtomicLong binaryValueCount = new AtomicLong();
+        protected final AtomicLong binaryBytes = new AtomicLong();
         private final String backupLocation;
+        private volatile Throughput throughput;
 
         protected Activity( File backupDirectory,
                             LocalDocumentStore documentStore,
@@ -232,7 +414,7 @@ public class BackupService {
             this.documentStore = documentStore;
             this.binaryStore = binaryStore;
             this.repositoryCache = repositoryCache;
-            this.problems = new SimpleProblems();
+            this.problems = new ThreadSafeProblems();
         }
 
         /**
@@ -242,6 +424,24 @@ public class BackupService {
          */
         public abstract Problems execute();
 
+        /**
+         * Get the amount of content copied by this activity and the time it took.
+         *
+         * @return the throughput, or null if the activity has not been {@link #execute() executed} or has failed
+         * @since 5.1
+         */
+        public Throughput throughput() {
+            return throughput;
+        }
+
+        protected final Throughput completed( long startNanos,
+                                              long documentCount,
+                                              int threads ) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            throughput = new Throughput(documentCount, binaryValueCount.get(), binaryBytes.get(), elapsedMillis, threads);
+            return throughput;
+        }
+
         protected final String repositoryName() {
             return repositoryCache.getName();
         }
@@ -249,10 +449,27 @@ public class BackupService {
         protected final String backupLocation() {
             return backupLocation;
         }
+
+        protected final File manifestFile() {
+            return new File(backupDirectory, MANIFEST_FILE_NAME);
+        }
     }
 
     /**
      * The {@link Activity} subclass that performs content backup operations.
+     * <p>
+     * The documents are written by {@link BackupOptions#parallelism() several threads}, each of which loads whole batches of
+     * documents and writes them to its own sequence of files. The names of these sequences are listed in a manifest, so that each
+     * of them can be restored by a different thread. The documents changed while the backup is being made are written by a single
+     * thread, in the order in which they were changed, since they must be restored in that order.
+     * </p>
+     * <p>
+     * When the backup is {@link BackupOptions#incrementalBase() based on a previous backup}, only the documents of the nodes which
+     * the {@link ChangeJournal journal} has recorded as changed since the previous backup was made are written, together with the
+     * keys of those which no longer exist, and only the binary values which are not in the previous backups. The journal does not
+     * record the changes of the system workspace (version histories, node types, namespaces and locks), so all the documents of
+     * the system workspace are written as well, and replace those of the previous backups when the backup is restored.
+     * </p>
      */
     @NotThreadSafe
     public static class BackupActivity extends Activity {
@@ -261,16 +478,33 @@ public class BackupService {
         protected final ExecutorService changedDocumentWorker;
         protected final BlockingQueue<NodeKey> changedDocumentQueue;
         protected final BackupOptions options;
+        protected final ChangeJournal journal;
+        private final Set<String> removedDocumentKeys = ConcurrentHashMap.newKeySet();
+        private Set<String> baseBinaryKeys = Collections.emptySet();
+        private long since = -1L;
+        private long watermark;
+        private String systemWorkspaceKey;
 
         protected BackupActivity( File backupDirectory,
                                   LocalDocumentStore documentStore,
                                   BinaryStore binaryStore,
                                   RepositoryCache repositoryCache,
                                   BackupOptions options) {
+            this(backupDirectory, documentStore, binaryStore, repositoryCache, options, null);
+        }
+
+        protected BackupActivity( File backupDirectory,
+                                  LocalDocumentStore documentStore,
+                                  BinaryStore binaryStore,
+                                  RepositoryCache repositoryCache,
+                                  BackupOptions options,
+                                  ChangeJournal journal ) {
             super(backupDirectory, documentStore, binaryStore, repositoryCache);
             CheckArg.isNotNull(options, "options");
             CheckArg.isPositive(options.documentsPerFile(), "documentsPerFile");
+            CheckArg.isPositive(options.parallelism(), "parallelism");
             this.options = options;
+            this.journal = journal;
             this.changedDocumentQueue = new LinkedBlockingQueue<NodeKey>();
             ThreadFactory threadFactory = new NamedThreadFactory("modeshape-backup");
             this.changedDocumentWorker = Executors.newSingleThreadExecutor(threadFactory);
@@ -305,12 +539,104 @@ public class BackupService {
             return true;
         }
 
+        /**
+         * Get the prefix of the names of the files into which a thread writes the documents. When a single thread is used, the
+         * files have the same names as in the backups made by previous versions.
+         *
+         * @param worker the number of the thread, starting at 0
+         * @return the prefix of the file names; never null
+         */
+        protected String documentFilesPrefix( int worker ) {
+            return options.parallelism() == 1 ? DOCUMENTS_FILENAME_PREFIX : DOCUMENTS_FILENAME_PREFIX + "-" + (worker + 1);
+        }
+
+        /**
+         * Check that an incremental backup can be made, and read the time since which the changes have to be written and the
+         * binary values which are already in the previous backups.
+         *
+         * @return true if the incremental backup can be made, or false if there was a problem
+         */
+        protected boolean prepareIncrementalBackup() {
+            File base = options.incrementalBase();
+            if (journal == null) {
+                problems.addError(JcrI18n.incrementalBackupRequiresJournal, repositoryName(), backupLocation());
+                return false;
+            }
+            try {
+                Document manifest = readManifest(base);
+                if (manifest == null || !manifest.containsField(FieldName.WATERMARK)) {
+                    throw new IOException(MANIFEST_FILE_NAME + " not found or incomplete");
+                }
+                since = manifest.getLong(FieldName.WATERMARK);
+                systemWorkspaceKey = repositoryCache.getSystemWorkspaceKey();
+                if (options.includeBinaries()) {
+                    baseBinaryKeys = new HashSet<>();
+                    for (File backup : backupChain(base)) {
+                        collectBinaryKeys(new File(backup, BINARY_AREA_DIR_NAME), 0);
+                    }
+                }
+            } catch (IOException e) {
+                problems.addError(JcrI18n.invalidIncrementalBackupBase, base.getAbsolutePath(), repositoryName(), e.getMessage());
+                return false;
+            }
+            if (!journal.retainsChangesSince(since)) {
+                problems.addError(JcrI18n.journalDoesNotRetainChangesSinceBackup, repositoryName(), base.getAbsolutePath());
+                return false;
+            }
+            return true;
+        }
+
+        private void collectBinaryKeys( File directory,
+                                        int depth ) {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (depth < 3) {
+                    collectBinaryKeys(file, depth + 1);
+                } else {
+                    String filename = file.getName();
+                    int extension = filename.indexOf('.');
+                    baseBinaryKeys.add(extension > 0 ? filename.substring(0, extension) : filename);
+                }
+            }
+        }
+
         protected void writeToContentArea( SchematicEntry document, BackupDocumentWriter contentWriter ) {
             contentWriter.write(document.source());
         }
 
         protected void writeToContentArea( BinaryKey key,
                                            InputStream binaryContent ) {
+            File file = binaryFileFor(key);
+            try {
+                recordBinaryValue(copy(binaryContent, file));
+            } catch (Throwable t) {
+                problems.addError(JcrI18n.problemsWritingDocumentToBackup, file.getAbsolutePath(), t.getMessage());
+            }
+        }
+
+        /**
+         * Write a binary value to the backup. When the binary values are not compressed and are stored on the file system, the
+         * content is copied by the file system.
+         *
+         * @param key the key of the binary value; may not be null
+         */
+        protected void writeToContentArea( BinaryKey key ) {
+            try {
+                if (!options.compress() && binaryStore instanceof FileSystemBinaryStore) {
+                    File file = binaryFileFor(key);
+                    recordBinaryValue(((FileSystemBinaryStore)binaryStore).copyTo(key, file));
+                } else {
+                    writeToContentArea(key, binaryStore.getInputStream(key));
+                }
+            } catch (BinaryStoreException e) {
+                problems.addError(JcrI18n.problemsWritingBinaryToBackup, key, backupLocation(), e.getMessage());
+            }
+        }
+
+        private File binaryFileFor( BinaryKey key ) {
             String sha1 = key.toString();
             // Create directories for the first three segments from the binary key, where each segment is two characters ...
             File first = new File(binaryDirectory, sha1.substring(0, 2));
@@ -322,20 +648,31 @@ public class BackupService {
             if (options.compress()) {
                 filename = filename + GZIP_EXTENSION;
             }
-            File file = new File(third, filename);
+            return new File(third, filename);
+        }
 
-            try {
-                OutputStream outputStream = new FileOutputStream(file);
-                if (options.compress()) {
-                    outputStream = new GZIPOutputStream(outputStream);
+        private long copy( InputStream binaryContent,
+                           File file ) throws IOException {
+            OutputStream fileStream = new FileOutputStream(file);
+            if (options.compress()) {
+                fileStream = new GZIPOutputStream(fileStream);
+            }
+            try (InputStream input = binaryContent; OutputStream output = new BufferedOutputStream(fileStream)) {
+                byte[] buffer = new byte[8192];
+                long size = 0L;
+                for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                    output.write(buffer, 0, read);
+                    size += read;
                 }
-                outputStream = new BufferedOutputStream(outputStream);
-                IoUtil.write(binaryContent, outputStream);
-            } catch (Throwable t) {
-                problems.addError(JcrI18n.problemsWritingDocumentToBackup, file.getAbsolutePath(), t.getMessage());
+                return size;
             }
         }
 
+        private void recordBinaryValue( long size ) {
+            binaryValueCount.incrementAndGet();
+            binaryBytes.addAndGet(size);
+        }
+
         protected void writeToChangedArea( SchematicEntry entry, BackupDocumentWriter changesWriter ) {
             LOGGER.debug("Writing document to change area of backup for {0} repository at {1}", repositoryName(),
                          backupLocation());
@@ -364,22 +701,78 @@ public class BackupService {
             }
         }
 
+        /**
+         * Write the manifest which describes the content of the backup. This is done once everything else has been written.
+         *
+         * @param documentCount the number of documents in the backup
+         */
+        protected void writeManifest( long documentCount ) {
+            File file = manifestFile();
+            try {
+                EditableDocument doc = Schematic.newDocument();
+                doc.setNumber(FieldName.MANIFEST_VERSION, MANIFEST_VERSION);
+                doc.setNumber(FieldName.PARALLELISM, options.parallelism());
+                doc.setBoolean(FieldName.COMPRESSED, options.compress());
+                EditableArray files = doc.setArray(FieldName.DOCUMENT_FILES);
+                for (int worker = 0; worker != options.parallelism(); ++worker) {
+                    files.add(documentFilesPrefix(worker));
+                }
+                doc.setNumber(FieldName.DOCUMENT_COUNT, documentCount);
+                doc.setNumber(FieldName.BINARY_VALUE_COUNT, binaryValueCount.get());
+                doc.setNumber(FieldName.BINARY_BYTES, binaryBytes.get());
+                doc.setNumber(FieldName.WATERMARK, watermark);
+                if (since >= 0L) {
+                    doc.setString(FieldName.BASE, options.incrementalBase().getAbsolutePath());
+                    doc.setNumber(FieldName.SINCE, since);
+                    doc.setString(FieldName.SYSTEM_WORKSPACE_KEY, systemWorkspaceKey);
+                }
+                try (OutputStream outputStream = new FileOutputStream(file)) {
+                    Json.write(doc, outputStream);
+                }
+            } catch (Throwable t) {
+                problems.addError(JcrI18n.problemsWritingDocumentToBackup, file.getAbsolutePath(), t.getMessage());
+            }
+        }
+
+        /**
+         * Write the keys of the documents which have been removed since the backup on which an incremental backup is based.
+         */
+        protected void writeRemovedDocuments() {
+            File file = new File(backupDirectory, REMOVED_DOCUMENTS_FILE_NAME);
+            try {
+                EditableDocument doc = Schematic.newDocument();
+                EditableArray keys = doc.setArray(FieldName.REMOVED_DOCUMENT_KEYS);
+                removedDocumentKeys.forEach(keys::add);
+                try (OutputStream outputStream = new FileOutputStream(file)) {
+                    Json.write(doc, outputStream);
+                }
+            } catch (Throwable t) {
+                problems.addError(JcrI18n.problemsWritingDocumentToBackup, file.getAbsolutePath(), t.getMessage());
+            }
+        }
+
         @Override
         public Problems execute() {
             // initialize the area on disk where we'll be writing ...
             if (!initializeAreaOnDisk()) return problems;
+            final boolean incremental = options.incrementalBase() != null;
+            if (incremental && !prepareIncrementalBackup()) return problems;
 
             LOGGER.debug("Starting backup of '{0}' repository into {1}", repositoryName(), backupLocation());
 
-            final BackupDocumentWriter contentWriter = new BackupDocumentWriter(backupDirectory, DOCUMENTS_FILENAME_PREFIX, 
-                                                                                options.documentsPerFile(), 
-                                                          options.compress(),
-                                                          problems);
+            final long start = System.nanoTime();
+            final int parallelism = options.parallelism();
+            final List<BackupDocumentWriter> contentWriters = new ArrayList<>(parallelism);
+            for (int worker = 0; worker != parallelism; ++worker) {
+                contentWriters.add(new BackupDocumentWriter(backupDirectory, documentFilesPrefix(worker),
+                                                            options.documentsPerFile(), options.compress(), problems));
+            }
             final BackupDocumentWriter changesWriter = new BackupDocumentWriter(changeDirectory, DOCUMENTS_FILENAME_PREFIX, 
                                                                                 options.documentsPerFile(), 
                                                           options.compress(),
                                                           problems);
-            long numBinaryValues = 0L;
+            final ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+                                                                         new NamedThreadFactory("modeshape-backup-worker"));
 
             try {
                 final AtomicBoolean continueWritingChangedDocuments = new AtomicBoolean(true);
@@ -419,35 +812,27 @@ public class BackupService {
                 // changes are made while this execution is proceeding. It's possible not all of these will be needed,
                 // but by doing this we make sure that we include the latest changes in the backup (at least those
                 // changes made before the observer is disconnected)...
+                watermark = System.currentTimeMillis();
                 repositoryCache.changeBus().register(observer);
 
                 try {
                     // PHASE 1:
-                    // Perform the backup of the repository cache content ...
-                    AtomicInteger counter = new AtomicInteger();
-                    List<String> keys = documentStore.keys();
-                    int startIdx = 0;
-                    int totalDocumentsCount = keys.size();
-                    int batchSize = options.batchSize();
-                    while (startIdx < totalDocumentsCount) {
-                        int estimatedEndIdx = startIdx + batchSize;
-                        int endIdx = estimatedEndIdx < totalDocumentsCount ? estimatedEndIdx : totalDocumentsCount;
-                        LOGGER.debug("writing batch [{0}, {1}] of documents from the content store...", startIdx, endIdx);
-                        List<String> batchKeys = keys.subList(startIdx, endIdx);
-                        batchWriteDocuments(batchKeys, contentWriter);
-                        counter.addAndGet(batchKeys.size());
-                        if (endIdx == totalDocumentsCount) {
-                            break;
-                        }
-                        startIdx += batchSize;
+                    // Perform the backup of the repository cache content (or of the part of it which has changed), using all
+                    // of the workers ...
+                    if (incremental) {
+                        writeDocuments(workers, contentWriters, this::changedKeysInBatches);
+                    } else {
+                        writeDocuments(workers, contentWriters,
+                                       consumer -> documentStore.keysInBatches(options.batchSize(), consumer));
                     }
-                    LOGGER.debug("Wrote {0} documents to {1}", counter, backupDirectory.getAbsolutePath());
 
                     // PHASE 2:
                     // Write out the repository metadata document (which may have not changed) ...
                     NodeKey metadataKey = repositoryCache.getRepositoryMetadataDocumentKey();
                     SchematicEntry entry = documentStore.get(metadataKey.toString());
-                    writeToContentArea(entry, contentWriter);
+                    writeToContentArea(entry, contentWriters.get(0));
+                } catch (InterruptedException | CancellationException e) {
+                    throw e;
                 } catch (Exception e) {
                     I18n msg = JcrI18n.problemObtainingDocumentsToBackup;
                     this.problems.addError(msg, repositoryName(), backupLocation(), e.getMessage());
@@ -468,39 +853,18 @@ public class BackupService {
                     // PHASE 3:
                     // Perform the backup of the binary store ...
                     try {
-                        int counter = 0;
-                        for (BinaryKey binaryKey : binaryStore.getAllBinaryKeys()) {
-                            try {
-                                writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
-                                ++counter;
-                            } catch (BinaryStoreException e) {
-                                problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(),
-                                                  e.getMessage());
-                            }
-                        }
-                        LOGGER.debug("Wrote {0} binary values to {1}", counter, binaryDirectory.getAbsolutePath());
-                        numBinaryValues += counter;
+                        writeBinaries(workers, binaryStore.getAllBinaryKeys());
+                        LOGGER.debug("Wrote {0} binary values to {1}", binaryValueCount, binaryDirectory.getAbsolutePath());
                     } catch (BinaryStoreException e) {
                         I18n msg = JcrI18n.problemsGettingBinaryKeysFromBinaryStore;
                         problems.addError(msg, repositoryName(), backupLocation(), e.getMessage());
                     }
 
-
                     // PHASE 4:
                     // Write all of the binary files that were added during the changes made while we worked ...
-                    int counter = 0;
                     LOGGER.debug("writing recently used binaries to backup location...");
-                    for (BinaryKey binaryKey : observer.getUsedBinaryKeys()) {
-                        try {
-                            writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
-                            ++counter;
-                        } catch (BinaryStoreException e) {
-                            problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(),
-                                              e.getMessage());
-                        }
-                    }
-                    LOGGER.debug("Wrote {0} recent binary values to {1}", counter, binaryDirectory.getAbsolutePath());
-                    numBinaryValues += counter;
+                    writeBinaries(workers, observer.getUsedBinaryKeys());
+                    LOGGER.debug("Wrote {0} binary values to {1}", binaryValueCount, binaryDirectory.getAbsolutePath());
 
                     // PHASE 5:
                     // And now write all binary keys for the binaries that were recorded as unused by the observer ...
@@ -510,10 +874,23 @@ public class BackupService {
                 // Wait for the changes to be written
                 changesLatch.await(30, TimeUnit.SECONDS);
 
-                LOGGER.debug("Completed backup of '{0}' repository into {1} (contains {2} nodes and {3} binary values)",
-                             repositoryName(), backupLocation(),
-                             contentWriter.getDocumentCount() + changesWriter.getDocumentCount(), numBinaryValues);
+                // PHASE 6:
+                // Close all open writers and describe the backup ...
+                contentWriters.forEach(BackupDocumentWriter::close);
+                changesWriter.close();
+                long documentCount = changesWriter.getDocumentCount();
+                for (BackupDocumentWriter contentWriter : contentWriters) {
+                    documentCount += contentWriter.getDocumentCount();
+                }
+                if (incremental) {
+                    writeRemovedDocuments();
+                }
+                writeManifest(documentCount);
 
+                if (!problems.hasErrors()) {
+                    Throughput throughput = completed(start, documentCount, parallelism);
+                    LOGGER.info(JcrI18n.backupCompleted, repositoryName(), backupLocation(), throughput);
+                }
             } catch (InterruptedException e) {
                 Thread.interrupted();
                 I18n msg = JcrI18n.interruptedWhilePerformingBackup;
@@ -521,17 +898,164 @@ public class BackupService {
             } catch (CancellationException e) {
                 this.problems.addError(JcrI18n.backupOperationWasCancelled, repositoryName(), backupLocation(), e.getMessage());
             } finally {
-                // PHASE 5:
+                workers.shutdownNow();
                 // Close all open writers ...
-                contentWriter.close();
+                contentWriters.forEach(BackupDocumentWriter::close);
                 changesWriter.close();
             }
 
             return problems;
         }
-        
-        private void batchWriteDocuments(List<String> keys, BackupDocumentWriter contentWriter) {
-            documentStore.load(keys).forEach(entry -> {
+
+        /**
+         * Write the documents whose keys are given by the supplied function in batches. Each batch is loaded and written by one of
+         * the workers.
+         */
+        private void writeDocuments( ExecutorService workers,
+                                     List<BackupDocumentWriter> contentWriters,
+                                     Consumer<Consumer<List<String>>> batchesOfKeys ) throws InterruptedException {
+            // the queue is bounded, so that the keys are not read much faster than the documents are written ...
+            final BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(contentWriters.size());
+            List<Future<?>> writes = new ArrayList<>(contentWriters.size());
+            for (BackupDocumentWriter contentWriter : contentWriters) {
+                writes.add(workers.submit(() -> {
+                    for (List<String> keys = batches.take(); !keys.isEmpty(); keys = batches.take()) {
+                        try {
+                            writeDocuments(keys, contentWriter);
+                        } catch (RuntimeException e) {
+                            I18n msg = JcrI18n.problemObtainingDocumentsToBackup;
+                            problems.addError(e, msg, repositoryName(), backupLocation(), e.getMessage());
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            AtomicInteger counter = new AtomicInteger();
+            try {
+                batchesOfKeys.accept(keys -> {
+                    if (keys.isEmpty()) {
+                        return;
+                    }
+                    LOGGER.debug("writing batch [{0}, {1}] of documents from the content store...", counter.get(),
+                                 counter.get() + keys.size());
+                    try {
+                        batches.put(new ArrayList<>(keys));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException(e.getMessage());
+                    }
+                    counter.addAndGet(keys.size());
+                });
+            } finally {
+                // tell each worker that there are no more documents ...
+                for (int i = 0; i != contentWriters.size(); ++i) {
+                    batches.put(Collections.<String>emptyList());
+                }
+                for (Future<?> write : writes) {
+                    try {
+                        write.get();
+                    } catch (ExecutionException e) {
+                        I18n msg = JcrI18n.problemObtainingDocumentsToBackup;
+                        problems.addError(e.getCause(), msg, repositoryName(), backupLocation(), e.getCause().getMessage());
+                    }
+                }
+            }
+            LOGGER.debug("Wrote {0} documents to {1}", counter, backupDirectory.getAbsolutePath());
+        }
+
+        /**
+         * Supply the keys of the nodes which the journal has recorded as changed since the previous backup, and those of all the
+         * documents of the system workspace, in batches.
+         */
+        private void changedKeysInBatches( Consumer<List<String>> consumer ) {
+            Set<String> keys = new LinkedHashSet<>();
+            for (Iterator<NodeKey> changed = journal.changedNodesSince(since); changed.hasNext();) {
+                keys.add(changed.next().toString());
+            }
+            LOGGER.debug("{0} nodes have changed since the backup at {1}", keys.size(), options.incrementalBase());
+            documentStore.keysInBatches(options.batchSize(), batch -> batch.stream()
+                                                                          .filter(key -> isInWorkspace(key, systemWorkspaceKey))
+                                                                          .forEach(keys::add));
+            List<String> batch = new ArrayList<>(options.batchSize());
+            for (String key : keys) {
+                batch.add(key);
+                if (batch.size() == options.batchSize()) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(options.batchSize());
+                }
+            }
+            consumer.accept(batch);
+        }
+
+        private void writeDocuments( List<String> keys,
+                                     BackupDocumentWriter contentWriter ) {
+            List<SchematicEntry> entries = documentStore.load(keys);
+            batchWriteDocuments(entries, contentWriter);
+            if (since < 0L) {
+                return;
+            }
+            // the nodes of an incremental backup which no longer exist have been removed ...
+            Set<String> removed = new HashSet<>(keys);
+            for (SchematicEntry entry : entries) {
+                removed.remove(entry.id());
+                writeChildReferenceBlocks(entry, contentWriter);
+            }
+            removedDocumentKeys.addAll(removed);
+        }
+
+        /**
+         * Write the documents holding the blocks of child references of a node, which are not recorded by the journal.
+         */
+        private void writeChildReferenceBlocks( SchematicEntry entry,
+                                                BackupDocumentWriter contentWriter ) {
+            Document info = entry.content().getDocument(DocumentConstants.CHILDREN_INFO);
+            if (info != null && info.containsField(DocumentConstants.BLOCK_INDEX)) {
+                SchematicEntry index = documentStore.get(info.getString(DocumentConstants.BLOCK_INDEX));
+                if (index != null) {
+                    writeToContentArea(index, contentWriter);
+                }
+            }
+            String blockKey = info != null ? info.getString(DocumentConstants.NEXT_BLOCK) : null;
+            while (blockKey != null) {
+                SchematicEntry block = documentStore.get(blockKey);
+                if (block == null) {
+                    break;
+                }
+                writeToContentArea(block, contentWriter);
+                info = block.content().getDocument(DocumentConstants.CHILDREN_INFO);
+                blockKey = info != null ? info.getString(DocumentConstants.NEXT_BLOCK) : null;
+            }
+        }
+
+        /**
+         * Write the given binary values using all of the workers, waiting until all of them have been written.
+         */
+        private void writeBinaries( ExecutorService workers,
+                                    Iterable<BinaryKey> binaryKeys ) throws InterruptedException {
+            // don't submit more than a couple of binary values per worker at any time ...
+            final int maxPending = options.parallelism() * 2;
+            final Semaphore pending = new Semaphore(maxPending);
+            for (BinaryKey binaryKey : binaryKeys) {
+                if (baseBinaryKeys.contains(binaryKey.toString())) {
+                    // the binary value is already in one of the backups on which this one is based ...
+                    continue;
+                }
+                pending.acquire();
+                workers.execute(() -> {
+                    try {
+                        writeToContentArea(binaryKey);
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+            // wait for the binary values which are still being written ...
+            pending.acquire(maxPending);
+        }
+
+        private void batchWriteDocuments(List<SchematicEntry> entries, BackupDocumentWriter contentWriter) {
+            entries.forEach(entry -> {
                 if (LOGGER.isTraceEnabled()) {
                     LOGGER.trace("backing up doc: {0}", entry.source());
                 }
@@ -542,10 +1066,21 @@ public class BackupService {
 
     /**
      * The {@link Activity} subclass that performs content restore operations.
+     * <p>
+     * The binary values and the sequences of document files listed in the manifest of the backup are restored by
+     * {@link RestoreOptions#parallelism() several threads}; the documents changed while the backup was being made are restored
+     * afterwards, in the order in which they were written.
+     * </p>
+     * <p>
+     * An {@link BackupOptions#incrementalBase() incremental backup} is restored by restoring the full backup on which it is based
+     * and then each of the following incremental backups in turn, removing the documents which had been removed when each of them
+     * was made.
+     * </p>
      */
     @NotThreadSafe
     public static final class RestoreActivity extends Activity {
         private final RestoreOptions options;
+        private final AtomicLong documentCount = new AtomicLong();
 
         protected RestoreActivity( File backupDirectory,
                                    org.modeshape.jcr.cache.document.LocalDocumentStore documentStore,
@@ -554,36 +1089,170 @@ public class BackupService {
                                    RestoreOptions options) {
             super(backupDirectory, documentStore, binaryStore, repositoryCache);
             CheckArg.isNotNull(options, "restoreOptions");
+            CheckArg.isPositive(options.parallelism(), "parallelism");
             this.options = options;
         }
 
         @Override
         public Problems execute() {
-            boolean includeBinaries = binaryDirectory.exists() && binaryDirectory.canRead() && options.includeBinaries();
-            if (includeBinaries) {
-                LOGGER.debug("restoring binary files...");
-                removeExistingBinaryFiles();
-                restoreBinaryFiles();
+            long start = System.nanoTime();
+            ExecutorService workers = Executors.newFixedThreadPool(options.parallelism(),
+                                                                   new NamedThreadFactory("modeshape-restore-worker"));
+            try {
+                List<File> backups = backupChain(backupDirectory);
+                List<File> binaryDirectories = new ArrayList<>();
+                for (File backup : backups) {
+                    File directory = new File(backup, BINARY_AREA_DIR_NAME);
+                    if (directory.exists() && directory.canRead()) {
+                        binaryDirectories.add(directory);
+                    }
+                }
+                boolean includeBinaries = !binaryDirectories.isEmpty() && options.includeBinaries();
+                if (includeBinaries) {
+                    LOGGER.debug("restoring binary files...");
+                    removeExistingBinaryFiles();
+                    for (File directory : binaryDirectories) {
+                        restoreBinaryFiles(workers, directory);
+                    }
+                    if (problems.hasErrors()) {
+                        // there were issues restoring the binaries so break
+                        return problems;
+                    }
+                }
+
+                removeExistingDocuments();
                 if (problems.hasErrors()) {
-                    // there were issues restoring the binaries so break
+                    // there were issues clearing the db so break
                     return problems;
                 }
+
+                for (File backup : backups) {
+                    // the documents of the system workspace which are replaced by those of an incremental backup ...
+                    removeSystemWorkspaceDocuments(backup);
+                    // first pass of documents, in parallel ...
+                    List<Runnable> restores = new ArrayList<>();
+                    for (String documentFilesPrefix : documentFilesPrefixes(backup)) {
+                        restores.add(() -> restoreDocuments(backup, documentFilesPrefix));
+                    }
+                    runAll(workers, restores);
+                    // documents removed since the previous backup ...
+                    removeDocuments(backup);
+                    // documents changed while backup was being made ...
+                    restoreDocuments(new File(backup, CHANGED_AREA_DIR_NAME));
+                    if (problems.hasErrors()) {
+                        break;
+                    }
+                }
+                if (problems.hasErrors()) {
+                    // there were issues while restoring, so remove everything
+                    removeExistingBinaryFiles();
+                    removeExistingDocuments();
+                } else {
+                    Throughput throughput = completed(start, documentCount.get(), options.parallelism());
+                    LOGGER.info(JcrI18n.restoreCompleted, repositoryName(), backupLocation(), throughput);
+                }
+            } catch (IOException e) {
+                problems.addError(e, JcrI18n.unexpectedProblemDuringRestore, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+                problems.addError(e, JcrI18n.unexpectedProblemDuringRestore, e.getMessage());
+            } finally {
+                workers.shutdownNow();
             }
-            
-            removeExistingDocuments();
-            if (problems.hasErrors()) {
-                // there were issues clearing the db so break
-                return problems;
+            return problems;
+        }
+
+        private void runAll( ExecutorService workers,
+                             List<Runnable> tasks ) throws InterruptedException {
+            List<Callable<Object>> callables = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                callables.add(Executors.callable(task));
             }
+            for (Future<Object> result : workers.invokeAll(callables)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    problems.addError(e.getCause(), JcrI18n.unexpectedProblemDuringRestore, e.getCause().getMessage());
+                }
+            }
+        }
 
-            restoreDocuments(backupDirectory); // first pass of documents
-            restoreDocuments(changeDirectory); // documents changed while backup was being made
-            if (problems.hasErrors()) {
-                // there were issues while restoring, so remove everything
-                removeExistingBinaryFiles();
-                removeExistingDocuments();
+        /**
+         * Get the prefixes of the sequences of document files in the backup, which are listed in its manifest. Backups made by
+         * previous versions have no manifest and a single sequence of files.
+         *
+         * @param backup the directory of the backup; may not be null
+         * @return the prefixes of the file names; never null
+         */
+        private List<String> documentFilesPrefixes( File backup ) {
+            try {
+                Document manifest = readManifest(backup);
+                if (manifest == null) {
+                    return Collections.singletonList(DOCUMENTS_FILENAME_PREFIX);
+                }
+                List<String> prefixes = new ArrayList<>();
+                for (Object prefix : manifest.getArray(FieldName.DOCUMENT_FILES)) {
+                    prefixes.add(prefix.toString());
+                }
+                return prefixes;
+            } catch (Exception e) {
+                problems.addError(e, JcrI18n.unexpectedProblemDuringRestore, e.getMessage());
+                return Collections.emptyList();
+            }
+        }
+
+        /**
+         * Remove all the documents of the system workspace before restoring an incremental backup, which holds all of the
+         * documents which were in the system workspace when it was made.
+         *
+         * @param backup the directory of the backup; may not be null
+         */
+        private void removeSystemWorkspaceDocuments( File backup ) {
+            try {
+                Document manifest = readManifest(backup);
+                String workspaceKey = manifest != null ? manifest.getString(FieldName.SYSTEM_WORKSPACE_KEY) : null;
+                if (workspaceKey == null) {
+                    return;
+                }
+                List<String> keys = new ArrayList<>();
+                documentStore.keysInBatches(options.batchSize(), batch -> batch.stream()
+                                                                              .filter(key -> isInWorkspace(key, workspaceKey))
+                                                                              .forEach(keys::add));
+                LOGGER.debug("Removing the {0} documents of the system workspace which are replaced by the backup at {1}",
+                             keys.size(), backup.getAbsolutePath());
+                documentStore.runInTransaction(() -> {
+                    keys.forEach(documentStore::remove);
+                    return null;
+                }, 0);
+            } catch (Throwable t) {
+                problems.addError(t, JcrI18n.unexpectedProblemDuringRestore, t.getMessage());
+            }
+        }
+
+        /**
+         * Remove the documents which had been removed when an incremental backup was made.
+         *
+         * @param backup the directory of the backup; may not be null
+         */
+        private void removeDocuments( File backup ) {
+            File file = new File(backup, REMOVED_DOCUMENTS_FILE_NAME);
+            if (!file.exists()) {
+                return;
+            }
+            try (InputStream stream = new FileInputStream(file)) {
+                List<String> keys = new ArrayList<>();
+                for (Object key : Json.read(stream).getArray(FieldName.REMOVED_DOCUMENT_KEYS)) {
+                    keys.add(key.toString());
+                }
+                LOGGER.debug("Removing {0} documents which were removed before the backup at {1}", keys.size(),
+                             backup.getAbsolutePath());
+                documentStore.runInTransaction(() -> {
+                    keys.forEach(documentStore::remove);
+                    return null;
+                }, 0);
+            } catch (Throwable t) {
+                problems.addError(t, JcrI18n.unexpectedProblemDuringRestore, t.getMessage());
             }
-            return problems;
         }
 
         private void removeExistingBinaryFiles() {
@@ -610,24 +1279,31 @@ public class BackupService {
             }
         }
 
-        private void restoreBinaryFiles() {
-            for (File segment1Dir : binaryDirectory.listFiles()) {
+        private void restoreBinaryFiles( ExecutorService workers,
+                                         File directory ) throws InterruptedException {
+            List<Runnable> restores = new ArrayList<>();
+            for (File segment1Dir : directory.listFiles()) {
                 for (File segment2Dir : segment1Dir.listFiles()) {
                     for (File segment3Dir : segment2Dir.listFiles()) {
-                        List<BinaryKey> restoredKeys = Arrays.stream(segment3Dir.listFiles())
-                                                             .map(this::restoreBinaryFile)
-                                                             .filter(Objects::nonNull)
-                                                             .collect(Collectors.toList());
-                        // now mark all restored keys as used (we originally exported only used binaries)
-                        try {
-                            binaryStore.markAsUsed(restoredKeys);
-                        } catch (BinaryStoreException e) {
-                            I18n msg = JcrI18n.problemsGettingBinaryKeysFromBinaryStore;
-                            problems.addError(msg, repositoryName(), backupLocation(), e.getMessage());
-                        }
+                        restores.add(() -> restoreBinaryFiles(segment3Dir));
                     }
                 }
             }
+            runAll(workers, restores);
+        }
+
+        private void restoreBinaryFiles( File directory ) {
+            List<BinaryKey> restoredKeys = Arrays.stream(directory.listFiles())
+                                                 .map(this::restoreBinaryFile)
+                                                 .filter(Objects::nonNull)
+                                                 .collect(Collectors.toList());
+            // now mark all restored keys as used (we originally exported only used binaries)
+            try {
+                binaryStore.markAsUsed(restoredKeys);
+            } catch (BinaryStoreException e) {
+                I18n msg = JcrI18n.problemsGettingBinaryKeysFromBinaryStore;
+                problems.addError(msg, repositoryName(), backupLocation(), e.getMessage());
+            }
         }
 
         private BinaryKey restoreBinaryFile( File binaryFile ) {
@@ -647,6 +1323,8 @@ public class BackupService {
                 try {
                     BinaryValue stored = binaryStore.storeValue(stream, isCompressed);
                     assert stored.getKey().equals(binaryKeyFor(binaryFile, isCompressed));
+                    binaryValueCount.incrementAndGet();
+                    binaryBytes.addAndGet(stored.getSize());
                     return stored.getKey();
                 } finally {
                     stream.close();
@@ -670,8 +1348,19 @@ public class BackupService {
         }
 
         protected void restoreDocuments( File directory ) {
-            BackupDocumentReader reader = new BackupDocumentReader(directory, DOCUMENTS_FILENAME_PREFIX, problems);
-            LOGGER.debug("Restoring documents from {0}", directory.getAbsolutePath());
+            restoreDocuments(directory, DOCUMENTS_FILENAME_PREFIX);
+        }
+
+        /**
+         * Restore the documents of one sequence of backup files.
+         *
+         * @param directory the directory which contains the files; may not be null
+         * @param filenamePrefix the prefix of the names of the files; may not be null
+         */
+        protected void restoreDocuments( File directory,
+                                         String filenamePrefix ) {
+            BackupDocumentReader reader = new BackupDocumentReader(directory, filenamePrefix, problems);
+            LOGGER.debug("Restoring documents from {0}", new File(directory, filenamePrefix).getAbsolutePath());
             int count = 0;
             int batchSize = options.batchSize();
             int batchCounter = 0;
@@ -694,14 +1383,16 @@ public class BackupService {
                     writeDocumentsBatch(documentsBatch);
                    
                     if (problems.hasErrors()) {
-                        // something when wrong while writing the batch, so abort
+                        // something when wrong while writing the batch (maybe in another thread), so abort
+                        reader.close();
                         return;
                     }
+                    documentCount.addAndGet(documentsBatch.size());
                     documentsBatch.clear();
                     batchCounter = 0;
                 }
             }
-            LOGGER.debug("Restored {0} documents from {1}", count, directory.getAbsolutePath());
+            LOGGER.debug("Restored {0} documents from {1}", count, new File(directory, filenamePrefix).getAbsolutePath());
         }
         
         private void writeDocumentsBatch(List<Document> documents) {
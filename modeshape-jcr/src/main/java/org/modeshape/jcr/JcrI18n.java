@@ -77,6 +77,11 @@ public final class JcrI18n {
     public static I18n problemObtainingDocumentsToBackup;
     public static I18n backupOperationWasCancelled;
     public static I18n problemsClosingBackupFiles;
+    public static I18n backupCompleted;
+    public static I18n restoreCompleted;
+    public static I18n incrementalBackupRequiresJournal;
+    public static I18n invalidIncrementalBackupBase;
+    public static I18n journalDoesNotRetainChangesSinceBackup;
     public static I18n unableToInitializeAuthenticationProvider;
     public static I18n errorInAuthenticationProvider;
     public static I18n unableToInitializeSequencer;
@@ -366,6 +371,7 @@ public final class JcrI18n {
     public static I18n repositoryNotFoundInEngineAtJndiLocation;
     public static I18n errorStartingRepository;
     public static I18n storageRelatedConfigurationChangesWillTakeEffectAfterShutdown;
+    public static I18n documentCacheNotSupportedWhenClustered;
     public static I18n errorShuttingDownJcrRepositoryFactory;
     public static I18n repositoryNameDoesNotMatchConfigurationName;
     public static I18n errorWhileShuttingDownRepositoryInJndi;
@@ -384,6 +390,8 @@ public final class JcrI18n {
     public static I18n errorMarkingBinaryValuesUnused;
     public static I18n errorMarkingBinaryValuesUsed;
     public static I18n unableToCreateDirectoryForBinaryStore;
+    public static I18n unableToWriteBinaryChunk;
+    public static I18n invalidBinaryManifest;
 
     public static I18n unableToReadTemporaryDirectory;
     public static I18n unableToWriteTemporaryDirectory;
@@ -417,6 +425,7 @@ public final class JcrI18n {
     public static I18n projectedPathPointsTowardsInternalNode;
 
     public static I18n reindexAll;
+    public static I18n resumingReindexing;
 
     public static I18n errorCreatingDatabaseTable;
     public static I18n warnExtractedTextTooLarge;
@@ -441,6 +450,9 @@ public final class JcrI18n {
     public static I18n cannotStartJournal;
     public static I18n cannotStopJournal;
     public static I18n journalHasNotCompletedReconciliation;
+    public static I18n journalSegmentTruncated;
+    public static I18n migratingJournalRecords;
+    public static I18n cannotWriteJournalProperties;
 
     public static I18n indexProviderNameRequired;
     public static I18n indexProviderNameMustMatchProvider;
@@ -44,6 +44,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import javax.jcr.AccessDeniedException;
@@ -95,6 +96,8 @@ import org.modeshape.jcr.cache.SessionCache;
 import org.modeshape.jcr.cache.WorkspaceNotFoundException;
 import org.modeshape.jcr.cache.document.DocumentStore;
 import org.modeshape.jcr.cache.document.LocalDocumentStore;
+import org.modeshape.jcr.cache.document.OffHeapDocumentCache;
+import org.modeshape.jcr.cache.document.WorkspaceCacheStatistics;
 import org.modeshape.jcr.clustering.ClusteringService;
 import org.modeshape.jcr.federation.FederatedDocumentStore;
 import org.modeshape.jcr.journal.ChangeJournal;
@@ -103,8 +106,10 @@ import org.modeshape.jcr.journal.LocalJournal;
 import org.modeshape.jcr.locking.ClusteredLockingService;
 import org.modeshape.jcr.locking.LockingService;
 import org.modeshape.jcr.locking.StandaloneLockingService;
+import org.modeshape.jcr.locking.StripedLockingService;
 import org.modeshape.jcr.mimetype.MimeTypeDetector;
 import org.modeshape.jcr.mimetype.NullMimeTypeDetector;
+import org.modeshape.jcr.query.engine.PlanCache;
 import org.modeshape.jcr.query.parse.FullTextSearchParser;
 import org.modeshape.jcr.query.parse.JcrQomQueryParser;
 import org.modeshape.jcr.query.parse.JcrSql2QueryParser;
@@ -122,6 +127,8 @@ import org.modeshape.jcr.value.NamespaceRegistry;
 import org.modeshape.jcr.value.ValueFactories;
 import org.modeshape.jcr.value.binary.BinaryStore;
 import org.modeshape.jmx.RepositoryStatisticsBean;
+import org.modeshape.persistence.relational.GroupCommitter;
+import org.modeshape.persistence.relational.RelationalDb;
 import org.modeshape.schematic.SchematicDb;
 import org.modeshape.schematic.document.Array;
 import org.modeshape.schematic.document.Changes;
@@ -1051,12 +1058,19 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                         } else {
                             this.clusteringService = ClusteringService.startStandalone(clusterName, clustering.getConfiguration());        
                         }
+                        this.clusteringService.setMessageFormat(clustering.useBinaryMessageFormat(),
+                                                                clustering.getMessageCompression());
                     } else {
                         this.clusteringService = null;
                     }
-                    this.lockingService = this.clusteringService != null ? 
-                                          new ClusteredLockingService(this.clusteringService.getChannel(), config.getLockTimeoutMillis()) : 
-                                          new StandaloneLockingService(config.getLockTimeoutMillis());
+                    if (this.clusteringService != null) {
+                        this.lockingService = new ClusteredLockingService(this.clusteringService.getChannel(),
+                                                                          config.getLockTimeoutMillis());
+                    } else if (config.getLockStripes() > 0) {
+                        this.lockingService = new StripedLockingService(config.getLockStripes(), config.getLockTimeoutMillis());
+                    } else {
+                        this.lockingService = new StandaloneLockingService(config.getLockTimeoutMillis());
+                    }
                   
                     suspendExistingUserTransaction();
                     
@@ -1079,8 +1093,17 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     // Create clustering service and event bus
                     this.changeDispatchingQueue = this.context().getCachedTreadPool("modeshape-event-dispatcher", 
                                                                                     Integer.MAX_VALUE);
-                    ChangeBus localBus = new RepositoryChangeBus(name(), changeDispatchingQueue, statistics(), config.getEventBusSize());
-                    this.changeBus = clusteringService != null ? new ClusteredChangeBus(localBus, clusteringService) : localBus;
+                    ChangeBus localBus = new RepositoryChangeBus(name(), changeDispatchingQueue, statistics(),
+                                                                 config.getEventBusSize(), config.getEventBusWaitStrategy());
+                    if (clusteringService != null) {
+                        long batchDelayMillis = clustering.getChangeSetBatchDelayMillis();
+                        ScheduledExecutorService batchingService = batchDelayMillis > 0 ? this.context.getScheduledThreadPool(
+                                RepositoryConfiguration.Default.CLUSTER_BATCHING_POOL) : null;
+                        this.changeBus = new ClusteredChangeBus(localBus, clusteringService, batchingService, batchDelayMillis,
+                                                                clustering.getChangeSetBatchMaxChanges(), statistics());
+                    } else {
+                        this.changeBus = localBus;
+                    }
                     this.changeBus.start();
 
                     // Set up the event journal
@@ -1105,7 +1128,18 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     // Set up the document store and environment
                     final RepositoryEnvironment repositoryEnvironment = new JcrRepositoryEnvironment(transactions, lockingService,
                                                                                                      journalId());
-                    LocalDocumentStore localStore = new LocalDocumentStore(schematicDb, repositoryEnvironment);
+                    OffHeapDocumentCache documentCache = null;
+                    long documentCacheSize = config.getDocumentCacheSizeInBytes();
+                    if (documentCacheSize > 0) {
+                        if (clusteringService != null) {
+                            // changes made by other processes to documents which aren't nodes are not published as events
+                            warn(JcrI18n.documentCacheNotSupportedWhenClustered, getName());
+                        } else {
+                            documentCache = new OffHeapDocumentCache(documentCacheSize);
+                            this.changeBus.registerInThread(documentCache);
+                        }
+                    }
+                    LocalDocumentStore localStore = new LocalDocumentStore(schematicDb, repositoryEnvironment, documentCache);
                     this.documentStore = connectors.hasConnectors() ? new FederatedDocumentStore(connectors, localStore) : localStore;
 
                     // Set up the repository cache ...
@@ -1123,6 +1157,14 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
 
                     // Set up the monitoring listener ...
                     this.changeBus.register(this.statistics);
+                    this.statistics.setSampler("workspace-caches", new WorkspaceCacheSampler(this.cache));
+                    if (documentCache != null) {
+                        this.statistics.setSampler("document-cache", new DocumentCacheSampler(documentCache));
+                    }
+                    if (schematicDb instanceof RelationalDb && ((RelationalDb)schematicDb).groupCommitter() != null) {
+                        this.statistics.setSampler("db-group-commit",
+                                                   new GroupCommitSampler(((RelationalDb)schematicDb).groupCommitter()));
+                    }
 
                     // Refresh several of the components information from the repository cache ...
                     this.persistentRegistry.refreshFromSystem();
@@ -1177,6 +1219,7 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                                                      new FullTextSearchParser(), new JcrSqlQueryParser(), new JcrQomQueryParser());
                 RepositoryConfiguration.Reindexing reindexingCfg = config.getReindexing();
                 this.repositoryQueryManager = new RepositoryQueryManager(this, indexingExecutor, config, reindexingCfg);
+                this.statistics.setSampler("query-plan-cache", new QueryPlanCacheSampler(this.repositoryQueryManager));
                 if (reindexingCfg.isAsync()) {
                     this.changeBus.register(this.repositoryQueryManager);
                 } else {
@@ -1671,6 +1714,11 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                 this.cache.completeShutdown();
             }
 
+            if (documentStore != null && documentStore.localStore().documentCache() != null) {
+                // release the cached documents; the off-heap memory itself is freed when the buffers are collected
+                documentStore.localStore().documentCache().clear();
+            }
+
             if (statistics != null) {
                 statistics.stop();
             }
@@ -2035,4 +2083,116 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
             journal.removeOldRecords();
         }
     }
+
+    /**
+     * Records the counters of the workspace caches into the repository statistics. The counters are sampled rather than recorded
+     * on every cache access, which would make all the readers contend on the same statistics.
+     */
+    protected static class WorkspaceCacheSampler implements Consumer<RepositoryStatistics> {
+        private final WorkspaceCacheStatistics cacheStatistics;
+        private final RepositoryCache cache;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        protected WorkspaceCacheSampler( RepositoryCache cache ) {
+            this.cache = cache;
+            this.cacheStatistics = cache.getWorkspaceCacheStatistics();
+        }
+
+        @Override
+        public synchronized void accept( RepositoryStatistics statistics ) {
+            long hits = cacheStatistics.getHits();
+            long misses = cacheStatistics.getMisses();
+            long evictions = cacheStatistics.getEvictions();
+            statistics.increment(ValueMetric.WORKSPACE_CACHE_HITS, hits - this.hits);
+            statistics.increment(ValueMetric.WORKSPACE_CACHE_MISSES, misses - this.misses);
+            statistics.increment(ValueMetric.WORKSPACE_CACHE_EVICTIONS, evictions - this.evictions);
+            statistics.set(ValueMetric.WORKSPACE_CACHE_WEIGHT, cache.getWorkspaceCacheWeight());
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+    }
+
+    /**
+     * Records the hits, misses and off-heap memory usage of the second-level document cache into the repository statistics.
+     */
+    protected static class DocumentCacheSampler implements Consumer<RepositoryStatistics> {
+        private final OffHeapDocumentCache documentCache;
+        private long hits;
+        private long misses;
+
+        protected DocumentCacheSampler( OffHeapDocumentCache documentCache ) {
+            this.documentCache = documentCache;
+        }
+
+        @Override
+        public synchronized void accept( RepositoryStatistics statistics ) {
+            long hits = documentCache.getHits();
+            long misses = documentCache.getMisses();
+            statistics.increment(ValueMetric.DOCUMENT_CACHE_HITS, hits - this.hits);
+            statistics.increment(ValueMetric.DOCUMENT_CACHE_MISSES, misses - this.misses);
+            statistics.set(ValueMetric.DOCUMENT_CACHE_OFF_HEAP_BYTES, documentCache.getOffHeapUsed());
+            this.hits = hits;
+            this.misses = misses;
+        }
+    }
+
+    /**
+     * Records the hits and misses of the query plan cache into the repository statistics. The query engine, and with it the plan
+     * cache, is created lazily and replaced when the repository is restarted, so the cache is looked up each time.
+     */
+    protected static class QueryPlanCacheSampler implements Consumer<RepositoryStatistics> {
+        private final RepositoryQueryManager queryManager;
+        private PlanCache planCache;
+        private long hits;
+        private long misses;
+
+        protected QueryPlanCacheSampler( RepositoryQueryManager queryManager ) {
+            this.queryManager = queryManager;
+        }
+
+        @Override
+        public synchronized void accept( RepositoryStatistics statistics ) {
+            PlanCache planCache = queryManager.planCache();
+            if (planCache != this.planCache) {
+                // The counters of a new cache start at zero ...
+                this.planCache = planCache;
+                this.hits = 0L;
+                this.misses = 0L;
+            }
+            if (planCache == null) return;
+            long hits = planCache.getHits();
+            long misses = planCache.getMisses();
+            statistics.increment(ValueMetric.QUERY_PLAN_CACHE_HITS, hits - this.hits);
+            statistics.increment(ValueMetric.QUERY_PLAN_CACHE_MISSES, misses - this.misses);
+            this.hits = hits;
+            this.misses = misses;
+        }
+    }
+
+    /**
+     * Records the number of groups and of transactions committed by the group committer of the relational persistence into the
+     * repository statistics.
+     */
+    protected static class GroupCommitSampler implements Consumer<RepositoryStatistics> {
+        private final GroupCommitter groupCommitter;
+        private long groups;
+        private long transactions;
+
+        protected GroupCommitSampler( GroupCommitter groupCommitter ) {
+            this.groupCommitter = groupCommitter;
+        }
+
+        @Override
+        public synchronized void accept( RepositoryStatistics statistics ) {
+            long groups = groupCommitter.getGroupCount();
+            long transactions = groupCommitter.getTransactionCount();
+            statistics.increment(ValueMetric.DB_GROUP_COMMITS, groups - this.groups);
+            statistics.increment(ValueMetric.DB_GROUP_COMMITTED_TRANSACTIONS, transactions - this.transactions);
+            this.groups = groups;
+            this.transactions = transactions;
+        }
+    }
 }
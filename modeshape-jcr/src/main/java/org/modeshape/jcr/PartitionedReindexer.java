@@ -0,0 +1,438 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.NamedThreadFactory;
+import org.modeshape.jcr.api.monitor.ValueMetric;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.ChildReference;
+import org.modeshape.jcr.cache.NodeCache;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.PathCache;
+import org.modeshape.jcr.cache.document.LocalDocumentStore;
+import org.modeshape.jcr.spi.index.IndexWriter;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.SchematicEntry;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableDocument;
+
+/**
+ * Reindexes the content below a node by splitting it into partitions (subtrees) which are reindexed in parallel by a bounded pool
+ * of worker threads.
+ * <p>
+ * The partitions are found by walking the tree breadth-first (and indexing the visited nodes) until a level has enough nodes to
+ * keep all the workers busy; the nodes on that level are then split into contiguous ranges. Each partition collects the nodes
+ * it visits into batches, which are written to the {@link IndexWriter} one batch at a time, so the indexes never see concurrent
+ * writes. Every few batches, the indexes are committed and the completed partitions are recorded in a checkpoint document, so
+ * that reindexing the same content after a restart only processes the partitions which hadn't been completed. There is one
+ * checkpoint for each reindexed subtree, whose key contains the name of the workspace and the path of the subtree's root, so that
+ * subtrees of the same workspace can be reindexed concurrently. The checkpoint is removed once all the partitions have been
+ * reindexed or the reindexing has failed, and is only kept when the reindexing is interrupted (for example by a shutdown).
+ * </p>
+ * <p>
+ * This is only used when the repository is configured with more than one reindexing thread; otherwise the content is reindexed
+ * by a single thread, without any checkpoints.
+ * </p>
+ * <p>
+ * The number of nodes which have been reindexed and the number of partitions which still have to be reindexed are recorded in
+ * the {@link RepositoryStatistics}.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+class PartitionedReindexer {
+
+    protected static final String CHECKPOINT_KEY_PREFIX = "repository:reindexing:";
+
+    private static final String ROOT_FIELD = "root";
+    private static final String PLAN_FIELD = "plan";
+    private static final String PARTITIONS_FIELD = "partitions";
+    private static final String COMPLETED_FIELD = "completed";
+
+    /**
+     * The number of partitions created for each worker thread, so that the workers remain busy even if some partitions are much
+     * larger than others, and so that a checkpoint is written regularly.
+     */
+    private static final int PARTITIONS_PER_THREAD = 16;
+
+    /**
+     * The number of batches which are written between two checkpoints, so that small partitions don't cause an index commit (and
+     * a checkpoint) each.
+     */
+    private static final int BATCHES_PER_CHECKPOINT = 10;
+
+    private final Logger logger = Logger.getLogger(getClass());
+    private final String repositoryName;
+    private final LocalDocumentStore documentStore;
+    private final RepositoryStatistics statistics;
+    private final int threads;
+    private final int batchSize;
+
+    PartitionedReindexer( String repositoryName,
+                          LocalDocumentStore documentStore,
+                          RepositoryStatistics statistics,
+                          int threads,
+                          int batchSize ) {
+        assert threads > 1;
+        assert batchSize > 0;
+        this.repositoryName = repositoryName;
+        this.documentStore = documentStore;
+        this.statistics = statistics;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reindexes the subtrees below the given nodes.
+     *
+     * @param workspaceName the name of the workspace; may not be null
+     * @param cache the cache of the workspace; may not be null
+     * @param parentKey the key of the (already indexed) node whose children are to be reindexed; may not be null
+     * @param childKeys the keys of the children whose subtrees are to be reindexed; may not be null
+     * @param writer the writer of the indexes; may not be null
+     * @return true if at least one index was updated, or false otherwise
+     */
+    boolean reindex( String workspaceName,
+                     NodeCache cache,
+                     NodeKey parentKey,
+                     Collection<NodeKey> childKeys,
+                     IndexWriter writer ) {
+        Run run = new Run(workspaceName, cache, writer, checkpointKey(workspaceName, new PathCache(cache), parentKey));
+
+        // walk the tree breadth-first until a level is large enough to be partitioned ...
+        int targetPartitions = threads * PARTITIONS_PER_THREAD;
+        List<NodeKey> level = new ArrayList<>(childKeys);
+        Batch planningBatch = run.newBatch();
+        while (!level.isEmpty() && level.size() < targetPartitions) {
+            List<NodeKey> nextLevel = new ArrayList<>();
+            for (NodeKey key : level) {
+                CachedNode node = planningBatch.add(key);
+                if (node != null) {
+                    for (ChildReference childRef : node.getChildReferences(cache)) {
+                        nextLevel.add(childRef.getKey());
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        planningBatch.flush();
+        if (level.isEmpty()) {
+            return run.indexesUpdated.get();
+        }
+
+        // split the level into contiguous ranges of nodes ...
+        int partitionCount = Math.min(level.size(), targetPartitions);
+        List<List<NodeKey>> partitions = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            int from = (int)((long)level.size() * i / partitionCount);
+            int to = (int)((long)level.size() * (i + 1) / partitionCount);
+            partitions.add(level.subList(from, to));
+        }
+        run.startCheckpointing(parentKey, planHash(level), partitionCount);
+
+        boolean interrupted = false;
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                                            new ArrayBlockingQueue<>(threads),
+                                                            new NamedThreadFactory("modeshape-reindexing-" + workspaceName),
+                                                            new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            List<Future<?>> results = new ArrayList<>(partitionCount);
+            for (int i = 0; i < partitionCount; i++) {
+                if (run.isCompleted(i)) {
+                    continue;
+                }
+                final int partition = i;
+                // the queue is bounded and the caller runs the partition when it is full, which keeps the workers from
+                // falling behind ...
+                results.add(workers.submit(() -> run.reindex(partition, partitions.get(partition))));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            Thread.currentThread().interrupt();
+            logger.debug("Reindexing of workspace '{0}' in repository '{1}' was interrupted", workspaceName, repositoryName);
+            return run.indexesUpdated.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(cause);
+        } finally {
+            workers.shutdownNow();
+            run.stopCheckpointing();
+            if (!interrupted) {
+                // only an interrupted reindexing is resumed, so the checkpoint is removed even if the reindexing failed ...
+                run.removeCheckpoint();
+            }
+        }
+        return run.indexesUpdated.get();
+    }
+
+    /**
+     * Removes the checkpoints of the reindexing of all the subtrees of the given workspace, which must be done whenever the
+     * indexes are cleared.
+     *
+     * @param workspaceName the name of the workspace; may not be null
+     */
+    void removeCheckpoints( String workspaceName ) {
+        String prefix = CHECKPOINT_KEY_PREFIX + workspaceName + ":";
+        List<String> keys = new ArrayList<>();
+        documentStore.keysInBatches(BATCHES_PER_CHECKPOINT * batchSize, batch -> {
+            for (String key : batch) {
+                if (key.startsWith(prefix)) {
+                    keys.add(key);
+                }
+            }
+        });
+        keys.forEach(this::removeCheckpoint);
+    }
+
+    private void removeCheckpoint( String key ) {
+        if (documentStore.get(key) != null) {
+            documentStore.runInLocalTransaction(() -> documentStore.remove(key), 0);
+        }
+    }
+
+    private static String checkpointKey( String workspaceName,
+                                         PathCache paths,
+                                         NodeKey rootKey ) {
+        CachedNode root = paths.getCache().getNode(rootKey);
+        String rootPath = root != null ? paths.getPath(root).getString() : rootKey.toString();
+        return CHECKPOINT_KEY_PREFIX + workspaceName + ":" + rootPath;
+    }
+
+    private static long planHash( List<NodeKey> keys ) {
+        long hash = keys.size();
+        for (NodeKey key : keys) {
+            hash = 31 * hash + key.hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * The state of a single call to {@link PartitionedReindexer#reindex}.
+     */
+    private final class Run {
+        private final String workspaceName;
+        private final NodeCache cache;
+        private final IndexWriter writer;
+        private final AtomicBoolean indexesUpdated = new AtomicBoolean();
+        private final String checkpointKey;
+        private NodeKey parentKey;
+        private long plan;
+        private int partitionCount;
+        private int remaining;
+        private long uncheckpointedNodes;
+        private final BitSet completed = new BitSet();
+
+        protected Run( String workspaceName,
+                       NodeCache cache,
+                       IndexWriter writer,
+                       String checkpointKey ) {
+            this.workspaceName = workspaceName;
+            this.cache = cache;
+            this.writer = writer;
+            this.checkpointKey = checkpointKey;
+        }
+
+        protected Batch newBatch() {
+            return new Batch(this, new PathCache(cache));
+        }
+
+        protected synchronized void startCheckpointing( NodeKey parentKey,
+                                                        long plan,
+                                                        int partitionCount ) {
+            this.parentKey = parentKey;
+            this.plan = plan;
+            this.partitionCount = partitionCount;
+            SchematicEntry entry = documentStore.get(checkpointKey);
+            if (entry != null) {
+                Document checkpoint = entry.content();
+                if (parentKey.toString().equals(checkpoint.getString(ROOT_FIELD))
+                    && plan == checkpoint.getLong(PLAN_FIELD, 0L)
+                    && partitionCount == checkpoint.getInteger(PARTITIONS_FIELD, 0)) {
+                    // the content was partitioned in the same way, so the completed partitions don't need to be reindexed
+                    List<?> completedPartitions = checkpoint.getArray(COMPLETED_FIELD);
+                    if (completedPartitions != null) {
+                        for (Object partition : completedPartitions) {
+                            completed.set(((Number)partition).intValue());
+                        }
+                    }
+                    logger.info(JcrI18n.resumingReindexing, workspaceName, repositoryName, completed.cardinality(),
+                                partitionCount);
+                }
+            }
+            remaining = partitionCount - completed.cardinality();
+            statistics.increment(ValueMetric.REINDEXING_PARTITIONS_REMAINING, remaining);
+        }
+
+        protected synchronized boolean isCompleted( int partition ) {
+            return completed.get(partition);
+        }
+
+        protected void reindex( int partition,
+                                List<NodeKey> roots ) {
+            Batch batch = newBatch();
+            Queue<NodeKey> queue = new LinkedList<>(roots);
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                NodeKey key = queue.poll();
+                if (key == null) {
+                    break;
+                }
+                CachedNode node = batch.add(key);
+                if (node != null) {
+                    for (ChildReference childRef : node.getChildReferences(cache)) {
+                        queue.add(childRef.getKey());
+                    }
+                }
+            }
+            batch.flush();
+            completed(partition);
+        }
+
+        protected synchronized void write( List<Node> nodes ) {
+            boolean updated = false;
+            for (Node node : nodes) {
+                updated |= writer.add(workspaceName, node.key, node.path, node.primaryType, node.mixinTypes, node.properties);
+            }
+            if (updated) {
+                indexesUpdated.set(true);
+            }
+            uncheckpointedNodes += nodes.size();
+            statistics.increment(ValueMetric.REINDEXED_NODES, nodes.size());
+        }
+
+        private synchronized void completed( int partition ) {
+            completed.set(partition);
+            --remaining;
+            statistics.decrement(ValueMetric.REINDEXING_PARTITIONS_REMAINING);
+            if (remaining == 0 || uncheckpointedNodes < (long)batchSize * BATCHES_PER_CHECKPOINT) {
+                // the checkpoint is removed once all partitions are completed
+                return;
+            }
+            // make sure the indexes contain the completed partitions before recording them ...
+            writer.commit(workspaceName);
+            uncheckpointedNodes = 0;
+            EditableDocument checkpoint = Schematic.newDocument();
+            checkpoint.setString(ROOT_FIELD, parentKey.toString());
+            checkpoint.setNumber(PLAN_FIELD, plan);
+            checkpoint.setNumber(PARTITIONS_FIELD, partitionCount);
+            List<Object> completedPartitions = new ArrayList<>(completed.cardinality());
+            completed.stream().forEach(completedPartitions::add);
+            checkpoint.setArray(COMPLETED_FIELD, completedPartitions.toArray());
+            documentStore.runInLocalTransaction(() -> {
+                documentStore.put(checkpointKey, checkpoint);
+                return null;
+            }, 0);
+        }
+
+        protected synchronized void stopCheckpointing() {
+            // any partitions which weren't completed (e.g. because of an error) are no longer pending
+            statistics.increment(ValueMetric.REINDEXING_PARTITIONS_REMAINING, -remaining);
+            remaining = 0;
+        }
+
+        protected void removeCheckpoint() {
+            PartitionedReindexer.this.removeCheckpoint(checkpointKey);
+        }
+    }
+
+    /**
+     * The nodes which a partition has visited but not yet written to the indexes.
+     */
+    private final class Batch {
+        private final Run run;
+        private final PathCache paths;
+        private final List<Node> nodes = new ArrayList<>(batchSize);
+
+        protected Batch( Run run,
+                         PathCache paths ) {
+            this.run = run;
+            this.paths = paths;
+        }
+
+        /**
+         * Adds the node with the given key to the batch, writing the batch to the indexes when it is full.
+         *
+         * @param key the key of the node; may not be null
+         * @return the node, or null if the node doesn't exist or is excluded from indexing
+         */
+        protected CachedNode add( NodeKey key ) {
+            NodeCache cache = paths.getCache();
+            CachedNode node = cache.getNode(key);
+            if (node == null || node.isExcludedFromSearch(cache)) {
+                return null;
+            }
+            nodes.add(new Node(node.getKey(), paths.getPath(node), node.getPrimaryType(cache), node.getMixinTypes(cache),
+                               node.getPropertiesByName(cache)));
+            if (nodes.size() >= batchSize) {
+                flush();
+            }
+            return node;
+        }
+
+        protected void flush() {
+            if (!nodes.isEmpty()) {
+                run.write(nodes);
+                nodes.clear();
+            }
+        }
+    }
+
+    /**
+     * The information about a node which is written to the indexes.
+     */
+    private static final class Node {
+        private final NodeKey key;
+        private final Path path;
+        private final Name primaryType;
+        private final Set<Name> mixinTypes;
+        private final CachedNode.Properties properties;
+
+        protected Node( NodeKey key,
+                        Path path,
+                        Name primaryType,
+                        Set<Name> mixinTypes,
+                        CachedNode.Properties properties ) {
+            this.key = key;
+            this.path = path;
+            this.primaryType = primaryType;
+            this.mixinTypes = mixinTypes;
+            this.properties = properties;
+        }
+    }
+}
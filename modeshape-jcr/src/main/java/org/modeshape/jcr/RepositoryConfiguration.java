@@ -40,7 +40,12 @@ import javax.security.auth.login.LoginException;
 import org.modeshape.common.annotation.Immutable;
 import org.modeshape.common.collection.Problems;
 import org.modeshape.common.collection.SimpleProblems;
+import org.modeshape.common.collection.ring.BlockingWaitStrategy;
+import org.modeshape.common.collection.ring.BusySpinWaitStrategy;
+import org.modeshape.common.collection.ring.PhasedBackoffWaitStrategy;
 import org.modeshape.common.collection.ring.RingBufferBuilder;
+import org.modeshape.common.collection.ring.WaitStrategy;
+import org.modeshape.common.collection.ring.YieldingWaitStrategy;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.text.Inflector;
 import org.modeshape.common.util.CheckArg;
@@ -66,6 +71,7 @@ import org.modeshape.jcr.value.binary.AbstractBinaryStore;
 import org.modeshape.jcr.value.binary.BinaryStore;
 import org.modeshape.jcr.value.binary.BinaryStoreException;
 import org.modeshape.jcr.value.binary.CassandraBinaryStore;
+import org.modeshape.jcr.value.binary.ChunkedBinaryStore;
 import org.modeshape.jcr.value.binary.CompositeBinaryStore;
 import org.modeshape.jcr.value.binary.DatabaseBinaryStore;
 import org.modeshape.jcr.value.binary.FileSystemBinaryStore;
@@ -75,6 +81,7 @@ import org.modeshape.schematic.SchemaLibrary;
 import org.modeshape.schematic.SchemaLibrary.Problem;
 import org.modeshape.schematic.SchemaLibrary.Results;
 import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.codec.Codecs;
 import org.modeshape.schematic.document.Array;
 import org.modeshape.schematic.document.Changes;
 import org.modeshape.schematic.document.Document;
@@ -232,6 +239,11 @@ public class RepositoryConfiguration {
          */
         public static final String EVENT_BUS_SIZE = "eventBusSize";
 
+        /**
+         * The name for the field whose value is the strategy used by the consumers of the event bus to wait for new events
+         */
+        public static final String EVENT_BUS_WAIT_STRATEGY = "eventBusWaitStrategy";
+
         /**
          * The name for the optional field specifying whether the monitoring system is enabled or disabled.
          */
@@ -242,11 +254,23 @@ public class RepositoryConfiguration {
          */
         public static final String STORAGE = "storage";
 
+        /**
+         * The name for the optional field within the "storage" document specifying the number of bytes of off-heap memory which
+         * are used to cache the serialized documents read from the persistent store. If not positive, no such cache is used.
+         */
+        public static final String DOCUMENT_CACHE_SIZE_IN_BYTES = "documentCacheSizeInBytes";
+
         /**
          * The maximum number of milliseconds to wait when a lock cannot be obtained on a node
          */
         public static final String LOCK_TIMEOUT_MILLIS = "lockTimeoutMillis";
 
+        /**
+         * The number of lock stripes used when running in non-clustered mode. If positive, node keys are hashed onto this
+         * many locks instead of creating a lock for each node key.
+         */
+        public static final String LOCK_STRIPES = "lockStripes";
+
         /**
          * The name of the field which contains the fully qualified name of the transaction manager lookup class to be used.
          */
@@ -267,6 +291,30 @@ public class RepositoryConfiguration {
          */
         public static final String CLUSTER_CONFIGURATION = "configuration";
 
+        /**
+         * The name of the field whose value is the format in which change sets and journal records are sent to the other members of
+         * the cluster. Members older than 5.1 only read the "java" format, which is therefore the default: when upgrading a cluster,
+         * first upgrade all the members, and only then switch them to the "binary" format.
+         */
+        public static final String CLUSTER_MESSAGE_FORMAT = "messageFormat";
+
+        /**
+         * The name of the field whose value is the name of the codec used to compress the messages sent in the binary format
+         */
+        public static final String CLUSTER_MESSAGE_COMPRESSION = "messageCompression";
+
+        /**
+         * The name of the field whose value is the maximum number of milliseconds a change set may be held back to be sent to the
+         * cluster together with other change sets, or 0 if each change set is sent as soon as it is made
+         */
+        public static final String CLUSTER_BATCH_DELAY_MILLIS = "changeSetBatchDelayMillis";
+
+        /**
+         * The name of the field whose value is the number of changes at which a batch of change sets is sent to the cluster without
+         * waiting for the batch delay to elapse
+         */
+        public static final String CLUSTER_BATCH_MAX_CHANGES = "changeSetBatchMaxChanges";
+
         /**
          * The size threshold that dictates whether binary values should be stored in the binary store. Binary values smaller than
          * this value are stored with the node, whereas binary values with a size equal to or greater than this limit will be
@@ -291,6 +339,23 @@ public class RepositoryConfiguration {
          */
         public static final String BINARY_STORE_NAME = "storeName";
 
+        /**
+         * The name of the field whose value is the average size in bytes of the chunks into which a chunked binary store splits
+         * the binary values
+         */
+        public static final String AVERAGE_CHUNK_SIZE = "averageChunkSize";
+
+        /**
+         * The name of the field whose value is the name of the codec used by a chunked binary store to compress the chunks
+         */
+        public static final String CHUNK_COMPRESSION = "chunkCompression";
+
+        /**
+         * The name of the field whose value is the number of threads a chunked binary store uses to hash, compress and write
+         * the chunks of the binary values
+         */
+        public static final String CHUNKING_THREADS = "chunkingThreads";
+
         /**
          * The name for the field whose value is a document containing workspace information.
          */
@@ -334,6 +399,17 @@ public class RepositoryConfiguration {
          */
         public static final String WORKSPACE_CACHE_SIZE = "cacheSize";
 
+        /**
+         * The name for the field containing the maximum estimated number of bytes of node documents which the workspace cache
+         * can hold. When set, this takes precedence over the {@link #WORKSPACE_CACHE_SIZE number of entries}.
+         */
+        public static final String WORKSPACE_CACHE_SIZE_IN_BYTES = "cacheSizeInBytes";
+
+        /**
+         * The name for the field containing the eviction policy of the workspace cache.
+         */
+        public static final String WORKSPACE_CACHE_EVICTION_POLICY = "cacheEvictionPolicy";
+
         /**
          * The name for the field whose value is a document containing binary storage information.
          */
@@ -428,6 +504,12 @@ public class RepositoryConfiguration {
         public static final String REINDEXING = "reindexing";
         public static final String REINDEXING_ASYNC = "async";
         public static final String REINDEXING_MODE = "mode";
+        public static final String REINDEXING_THREADS = "threads";
+        public static final String REINDEXING_BATCH_SIZE = "batchSize";
+        public static final String QUERY_EXECUTION = "queryExecution";
+        public static final String QUERY_PARALLELISM = "parallelism";
+        public static final String QUERY_BATCH_QUEUE_SIZE = "batchQueueSize";
+        public static final String QUERY_PLAN_CACHE_SIZE = "planCacheSize";
         public static final String ADDRESS = "address";
         public static final String DATABASE = "database";
         public static final String HOST = "host";
@@ -483,6 +565,17 @@ public class RepositoryConfiguration {
          * The default number of items the workspace cache can hold in memory
          */
         public static final int WORKSPACE_CACHE_SIZE = 10000;
+
+        /**
+         * The default value of the {@link FieldName#WORKSPACE_CACHE_SIZE_IN_BYTES} field is '{@value}', meaning the workspace
+         * cache is bounded by its number of entries.
+         */
+        public static final long WORKSPACE_CACHE_SIZE_IN_BYTES = 0L;
+
+        /**
+         * The default value of the {@link FieldName#WORKSPACE_CACHE_EVICTION_POLICY} field is '{@value}'.
+         */
+        public static final String WORKSPACE_CACHE_EVICTION_POLICY = "lru";
         
         /**
          * The default value of the {@link FieldName#MINIMUM_BINARY_SIZE_IN_BYTES} field is '{@value} ' (4 kilobytes).
@@ -504,6 +597,45 @@ public class RepositoryConfiguration {
          */
         public static final long LOCK_TIMEOUT = 10000;
 
+        /**
+         * The default value of the {@link FieldName#LOCK_STRIPES} field is '{@value}', meaning a lock is created for each node
+         * key.
+         */
+        public static final int LOCK_STRIPES = 0;
+
+        /**
+         * The default value of the {@link FieldName#DOCUMENT_CACHE_SIZE_IN_BYTES} field is '{@value}', meaning documents are
+         * always read from the persistent store.
+         */
+        public static final long DOCUMENT_CACHE_SIZE_IN_BYTES = 0L;
+
+        /**
+         * The default value of the {@link FieldName#REINDEXING_THREADS} field is '{@value}', meaning the content of a workspace
+         * is reindexed by a single thread.
+         */
+        public static final int REINDEXING_THREADS = 1;
+
+        /**
+         * The default value of the {@link FieldName#REINDEXING_BATCH_SIZE} field is '{@value}'.
+         */
+        public static final int REINDEXING_BATCH_SIZE = 500;
+
+        /**
+         * The default value of the {@link FieldName#QUERY_PARALLELISM} field is '{@value}', meaning each query is executed
+         * entirely by the thread which reads its results.
+         */
+        public static final int QUERY_PARALLELISM = 1;
+
+        /**
+         * The default value of the {@link FieldName#QUERY_BATCH_QUEUE_SIZE} field is '{@value}'.
+         */
+        public static final int QUERY_BATCH_QUEUE_SIZE = 4;
+
+        /**
+         * The default value of the {@link FieldName#QUERY_PLAN_CACHE_SIZE} field is '{@value}'.
+         */
+        public static final int QUERY_PLAN_CACHE_SIZE = 500;
+
         /**
          * The default value of the {@link FieldName#TRANSACTION_MANAGER_LOOKUP} field is '{@value} '.
          */
@@ -514,6 +646,11 @@ public class RepositoryConfiguration {
          */
         public static final int EVENT_BUS_SIZE = RingBufferBuilder.DEFAULT_BUFFER_SIZE;
 
+        /**
+         * The default value of the {@link FieldName#EVENT_BUS_WAIT_STRATEGY} field is '{@value}'
+         */
+        public static final String EVENT_BUS_WAIT_STRATEGY = FieldValue.EVENT_BUS_WAIT_STRATEGY_BLOCKING;
+
         /**
          * The default value of the {@link FieldName#JAAS_POLICY_NAME} field is '{@value} '.
          */
@@ -535,6 +672,14 @@ public class RepositoryConfiguration {
         public static final boolean MONITORING_ENABLED = true;
         public static final String CLUSTER_NAME = "ModeShape-JCR";
         public static final String CLUSTER_CONFIG = "org/modeshape/jcr/clustering/jgroups-config.xml";
+        public static final String CLUSTER_MESSAGE_FORMAT = FieldValue.CLUSTER_MESSAGE_FORMAT_JAVA;
+        public static final String CLUSTER_MESSAGE_COMPRESSION = Codecs.NONE;
+        public static final long CLUSTER_BATCH_DELAY_MILLIS = 0L;
+        public static final int CLUSTER_BATCH_MAX_CHANGES = 10000;
+        public static final String CLUSTER_BATCHING_POOL = "modeshape-cluster-batching";
+        public static final int AVERAGE_CHUNK_SIZE = ChunkedBinaryStore.DEFAULT_AVERAGE_CHUNK_SIZE;
+        public static final String CHUNK_COMPRESSION = Codecs.GZIP;
+        public static final int CHUNKING_THREADS = Runtime.getRuntime().availableProcessors();
 
         public static final String SEQUENCING_POOL = "modeshape-sequencer";
         public static final String TEXT_EXTRACTION_POOL = "modeshape-text-extractor";
@@ -565,6 +710,7 @@ public class RepositoryConfiguration {
     public static final class FieldValue {
         public static final String BINARY_STORAGE_TYPE_TRANSIENT = "transient";
         public static final String BINARY_STORAGE_TYPE_FILE = "file";
+        public static final String BINARY_STORAGE_TYPE_CHUNKED = "chunked";
         public static final String BINARY_STORAGE_TYPE_DATABASE = "database";
         public static final String BINARY_STORAGE_TYPE_COMPOSITE = "composite";
         public static final String BINARY_STORAGE_TYPE_CASSANDRA = "cassandra";
@@ -580,6 +726,14 @@ public class RepositoryConfiguration {
         public static final String MIMETYPE_DETECTION_NONE = "none";
         public static final String MIMETYPE_DETECTION_NAME = "name";
         public static final String MIMETYPE_DETECTION_CONTENT = "content";
+
+        public static final String EVENT_BUS_WAIT_STRATEGY_BLOCKING = "blocking";
+        public static final String EVENT_BUS_WAIT_STRATEGY_YIELDING = "yielding";
+        public static final String EVENT_BUS_WAIT_STRATEGY_BUSY_SPIN = "busySpin";
+        public static final String EVENT_BUS_WAIT_STRATEGY_PHASED_BACKOFF = "phasedBackoff";
+
+        public static final String CLUSTER_MESSAGE_FORMAT_BINARY = "binary";
+        public static final String CLUSTER_MESSAGE_FORMAT_JAVA = "java";
     }
 
     protected static final Set<List<String>> DEPRECATED_FIELDS = Collections.emptySet();
@@ -890,9 +1044,33 @@ public class RepositoryConfiguration {
         return storage.getDocument(FieldName.PERSISTENCE);
     }
 
+    /**
+     * Get the number of bytes of off-heap memory which should be used to cache the documents read from the persistent store.
+     *
+     * @return the size of the document cache in bytes, or 0 if no such cache should be used
+     * @see org.modeshape.jcr.cache.document.OffHeapDocumentCache
+     */
+    public long getDocumentCacheSizeInBytes() {
+        Document storage = doc.getDocument(FieldName.STORAGE);
+        if (storage != null) {
+            return storage.getLong(FieldName.DOCUMENT_CACHE_SIZE_IN_BYTES, Default.DOCUMENT_CACHE_SIZE_IN_BYTES);
+        }
+        return Default.DOCUMENT_CACHE_SIZE_IN_BYTES;
+    }
+
     public long getLockTimeoutMillis() {
         return doc.getLong(FieldName.LOCK_TIMEOUT_MILLIS, Default.LOCK_TIMEOUT);
     }
+
+    /**
+     * Get the number of lock stripes which should be used when running in non-clustered mode.
+     *
+     * @return the number of stripes, or 0 if a lock should be created for each node key
+     * @see org.modeshape.jcr.locking.StripedLockingService
+     */
+    public int getLockStripes() {
+        return doc.getInteger(FieldName.LOCK_STRIPES, Default.LOCK_STRIPES);
+    }
     
     public TransactionManagerLookup getTransactionManagerLookup() {
         Document storage = doc.getDocument(FieldName.STORAGE);
@@ -920,6 +1098,33 @@ public class RepositoryConfiguration {
         return Default.WORKSPACE_CACHE_SIZE;
     }
 
+    /**
+     * Get the maximum estimated number of bytes of node documents which each workspace cache can hold.
+     *
+     * @return the size of the workspace caches in bytes, or 0 if the caches are bounded by their {@link #getWorkspaceCacheSize()
+     * number of entries}
+     */
+    public long getWorkspaceCacheSizeInBytes() {
+        Document storage = doc.getDocument(FieldName.WORKSPACES);
+        if (storage != null) {
+            return storage.getLong(FieldName.WORKSPACE_CACHE_SIZE_IN_BYTES, Default.WORKSPACE_CACHE_SIZE_IN_BYTES);
+        }
+        return Default.WORKSPACE_CACHE_SIZE_IN_BYTES;
+    }
+
+    /**
+     * Get the name of the policy which decides which nodes are evicted from (or not admitted into) a full workspace cache.
+     *
+     * @return either "lru" or "tinylfu"; never {@code null}
+     */
+    public String getWorkspaceCacheEvictionPolicy() {
+        Document storage = doc.getDocument(FieldName.WORKSPACES);
+        if (storage != null) {
+            return storage.getString(FieldName.WORKSPACE_CACHE_EVICTION_POLICY, Default.WORKSPACE_CACHE_EVICTION_POLICY);
+        }
+        return Default.WORKSPACE_CACHE_EVICTION_POLICY;
+    }
+
     public Clustering getClustering() {
         return new Clustering(doc.getDocument(FieldName.CLUSTERING));
     }
@@ -959,6 +1164,15 @@ public class RepositoryConfiguration {
         return new Reindexing(doc.getDocument(FieldName.REINDEXING));
     }
 
+    /**
+     * Returns the query execution configuration.
+     *
+     * @return a {@link org.modeshape.jcr.RepositoryConfiguration.QueryExecution} instance, never {@code null}.
+     */
+    public QueryExecution getQueryExecution() {
+        return new QueryExecution(doc.getDocument(FieldName.QUERY_EXECUTION));
+    }
+
     /**
      * Returns a list with the cnd files which should be loaded at startup.
      *
@@ -1111,6 +1325,16 @@ public class RepositoryConfiguration {
                 File dir = new File(directory);
                 File trashDir = trash != null ? new File(trash) : null;
                 store = FileSystemBinaryStore.create(dir, trashDir);
+            } else if (type.equalsIgnoreCase(FieldValue.BINARY_STORAGE_TYPE_CHUNKED)) {
+                String directory = binaryStorage.getString(FieldName.DIRECTORY);
+                String trash = binaryStorage.getString(FieldName.TRASH_DIRECTORY);
+                assert directory != null;
+                File dir = new File(directory);
+                File trashDir = trash != null ? new File(trash) : null;
+                int averageChunkSize = binaryStorage.getInteger(FieldName.AVERAGE_CHUNK_SIZE, Default.AVERAGE_CHUNK_SIZE);
+                String compression = binaryStorage.getString(FieldName.CHUNK_COMPRESSION, Default.CHUNK_COMPRESSION);
+                int threads = binaryStorage.getInteger(FieldName.CHUNKING_THREADS, Default.CHUNKING_THREADS);
+                store = ChunkedBinaryStore.create(dir, trashDir, averageChunkSize, compression, threads);
             } else if (type.equalsIgnoreCase(FieldValue.BINARY_STORAGE_TYPE_DATABASE)) {
                 String driverClass = binaryStorage.getString(FieldName.JDBC_DRIVER_CLASS);
                 String connectionURL = binaryStorage.getString(FieldName.CONNECTION_URL);
@@ -1252,6 +1476,33 @@ public class RepositoryConfiguration {
         return doc.getInteger(FieldName.EVENT_BUS_SIZE, Default.EVENT_BUS_SIZE);
     }
 
+    /**
+     * Get the strategy that the consumers of the event bus use to wait for new events. The blocking strategy uses no CPU while
+     * waiting, whereas the other strategies trade CPU time for lower latency between the publishing and consuming of events.
+     *
+     * @return the wait strategy; never null
+     */
+    public WaitStrategy getEventBusWaitStrategy() {
+        String waitStrategy = doc.getString(FieldName.EVENT_BUS_WAIT_STRATEGY, Default.EVENT_BUS_WAIT_STRATEGY);
+        switch (waitStrategy) {
+            case FieldValue.EVENT_BUS_WAIT_STRATEGY_BLOCKING: {
+                return new BlockingWaitStrategy();
+            }
+            case FieldValue.EVENT_BUS_WAIT_STRATEGY_YIELDING: {
+                return new YieldingWaitStrategy();
+            }
+            case FieldValue.EVENT_BUS_WAIT_STRATEGY_BUSY_SPIN: {
+                return new BusySpinWaitStrategy();
+            }
+            case FieldValue.EVENT_BUS_WAIT_STRATEGY_PHASED_BACKOFF: {
+                return PhasedBackoffWaitStrategy.withBlocking(100, 1000, TimeUnit.MICROSECONDS);
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown event bus wait strategy: " + waitStrategy);
+            }
+        }
+    }
+
     /**
      * Get the name of the workspace that should be used for sessions where the client does not specify the name of the workspace.
      *
@@ -1768,6 +2019,76 @@ public class RepositoryConfiguration {
             String reindexingMode = reindexing == null ? defaultMode : reindexing.getString(FieldName.REINDEXING_MODE, defaultMode);
             return ReindexingMode.valueOf(reindexingMode.toUpperCase());
         }
+
+        /**
+         * Get the number of threads which reindex the partitions (subtrees) of a workspace in parallel.
+         *
+         * @return the number of threads; always positive
+         */
+        public int threads() {
+            int threads = reindexing == null ? Default.REINDEXING_THREADS : reindexing.getInteger(FieldName.REINDEXING_THREADS,
+                                                                                                   Default.REINDEXING_THREADS);
+            return Math.max(1, threads);
+        }
+
+        /**
+         * Get the number of nodes each partition collects before writing them to the indexes.
+         *
+         * @return the batch size; always positive
+         */
+        public int batchSize() {
+            int batchSize = reindexing == null ? Default.REINDEXING_BATCH_SIZE : reindexing.getInteger(
+                    FieldName.REINDEXING_BATCH_SIZE, Default.REINDEXING_BATCH_SIZE);
+            return Math.max(1, batchSize);
+        }
+    }
+
+    /**
+     * The query execution configuration information.
+     */
+    @Immutable
+    public class QueryExecution {
+        private final Document queryExecution;
+
+        protected QueryExecution( Document queryExecution ) {
+            this.queryExecution = queryExecution;
+        }
+
+        /**
+         * Get the number of threads which evaluate the independent parts of a query plan (the two sides of a join or the
+         * operands of a set operation) concurrently. A value of 1 means that queries are executed serially.
+         *
+         * @return the parallelism; always positive
+         */
+        public int parallelism() {
+            int parallelism = queryExecution == null ? Default.QUERY_PARALLELISM : queryExecution.getInteger(
+                    FieldName.QUERY_PARALLELISM, Default.QUERY_PARALLELISM);
+            return Math.max(1, parallelism);
+        }
+
+        /**
+         * Get the number of batches of rows which each part of a query evaluated in parallel may produce ahead of the thread
+         * consuming them.
+         *
+         * @return the size of the batch queues; always positive
+         */
+        public int batchQueueSize() {
+            int queueSize = queryExecution == null ? Default.QUERY_BATCH_QUEUE_SIZE : queryExecution.getInteger(
+                    FieldName.QUERY_BATCH_QUEUE_SIZE, Default.QUERY_BATCH_QUEUE_SIZE);
+            return Math.max(1, queueSize);
+        }
+
+        /**
+         * Get the maximum number of optimized query plans which are kept so that queries executed repeatedly, perhaps with other
+         * values for their bind variables, are not planned again. A value of 0 means that plans are not cached.
+         *
+         * @return the size of the plan cache; never negative
+         */
+        public int planCacheSize() {
+            int cacheSize = queryExecution == null ? Default.QUERY_PLAN_CACHE_SIZE : queryExecution.getInteger(
+                    FieldName.QUERY_PLAN_CACHE_SIZE, Default.QUERY_PLAN_CACHE_SIZE);
+            return Math.max(0, cacheSize);
+        }
     }
 
     /**
@@ -2260,6 +2581,47 @@ public class RepositoryConfiguration {
         public String getConfiguration() {
             return clusteringDoc.getString(FieldName.CLUSTER_CONFIGURATION, Default.CLUSTER_CONFIG);
         }
+
+        /**
+         * Checks whether change sets and journal records are sent to the other members of the cluster in the compact binary
+         * format, rather than with Java serialization. Java serialization is used by default, because it is the only format read
+         * by members older than 5.1; the binary format should only be enabled once all the members have been upgraded.
+         *
+         * @return true if the binary format is used, or false otherwise
+         */
+        public boolean useBinaryMessageFormat() {
+            String format = clusteringDoc.getString(FieldName.CLUSTER_MESSAGE_FORMAT, Default.CLUSTER_MESSAGE_FORMAT);
+            return !FieldValue.CLUSTER_MESSAGE_FORMAT_JAVA.equalsIgnoreCase(format);
+        }
+
+        /**
+         * Get the name of the codec used to compress the messages sent in the binary format.
+         *
+         * @return the name of the codec; never null
+         */
+        public String getMessageCompression() {
+            return clusteringDoc.getString(FieldName.CLUSTER_MESSAGE_COMPRESSION, Default.CLUSTER_MESSAGE_COMPRESSION);
+        }
+
+        /**
+         * Get the maximum number of milliseconds a change set may be held back to be sent to the cluster together with other
+         * change sets.
+         *
+         * @return the delay, or 0 if change sets are not batched
+         */
+        public long getChangeSetBatchDelayMillis() {
+            return clusteringDoc.getLong(FieldName.CLUSTER_BATCH_DELAY_MILLIS, Default.CLUSTER_BATCH_DELAY_MILLIS);
+        }
+
+        /**
+         * Get the number of changes at which a batch of change sets is sent to the cluster without waiting for the batch delay to
+         * elapse.
+         *
+         * @return the number of changes; always positive
+         */
+        public int getChangeSetBatchMaxChanges() {
+            return clusteringDoc.getInteger(FieldName.CLUSTER_BATCH_MAX_CHANGES, Default.CLUSTER_BATCH_MAX_CHANGES);
+        }
     }
 
     @Immutable
@@ -62,6 +62,7 @@ import org.modeshape.jcr.query.QueryEngine;
 import org.modeshape.jcr.query.QueryEngineBuilder;
 import org.modeshape.jcr.query.QueryResults;
 import org.modeshape.jcr.query.engine.IndexQueryEngine;
+import org.modeshape.jcr.query.engine.PlanCache;
 import org.modeshape.jcr.query.engine.ScanningQueryEngine;
 import org.modeshape.jcr.query.plan.PlanHints;
 import org.modeshape.jcr.query.validate.Schemata;
@@ -83,6 +84,7 @@ class RepositoryQueryManager implements ChangeSetListener {
     private final RepositoryConfiguration repoConfig;
     private final RepositoryConfiguration.Reindexing reindexingCfg;
     private final RepositoryIndexManager indexManager;
+    private final PartitionedReindexer reindexer;
     private final Lock engineInitLock = new ReentrantLock();
     @GuardedBy( "engineInitLock" )
     private volatile QueryEngine queryEngine;
@@ -99,6 +101,11 @@ class RepositoryQueryManager implements ChangeSetListener {
         this.repoConfig = config;
         this.reindexingCfg = reindexingCfg;
         this.indexManager = new RepositoryIndexManager(runningState, config);
+        // a single thread reindexes the content as it always has, without partitions or checkpoints ...
+        this.reindexer = reindexingCfg.threads() > 1 ?
+                         new PartitionedReindexer(runningState.name(), runningState.documentStore().localStore(),
+                                                  runningState.statistics(), reindexingCfg.threads(),
+                                                  reindexingCfg.batchSize()) : null;
     }
 
     synchronized void initialize() {
@@ -230,6 +237,16 @@ class RepositoryQueryManager implements ChangeSetListener {
         return indexManager.getIndexes();
     }
 
+    /**
+     * Get the cache of the optimized query plans of the current query engine.
+     *
+     * @return the plan cache, or null if the query engine has not been created yet or does not cache plans
+     */
+    PlanCache planCache() {
+        QueryEngine engine = this.queryEngine;
+        return engine instanceof ScanningQueryEngine ? ((ScanningQueryEngine)engine).planCache() : null;
+    }
+
     /**
      * Obtain the query engine, which is created lazily and in a thread-safe manner.
      *
@@ -400,6 +417,14 @@ class RepositoryQueryManager implements ChangeSetListener {
             @SuppressWarnings( "synthetic-access" )
             @Override
             public Void call() throws Exception {
+                // the indexes are cleared, so any partially completed reindexing has to start over
+                if (reindexer != null) {
+                    RepositoryCache repoCache = runningState.repositoryCache();
+                    reindexer.removeCheckpoints(repoCache.getSystemWorkspaceName());
+                    for (String workspaceName : repoCache.getWorkspaceNames()) {
+                        reindexer.removeCheckpoints(workspaceName);
+                    }
+                }
                 writer.clearAllIndexes();
                 reindexContent(true, writer);
                 return null;
@@ -641,6 +666,7 @@ class RepositoryQueryManager implements ChangeSetListener {
         }
 
         // Create a queue for processing the subgraph
+        final NodeKey startKey = node.getKey();
         final Queue<NodeKey> queue = new LinkedList<NodeKey>();
 
         if (reindexSystemContent) {
@@ -653,7 +679,7 @@ class RepositoryQueryManager implements ChangeSetListener {
                 if (childKey.equals(systemKey)) {
                     // This is the "/jcr:system" node ...
                     node = cache.getNode(childKey);
-                    indexesUpdated |= reindexSystemContent(node, depth - 1, indexes);
+                    indexesUpdated |= reindexSystemContent(node, depth == Integer.MAX_VALUE ? depth : depth - 1, indexes);
                 } else {
                     queue.add(childKey);
                 }
@@ -669,6 +695,11 @@ class RepositoryQueryManager implements ChangeSetListener {
             }
         }
 
+        if (depth == Integer.MAX_VALUE && reindexer != null) {
+            // the entire subgraph has to be reindexed, so split it into partitions which can be reindexed in parallel ...
+            return reindexer.reindex(workspaceName, cache, startKey, queue, indexes) | indexesUpdated;
+        }
+
         // Now, process the queue until empty ...
         while (true) {
             NodeKey key = queue.poll();
@@ -713,6 +744,13 @@ class RepositoryQueryManager implements ChangeSetListener {
                 }
             });
         }
+        if (currentStatus == IndexManager.IndexStatus.REINDEXING && newStatus == IndexManager.IndexStatus.ENABLED) {
+            // the rebuilt indexes may estimate other row counts, so the cached plans may no longer be the best ones ...
+            PlanCache planCache = planCache();
+            if (planCache != null) {
+                planCache.clear();
+            }
+        }
     }
     
     protected void commitChanges( String workspaceName ) {
@@ -33,9 +33,11 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import org.modeshape.common.SystemFailureException;
 import org.modeshape.common.annotation.Immutable;
 import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
 import org.modeshape.common.text.Inflector;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.jcr.api.monitor.DurationActivity;
@@ -97,6 +99,8 @@ import org.modeshape.jcr.value.DateTimeFactory;
 @ThreadSafe
 public class RepositoryStatistics implements RepositoryMonitor, ChangeSetListener {
 
+    private static final Logger LOGGER = Logger.getLogger(RepositoryStatistics.class);
+
     /**
      * The maximum number of longest-running queries to retain.
      */
@@ -134,6 +138,7 @@ public class RepositoryStatistics implements RepositoryMonitor, ChangeSetListene
 
     private final ConcurrentMap<DurationMetric, DurationHistory> durations = new ConcurrentHashMap<DurationMetric, DurationHistory>();
     private final ConcurrentMap<ValueMetric, ValueHistory> values = new ConcurrentHashMap<ValueMetric, ValueHistory>();
+    private final ConcurrentMap<String, Consumer<RepositoryStatistics>> samplers = new ConcurrentHashMap<>();
     private final AtomicReference<ScheduledFuture<?>> rollupFuture = new AtomicReference<ScheduledFuture<?>>();
     private final DateTimeFactory timeFactory;
 
@@ -208,6 +213,14 @@ public class RepositoryStatistics implements RepositoryMonitor, ChangeSetListene
      */
     @SuppressWarnings( "fallthrough" )
     private void rollup() {
+        for (Consumer<RepositoryStatistics> sampler : samplers.values()) {
+            try {
+                sampler.accept(this);
+            } catch (RuntimeException e) {
+                // an exception would cancel the scheduled rollups ...
+                LOGGER.debug(e, "Unable to sample the repository statistics");
+            }
+        }
         DateTime now = timeFactory.create();
         Window largest = null;
         for (DurationHistory history : durations.values()) {
@@ -295,6 +308,19 @@ public class RepositoryStatistics implements RepositoryMonitor, ChangeSetListene
         return history != null ? history.getLongestRunning() : DurationActivity.NO_DURATION_RECORDS;
     }
 
+    /**
+     * Register a sampler which is called right before the statistics are rolled up, and which records the values of metrics
+     * that change too often to be recorded by the code which changes them. Registering a sampler with the name of an existing
+     * sampler replaces the existing one.
+     *
+     * @param name the name of the sampler; may not be null
+     * @param sampler the sampler; may not be null
+     */
+    void setSampler( String name,
+                     Consumer<RepositoryStatistics> sampler ) {
+        samplers.put(name, sampler);
+    }
+
     /**
      * Record an incremental change to a value, called by the code that knows when and how the metric changes.
      * 
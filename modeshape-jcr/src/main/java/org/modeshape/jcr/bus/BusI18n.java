@@ -29,6 +29,7 @@ public final class BusI18n {
     public static I18n errorDeserializingChanges;
     public static I18n errorProcessingEvent;
     public static I18n loopbackMessageNotReceived;
+    public static I18n errorSendingChangeSetBatch;
 
     private BusI18n() {
     }
@@ -0,0 +1,102 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.bus;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetCodec;
+import org.modeshape.jcr.clustering.PayloadCodec;
+
+/**
+ * A message which holds several {@link ChangeSet}s that were made in the same process, in the order in which they were made. The
+ * {@link ClusteredChangeBus} sends such messages instead of one message per change set when batching is enabled.
+ *
+ * @since 5.1
+ */
+@Immutable
+final class ChangeSetBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The codec which writes batches whose change sets were all created by the repository in the {@link ChangeSetCodec binary
+     * format}, so that all of the change sets of a batch share the same dictionaries.
+     */
+    static final PayloadCodec<ChangeSetBatch> CODEC = new PayloadCodec<ChangeSetBatch>() {
+        @Override
+        public byte id() {
+            return 3;
+        }
+
+        @Override
+        public boolean canEncode( Serializable payload ) {
+            if (!(payload instanceof ChangeSetBatch)) {
+                return false;
+            }
+            for (ChangeSet changeSet : ((ChangeSetBatch)payload).changeSets) {
+                if (!ChangeSetCodec.canEncode(changeSet)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public byte[] encode( ChangeSetBatch payload ) throws IOException {
+            ChangeSetCodec.Writer writer = new ChangeSetCodec.Writer();
+            writer.writeVarLong(payload.changeSets.size());
+            for (ChangeSet changeSet : payload.changeSets) {
+                writer.writeChangeSet(changeSet);
+            }
+            return writer.toByteArray();
+        }
+
+        @Override
+        public ChangeSetBatch decode( byte[] data ) throws IOException {
+            ChangeSetCodec.Reader reader = new ChangeSetCodec.Reader(data);
+            int count = (int)reader.readVarLong();
+            List<ChangeSet> changeSets = new ArrayList<>(count);
+            for (int i = 0; i != count; ++i) {
+                changeSets.add(reader.readChangeSet());
+            }
+            return new ChangeSetBatch(changeSets);
+        }
+    };
+
+    private final List<ChangeSet> changeSets;
+
+    ChangeSetBatch( List<ChangeSet> changeSets ) {
+        this.changeSets = changeSets;
+    }
+
+    /**
+     * Get the change sets in this batch.
+     *
+     * @return the change sets, in the order in which they were made; never null
+     */
+    List<ChangeSet> changeSets() {
+        return changeSets;
+    }
+
+    @Override
+    public String toString() {
+        return "batch of " + changeSets.size() + " change sets";
+    }
+}
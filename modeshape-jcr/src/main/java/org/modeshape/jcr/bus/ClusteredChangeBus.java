@@ -15,13 +15,24 @@
  */
 package org.modeshape.jcr.bus;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.modeshape.common.annotation.GuardedBy;
 import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.RepositoryStatistics;
+import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetCodec;
 import org.modeshape.jcr.cache.change.ChangeSetListener;
 import org.modeshape.jcr.clustering.ClusteringService;
 import org.modeshape.jcr.clustering.MessageConsumer;
+import org.modeshape.jcr.clustering.PayloadCodec;
 
 /**
  * Implementation of a {@link ChangeBus} which can run in a cluster, via {@link ClusteringService}. This bus wraps around another
@@ -31,6 +42,12 @@ import org.modeshape.jcr.clustering.MessageConsumer;
  * cluster, and JGroups will do this for us as long as we push all local changes into the channel and receive all local/remote
  * changes from the channel.
  * </p>
+ * <p>
+ * When batching is enabled, the change sets made in this process are not sent as soon as they are made, but are collected for
+ * up to a configurable delay (or until they hold a configurable number of changes) and are then sent in a single
+ * {@link ChangeSetBatch message}, which the other members unpack in order. Change sets are always sent in the order in which they
+ * were made, so batching only adds latency and does not change the order in which change sets are seen by the members.
+ * </p>
  * 
  * @author Horia Chiorean
  */
@@ -39,6 +56,31 @@ public final class ClusteredChangeBus extends MessageConsumer<ChangeSet> impleme
 
     private static final Logger LOGGER = Logger.getLogger(ClusteredChangeBus.class);
 
+    /**
+     * The codec which writes the change sets created by the repository in the {@link ChangeSetCodec binary format}
+     */
+    private static final PayloadCodec<ChangeSet> CHANGE_SET_CODEC = new PayloadCodec<ChangeSet>() {
+        @Override
+        public byte id() {
+            return 1;
+        }
+
+        @Override
+        public boolean canEncode( Serializable payload ) {
+            return payload instanceof ChangeSet && ChangeSetCodec.canEncode((ChangeSet)payload);
+        }
+
+        @Override
+        public byte[] encode( ChangeSet payload ) throws IOException {
+            return ChangeSetCodec.encode(payload);
+        }
+
+        @Override
+        public ChangeSet decode( byte[] data ) throws IOException {
+            return ChangeSetCodec.decode(data);
+        }
+    };
+
     /**
      * The wrapped standalone bus to which standard bus operations are delegated
      */
@@ -49,6 +91,23 @@ public final class ClusteredChangeBus extends MessageConsumer<ChangeSet> impleme
      */
     private final ClusteringService clusteringService;
 
+    /**
+     * The consumer of the batches of change sets sent by the members which have batching enabled
+     */
+    private final MessageConsumer<ChangeSetBatch> batchConsumer = new MessageConsumer<ChangeSetBatch>(ChangeSetBatch.class) {
+        @Override
+        public void consume( ChangeSetBatch batch ) {
+            for (ChangeSet changeSet : batch.changeSets()) {
+                ClusteredChangeBus.this.consume(changeSet);
+            }
+        }
+    };
+
+    /**
+     * The batcher which collects the change sets made in this process, or null if batching is disabled
+     */
+    private final Batcher batcher;
+
     /**
      * Creates a new clustered repository bus
      * 
@@ -57,12 +116,41 @@ public final class ClusteredChangeBus extends MessageConsumer<ChangeSet> impleme
      */
     public ClusteredChangeBus( ChangeBus delegate,
                                ClusteringService clusteringService ) {
+        this(delegate, clusteringService, null, 0L, 0, null);
+    }
+
+    /**
+     * Creates a new clustered repository bus which sends the change sets made in this process in batches
+     * 
+     * @param delegate the local bus to which changes will be delegated
+     * @param clusteringService the object which will handle sending/receiving information in the cluster.
+     * @param batchingService the service used to send batches once their delay has elapsed; may be null only if batching is
+     *        disabled
+     * @param batchDelayMillis the maximum number of milliseconds a change set may be held before it is sent, or 0 if batching is
+     *        disabled
+     * @param batchMaxChanges the number of changes at which a batch is sent without waiting for the delay to elapse
+     * @param statistics the repository statistics in which the batching metrics are recorded; may be null
+     */
+    public ClusteredChangeBus( ChangeBus delegate,
+                               ClusteringService clusteringService,
+                               ScheduledExecutorService batchingService,
+                               long batchDelayMillis,
+                               int batchMaxChanges,
+                               RepositoryStatistics statistics ) {
         super(ChangeSet.class);
 
         CheckArg.isNotNull(delegate, "delegate");
         CheckArg.isNotNull(clusteringService, "clusteringService");
+        CheckArg.isNonNegative(batchDelayMillis, "batchDelayMillis");
         this.delegate = delegate;
         this.clusteringService = clusteringService;
+        if (batchDelayMillis > 0) {
+            CheckArg.isNotNull(batchingService, "batchingService");
+            CheckArg.isPositive(batchMaxChanges, "batchMaxChanges");
+            this.batcher = new Batcher(batchingService, batchDelayMillis, batchMaxChanges, statistics);
+        } else {
+            this.batcher = null;
+        }
     }
 
     @Override
@@ -84,7 +172,10 @@ public final class ClusteredChangeBus extends MessageConsumer<ChangeSet> impleme
         delegate.start();
 
         // register with the clustering service
+        clusteringService.addPayloadCodec(CHANGE_SET_CODEC);
+        clusteringService.addPayloadCodec(ChangeSetBatch.CODEC);
         clusteringService.addConsumer(this);
+        clusteringService.addConsumer(batchConsumer);
     }
 
     @Override
@@ -94,6 +185,10 @@ public final class ClusteredChangeBus extends MessageConsumer<ChangeSet> impleme
 
     @Override
     public synchronized void shutdown() {
+        if (batcher != null) {
+            // send the change sets which are still waiting ...
+            batcher.flush();
+        }
         delegate.shutdown();
     }
 
@@ -102,6 +197,10 @@ public final class ClusteredChangeBus extends MessageConsumer<ChangeSet> impleme
         if (changeSet == null) {
             return; // do nothing
         }
+        if (batcher != null) {
+            batcher.add(changeSet);
+            return;
+        }
         if (!clusteringService.multipleMembersInCluster()) {
             // We are in clustered mode, but there is only one participant in the cluster (us).
             // So short-circuit the cluster and just notify the local observers ...
@@ -155,4 +254,92 @@ public final class ClusteredChangeBus extends MessageConsumer<ChangeSet> impleme
     public boolean unregister( ChangeSetListener listener ) {
         return delegate.unregister(listener);
     }
+
+    /**
+     * Collects the change sets made in this process and sends them in batches. All change sets go through the batcher in the order
+     * in which they were made, and batches are sent while holding the batcher's lock, so the change sets are always sent in order.
+     */
+    @ThreadSafe
+    private final class Batcher implements Runnable {
+        private final ScheduledExecutorService batchingService;
+        private final long delayMillis;
+        private final int maxChanges;
+        private final RepositoryStatistics statistics;
+        @GuardedBy( "this" )
+        private List<ChangeSet> changeSets = new ArrayList<>();
+        @GuardedBy( "this" )
+        private long[] addedNanos = new long[16];
+        @GuardedBy( "this" )
+        private int changeCount;
+
+        protected Batcher( ScheduledExecutorService batchingService,
+                           long delayMillis,
+                           int maxChanges,
+                           RepositoryStatistics statistics ) {
+            this.batchingService = batchingService;
+            this.delayMillis = delayMillis;
+            this.maxChanges = maxChanges;
+            this.statistics = statistics;
+        }
+
+        protected synchronized void add( ChangeSet changeSet ) {
+            int index = changeSets.size();
+            if (index == addedNanos.length) {
+                long[] expanded = new long[index * 2];
+                System.arraycopy(addedNanos, 0, expanded, 0, index);
+                addedNanos = expanded;
+            }
+            addedNanos[index] = System.nanoTime();
+            changeSets.add(changeSet);
+            changeCount += Math.max(1, changeSet.size());
+            if (changeCount >= maxChanges) {
+                flush();
+            } else if (index == 0) {
+                // this is the first change set of a new batch ...
+                batchingService.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                LOGGER.error(e, BusI18n.errorSendingChangeSetBatch, clusteringService.toString());
+            }
+        }
+
+        protected synchronized void flush() {
+            if (changeSets.isEmpty()) {
+                return;
+            }
+            List<ChangeSet> batch = changeSets;
+            int size = batch.size();
+            long now = System.nanoTime();
+            changeSets = new ArrayList<>();
+            changeCount = 0;
+
+            if (!clusteringService.multipleMembersInCluster()) {
+                // there is only one member in the cluster (us), so just notify the local observers ...
+                for (ChangeSet changeSet : batch) {
+                    consume(changeSet);
+                }
+            } else if (size == 1) {
+                logSendOperation(batch.get(0));
+                clusteringService.sendMessage(batch.get(0));
+            } else {
+                for (ChangeSet changeSet : batch) {
+                    logSendOperation(changeSet);
+                }
+                clusteringService.sendMessage(new ChangeSetBatch(batch));
+            }
+
+            if (statistics != null) {
+                statistics.increment(ValueMetric.CLUSTER_MESSAGES_SAVED, size - 1);
+                for (int i = 0; i != size; ++i) {
+                    statistics.set(ValueMetric.CLUSTER_BATCHING_DELAY, TimeUnit.NANOSECONDS.toMicros(now - addedNanos[i]));
+                }
+            }
+        }
+    }
 }
@@ -15,17 +15,17 @@
  */
 package org.modeshape.jcr.bus;
 
-import org.modeshape.common.collection.ring.SingleProducerCursor;
+import org.modeshape.common.collection.ring.MultiProducerCursor;
 import org.modeshape.common.collection.ring.WaitStrategy;
 import org.modeshape.jcr.RepositoryStatistics;
 import org.modeshape.jcr.api.monitor.ValueMetric;
 
 /**
- * An extension to the {@link SingleProducerCursor} cursor which adds some functionality required by the repository.
+ * An extension to the {@link MultiProducerCursor} cursor which adds some functionality required by the repository.
  * 
  * @author Horia Chiorean (hchiorea@redhat.com)
  */
-public final class RepositoryCursor extends SingleProducerCursor {
+public final class RepositoryCursor extends MultiProducerCursor {
 
     private final RepositoryStatistics statistics;
 
@@ -38,18 +38,29 @@ public final class RepositoryCursor extends SingleProducerCursor {
     public boolean publish( long position ) {
         boolean result = super.publish(position);
         if (result && statistics != null) {
-            // the cursor has successfully published `position` positions which is now the header
-            long positionOfSlowestConsumer = super.positionOfSlowestConsumer();
-            int bufferSize = getBufferSize();
-            long stillToBeProcessedBySlowestConsumer = positionOfSlowestConsumer > position ?
-                                                       bufferSize - positionOfSlowestConsumer + position :
-                                                       position - positionOfSlowestConsumer;
-            assert stillToBeProcessedBySlowestConsumer >= 0;
-            statistics.set(ValueMetric.EVENT_QUEUE_SIZE, stillToBeProcessedBySlowestConsumer);
-            long availablePositions = bufferSize - stillToBeProcessedBySlowestConsumer;
-            assert availablePositions >= 0;
-            statistics.set(ValueMetric.EVENT_BUFFER_AVAILABILITY, availablePositions);             
+            recordStatistics(position);
         }
         return result;
     }
+
+    @Override
+    public boolean publish( long lowPosition,
+                            long highPosition ) {
+        boolean result = super.publish(lowPosition, highPosition);
+        if (result && statistics != null) {
+            recordStatistics(highPosition);
+        }
+        return result;
+    }
+
+    private void recordStatistics( long position ) {
+        // the cursor has successfully published `position` positions which is now the header; other producers may be publishing
+        // concurrently, so the position of the slowest consumer is only approximate ...
+        long positionOfSlowestConsumer = super.positionOfSlowestConsumer();
+        int bufferSize = getBufferSize();
+        long stillToBeProcessedBySlowestConsumer = Math.max(0L, Math.min(bufferSize, position - positionOfSlowestConsumer));
+        statistics.set(ValueMetric.EVENT_QUEUE_SIZE, stillToBeProcessedBySlowestConsumer);
+        long availablePositions = bufferSize - stillToBeProcessedBySlowestConsumer;
+        statistics.set(ValueMetric.EVENT_BUFFER_AVAILABILITY, availablePositions);
+    }
 }
@@ -26,6 +26,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.transaction.SystemException;
 import org.modeshape.common.SystemFailureException;
 import org.modeshape.common.collection.Collections;
 import org.modeshape.common.i18n.I18n;
@@ -50,6 +51,7 @@ import org.modeshape.jcr.cache.change.RecordingChanges;
 import org.modeshape.jcr.cache.change.RepositoryMetadataChanged;
 import org.modeshape.jcr.cache.change.WorkspaceAdded;
 import org.modeshape.jcr.cache.change.WorkspaceRemoved;
+import org.modeshape.jcr.cache.document.CachedNodeMap;
 import org.modeshape.jcr.cache.document.DocumentOptimizer;
 import org.modeshape.jcr.cache.document.DocumentStore;
 import org.modeshape.jcr.cache.document.DocumentTranslator;
@@ -58,6 +60,7 @@ import org.modeshape.jcr.cache.document.LocalDocumentStore.DocumentOperationResu
 import org.modeshape.jcr.cache.document.ReadOnlySessionCache;
 import org.modeshape.jcr.cache.document.TransactionalWorkspaceCaches;
 import org.modeshape.jcr.cache.document.WorkspaceCache;
+import org.modeshape.jcr.cache.document.WorkspaceCacheStatistics;
 import org.modeshape.jcr.cache.document.WritableSessionCache;
 import org.modeshape.jcr.federation.FederatedDocumentStore;
 import org.modeshape.jcr.locking.LockingService;
@@ -71,7 +74,6 @@ import org.modeshape.schematic.SchematicEntry;
 import org.modeshape.schematic.document.Document;
 import org.modeshape.schematic.document.EditableArray;
 import org.modeshape.schematic.document.EditableDocument;
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 
 /**
  *
@@ -124,6 +126,9 @@ public class RepositoryCache {
     private volatile boolean isHoldingClusterLock = false;
     private final RepositoryFeaturesDetector repositoryFeaturesDetector;
     private final int workspaceCacheSize;
+    private final long workspaceCacheSizeInBytes;
+    private final CachedNodeMap.EvictionPolicy workspaceCacheEvictionPolicy;
+    private final WorkspaceCacheStatistics workspaceCacheStatistics = new WorkspaceCacheStatistics();
 
     public RepositoryCache( ExecutionContext context,
                             DocumentStore documentStore,
@@ -151,6 +156,10 @@ public class RepositoryCache {
         this.upgrades = upgradeFunctions;
         this.workspaceCacheSize = configuration.getWorkspaceCacheSize();
         CheckArg.isPositive(workspaceCacheSize, "workspaceCacheSize");
+        this.workspaceCacheSizeInBytes = configuration.getWorkspaceCacheSizeInBytes();
+        CheckArg.isNonNegative(workspaceCacheSizeInBytes, "workspaceCacheSizeInBytes");
+        this.workspaceCacheEvictionPolicy = CachedNodeMap.EvictionPolicy.fromLiteral(
+                configuration.getWorkspaceCacheEvictionPolicy());
         
         // if we're running in a cluster, try to acquire a global cluster lock to perform initialization or to force multiple 
         // nodes to wait for the one performing the initialization
@@ -521,6 +530,25 @@ public class RepositoryCache {
         return minimumStringLengthForBinaryStorage.get();
     }
 
+    /**
+     * Get the hit, miss and eviction counters of all the workspace caches.
+     *
+     * @return the statistics; never null
+     */
+    public WorkspaceCacheStatistics getWorkspaceCacheStatistics() {
+        return workspaceCacheStatistics;
+    }
+
+    /**
+     * Get the total weight of all the workspace caches, which is either the number of cached nodes or the estimated number of
+     * bytes of their documents, depending on how the caches are bounded.
+     *
+     * @return the total weight of the workspace caches
+     */
+    public long getWorkspaceCacheWeight() {
+        return workspaceCachesByName.values().stream().mapToLong(WorkspaceCache::getCacheWeight).sum();
+    }
+
     protected void refreshRepositoryMetadata( boolean update ) {
         final String systemMetadataKeyStr = this.systemMetadataKey.toString();
         final boolean accessControlEnabled = this.accessControlEnabled.get();
@@ -824,7 +852,8 @@ public class RepositoryCache {
     }
     
     protected ConcurrentMap<NodeKey, CachedNode> cacheForWorkspace() {
-        return new ConcurrentLinkedHashMap.Builder<NodeKey, CachedNode>().maximumWeightedCapacity(workspaceCacheSize).build();
+        return new CachedNodeMap(workspaceCacheSize, workspaceCacheSizeInBytes, workspaceCacheEvictionPolicy,
+                                 workspaceCacheStatistics);
     }
 
     public final DocumentTranslator getDocumentTranslator() {
@@ -973,6 +1002,22 @@ public class RepositoryCache {
         return workspace(workspaceName);
     }
 
+    /**
+     * Determine whether the calling thread is associated with a transaction. The state of a transaction, such as the
+     * transactional workspace caches and the connections of the persistent store, is bound to the thread of the transaction, so
+     * work which is to see that state must not be handed over to other threads.
+     *
+     * @return true if the calling thread is associated with a transaction, or if that cannot be determined
+     * @since 5.1
+     */
+    public boolean isInTransaction() {
+        try {
+            return repositoryEnvironment.getTransactions().isCurrentlyInTransaction();
+        } catch (SystemException e) {
+            return true;
+        }
+    }
+
     /**
      * Creates a new workspace in the repository coupled with external document
      * store.
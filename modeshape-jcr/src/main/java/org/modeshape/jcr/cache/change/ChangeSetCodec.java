@@ -0,0 +1,1057 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.change;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.modeshape.common.annotation.NotThreadSafe;
+import org.modeshape.common.util.StringUtil;
+import org.modeshape.jcr.api.value.DateTime;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.Path.Segment;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.jcr.value.basic.BasicEmptyProperty;
+import org.modeshape.jcr.value.basic.BasicMultiValueProperty;
+import org.modeshape.jcr.value.basic.BasicName;
+import org.modeshape.jcr.value.basic.BasicPath;
+import org.modeshape.jcr.value.basic.BasicPathSegment;
+import org.modeshape.jcr.value.basic.BasicSingleValueProperty;
+import org.modeshape.jcr.value.basic.ChildPath;
+import org.modeshape.jcr.value.basic.IdentifierPath;
+import org.modeshape.jcr.value.basic.IdentifierPathSegment;
+import org.modeshape.jcr.value.basic.ModeShapeDateTime;
+import org.modeshape.jcr.value.basic.NodeKeyReference;
+import org.modeshape.jcr.value.basic.RootPath;
+
+/**
+ * A compact, versioned binary format for {@link RecordingChanges change sets}, which is used instead of Java serialization when
+ * change sets are sent to the other members of a cluster or written to a journal.
+ * <p>
+ * Strings such as namespace URIs and user IDs, as well as {@link Name names}, {@link Path paths} and {@link NodeKey node keys}
+ * are written only the first time they appear in a {@link Writer}; subsequent occurrences refer to the first one by its index in
+ * a dictionary. Paths are written as a reference to their parent path plus their last segment, so the paths of the nodes in a
+ * subtree share all of their ancestors. Node identifiers and binary keys are written as raw bytes where possible, and property
+ * values of the standard types are written with a type tag; any other value (or change) is written with Java serialization.
+ * </p>
+ * <p>
+ * Several change sets can be written to the same {@link Writer} (and read from the same {@link Reader}), in which case they
+ * share the dictionaries. Writers and readers are not thread-safe.
+ * </p>
+ *
+ * @since 5.1
+ */
+public final class ChangeSetCodec {
+
+    /**
+     * The version of the format written by this codec.
+     */
+    public static final byte VERSION = 1;
+
+    private static final int NULL_REF = 0;
+    private static final int NEW_REF = 1;
+    private static final int FIRST_REF = 2;
+
+    private static final byte PATH_ROOT = 0;
+    private static final byte PATH_CHILD = 1;
+    private static final byte PATH_IDENTIFIER = 2;
+    private static final byte PATH_RELATIVE = 3;
+
+    private static final byte ID_STRING = 0;
+    private static final byte ID_UUID = 1;
+
+    private static final byte PROPERTY_EMPTY = 0;
+    private static final byte PROPERTY_SINGLE = 1;
+    private static final byte PROPERTY_MULTIPLE = 2;
+    private static final byte PROPERTY_NULL = 3;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_STRING = 1;
+    private static final byte VALUE_LONG = 2;
+    private static final byte VALUE_DOUBLE = 3;
+    private static final byte VALUE_TRUE = 4;
+    private static final byte VALUE_FALSE = 5;
+    private static final byte VALUE_DECIMAL = 6;
+    private static final byte VALUE_DATE = 7;
+    private static final byte VALUE_NAME = 8;
+    private static final byte VALUE_PATH = 9;
+    private static final byte VALUE_REFERENCE = 10;
+    private static final byte VALUE_URI = 11;
+    private static final byte VALUE_SERIALIZED = 127;
+
+    private static final byte NODE_ADDED = 1;
+    private static final byte NODE_CHANGED = 2;
+    private static final byte NODE_MOVED = 3;
+    private static final byte NODE_REMOVED = 4;
+    private static final byte NODE_RENAMED = 5;
+    private static final byte NODE_REORDERED = 6;
+    private static final byte NODE_SEQUENCED = 7;
+    private static final byte NODE_SEQUENCING_FAILURE = 8;
+    private static final byte PROPERTY_ADDED = 9;
+    private static final byte PROPERTY_CHANGED = 10;
+    private static final byte PROPERTY_REMOVED = 11;
+    private static final byte WORKSPACE_ADDED = 12;
+    private static final byte WORKSPACE_REMOVED = 13;
+    private static final byte REPOSITORY_METADATA_CHANGED = 14;
+    private static final byte BINARY_VALUE_USED = 15;
+    private static final byte BINARY_VALUE_UNUSED = 16;
+    private static final byte CHANGE_SERIALIZED = 127;
+
+    private ChangeSetCodec() {
+    }
+
+    /**
+     * Determine whether the supplied change set can be written by this codec. Only the {@link RecordingChanges} created by the
+     * repository can be, since other implementations would not be read back as instances of the same class.
+     *
+     * @param changeSet the change set; may be null
+     * @return true if the change set can be written, or false otherwise
+     */
+    public static boolean canEncode( ChangeSet changeSet ) {
+        return changeSet instanceof RecordingChanges;
+    }
+
+    /**
+     * Write a single change set.
+     *
+     * @param changeSet the change set; may not be null and must be {@link #canEncode(ChangeSet) supported}
+     * @return the encoded change set; never null
+     * @throws IOException if a value could not be serialized
+     */
+    public static byte[] encode( ChangeSet changeSet ) throws IOException {
+        return new Writer().writeChangeSet(changeSet).toByteArray();
+    }
+
+    /**
+     * Read a single change set written with {@link #encode(ChangeSet)}.
+     *
+     * @param data the encoded change set; may not be null
+     * @return the change set; never null
+     * @throws IOException if the data is not valid or was written by a newer version of the format
+     */
+    public static ChangeSet decode( byte[] data ) throws IOException {
+        return new Reader(data).readChangeSet();
+    }
+
+    /**
+     * Writes change sets and other values into a growing byte array. The {@link ChangeSetCodec#VERSION version} of the format is
+     * written first.
+     */
+    @NotThreadSafe
+    public static final class Writer {
+        private byte[] buffer = new byte[1024];
+        private int position;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Name, Integer> names = new HashMap<>();
+        private final Map<Path, Integer> paths = new HashMap<>();
+        private final Map<NodeKey, Integer> keys = new HashMap<>();
+
+        public Writer() {
+            writeByte(VERSION);
+        }
+
+        /**
+         * Get a copy of the bytes written so far.
+         *
+         * @return the bytes; never null
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        public Writer writeChangeSet( ChangeSet changeSet ) throws IOException {
+            assert canEncode(changeSet);
+            writeUuid(changeSet.getUUID());
+            writeString(changeSet.getSessionId());
+            writeString(changeSet.getProcessKey());
+            writeString(changeSet.getRepositoryKey());
+            writeString(changeSet.getWorkspaceName());
+            writeString(changeSet.getJournalId());
+            writeString(changeSet.getUserId());
+            writeDate(changeSet.getTimestamp());
+            Map<String, String> userData = changeSet.getUserData();
+            writeVarLong(userData.size());
+            for (Map.Entry<String, String> entry : userData.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+            Set<NodeKey> changedNodes = changeSet.changedNodes();
+            writeVarLong(changedNodes.size());
+            for (NodeKey key : changedNodes) {
+                writeNodeKey(key);
+            }
+            writeBinaryKeys(changeSet.usedBinaries());
+            writeBinaryKeys(changeSet.unusedBinaries());
+            // The number of changes may change while iterating, so write a terminator instead of the size ...
+            for (Change change : changeSet) {
+                writeChange(change);
+            }
+            writeByte((byte)0);
+            return this;
+        }
+
+        private void writeChange( Change change ) throws IOException {
+            if (change instanceof NodeAdded) {
+                NodeAdded added = (NodeAdded)change;
+                writeNodeChange(NODE_ADDED, added);
+                writeNodeKey(added.getParentKey());
+                writeVarLong(added.getProperties().size());
+                for (Property property : added.getProperties().values()) {
+                    writeProperty(property);
+                }
+            } else if (change instanceof PropertyChanged) {
+                PropertyChanged changed = (PropertyChanged)change;
+                writeNodeChange(PROPERTY_CHANGED, changed);
+                writeProperty(changed.getNewProperty());
+                writeProperty(changed.getOldProperty());
+            } else if (change instanceof PropertyAdded) {
+                PropertyAdded added = (PropertyAdded)change;
+                writeNodeChange(PROPERTY_ADDED, added);
+                writeProperty(added.getProperty());
+            } else if (change instanceof PropertyRemoved) {
+                PropertyRemoved removed = (PropertyRemoved)change;
+                writeNodeChange(PROPERTY_REMOVED, removed);
+                writeProperty(removed.getProperty());
+            } else if (change instanceof NodeChanged) {
+                writeNodeChange(NODE_CHANGED, (NodeChanged)change);
+            } else if (change instanceof NodeRemoved) {
+                NodeRemoved removed = (NodeRemoved)change;
+                writeNodeChange(NODE_REMOVED, removed);
+                writeNodeKey(removed.getParentKey());
+                writeName(removed.getParentPrimaryType());
+                writeNames(removed.getParentMixinTypes());
+            } else if (change instanceof NodeMoved) {
+                NodeMoved moved = (NodeMoved)change;
+                writeNodeChange(NODE_MOVED, moved);
+                writeNodeKey(moved.getOldParent());
+                writeNodeKey(moved.getNewParent());
+                writePath(moved.getOldPath());
+            } else if (change instanceof NodeRenamed) {
+                NodeRenamed renamed = (NodeRenamed)change;
+                writeNodeChange(NODE_RENAMED, renamed);
+                writeSegment(renamed.getOldSegment());
+            } else if (change instanceof NodeReordered) {
+                NodeReordered reordered = (NodeReordered)change;
+                writeNodeChange(NODE_REORDERED, reordered);
+                writeNodeKey(reordered.getParent());
+                writePath(reordered.getOldPath());
+                writePath(reordered.getReorderedBeforePath());
+            } else if (change instanceof NodeSequenced) {
+                NodeSequenced sequenced = (NodeSequenced)change;
+                writeSequencingChange(NODE_SEQUENCED, sequenced);
+                writeNodeKey(sequenced.getOutputNodeKey());
+                writePath(sequenced.getOutputNodePath());
+            } else if (change instanceof NodeSequencingFailure) {
+                NodeSequencingFailure failure = (NodeSequencingFailure)change;
+                writeSequencingChange(NODE_SEQUENCING_FAILURE, failure);
+                writeSerialized(failure.getCause());
+            } else if (change instanceof WorkspaceAdded) {
+                writeByte(WORKSPACE_ADDED);
+                writeString(((WorkspaceAdded)change).getWorkspaceName());
+            } else if (change instanceof WorkspaceRemoved) {
+                writeByte(WORKSPACE_REMOVED);
+                writeString(((WorkspaceRemoved)change).getWorkspaceName());
+            } else if (change instanceof RepositoryMetadataChanged) {
+                writeByte(REPOSITORY_METADATA_CHANGED);
+            } else if (change instanceof BinaryValueUsed) {
+                writeByte(BINARY_VALUE_USED);
+                writeBinaryKey(((BinaryValueUsed)change).getKey());
+            } else if (change instanceof BinaryValueUnused) {
+                writeByte(BINARY_VALUE_UNUSED);
+                writeBinaryKey(((BinaryValueUnused)change).getKey());
+            } else {
+                writeByte(CHANGE_SERIALIZED);
+                writeSerialized(change);
+            }
+        }
+
+        private void writeNodeChange( byte type,
+                                      AbstractNodeChange change ) {
+            writeByte(type);
+            writeNodeKey(change.getKey());
+            writePath(change.getPath());
+            writeName(change.getPrimaryType());
+            writeNames(change.getMixinTypes());
+        }
+
+        private void writeSequencingChange( byte type,
+                                            AbstractSequencingChange change ) {
+            writeNodeChange(type, change);
+            writeString(change.getOutputPath());
+            writeString(change.getUserId());
+            writeString(change.getSelectedPath());
+            writeString(change.getSequencerName());
+        }
+
+        private void writeNames( Set<Name> names ) {
+            writeVarLong(names.size());
+            for (Name name : names) {
+                writeName(name);
+            }
+        }
+
+        private void writeBinaryKeys( Set<BinaryKey> binaryKeys ) {
+            writeVarLong(binaryKeys.size());
+            for (BinaryKey binaryKey : binaryKeys) {
+                writeBinaryKey(binaryKey);
+            }
+        }
+
+        private void writeBinaryKey( BinaryKey binaryKey ) {
+            String hex = binaryKey.toString();
+            byte[] bytes = hex.length() % 2 == 0 ? fromHex(hex) : null;
+            if (bytes != null) {
+                writeByte(ID_UUID);
+                writeVarLong(bytes.length);
+                writeBytes(bytes);
+            } else {
+                writeByte(ID_STRING);
+                writeUtf(hex);
+            }
+        }
+
+        private void writeProperty( Property property ) throws IOException {
+            if (property == null) {
+                writeByte(PROPERTY_NULL);
+                return;
+            }
+            if (property.isEmpty()) {
+                writeByte(PROPERTY_EMPTY);
+                writeName(property.getName());
+            } else if (property.isSingle()) {
+                writeByte(PROPERTY_SINGLE);
+                writeName(property.getName());
+                writeValue(property.getFirstValue());
+            } else {
+                writeByte(PROPERTY_MULTIPLE);
+                writeName(property.getName());
+                Object[] values = property.getValuesAsArray();
+                writeVarLong(values.length);
+                for (Object value : values) {
+                    writeValue(value);
+                }
+            }
+        }
+
+        private void writeValue( Object value ) throws IOException {
+            if (value == null) {
+                writeByte(VALUE_NULL);
+            } else if (value instanceof String) {
+                writeByte(VALUE_STRING);
+                writeUtf((String)value);
+            } else if (value instanceof Long) {
+                writeByte(VALUE_LONG);
+                writeVarLong(zigZag((Long)value));
+            } else if (value instanceof Double) {
+                writeByte(VALUE_DOUBLE);
+                writeLong(Double.doubleToRawLongBits((Double)value));
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean)value ? VALUE_TRUE : VALUE_FALSE);
+            } else if (value instanceof BigDecimal) {
+                writeByte(VALUE_DECIMAL);
+                writeUtf(value.toString());
+            } else if (value instanceof ModeShapeDateTime) {
+                writeByte(VALUE_DATE);
+                writeDate((DateTime)value);
+            } else if (value instanceof BasicName) {
+                writeByte(VALUE_NAME);
+                writeName((Name)value);
+            } else if (value instanceof Path && isWritable((Path)value)) {
+                writeByte(VALUE_PATH);
+                writePath((Path)value);
+            } else if (value.getClass() == NodeKeyReference.class) {
+                NodeKeyReference reference = (NodeKeyReference)value;
+                writeByte(VALUE_REFERENCE);
+                writeByte((byte)((reference.isWeak() ? 1 : 0) | (reference.isForeign() ? 2 : 0) | (reference.isSimple() ? 4 : 0)));
+                writeNodeKey(reference.getNodeKey());
+            } else if (value instanceof URI) {
+                writeByte(VALUE_URI);
+                writeUtf(value.toString());
+            } else {
+                writeByte(VALUE_SERIALIZED);
+                writeSerialized(value);
+            }
+        }
+
+        private void writeDate( DateTime date ) {
+            if (date == null) {
+                writeByte(VALUE_NULL);
+                return;
+            }
+            writeByte(VALUE_DATE);
+            writeVarLong(zigZag(date.getMillisecondsInUtc()));
+            writeString(date.getTimeZoneId());
+        }
+
+        private void writeSerialized( Object value ) throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (ObjectOutputStream stream = new ObjectOutputStream(output)) {
+                stream.writeObject(value);
+            }
+            byte[] bytes = output.toByteArray();
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void writeUuid( String uuid ) {
+            if (uuid != null && uuid.length() == 36 && isCanonicalUuid(uuid)) {
+                UUID value = UUID.fromString(uuid);
+                writeByte(ID_UUID);
+                writeLong(value.getMostSignificantBits());
+                writeLong(value.getLeastSignificantBits());
+            } else {
+                writeByte(ID_STRING);
+                writeString(uuid);
+            }
+        }
+
+        /**
+         * Write a node key. The source and workspace part of the key is written as a {@link #writeString(String) string}, and the
+         * identifier as a UUID if possible.
+         *
+         * @param key the key; may be null
+         */
+        public void writeNodeKey( NodeKey key ) {
+            if (writeReference(keys, key)) {
+                writeString(key.getSourceKey() + key.getWorkspaceKey());
+                writeUuid(key.getIdentifier());
+            }
+        }
+
+        /**
+         * Write a name, by writing its namespace URI and local name as {@link #writeString(String) strings}.
+         *
+         * @param name the name; may be null
+         */
+        public void writeName( Name name ) {
+            if (writeReference(names, name)) {
+                writeString(name.getNamespaceUri());
+                writeString(name.getLocalName());
+            }
+        }
+
+        /**
+         * Write a path. Absolute paths are written as a reference to their parent path followed by their last segment, and
+         * relative paths as a list of segments.
+         *
+         * @param path the path; may be null
+         */
+        public void writePath( Path path ) {
+            if (!writeReference(paths, path)) {
+                return;
+            }
+            if (path.isRoot()) {
+                writeByte(PATH_ROOT);
+            } else if (path.isIdentifier()) {
+                writeByte(PATH_IDENTIFIER);
+                writeName(path.getLastSegment().getName());
+            } else if (path.isAbsolute()) {
+                writeByte(PATH_CHILD);
+                writePath(path.getParent());
+                writeSegment(path.getLastSegment());
+            } else {
+                writeByte(PATH_RELATIVE);
+                writeVarLong(path.size());
+                for (Segment segment : path) {
+                    writeSegment(segment);
+                }
+            }
+        }
+
+        private void writeSegment( Segment segment ) {
+            writeName(segment.getName());
+            writeVarLong(segment.getIndex());
+        }
+
+        /**
+         * Write a string which is likely to appear more than once, such as an identifier or a namespace URI. Strings are only
+         * written the first time they appear, and referred to by their index after that.
+         *
+         * @param value the string; may be null
+         */
+        public void writeString( String value ) {
+            if (writeReference(strings, value)) {
+                writeUtf(value);
+            }
+        }
+
+        /**
+         * Write a string which is not likely to appear more than once.
+         *
+         * @param value the string; may not be null
+         */
+        public void writeUtf( String value ) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        /**
+         * Write a number using between 1 and 10 bytes, depending on its magnitude. The value is treated as unsigned, so negative
+         * numbers always use 10 bytes.
+         *
+         * @param value the value
+         */
+        public void writeVarLong( long value ) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte)value;
+        }
+
+        public void writeLong( long value ) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte)(value >>> shift);
+            }
+        }
+
+        public void writeByte( byte value ) {
+            ensureCapacity(1);
+            buffer[position++] = value;
+        }
+
+        private void writeBytes( byte[] bytes ) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        /**
+         * Write the reference to a value in the given dictionary.
+         *
+         * @return true if the value was added to the dictionary and must be written by the caller, or false otherwise
+         */
+        private <T> boolean writeReference( Map<T, Integer> dictionary,
+                                            T value ) {
+            if (value == null) {
+                writeVarLong(NULL_REF);
+                return false;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                writeVarLong(FIRST_REF + index);
+                return false;
+            }
+            dictionary.put(value, dictionary.size());
+            writeVarLong(NEW_REF);
+            return true;
+        }
+
+        private void ensureCapacity( int length ) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+    }
+
+    /**
+     * Reads change sets and other values written by a {@link Writer}.
+     */
+    @NotThreadSafe
+    public static final class Reader {
+        private final byte[] buffer;
+        private int position;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Name> names = new ArrayList<>();
+        private final List<Path> paths = new ArrayList<>();
+        private final List<NodeKey> keys = new ArrayList<>();
+
+        /**
+         * @param data the data written by a {@link Writer}; may not be null
+         * @throws IOException if the data was written by a newer version of the format
+         */
+        public Reader( byte[] data ) throws IOException {
+            this.buffer = data;
+            byte version = readByte();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported version of the change set format: " + version);
+            }
+        }
+
+        public ChangeSet readChangeSet() throws IOException {
+            String uuid = readUuid();
+            String sessionId = readString();
+            String processKey = readString();
+            String repositoryKey = readString();
+            String workspaceName = readString();
+            String journalId = readString();
+            RecordingChanges changes = new RecordingChanges(uuid, sessionId, processKey, repositoryKey, workspaceName, journalId);
+            String userId = readString();
+            DateTime timestamp = readDate();
+            int userDataSize = readCount();
+            Map<String, String> userData = userDataSize == 0 ? null : new LinkedHashMap<String, String>();
+            for (int i = 0; i != userDataSize; ++i) {
+                userData.put(readString(), readString());
+            }
+            changes.freeze(userId, userData, timestamp);
+            int changedNodeCount = readCount();
+            Set<NodeKey> changedNodes = new HashSet<>();
+            for (int i = 0; i != changedNodeCount; ++i) {
+                changedNodes.add(readNodeKey());
+            }
+            changes.setChangedNodes(changedNodes);
+            changes.restoreBinaryUsage(readBinaryKeys(), readBinaryKeys());
+            byte type;
+            while ((type = readByte()) != 0) {
+                changes.add(readChange(type));
+            }
+            return changes;
+        }
+
+        private Change readChange( byte type ) throws IOException {
+            switch (type) {
+                case NODE_ADDED: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    NodeKey parentKey = readNodeKey();
+                    int count = readCount();
+                    Map<Name, Property> properties = new HashMap<>();
+                    for (int i = 0; i != count; ++i) {
+                        Property property = readProperty();
+                        properties.put(property.getName(), property);
+                    }
+                    return new NodeAdded(key, parentKey, path, primaryType, mixinTypes, properties);
+                }
+                case PROPERTY_CHANGED: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    Property newProperty = readProperty();
+                    Property oldProperty = readProperty();
+                    return new PropertyChanged(key, primaryType, mixinTypes, path, newProperty, oldProperty);
+                }
+                case PROPERTY_ADDED: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    return new PropertyAdded(key, primaryType, mixinTypes, path, readProperty());
+                }
+                case PROPERTY_REMOVED: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    return new PropertyRemoved(key, primaryType, mixinTypes, path, readProperty());
+                }
+                case NODE_CHANGED: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    return new NodeChanged(key, path, primaryType, mixinTypes);
+                }
+                case NODE_REMOVED: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    NodeKey parentKey = readNodeKey();
+                    Name parentPrimaryType = readName();
+                    Set<Name> parentMixinTypes = readNames();
+                    return new NodeRemoved(key, parentKey, path, primaryType, mixinTypes, parentPrimaryType, parentMixinTypes);
+                }
+                case NODE_MOVED: {
+                    NodeKey key = readNodeKey();
+                    Path newPath = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    NodeKey oldParent = readNodeKey();
+                    NodeKey newParent = readNodeKey();
+                    Path oldPath = readPath();
+                    return new NodeMoved(key, primaryType, mixinTypes, oldParent, newParent, newPath, oldPath);
+                }
+                case NODE_RENAMED: {
+                    NodeKey key = readNodeKey();
+                    Path newPath = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    return new NodeRenamed(key, newPath, readSegment(), primaryType, mixinTypes);
+                }
+                case NODE_REORDERED: {
+                    NodeKey key = readNodeKey();
+                    Path newPath = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    NodeKey parent = readNodeKey();
+                    Path oldPath = readPath();
+                    Path reorderedBeforePath = readPath();
+                    return new NodeReordered(key, primaryType, mixinTypes, parent, newPath, oldPath, reorderedBeforePath);
+                }
+                case NODE_SEQUENCED: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    String outputPath = readString();
+                    String userId = readString();
+                    String selectedPath = readString();
+                    String sequencerName = readString();
+                    NodeKey outputNodeKey = readNodeKey();
+                    Path outputNodePath = readPath();
+                    return new NodeSequenced(key, path, primaryType, mixinTypes, outputNodeKey, outputNodePath, outputPath, userId,
+                                             selectedPath, sequencerName);
+                }
+                case NODE_SEQUENCING_FAILURE: {
+                    NodeKey key = readNodeKey();
+                    Path path = readPath();
+                    Name primaryType = readName();
+                    Set<Name> mixinTypes = readNames();
+                    String outputPath = readString();
+                    String userId = readString();
+                    String selectedPath = readString();
+                    String sequencerName = readString();
+                    Throwable cause = (Throwable)readSerialized();
+                    return new NodeSequencingFailure(key, path, primaryType, mixinTypes, outputPath, userId, selectedPath,
+                                                     sequencerName, cause);
+                }
+                case WORKSPACE_ADDED: {
+                    return new WorkspaceAdded(readString());
+                }
+                case WORKSPACE_REMOVED: {
+                    return new WorkspaceRemoved(readString());
+                }
+                case REPOSITORY_METADATA_CHANGED: {
+                    return new RepositoryMetadataChanged();
+                }
+                case BINARY_VALUE_USED: {
+                    return new BinaryValueUsed(readBinaryKey());
+                }
+                case BINARY_VALUE_UNUSED: {
+                    return new BinaryValueUnused(readBinaryKey());
+                }
+                case CHANGE_SERIALIZED: {
+                    return (Change)readSerialized();
+                }
+                default: {
+                    throw new IOException("Unknown type of change: " + type);
+                }
+            }
+        }
+
+        private Set<Name> readNames() {
+            int count = readCount();
+            if (count == 0) {
+                return Collections.emptySet();
+            }
+            Set<Name> result = new HashSet<>();
+            for (int i = 0; i != count; ++i) {
+                result.add(readName());
+            }
+            return result;
+        }
+
+        private Set<BinaryKey> readBinaryKeys() {
+            int count = readCount();
+            Set<BinaryKey> result = new HashSet<>();
+            for (int i = 0; i != count; ++i) {
+                result.add(readBinaryKey());
+            }
+            return result;
+        }
+
+        private BinaryKey readBinaryKey() {
+            if (readByte() == ID_UUID) {
+                int length = readCount();
+                return new BinaryKey(readBytes(length));
+            }
+            return new BinaryKey(readUtf());
+        }
+
+        private Property readProperty() throws IOException {
+            byte kind = readByte();
+            switch (kind) {
+                case PROPERTY_NULL: {
+                    return null;
+                }
+                case PROPERTY_EMPTY: {
+                    return new BasicEmptyProperty(readName());
+                }
+                case PROPERTY_SINGLE: {
+                    Name name = readName();
+                    return new BasicSingleValueProperty(name, readValue());
+                }
+                case PROPERTY_MULTIPLE: {
+                    Name name = readName();
+                    int count = readCount();
+                    List<Object> values = new ArrayList<>(count);
+                    for (int i = 0; i != count; ++i) {
+                        values.add(readValue());
+                    }
+                    return new BasicMultiValueProperty(name, values);
+                }
+                default: {
+                    throw new IOException("Unknown kind of property: " + kind);
+                }
+            }
+        }
+
+        private Object readValue() throws IOException {
+            byte type = readByte();
+            switch (type) {
+                case VALUE_NULL: {
+                    return null;
+                }
+                case VALUE_STRING: {
+                    return readUtf();
+                }
+                case VALUE_LONG: {
+                    return unZigZag(readVarLong());
+                }
+                case VALUE_DOUBLE: {
+                    return Double.longBitsToDouble(readLong());
+                }
+                case VALUE_TRUE: {
+                    return Boolean.TRUE;
+                }
+                case VALUE_FALSE: {
+                    return Boolean.FALSE;
+                }
+                case VALUE_DECIMAL: {
+                    return new BigDecimal(readUtf());
+                }
+                case VALUE_DATE: {
+                    return readDate();
+                }
+                case VALUE_NAME: {
+                    return readName();
+                }
+                case VALUE_PATH: {
+                    return readPath();
+                }
+                case VALUE_REFERENCE: {
+                    byte flags = readByte();
+                    return new NodeKeyReference(readNodeKey(), (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+                }
+                case VALUE_URI: {
+                    return URI.create(readUtf());
+                }
+                case VALUE_SERIALIZED: {
+                    return readSerialized();
+                }
+                default: {
+                    throw new IOException("Unknown type of value: " + type);
+                }
+            }
+        }
+
+        private DateTime readDate() {
+            if (readByte() == VALUE_NULL) {
+                return null;
+            }
+            long millis = unZigZag(readVarLong());
+            return new ModeShapeDateTime(millis, readString());
+        }
+
+        private Object readSerialized() throws IOException {
+            int length = readCount();
+            try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(buffer, position, length))) {
+                position += length;
+                return stream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private String readUuid() {
+            if (readByte() == ID_UUID) {
+                return new UUID(readLong(), readLong()).toString();
+            }
+            return readString();
+        }
+
+        public NodeKey readNodeKey() {
+            int ref = readCount();
+            if (ref == NULL_REF) {
+                return null;
+            }
+            if (ref != NEW_REF) {
+                return keys.get(ref - FIRST_REF);
+            }
+            NodeKey key = new NodeKey(readString() + readUuid());
+            keys.add(key);
+            return key;
+        }
+
+        public Name readName() {
+            int ref = readCount();
+            if (ref == NULL_REF) {
+                return null;
+            }
+            if (ref != NEW_REF) {
+                return names.get(ref - FIRST_REF);
+            }
+            Name name = new BasicName(readString(), readString());
+            names.add(name);
+            return name;
+        }
+
+        public Path readPath() {
+            int ref = readCount();
+            if (ref == NULL_REF) {
+                return null;
+            }
+            if (ref != NEW_REF) {
+                return paths.get(ref - FIRST_REF);
+            }
+            // Reserve the index of the path before reading its parent, since that was how the writer assigned the indexes ...
+            int index = paths.size();
+            paths.add(null);
+            Path path;
+            byte kind = readByte();
+            switch (kind) {
+                case PATH_ROOT: {
+                    path = RootPath.INSTANCE;
+                    break;
+                }
+                case PATH_IDENTIFIER: {
+                    path = new IdentifierPath(new IdentifierPathSegment(readName()));
+                    break;
+                }
+                case PATH_CHILD: {
+                    Path parent = readPath();
+                    path = new ChildPath(parent, readSegment());
+                    break;
+                }
+                default: {
+                    int count = readCount();
+                    List<Segment> segments = new ArrayList<>(count);
+                    for (int i = 0; i != count; ++i) {
+                        segments.add(readSegment());
+                    }
+                    path = new BasicPath(segments, false);
+                }
+            }
+            paths.set(index, path);
+            return path;
+        }
+
+        private Segment readSegment() {
+            Name name = readName();
+            return new BasicPathSegment(name, readCount());
+        }
+
+        public String readString() {
+            int ref = readCount();
+            if (ref == NULL_REF) {
+                return null;
+            }
+            if (ref != NEW_REF) {
+                return strings.get(ref - FIRST_REF);
+            }
+            String value = readUtf();
+            strings.add(value);
+            return value;
+        }
+
+        public String readUtf() {
+            int length = readCount();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        public long readVarLong() {
+            long value = 0L;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                value |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        public long readLong() {
+            long value = 0L;
+            for (int i = 0; i != 8; ++i) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        public byte readByte() {
+            return buffer[position++];
+        }
+
+        private int readCount() {
+            return (int)readVarLong();
+        }
+
+        private byte[] readBytes( int length ) {
+            byte[] result = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return result;
+        }
+    }
+
+    private static boolean isCanonicalUuid( String uuid ) {
+        try {
+            return UUID.fromString(uuid).toString().equals(uuid);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isWritable( Path path ) {
+        // Only the path implementations that are created when reading can be written, so that values are read as equal paths ...
+        return path instanceof RootPath || path instanceof ChildPath || path instanceof BasicPath || path instanceof IdentifierPath;
+    }
+
+    private static byte[] fromHex( String hex ) {
+        // The key must round-trip exactly, so only lower-case hexadecimal keys are written as bytes ...
+        for (int i = 0; i != hex.length(); ++i) {
+            char c = hex.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return null;
+            }
+        }
+        return StringUtil.fromHexString(hex);
+    }
+
+    private static long zigZag( long value ) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag( long value ) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
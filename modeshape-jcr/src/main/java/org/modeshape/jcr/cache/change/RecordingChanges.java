@@ -54,7 +54,7 @@ public class RecordingChanges implements Changes, ChangeSet {
     private final String journalId;
     private final String sessionId;
     private final Queue<Change> events = new ConcurrentLinkedQueue<Change>();
-    private final String uuid = UUID.randomUUID().toString();
+    private final String uuid;
     private Set<NodeKey> nodeKeys = Collections.emptySet();
     private Map<String, String> userData = Collections.emptyMap();
     private Set<BinaryKey> unusedBinaries = Collections.newSetFromMap(new ConcurrentHashMap<BinaryKey, Boolean>());
@@ -75,6 +75,19 @@ public class RecordingChanges implements Changes, ChangeSet {
                              String repositoryKey,
                              String workspaceName,
                              String journalId ) {
+        this(UUID.randomUUID().toString(), sessionId, processKey, repositoryKey, workspaceName, journalId);
+    }
+
+    /**
+     * Creates a change set with an existing identifier, which is used when the change set is read by the {@link ChangeSetCodec}.
+     */
+    RecordingChanges( String uuid,
+                      String sessionId,
+                      String processKey,
+                      String repositoryKey,
+                      String workspaceName,
+                      String journalId ) {
+        this.uuid = uuid;
         this.sessionId = sessionId;
         this.processKey = processKey;
         this.repositoryKey = repositoryKey;
@@ -238,6 +251,23 @@ public class RecordingChanges implements Changes, ChangeSet {
         usedBinaries.add(key);
     }
 
+    /**
+     * Add a change that was read by the {@link ChangeSetCodec}. The binary keys of such changes are not recorded, since those
+     * are {@link #restoreBinaryUsage(Set, Set) restored} separately.
+     */
+    void add( Change change ) {
+        events.add(change);
+    }
+
+    /**
+     * Restore the binary keys that were read by the {@link ChangeSetCodec}.
+     */
+    void restoreBinaryUsage( Set<BinaryKey> usedBinaries,
+                             Set<BinaryKey> unusedBinaries ) {
+        this.usedBinaries.addAll(usedBinaries);
+        this.unusedBinaries.addAll(unusedBinaries);
+    }
+
     @Override
     public int size() {
         return events.size();
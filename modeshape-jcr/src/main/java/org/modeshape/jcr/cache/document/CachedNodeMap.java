@@ -0,0 +1,334 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.schematic.document.Binary;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.BsonReader;
+import org.modeshape.schematic.internal.document.CompactDocument;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.Weighers;
+
+/**
+ * The bounded, concurrent map which holds the nodes of a {@link WorkspaceCache}.
+ * <p>
+ * The map is bounded either by its number of entries or by the estimated number of bytes of the documents of its
+ * {@link LazyCachedNode nodes}, so that a node with thousands of properties takes up more of the cache than an empty folder.
+ * When the map is full, its {@link EvictionPolicy} decides which node makes room for a new one.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public final class CachedNodeMap extends AbstractMap<NodeKey, CachedNode> implements ConcurrentMap<NodeKey, CachedNode> {
+
+    /**
+     * The policies which decide what happens when a new node is added to a full cache.
+     */
+    public enum EvictionPolicy {
+        /**
+         * The least recently used nodes are evicted to make room for the new node.
+         */
+        LRU("lru"),
+        /**
+         * The new node is only admitted if it has been requested more frequently than the least recently used node, which is
+         * then evicted to make room for it. This keeps frequently used nodes in the cache when they would otherwise be 
+         * flushed by a scan over many nodes which are used only once.
+         */
+        TINY_LFU("tinylfu");
+
+        private final String literal;
+
+        EvictionPolicy( String literal ) {
+            this.literal = literal;
+        }
+
+        /**
+         * Returns the literal used to configure this policy.
+         *
+         * @return the literal; never {@code null}
+         */
+        public String literal() {
+            return literal;
+        }
+
+        /**
+         * Returns the policy with the given literal.
+         *
+         * @param literal the literal, in any case; may not be null
+         * @return the policy; never {@code null}
+         * @throws IllegalArgumentException if there is no policy with the given literal
+         */
+        public static EvictionPolicy fromLiteral( String literal ) {
+            for (EvictionPolicy policy : values()) {
+                if (policy.literal.equalsIgnoreCase(literal)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown workspace cache eviction policy: " + literal);
+        }
+    }
+
+    /**
+     * The number of bytes a node is assumed to use when sizing the frequency sketch of a cache bounded by bytes.
+     */
+    private static final int AVERAGE_NODE_SIZE = 1024;
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int MAP_ENTRY_SIZE = 48;
+
+    private final ConcurrentLinkedHashMap<NodeKey, CachedNode> nodes;
+    private final boolean weighBytes;
+    private final EvictionPolicy policy;
+    private final FrequencySketch sketch;
+    private final WorkspaceCacheStatistics statistics;
+
+    /**
+     * Creates a new map.
+     *
+     * @param maximumEntries the maximum number of nodes; only used if {@code maximumBytes} is not positive
+     * @param maximumBytes the maximum estimated number of bytes of the documents of all the nodes; if not positive, the map is
+     * bounded by {@code maximumEntries} instead
+     * @param policy the eviction policy; may not be null
+     * @param statistics the statistics which should be updated by the map; may not be null
+     */
+    public CachedNodeMap( int maximumEntries,
+                          long maximumBytes,
+                          EvictionPolicy policy,
+                          WorkspaceCacheStatistics statistics ) {
+        this.weighBytes = maximumBytes > 0;
+        long capacity = weighBytes ? maximumBytes : maximumEntries;
+        EntryWeigher<NodeKey, CachedNode> weigher = weighBytes ? (key, node) -> weigh(node) : Weighers.entrySingleton();
+        this.nodes = new ConcurrentLinkedHashMap.Builder<NodeKey, CachedNode>().maximumWeightedCapacity(capacity)
+                                                                               .weigher(weigher)
+                                                                               .listener((key, node) -> statistics.evicted())
+                                                                               .build();
+        this.policy = policy;
+        this.sketch = policy == EvictionPolicy.TINY_LFU ?
+                      new FrequencySketch(weighBytes ? maximumBytes / AVERAGE_NODE_SIZE : maximumEntries) : null;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the current weight of this map, which is either the number of nodes or the estimated number of bytes of their
+     * documents.
+     *
+     * @return the weight of all the nodes in the map
+     */
+    public long weightedSize() {
+        return nodes.weightedSize();
+    }
+
+    /**
+     * Returns the maximum weight of this map.
+     *
+     * @return the capacity of the map
+     */
+    public long capacity() {
+        return nodes.capacity();
+    }
+
+    @Override
+    public CachedNode get( Object key ) {
+        if (sketch != null) {
+            sketch.increment(key.hashCode());
+        }
+        CachedNode node = nodes.get(key);
+        if (node != null) {
+            statistics.hit();
+        } else {
+            statistics.miss();
+        }
+        return node;
+    }
+
+    @Override
+    public CachedNode put( NodeKey key, CachedNode node ) {
+        if (!admit(key, node)) {
+            return null;
+        }
+        return nodes.put(key, node);
+    }
+
+    @Override
+    public CachedNode putIfAbsent( NodeKey key, CachedNode node ) {
+        if (!admit(key, node)) {
+            return nodes.get(key);
+        }
+        return nodes.putIfAbsent(key, node);
+    }
+
+    @Override
+    public CachedNode replace( NodeKey key, CachedNode node ) {
+        return nodes.replace(key, node);
+    }
+
+    @Override
+    public boolean replace( NodeKey key, CachedNode oldNode, CachedNode newNode ) {
+        return nodes.replace(key, oldNode, newNode);
+    }
+
+    @Override
+    public CachedNode remove( Object key ) {
+        return nodes.remove(key);
+    }
+
+    @Override
+    public boolean remove( Object key, Object node ) {
+        return nodes.remove(key, node);
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        return nodes.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+    }
+
+    @Override
+    public Set<NodeKey> keySet() {
+        return nodes.keySet();
+    }
+
+    @Override
+    public Collection<CachedNode> values() {
+        return nodes.values();
+    }
+
+    @Override
+    public Set<Entry<NodeKey, CachedNode>> entrySet() {
+        return nodes.entrySet();
+    }
+
+    private boolean admit( NodeKey key, CachedNode node ) {
+        if (sketch == null || nodes.containsKey(key)) {
+            return true;
+        }
+        long weight = weighBytes ? weigh(node) : 1;
+        if (nodes.weightedSize() + weight <= nodes.capacity()) {
+            // there's still room, so there's no need to evict anything
+            return true;
+        }
+        Iterator<NodeKey> victims = nodes.ascendingKeySetWithLimit(1).iterator();
+        if (!victims.hasNext()) {
+            return true;
+        }
+        if (sketch.frequency(key.hashCode()) > sketch.frequency(victims.next().hashCode())) {
+            return true;
+        }
+        statistics.rejected();
+        return false;
+    }
+
+    /**
+     * Estimates the number of bytes of heap used by the document of a node. The estimate is only computed once for each node.
+     *
+     * @param node the node; may not be null
+     * @return the estimated size, at least 1
+     */
+    static int weigh( CachedNode node ) {
+        if (!(node instanceof LazyCachedNode)) {
+            return AVERAGE_NODE_SIZE;
+        }
+        return ((LazyCachedNode)node).weight();
+    }
+
+    /**
+     * Estimates the number of bytes of heap used by the document of a node. A document which is a view over its BSON
+     * representation is weighed by the length of that representation, so that none of its fields has to be decoded; the size
+     * of any other document is estimated from its fields.
+     *
+     * @param document the document; may not be null
+     * @return the estimated size, at least 1
+     */
+    static int weigh( Document document ) {
+        int length = BsonReader.lengthOfView(document);
+        long size = length >= 0 ? OBJECT_OVERHEAD + length : estimateSize(document);
+        return (int)Math.max(1, Math.min(Integer.MAX_VALUE, size));
+    }
+
+    /**
+     * Estimates the number of bytes of heap used by a document value.
+     *
+     * @param value the value; may be null
+     * @return the estimated size in bytes
+     */
+    static long estimateSize( Object value ) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return OBJECT_OVERHEAD + 24 + 2L * ((String)value).length();
+        }
+        if (value instanceof List) {
+            // arrays are lists
+            List<?> list = (List<?>)value;
+            long size = OBJECT_OVERHEAD + 24 + (long)REFERENCE_SIZE * list.size();
+            for (Object element : list) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        if (value instanceof CompactDocument) {
+            // two arrays with one reference per name and value, where the (interned) names are shared by all documents
+            Document document = (Document)value;
+            long size = 3 * OBJECT_OVERHEAD + 2 * 16 + 2L * REFERENCE_SIZE * document.size();
+            for (Document.Field field : document.fields()) {
+                size += estimateSize(field.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Document) {
+            Document document = (Document)value;
+            long size = OBJECT_OVERHEAD + 48;
+            for (Document.Field field : document.fields()) {
+                size += MAP_ENTRY_SIZE + estimateSize(field.getName()) + estimateSize(field.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Binary) {
+            return OBJECT_OVERHEAD + 24 + ((Binary)value).length();
+        }
+        if (value instanceof Map) {
+            long size = OBJECT_OVERHEAD + 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                size += MAP_ENTRY_SIZE + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        // numbers, booleans, dates and other small values
+        return OBJECT_OVERHEAD + 8;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.SchematicEntry;
+import org.modeshape.schematic.document.Binary;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableArray;
+import org.modeshape.schematic.document.EditableDocument;
+
+/**
+ * An index over the blocks of child references of a node whose children have been split into multiple blocks by the
+ * {@link DocumentOptimizer}, which allows finding the blocks that may contain a child with a given name or key without reading
+ * all of the blocks.
+ * <p>
+ * The index is stored in a separate document, whose key is recorded in the {@link DocumentConstants#BLOCK_INDEX blockIndex}
+ * field of the node's {@link DocumentConstants#CHILDREN_INFO children info}. For each block (except for the node's document,
+ * which is always read), the index contains the key of the block and a Bloom filter over the names and keys of the children in
+ * that block, in the same order as the blocks are chained together:
+ *
+ * <pre>
+ * { "blocks" : [ { "key" : "&lt;block key&gt;", "filter" : &lt;binary&gt; }, ... ] }
+ * </pre>
+ *
+ * The filters may report blocks that don't contain a child (roughly one percent of the blocks are read unnecessarily), but never
+ * miss a block that does. The index is created by the {@link DocumentOptimizer} whenever it changes the blocks of a node, and the
+ * filters of the blocks are updated by the {@link DocumentTranslator} whenever the children in a block are changed.
+ * </p>
+ */
+@Immutable
+final class ChildrenBlockIndex {
+
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASH_COUNT = 4;
+
+    /**
+     * The index used to denote that there is no (usable) index.
+     */
+    static final ChildrenBlockIndex NONE = new ChildrenBlockIndex(new String[0], new byte[0][]);
+
+    private final String[] blockKeys;
+    private final byte[][] filters;
+
+    private ChildrenBlockIndex( String[] blockKeys,
+                                byte[][] filters ) {
+        this.blockKeys = blockKeys;
+        this.filters = filters;
+    }
+
+    /**
+     * Read the index from its document.
+     *
+     * @param indexDoc the document of the index; may not be null
+     * @return the index; never null
+     */
+    static ChildrenBlockIndex from( Document indexDoc ) {
+        List<?> blocks = indexDoc.getArray(DocumentConstants.BLOCKS);
+        int count = blocks != null ? blocks.size() : 0;
+        String[] blockKeys = new String[count];
+        byte[][] filters = new byte[count][];
+        for (int i = 0; i != count; ++i) {
+            Document block = (Document)blocks.get(i);
+            blockKeys[i] = block.getString(DocumentConstants.KEY);
+            Binary filter = block.getBinary(DocumentConstants.FILTER);
+            filters[i] = filter != null ? filter.getBytes() : null;
+        }
+        return new ChildrenBlockIndex(blockKeys, filters);
+    }
+
+    /**
+     * Get the number of blocks in this index.
+     *
+     * @return the number of blocks
+     */
+    int blockCount() {
+        return blockKeys.length;
+    }
+
+    /**
+     * Get the key of a block.
+     *
+     * @param block the index of the block
+     * @return the key of the block; never null
+     */
+    String blockKey( int block ) {
+        return blockKeys[block];
+    }
+
+    /**
+     * Determine whether a block may contain a child with the given name or key.
+     *
+     * @param block the index of the block
+     * @param nameOrKey the string form of the child's name or key; may not be null
+     * @return false if the block definitely does not contain such a child, or true if it may
+     */
+    boolean mightContain( int block,
+                          String nameOrKey ) {
+        byte[] filter = filters[block];
+        if (filter == null || filter.length == 0) {
+            return true;
+        }
+        long hash = hash(nameOrKey);
+        int bits = filter.length * 8;
+        for (int i = 0; i != HASH_COUNT; ++i) {
+            int bit = bit(hash, i, bits);
+            if ((filter[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the Bloom filter over the names and keys of the given children.
+     *
+     * @param children the child reference documents of a block; may be null
+     * @return the filter; never null
+     */
+    static byte[] filterFor( List<?> children ) {
+        int entries = children != null ? children.size() * 2 : 0;
+        byte[] filter = new byte[Math.max(8, (entries * BITS_PER_ENTRY + 7) / 8)];
+        if (children == null) {
+            return filter;
+        }
+        int bits = filter.length * 8;
+        for (Object child : children) {
+            if (child instanceof Document) {
+                Document childRef = (Document)child;
+                add(filter, bits, childRef.getString(DocumentConstants.NAME));
+                add(filter, bits, childRef.getString(DocumentConstants.KEY));
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Create or replace the index for the blocks of the given node, or remove the index if the children of the node are no longer
+     * split into multiple blocks. This must be called whenever the blocks of a node have been added, removed or reordered.
+     *
+     * @param documentStore the document store; may not be null
+     * @param key the key of the node; may not be null
+     * @param document the node's document; may not be null
+     */
+    static void rebuild( DocumentStore documentStore,
+                         NodeKey key,
+                         EditableDocument document ) {
+        EditableDocument info = document.getDocument(DocumentConstants.CHILDREN_INFO);
+        if (info == null) {
+            return;
+        }
+        String indexKey = info.getString(DocumentConstants.BLOCK_INDEX);
+        String blockKey = info.getString(DocumentConstants.NEXT_BLOCK);
+        if (blockKey == null) {
+            // The children are no longer split into multiple blocks ...
+            if (indexKey != null) {
+                info.remove(DocumentConstants.BLOCK_INDEX);
+                documentStore.remove(indexKey);
+            }
+            return;
+        }
+
+        EditableArray blocks = Schematic.newArray();
+        while (blockKey != null) {
+            SchematicEntry blockEntry = documentStore.get(blockKey);
+            if (blockEntry == null) {
+                break;
+            }
+            Document block = blockEntry.content();
+            blocks.add(Schematic.newDocument(DocumentConstants.KEY, blockKey, DocumentConstants.FILTER,
+                                             new Binary(filterFor(block.getArray(DocumentConstants.CHILDREN)))));
+            Document blockInfo = block.getDocument(DocumentConstants.CHILDREN_INFO);
+            blockKey = blockInfo != null ? blockInfo.getString(DocumentConstants.NEXT_BLOCK) : null;
+        }
+        if (indexKey == null) {
+            indexKey = key.withRandomId().toString();
+            info.setString(DocumentConstants.BLOCK_INDEX, indexKey);
+        }
+        documentStore.localStore().put(indexKey, Schematic.newDocument(DocumentConstants.BLOCKS, blocks));
+    }
+
+    /**
+     * Update the filters of the blocks whose children have changed. If one of the blocks can't be found in the index, the index
+     * is dropped, so that the blocks are scanned until the index is rebuilt by the next optimization.
+     *
+     * @param documentStore the document store; may not be null
+     * @param document the node's document; may not be null
+     * @param changedBlocks the child reference documents of each changed block, keyed by the key of the block; may not be null
+     */
+    static void update( DocumentStore documentStore,
+                        EditableDocument document,
+                        Map<String, List<?>> changedBlocks ) {
+        EditableDocument info = document.getDocument(DocumentConstants.CHILDREN_INFO);
+        String indexKey = info != null ? info.getString(DocumentConstants.BLOCK_INDEX) : null;
+        if (indexKey == null) {
+            return;
+        }
+        EditableDocument indexDoc = documentStore.edit(indexKey, false);
+        EditableArray blocks = indexDoc != null ? indexDoc.getArray(DocumentConstants.BLOCKS) : null;
+        int updated = 0;
+        if (blocks != null) {
+            for (int i = 0; i != blocks.size() && updated != changedBlocks.size(); ++i) {
+                EditableDocument block = (EditableDocument)blocks.get(i);
+                String blockKey = block.getString(DocumentConstants.KEY);
+                if (changedBlocks.containsKey(blockKey)) {
+                    block.setBinary(DocumentConstants.FILTER, Bson.BinaryType.GENERAL, filterFor(changedBlocks.get(blockKey)));
+                    ++updated;
+                }
+            }
+        }
+        if (updated != changedBlocks.size()) {
+            info.remove(DocumentConstants.BLOCK_INDEX);
+            if (indexDoc != null) {
+                documentStore.remove(indexKey);
+            }
+        }
+    }
+
+    private static void add( byte[] filter,
+                             int bits,
+                             String value ) {
+        if (value == null) {
+            return;
+        }
+        long hash = hash(value);
+        for (int i = 0; i != HASH_COUNT; ++i) {
+            int bit = bit(hash, i, bits);
+            filter[bit >>> 3] |= 1 << (bit & 7);
+        }
+    }
+
+    private static int bit( long hash,
+                            int i,
+                            int bits ) {
+        // double hashing, using the two halves of the 64-bit hash ...
+        int combined = (int)hash + i * (int)(hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % bits;
+    }
+
+    private static long hash( String value ) {
+        // the finalization step of MurmurHash3, which spreads the (persistent) String hash code over 64 bits ...
+        long h = value.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "blocks: " + Arrays.toString(blockKeys);
+    }
+}
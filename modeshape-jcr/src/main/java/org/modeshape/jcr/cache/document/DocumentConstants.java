@@ -35,6 +35,9 @@ public interface DocumentConstants {
     public static final String BLOCK_SIZE = "blockSize";
     public static final String NEXT_BLOCK = "nextBlock";
     public static final String LAST_BLOCK = "lastBlock";
+    public static final String BLOCK_INDEX = "blockIndex";
+    public static final String BLOCKS = "blocks";
+    public static final String FILTER = "filter";
     public static final String NAME = "name";
     public static final String KEY = "key";
     public static final String REFERRERS = "referrers";
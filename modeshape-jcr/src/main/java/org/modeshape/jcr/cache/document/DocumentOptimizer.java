@@ -66,6 +66,10 @@ public class DocumentOptimizer implements DocumentConstants {
             // There are no children to optimize
             return false;
         }
+        if (isChildrenBlock(document)) {
+            // This is one of the additional blocks of another node, which is optimized along with that node's document ...
+            return false;
+        }
 
         // Get the children info
         EditableDocument info = document.getDocument(CHILDREN_INFO);
@@ -126,9 +130,25 @@ public class DocumentOptimizer implements DocumentConstants {
                 }
             }
         }
+        info = document.getDocument(CHILDREN_INFO);
+        if (changed || info != null && info.containsField(NEXT_BLOCK) && !info.containsField(BLOCK_INDEX)) {
+            // The blocks have changed (or were created before blocks were indexed), so (re)build the index of the blocks ...
+            ChildrenBlockIndex.rebuild(documentStore, key, document);
+            changed = true;
+        }
         return changed;
     }
 
+    /**
+     * Determine whether the given document is one of the additional blocks of children of a node, rather than a node's document.
+     *
+     * @param document the document; may not be null
+     * @return true if the document only holds a block of children, or false otherwise
+     */
+    protected boolean isChildrenBlock( Document document ) {
+        return !document.containsField(KEY) && !document.containsField(PARENT) && !document.containsField(PROPERTIES);
+    }
+
     protected EditableDocument edit( String key ) {
         return documentStore.lockDocuments(key) ? documentStore.edit(key, false) : null;
     }
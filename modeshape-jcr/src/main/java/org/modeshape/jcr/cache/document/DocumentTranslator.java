@@ -76,6 +76,7 @@ import org.modeshape.schematic.document.Document.Field;
 import org.modeshape.schematic.document.EditableArray;
 import org.modeshape.schematic.document.EditableDocument;
 import org.modeshape.schematic.document.Null;
+import org.modeshape.schematic.internal.document.CompactDocument;
 
 /**
  * A utility class that encapsulates all the logic for reading from and writing to {@link Document} instances.
@@ -705,6 +706,8 @@ public class DocumentTranslator implements DocumentConstants {
         EditableDocument doc = document;
         EditableDocument lastDoc = document;
         String lastDocKey = null;
+        // the children of the blocks which have changed, so that the index of the blocks can be updated ...
+        Map<String, List<?>> changedBlocks = new HashMap<>();
         if (changedChildren != null && !changedChildren.isEmpty()) {
             Map<NodeKey, Insertions> insertionsByBeforeKey = changedChildren.getInsertionsByBeforeKey();
 
@@ -725,8 +728,12 @@ public class DocumentTranslator implements DocumentConstants {
                 }
 
                 // Change the existing children ...
+                int pending = insertionsByBeforeKey.size() + removals.size();
                 long blockCount = insertChildren(doc, insertionsByBeforeKey, removals, newNames);
                 newTotalSize += blockCount;
+                if (doc != document && (pending != insertionsByBeforeKey.size() + removals.size() || !newNames.isEmpty())) {
+                    changedBlocks.put(lastDocKey, doc.getArray(CHILDREN));
+                }
 
                 // Look at the 'childrenInfo' document for info about the next block of children ...
                 SchematicEntry nextEntry = null;
@@ -779,6 +786,7 @@ public class DocumentTranslator implements DocumentConstants {
                 // We've written to at least one other document, so update the block size ...
                 EditableDocument lastDocInfo = lastDoc.getOrCreateDocument(CHILDREN_INFO);
                 lastDocInfo.setNumber(BLOCK_SIZE, lastChildren.size());
+                changedBlocks.put(lastKey != null ? lastKey : lastDocKey, lastChildren);
             }
 
             // And update the total size and last block on the starting document ...
@@ -791,6 +799,10 @@ public class DocumentTranslator implements DocumentConstants {
                 childInfo.setString(LAST_BLOCK, lastKey);
             }
         }
+
+        if (!changedBlocks.isEmpty()) {
+            ChildrenBlockIndex.update(documentStore, document, changedBlocks);
+        }
     }
 
     protected long insertChildren( EditableDocument document,
@@ -929,7 +941,8 @@ public class DocumentTranslator implements DocumentConstants {
             long blockSize = childrenInfo.getLong(BLOCK_SIZE, 0L);
             String nextBlockKey = childrenInfo.getString(NEXT_BLOCK);
             String lastBlockKey = childrenInfo.getString(LAST_BLOCK, nextBlockKey);
-            return new ChildReferencesInfo(totalSize, blockSize, nextBlockKey, lastBlockKey);
+            String blockIndexKey = childrenInfo.getString(BLOCK_INDEX);
+            return new ChildReferencesInfo(totalSize, blockSize, nextBlockKey, lastBlockKey, blockIndexKey);
         }
         return null;
     }
@@ -940,20 +953,31 @@ public class DocumentTranslator implements DocumentConstants {
         public final long blockSize;
         public final String nextKey;
         public final String lastKey;
+        public final String blockIndexKey;
 
         public ChildReferencesInfo( long totalSize,
                                     long blockSize,
                                     String nextKey,
                                     String lastKey ) {
+            this(totalSize, blockSize, nextKey, lastKey, null);
+        }
+
+        public ChildReferencesInfo( long totalSize,
+                                    long blockSize,
+                                    String nextKey,
+                                    String lastKey,
+                                    String blockIndexKey ) {
             this.totalSize = totalSize;
             this.blockSize = blockSize;
             this.nextKey = nextKey;
             this.lastKey = lastKey;
+            this.blockIndexKey = blockIndexKey;
         }
 
         @Override
         public String toString() {
-            return "totalSize: " + totalSize + "; blockSize: " + blockSize + "; nextKey: " + nextKey + "; lastKey: " + lastKey;
+            return "totalSize: " + totalSize + "; blockSize: " + blockSize + "; nextKey: " + nextKey + "; lastKey: " + lastKey
+                   + "; blockIndexKey: " + blockIndexKey;
         }
     }
 
@@ -1504,6 +1528,18 @@ public class DocumentTranslator implements DocumentConstants {
         return document.getBoolean(CACHEABLE_FIELD, true);
     }
 
+    /**
+     * Returns the form of a node's document that should be held in the workspace caches. This is an immutable copy which stores
+     * its fields in flat arrays with shared (interned) field names, and therefore uses far less memory than the documents read
+     * from the document store. Editing the copy always operates on a mutable copy of it.
+     *
+     * @param document the node's document; may not be null
+     * @return the document to cache; never null
+     */
+    public Document cacheableDocument( Document document ) {
+        return CompactDocument.copyOf(document);
+    }
+
     protected void addFederatedSegment( EditableDocument document,
                                         String externalNodeKey,
                                         String name ) {
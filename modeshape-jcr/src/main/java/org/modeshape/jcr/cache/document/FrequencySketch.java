@@ -0,0 +1,121 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+/**
+ * A probabilistic, fixed-size structure which estimates how often keys have been seen recently, used by the
+ * {@link CachedNodeMap.EvictionPolicy#TINY_LFU TinyLFU} policy of the workspace caches to decide whether a new node is worth
+ * evicting another one for.
+ * <p>
+ * This is a count-min sketch with four 4-bit counters per key, so frequencies saturate at 15. Once the number of recorded
+ * events reaches a sample size proportional to the number of counters, all the counters are halved, so that the frequencies
+ * reflect recent usage rather than the entire history.
+ * </p>
+ * <p>
+ * The sketch is not synchronized: concurrent updates may occasionally be lost, which only makes the estimates slightly less
+ * accurate.
+ * </p>
+ *
+ * @since 5.1
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_TABLE_SIZE = 1 << 24;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * Creates a new sketch.
+     *
+     * @param expectedEntries the approximate number of entries of the cache which uses the sketch; must be positive
+     */
+    FrequencySketch( long expectedEntries ) {
+        int tableSize = (int)Math.min(MAX_TABLE_SIZE, Math.max(16, expectedEntries));
+        tableSize = Integer.highestOneBit(tableSize - 1) << 1;
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    /**
+     * Records an occurrence of a key.
+     *
+     * @param hashCode the hash code of the key
+     */
+    void increment( int hashCode ) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated number of recent occurrences of a key.
+     *
+     * @param hashCode the hash code of the key
+     * @return the estimated frequency, between 0 and 15
+     */
+    int frequency( int hashCode ) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int count = (int)((table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt( int index, int counter ) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        long value = table[index];
+        if ((value & mask) != mask) {
+            table[index] = value + (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    private int indexOf( int hash, int i ) {
+        long value = (hash + SEEDS[i]) * SEEDS[i];
+        value += value >>> 32;
+        return (int)value & tableMask;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size /= 2;
+    }
+
+    private static int spread( int hashCode ) {
+        int hash = ((hashCode >>> 16) ^ hashCode) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
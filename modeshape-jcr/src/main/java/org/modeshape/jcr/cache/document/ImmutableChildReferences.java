@@ -496,7 +496,11 @@ public class ImmutableChildReferences {
         protected final WorkspaceCache cache;
         protected final long totalSize;
         protected final boolean allowsSNS;
+        private final String lastKey;
+        private final String blockIndexKey;
         private Segment firstSegment;
+        private volatile ChildrenBlockIndex blockIndex;
+        private Segment[] indexedSegments;
 
         public Segmented( WorkspaceCache cache,
                           ChildReferences firstSegment,
@@ -506,6 +510,54 @@ public class ImmutableChildReferences {
             this.totalSize = info.totalSize;
             this.firstSegment = new Segment(firstSegment, info.nextKey, allowsSNS);
             this.allowsSNS = allowsSNS;
+            this.lastKey = info.lastKey;
+            this.blockIndexKey = info.blockIndexKey;
+        }
+
+        /**
+         * Get the index of the blocks, which is used to find the blocks that may contain a particular child without scanning all
+         * the blocks. The index can only be used if there are no transient changes in the context.
+         *
+         * @param context the context; may be null
+         * @return the index, or null if the blocks have to be scanned
+         */
+        @SuppressWarnings( "synthetic-access" )
+        private ChildrenBlockIndex blockIndex( Context context ) {
+            if (blockIndexKey == null || context != null && context.changes() != null) {
+                return null;
+            }
+            ChildrenBlockIndex index = this.blockIndex;
+            if (index == null) {
+                Document indexDoc = cache.blockFor(blockIndexKey);
+                index = indexDoc != null ? ChildrenBlockIndex.from(indexDoc) : ChildrenBlockIndex.NONE;
+                int count = index.blockCount();
+                if (count == 0 || !index.blockKey(0).equals(firstSegment.nextKey) || !index.blockKey(count - 1).equals(lastKey)) {
+                    // The index doesn't match the chain of blocks, so don't use it ...
+                    index = ChildrenBlockIndex.NONE;
+                }
+                this.blockIndex = index;
+            }
+            return index != ChildrenBlockIndex.NONE ? index : null;
+        }
+
+        private Segment indexedSegment( ChildrenBlockIndex index,
+                                        int block ) {
+            Segment[] segments = this.indexedSegments;
+            if (segments == null) {
+                segments = new Segment[index.blockCount()];
+                this.indexedSegments = segments;
+            }
+            Segment segment = segments[block];
+            if (segment == null) {
+                String blockKey = index.blockKey(block);
+                Document blockDoc = cache.blockFor(blockKey);
+                if (blockDoc == null) {
+                    throw new DocumentNotFoundException(blockKey);
+                }
+                segment = new Segment(cache.translator().getChildReferencesFromBlock(blockDoc, allowsSNS), null, allowsSNS);
+                segments[block] = segment;
+            }
+            return segment;
         }
 
         @Override
@@ -521,6 +573,17 @@ public class ImmutableChildReferences {
         @Override
         public int getChildCount( Name name ) {
             int result = 0;
+            ChildrenBlockIndex index = blockIndex(null);
+            if (index != null) {
+                result = firstSegment.getReferences().getChildCount(name);
+                String nameStr = cache.translator().getStringFactory().create(name);
+                for (int i = 0; i != index.blockCount(); ++i) {
+                    if (index.mightContain(i, nameStr)) {
+                        result += indexedSegment(index, i).getReferences().getChildCount(name);
+                    }
+                }
+                return result;
+            }
             Segment segment = this.firstSegment;
             while (segment != null) {
                 result += segment.getReferences().getChildCount(name);
@@ -534,6 +597,17 @@ public class ImmutableChildReferences {
                                         int snsIndex,
                                         Context context ) {
             ChildReference result = null;
+            ChildrenBlockIndex index = blockIndex(context);
+            if (index != null) {
+                result = firstSegment.getReferences().getChild(name, snsIndex, context);
+                String nameStr = cache.translator().getStringFactory().create(name);
+                for (int i = 0; result == null && i != index.blockCount(); ++i) {
+                    if (index.mightContain(i, nameStr)) {
+                        result = indexedSegment(index, i).getReferences().getChild(name, snsIndex, context);
+                    }
+                }
+                return result;
+            }
             Segment segment = this.firstSegment;
             while (segment != null) {
                 result = segment.getReferences().getChild(name, snsIndex, context);
@@ -547,6 +621,19 @@ public class ImmutableChildReferences {
 
         @Override
         public boolean hasChild( NodeKey key ) {
+            ChildrenBlockIndex index = blockIndex(null);
+            if (index != null) {
+                if (firstSegment.getReferences().hasChild(key)) {
+                    return true;
+                }
+                String keyStr = key.toString();
+                for (int i = 0; i != index.blockCount(); ++i) {
+                    if (index.mightContain(i, keyStr) && indexedSegment(index, i).getReferences().hasChild(key)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
             Segment segment = this.firstSegment;
             while (segment != null) {
                 if (segment.getReferences().hasChild(key)) {
@@ -566,6 +653,17 @@ public class ImmutableChildReferences {
         public ChildReference getChild( NodeKey key,
                                         Context context ) {
             ChildReference result = null;
+            ChildrenBlockIndex index = blockIndex(context);
+            if (index != null) {
+                result = firstSegment.getReferences().getChild(key, context);
+                String keyStr = key.toString();
+                for (int i = 0; result == null && i != index.blockCount(); ++i) {
+                    if (index.mightContain(i, keyStr)) {
+                        result = indexedSegment(index, i).getReferences().getChild(key, context);
+                    }
+                }
+                return result;
+            }
             Segment segment = this.firstSegment;
             while (segment != null) {
                 result = segment.getReferences().getChild(key, context);
@@ -82,6 +82,7 @@ public class LazyCachedNode implements CachedNode {
     private transient volatile ChildReferences childReferences;
     private transient volatile Boolean hasACL = null;
     private transient final AtomicReference<Map<String, Set<String>>> permissions = new AtomicReference<>();
+    private transient volatile int weight;
 
     public LazyCachedNode( NodeKey key,
                            Document document ) {
@@ -105,6 +106,20 @@ public class LazyCachedNode implements CachedNode {
         return document;
     }
 
+    /**
+     * Get the estimated number of bytes of heap used by the document of this node, which is computed the first time it is
+     * needed.
+     *
+     * @return the estimated size, at least 1
+     * @see CachedNodeMap#weigh(Document)
+     */
+    final int weight() {
+        if (weight == 0) {
+            weight = CachedNodeMap.weigh(document());
+        }
+        return weight;
+    }
+
     @Override
     public NodeKey getParentKey( NodeCache cache ) {
         if (parent == null) {
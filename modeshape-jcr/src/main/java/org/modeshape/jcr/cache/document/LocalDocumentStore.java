@@ -19,10 +19,14 @@ package org.modeshape.jcr.cache.document;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import javax.transaction.NotSupportedException;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
@@ -47,8 +51,12 @@ import org.modeshape.schematic.document.EditableDocument;
  */
 public class LocalDocumentStore implements DocumentStore {
 
+    private static final int KEYS_BATCH_SIZE = 1000;
+
     private final SchematicDb database;
     private final RepositoryEnvironment repoEnv;
+    private final OffHeapDocumentCache documentCache;
+    private final ConcurrentMap<String, Set<String>> keysChangedByTransaction;
     private String localSourceKey;
 
     /**
@@ -58,10 +66,25 @@ public class LocalDocumentStore implements DocumentStore {
      * @param repoEnv a {@link RepositoryEnvironment} instance which must be non-null
      */
     public LocalDocumentStore(SchematicDb database, RepositoryEnvironment repoEnv) {
+        this(database, repoEnv, null);
+    }
+
+    /**
+     * Creates a new local store with the given database, which uses a second-level cache for the documents read outside of
+     * transactions.
+     *
+     * @param database a {@link SchematicDb} instance which must be non-null.
+     * @param repoEnv a {@link RepositoryEnvironment} instance which must be non-null
+     * @param documentCache an {@link OffHeapDocumentCache} instance; may be null if documents should always be read from the
+     * database
+     */
+    public LocalDocumentStore(SchematicDb database, RepositoryEnvironment repoEnv, OffHeapDocumentCache documentCache) {
         CheckArg.isNotNull(database, "database");
         this.database = database;
         CheckArg.isNotNull(repoEnv, "repoEnv");
         this.repoEnv = repoEnv;
+        this.documentCache = documentCache;
+        this.keysChangedByTransaction = documentCache != null ? new ConcurrentHashMap<>() : null;
     }
 
     @Override
@@ -78,6 +101,28 @@ public class LocalDocumentStore implements DocumentStore {
         return database.keys();    
     }
 
+    /**
+     * Iterates over all the keys which are held by this store in batches, without loading all of them in memory at once.
+     *
+     * @param batchSize the maximum number of keys in a batch; must be positive
+     * @param consumer a {@link Consumer} which is called for each batch of keys; may not be null
+     * @see SchematicDb#keysInBatches(int, Consumer)
+     */
+    public void keysInBatches( int batchSize, Consumer<List<String>> consumer ) {
+        database.keysInBatches(batchSize, consumer);
+    }
+
+    /**
+     * Iterates over all the entries which are held by this store in batches, without loading all of them in memory at once.
+     *
+     * @param batchSize the maximum number of entries in a batch; must be positive
+     * @param consumer a {@link Consumer} which is called for each batch of entries; may not be null
+     * @see SchematicDb#entriesInBatches(int, Consumer)
+     */
+    public void entriesInBatches( int batchSize, Consumer<List<SchematicEntry>> consumer ) {
+        database.entriesInBatches(batchSize, consumer);
+    }
+
     @Override
     public List<SchematicEntry> load(Collection<String> keys) {
         return database.load(keys);
@@ -85,12 +130,36 @@ public class LocalDocumentStore implements DocumentStore {
     
     @Override
     public SchematicEntry get( String key ) {
-        return database.getEntry(key);
+        if (documentCache == null || repoEnv.getTransactions().currentTransaction() != null) {
+            // within a transaction the database may return documents which haven't been committed yet
+            return database.getEntry(key);
+        }
+        Document cached = documentCache.get(key);
+        if (cached != null) {
+            return () -> cached;
+        }
+        long stamp = documentCache.stamp(key);
+        Document doc = database.get(key);
+        if (doc == null) {
+            return null;
+        }
+        documentCache.put(key, doc, stamp);
+        return () -> doc;
+    }
+
+    /**
+     * Returns the second-level cache used by this store.
+     *
+     * @return the {@link OffHeapDocumentCache} instance, or {@code null} if this store doesn't use a second-level cache
+     */
+    public OffHeapDocumentCache documentCache() {
+        return documentCache;
     }
 
     @Override
     public SchematicEntry storeIfAbsent(String key,
                                         Document document) {
+        invalidate(key);
         return database.putIfAbsent(key, document);
     }
 
@@ -119,6 +188,7 @@ public class LocalDocumentStore implements DocumentStore {
     @RequiresTransaction
     public void put( String key,
                      Document document ) {
+        invalidate(key);
         database.put(key, document);
     }
 
@@ -129,11 +199,13 @@ public class LocalDocumentStore implements DocumentStore {
      */
     @RequiresTransaction
     public void put( Document entryDocument ) {
+        invalidate(SchematicEntry.id(entryDocument));
         database.putEntry(entryDocument);
     }
 
     @Override
     public boolean remove( String key ) {
+        invalidate(key);
         return database.remove(key);
     }
 
@@ -145,6 +217,9 @@ public class LocalDocumentStore implements DocumentStore {
     @RequiresTransaction    
     public void removeAll() {
         database.removeAll();
+        if (documentCache != null) {
+            documentCache.clear();
+        }
     }
 
     @Override
@@ -175,9 +250,47 @@ public class LocalDocumentStore implements DocumentStore {
     @Override
     public EditableDocument edit( String key,
                                   boolean createIfMissing ) {
+        invalidate(key);
         return database.editContent(key, createIfMissing);
     }
 
+    /**
+     * Removes a document which is about to be changed from the second-level cache. Because other threads may read (and cache)
+     * the committed version of the document before the change is committed, the document is removed again when the current
+     * transaction completes.
+     *
+     * @param key the key of the document
+     */
+    private void invalidate( String key ) {
+        if (documentCache == null || key == null) {
+            return;
+        }
+        documentCache.invalidate(key);
+        Transactions.Transaction tx = repoEnv.getTransactions().currentTransaction();
+        if (tx == null) {
+            return;
+        }
+        String txId = tx.id();
+        if (txId.isEmpty()) {
+            // a rollback-only transaction, whose changes are never committed
+            return;
+        }
+        Set<String> keys = keysChangedByTransaction.computeIfAbsent(txId, id -> {
+            tx.uponCompletion(() -> {
+                Set<String> changedKeys = keysChangedByTransaction.remove(id);
+                if (changedKeys != null) {
+                    synchronized (changedKeys) {
+                        changedKeys.forEach(documentCache::invalidate);
+                    }
+                }
+            });
+            return new HashSet<>();
+        });
+        synchronized (keys) {
+            keys.add(key);
+        }
+    }
+
     @Override
     public LocalDocumentStore localStore() {
         return this;
@@ -247,7 +360,7 @@ public class LocalDocumentStore implements DocumentStore {
      */
     public DocumentOperationResults performOnEachDocument( BiFunction<String, EditableDocument, Boolean> operation ) {
         DocumentOperationResults results = new DocumentOperationResults();
-        database.keys().forEach(key -> 
+        database.keysInBatches(KEYS_BATCH_SIZE, keys -> keys.forEach(key ->
             runInTransaction(() -> {
                 // We operate upon each document within a transaction ...
                 try {
@@ -263,7 +376,7 @@ public class LocalDocumentStore implements DocumentStore {
                     results.recordFailure();
                 }
                 return null;
-            }, 1, key));
+            }, 1, key)));
         return results;
     }
 
@@ -0,0 +1,439 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetListener;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+
+/**
+ * A second-level cache of serialized (BSON) documents, which {@link LocalDocumentStore} uses to avoid reading documents from
+ * the {@link org.modeshape.schematic.SchematicDb} when they are not found in a workspace cache.
+ * <p>
+ * The documents are stored outside of the Java heap, in direct {@link ByteBuffer}s, so that even a very large cache does not
+ * increase the work of the garbage collector. The cache is split into segments, each having its own lock and buffer. Each
+ * segment is a circular log: new documents are appended after the most recently written one and, once the buffer is full,
+ * the oldest documents are evicted to make room for new ones. Only a small on-heap index, from keys to offsets, is kept for each
+ * segment.
+ * </p>
+ * <p>
+ * The cache is kept consistent by {@link #invalidate(String) invalidating} keys when documents are written and again when the
+ * writing transaction completes, and by listening for the {@link ChangeSet changes} published on the change bus. To make
+ * sure a reader does not put a document that has been changed while it was read from the database, readers must obtain a
+ * {@link #stamp(String) stamp} before reading the document and pass it to {@link #put(String, Document, long)}.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public final class OffHeapDocumentCache implements ChangeSetListener {
+
+    private static final Logger LOGGER = Logger.getLogger(OffHeapDocumentCache.class);
+
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+    private static final int MIN_SEGMENT_SIZE = 1 << 20;
+    private static final int MAX_SEGMENTS = 16;
+    /**
+     * The size of the header of each entry: the total length of the entry and the length of the key
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final long capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a new cache, allocating all of its off-heap memory.
+     *
+     * @param capacity the number of bytes of off-heap memory to use; must be positive
+     */
+    public OffHeapDocumentCache( long capacity ) {
+        CheckArg.isPositive(capacity, "capacity");
+        long segmentCount = Math.max((capacity + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE,
+                                     Math.min(MAX_SEGMENTS, capacity / MIN_SEGMENT_SIZE));
+        int count = Integer.highestOneBit((int)Math.max(1, segmentCount));
+        if (count < segmentCount) {
+            count <<= 1;
+        }
+        int segmentSize = (int)Math.min(MAX_SEGMENT_SIZE, capacity / count);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment(segmentSize);
+        }
+        this.segmentMask = count - 1;
+        this.capacity = (long)segmentSize * count;
+        LOGGER.debug("Allocated {0} bytes of off-heap memory for the document cache, in {1} segments", this.capacity, count);
+    }
+
+    /**
+     * Returns a stamp which must be passed to {@link #put(String, Document, long)} when putting the document with the given key
+     * into the cache. The stamp must be obtained <em>before</em> the document is read from the database.
+     *
+     * @param key the key of the document; may not be null
+     * @return the stamp
+     */
+    public long stamp( String key ) {
+        return segmentFor(key).stamp();
+    }
+
+    /**
+     * Returns the cached document with the given key.
+     *
+     * @param key the key of the document; may not be null
+     * @return a new copy of the document, or {@code null} if the document is not cached
+     */
+    public Document get( String key ) {
+        byte[] bytes = segmentFor(key).get(key);
+        if (bytes == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        try {
+            return Bson.read(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            // should never happen since the bytes were written by us
+            LOGGER.debug(e, "Cannot read the cached document {0}", key);
+            invalidate(key);
+            return null;
+        }
+    }
+
+    /**
+     * Puts a document into the cache, unless any document which maps to the same segment has been invalidated since the given
+     * stamp was obtained.
+     *
+     * @param key the key of the document; may not be null
+     * @param document the document; may not be null
+     * @param stamp the value returned by {@link #stamp(String)} before the document was read
+     * @return {@code true} if the document was cached, {@code false} otherwise
+     */
+    public boolean put( String key, Document document, long stamp ) {
+        Segment segment = segmentFor(key);
+        if (segment.stamp() != stamp) {
+            // don't bother serializing the document
+            return false;
+        }
+        byte[] value;
+        try {
+            value = Bson.write(document);
+        } catch (IOException e) {
+            LOGGER.debug(e, "Cannot serialize the document {0}", key);
+            return false;
+        }
+        return segment.put(key, value, stamp);
+    }
+
+    /**
+     * Removes a document from the cache.
+     *
+     * @param key the key of the document; may not be null
+     */
+    public void invalidate( String key ) {
+        segmentFor(key).invalidate(key);
+    }
+
+    /**
+     * Removes all the documents from the cache.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public void notify( ChangeSet changeSet ) {
+        for (NodeKey key : changeSet.changedNodes()) {
+            invalidate(key.toString());
+        }
+    }
+
+    /**
+     * Returns the number of times a document was found in this cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of times a document was not found in this cache.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the ratio between the number of hits and the total number of lookups.
+     *
+     * @return the hit ratio, between 0 and 1
+     */
+    public double getHitRatio() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    /**
+     * Returns the number of documents which were evicted to make room for other documents.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory allocated by this cache.
+     *
+     * @return the capacity in bytes
+     */
+    public long getOffHeapCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory used by the documents which are currently cached.
+     *
+     * @return the used off-heap memory, in bytes
+     */
+    public long getOffHeapUsed() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.used();
+        }
+        return used;
+    }
+
+    /**
+     * Returns the number of documents which are currently cached.
+     *
+     * @return the number of documents
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor( String key ) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapDocumentCache[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" +
+               getEvictions() + ", offHeapUsed=" + getOffHeapUsed() + ", offHeapCapacity=" + getOffHeapCapacity() + "]";
+    }
+
+    /**
+     * A circular log of entries stored in a direct buffer. Each entry is made of a header containing the length of the entry
+     * and the length of the key, followed by the UTF-8 bytes of the key and the bytes of the value. When the log is
+     * {@code wrapped}, the entries occupy the regions {@code [head, wrapAt)} and {@code [0, tail)}; otherwise they occupy the
+     * region {@code [head, tail)}.
+     */
+    private final class Segment {
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final int maxEntrySize;
+        private final Map<String, Integer> offsetsByKey = new HashMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile long stamp;
+        private int head;
+        private int tail;
+        private int wrapAt;
+        private boolean wrapped;
+        private int entries;
+        private long used;
+
+        private Segment( int capacity ) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+            this.capacity = capacity;
+            // don't let a single document flush a large part of the segment
+            this.maxEntrySize = Math.max(HEADER_SIZE, capacity / 4);
+        }
+
+        private long stamp() {
+            return stamp;
+        }
+
+        private byte[] get( String key ) {
+            lock.readLock().lock();
+            try {
+                Integer offset = offsetsByKey.get(key);
+                if (offset == null) {
+                    return null;
+                }
+                int entryLength = buffer.getInt(offset);
+                int keyLength = buffer.getInt(offset + 4);
+                byte[] value = new byte[entryLength - HEADER_SIZE - keyLength];
+                ByteBuffer view = buffer.duplicate();
+                view.position(offset + HEADER_SIZE + keyLength);
+                view.get(value);
+                return value;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private boolean put( String key, byte[] value, long expectedStamp ) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int entryLength = HEADER_SIZE + keyBytes.length + value.length;
+            if (entryLength > maxEntrySize) {
+                return false;
+            }
+            lock.writeLock().lock();
+            try {
+                if (stamp != expectedStamp) {
+                    // the document may have been changed while it was read
+                    return false;
+                }
+                remove(key);
+                int offset = allocate(entryLength);
+                ByteBuffer view = buffer.duplicate();
+                view.position(offset);
+                view.putInt(entryLength).putInt(keyBytes.length).put(keyBytes).put(value);
+                offsetsByKey.put(key, offset);
+                used += entryLength;
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void invalidate( String key ) {
+            lock.writeLock().lock();
+            try {
+                // always change the stamp, even if the key is not cached, because it may be being read
+                ++stamp;
+                remove(key);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void clear() {
+            lock.writeLock().lock();
+            try {
+                ++stamp;
+                offsetsByKey.clear();
+                head = tail = wrapAt = entries = 0;
+                wrapped = false;
+                used = 0;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private long used() {
+            lock.readLock().lock();
+            try {
+                return used;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return offsetsByKey.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void remove( String key ) {
+            Integer offset = offsetsByKey.remove(key);
+            if (offset != null) {
+                // the space is reclaimed when the entry becomes the oldest one in the log
+                used -= buffer.getInt(offset);
+            }
+        }
+
+        private int allocate( int length ) {
+            while (true) {
+                if (entries == 0) {
+                    head = tail = 0;
+                    wrapped = false;
+                }
+                if (!wrapped) {
+                    if (capacity - tail >= length) {
+                        break;
+                    }
+                    // there's not enough room at the end, so continue from the beginning
+                    wrapAt = tail;
+                    tail = 0;
+                    wrapped = true;
+                } else if (head - tail >= length) {
+                    break;
+                } else {
+                    evictOldest();
+                }
+            }
+            int offset = tail;
+            tail += length;
+            ++entries;
+            return offset;
+        }
+
+        private void evictOldest() {
+            int entryLength = buffer.getInt(head);
+            int keyLength = buffer.getInt(head + 4);
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer view = buffer.duplicate();
+            view.position(head + HEADER_SIZE);
+            view.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            Integer offset = offsetsByKey.get(key);
+            if (offset != null && offset == head) {
+                // the entry is still live
+                offsetsByKey.remove(key);
+                used -= entryLength;
+                evictions.increment();
+            }
+            head += entryLength;
+            --entries;
+            if (head >= wrapAt) {
+                head = 0;
+                wrapped = false;
+            }
+        }
+    }
+}
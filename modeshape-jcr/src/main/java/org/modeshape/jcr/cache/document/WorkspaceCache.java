@@ -37,7 +37,7 @@ import org.modeshape.schematic.SchematicEntry;
 import org.modeshape.schematic.document.Document;
 
 /**
- * A {@link NodeCache} implementation that uses a concurrent LRU map to store nodes. The nodes in this cache represent the actual, 
+ * A {@link NodeCache} implementation that uses a bounded, concurrent {@link CachedNodeMap map} to store nodes. The nodes in this cache represent the actual, 
  * unmodified values.
  */
 public class WorkspaceCache implements DocumentCache {
@@ -241,9 +241,10 @@ public class WorkspaceCache implements DocumentCache {
                 if (LOGGER.isTraceEnabled()) {
                     LOGGER.trace("Materialized document '{0}' in '{1}' workspace from store: {2}", key, workspaceName, doc);
                 }
-                // Create a new node and put into this cache ...
-                CachedNode newNode = new LazyCachedNode(key, doc);
-                if (translator.isCacheable(doc)) {
+                // Create a new node and put into this cache, which holds on to a compact copy of the document ...
+                boolean cacheable = translator.isCacheable(doc);
+                CachedNode newNode = new LazyCachedNode(key, cacheable ? translator.cacheableDocument(doc) : doc);
+                if (cacheable) {
                     node = nodesByKey.putIfAbsent(key, newNode);
                 }
                 if (node == null) {
@@ -284,6 +285,17 @@ public class WorkspaceCache implements DocumentCache {
         nodesByKey.clear();
     }
 
+    /**
+     * Returns the weight of the nodes held by this cache, which is either their number or the estimated number of bytes of
+     * their documents, depending on how the cache is bounded.
+     *
+     * @return the weight of the cached nodes
+     * @see CachedNodeMap
+     */
+    public long getCacheWeight() {
+        return nodesByKey instanceof CachedNodeMap ? ((CachedNodeMap)nodesByKey).weightedSize() : nodesByKey.size();
+    }
+
     protected void evictChangedNodes( ChangeSet changes ) {
         if (!closed) {
             if (LOGGER.isTraceEnabled()) {
@@ -335,7 +347,7 @@ public class WorkspaceCache implements DocumentCache {
         this.nodesByKey.clear();
         this.documentStore.load(keys).forEach(entry -> {
             String key = entry.id();
-            Document document = entry.content();
+            Document document = translator.cacheableDocument(entry.content());
             NodeKey nodeKey = new NodeKey(key);
             this.nodesByKey.put(nodeKey, new LazyCachedNode(nodeKey, document));
             if (LOGGER.isDebugEnabled()) {
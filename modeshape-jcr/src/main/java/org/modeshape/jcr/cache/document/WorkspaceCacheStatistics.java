@@ -0,0 +1,92 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.modeshape.common.annotation.ThreadSafe;
+
+/**
+ * The cumulative hit, miss and eviction counters shared by all the {@link CachedNodeMap workspace caches} of a repository.
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public final class WorkspaceCacheStatistics {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Returns the number of times a node was found in a workspace cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of times a node was not found in a workspace cache and had to be read from the document store.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of nodes which were removed from a full workspace cache to make room for other nodes. This includes
+     * the nodes which were never admitted into the cache by the eviction policy.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum() + rejections.sum();
+    }
+
+    /**
+     * Returns the number of nodes which the eviction policy did not admit into a full workspace cache.
+     *
+     * @return the number of rejected nodes
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    protected void hit() {
+        hits.increment();
+    }
+
+    protected void miss() {
+        misses.increment();
+    }
+
+    protected void evicted() {
+        evictions.increment();
+    }
+
+    protected void rejected() {
+        rejections.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkspaceCacheStatistics[hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() +
+               ", rejections=" + getRejections() + "]";
+    }
+}
@@ -30,6 +30,7 @@ public class ClusteringI18n {
     public static I18n memberOfClusterIsSuspect;
     public static I18n channelConfigurationError;
     public static I18n missingConfigurationFile;
+    public static I18n unknownPayloadCodec;
 
     private ClusteringI18n() {
     }
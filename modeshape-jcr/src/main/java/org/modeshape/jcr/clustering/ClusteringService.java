@@ -27,10 +27,12 @@ import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -54,6 +56,8 @@ import org.modeshape.common.SystemFailureException;
 import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.StringUtil;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
 
 /**
  * ModeShape service which handles sending/receiving messages in a cluster via JGroups. This service is also a
@@ -71,6 +75,12 @@ public abstract class ClusteringService {
      */
     private static final long DEFAULT_MAX_CLOCK_DELAY_CLUSTER_MILLIS = TimeUnit.MINUTES.toMillis(10);
 
+    /**
+     * The first byte of the messages written by a {@link PayloadCodec}. Java serialization streams always start with
+     * {@code 0xAC}, so the two kinds of messages can be told apart.
+     */
+    private static final byte CODEC_MARKER = 0x4D;
+
     /**
      * The listener for channel changes.
      */
@@ -111,6 +121,27 @@ public abstract class ClusteringService {
      */
     private final Set<MessageConsumer<Serializable>> consumers;
 
+    /**
+     * The codecs which write the payloads they support instead of Java serialization, keyed by their id.
+     */
+    private final Map<Byte, PayloadCodec<Serializable>> payloadCodecs;
+
+    /**
+     * The ids of the unknown payload codecs which have written a message received by this member.
+     */
+    private final Set<Byte> unknownPayloadCodecs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether the payload codecs are used to write messages; they are always used to read the messages written by them. Java
+     * serialization is used by default, so that members older than 5.1 can read the messages.
+     */
+    private volatile boolean usePayloadCodecs = false;
+
+    /**
+     * The codec used to compress the messages written by the payload codecs.
+     */
+    private volatile Codec compression = Codecs.forName(Codecs.NONE);
+
     protected ClusteringService( String clusterName ) {
         assert clusterName != null;
         this.clusterName = clusterName;
@@ -121,6 +152,7 @@ public abstract class ClusteringService {
         this.membersInCluster = new AtomicInteger(1);
         this.maxAllowedClockDelayMillis = DEFAULT_MAX_CLOCK_DELAY_CLUSTER_MILLIS;
         this.consumers = new CopyOnWriteArraySet<>();     
+        this.payloadCodecs = new ConcurrentHashMap<>();
     }
 
     /**
@@ -143,6 +175,34 @@ public abstract class ClusteringService {
         consumers.add((MessageConsumer<Serializable>)consumer);
     }
 
+    /**
+     * Adds a codec which will be used instead of Java serialization for the payloads it supports.
+     * 
+     * @param codec a {@link PayloadCodec} instance; may not be null
+     * @throws IllegalArgumentException if a different codec with the same id has already been added
+     */
+    @SuppressWarnings( "unchecked" )
+    public void addPayloadCodec( PayloadCodec<? extends Serializable> codec ) {
+        PayloadCodec<Serializable> existing = payloadCodecs.putIfAbsent(codec.id(), (PayloadCodec<Serializable>)codec);
+        if (existing != null && existing != codec) {
+            throw new IllegalArgumentException("A payload codec with the id " + codec.id() + " has already been added");
+        }
+    }
+
+    /**
+     * Sets how the messages sent by this service are written. Messages are always read, regardless of how they were written.
+     * 
+     * @param usePayloadCodecs {@code true} if the {@link #addPayloadCodec(PayloadCodec) payload codecs} should be used to write
+     *        the payloads they support, or {@code false} if all payloads should be written with Java serialization
+     * @param compression the name of the {@link Codecs codec} used to compress the messages written by payload codecs; may
+     *        not be null
+     */
+    public void setMessageFormat( boolean usePayloadCodecs,
+                                  String compression ) {
+        this.compression = Codecs.forName(compression);
+        this.usePayloadCodecs = usePayloadCodecs;
+    }
+
     /**
      * Shuts down and clears resources held by this service.
      * 
@@ -155,6 +215,7 @@ public abstract class ClusteringService {
         Address address = channel.getAddress();
         LOGGER.debug("{0} Shutting down clustering service...", address);
         consumers.clear();
+        payloadCodecs.clear();
 
         // Mark this as not accepting any more ...
         isOpen.set(false);
@@ -233,7 +294,7 @@ public abstract class ClusteringService {
             LOGGER.debug("{0} sending payload {1} in cluster {2} ", channel.getAddress(), payload, clusterName());
         }
         try {
-            byte[] messageData = toByteArray(payload);
+            byte[] messageData = writePayload(payload);
             Message jgMessage = new Message(null, channel.getAddress(), messageData);
             channel.send(jgMessage);
             return true;
@@ -293,6 +354,60 @@ public abstract class ClusteringService {
         return clusteringService;
     }
 
+    /**
+     * Writes a payload with the first {@link PayloadCodec} which supports it, or with Java serialization if there is none.
+     * 
+     * @param payload the payload; may not be null
+     * @return the message data; never null
+     * @throws IOException if the payload cannot be written
+     */
+    protected byte[] writePayload( Serializable payload ) throws IOException {
+        if (usePayloadCodecs) {
+            for (PayloadCodec<Serializable> codec : payloadCodecs.values()) {
+                if (codec.canEncode(payload)) {
+                    byte[] body = Codecs.encode(compression, codec.encode(payload));
+                    byte[] result = new byte[body.length + 2];
+                    result[0] = CODEC_MARKER;
+                    result[1] = codec.id();
+                    System.arraycopy(body, 0, result, 2, body.length);
+                    return result;
+                }
+            }
+        }
+        return toByteArray(payload);
+    }
+
+    /**
+     * Reads a payload written by {@link #writePayload(Serializable)}.
+     * 
+     * @param data the message data; may not be null
+     * @param sender the address of the member which sent the message; may be null
+     * @param classLoader the class loader used to resolve the classes of Java-serialized payloads; may be null
+     * @return the payload, or null if it was written by an unknown {@link PayloadCodec}
+     * @throws IOException if the payload cannot be read
+     * @throws ClassNotFoundException if the class of a Java-serialized payload cannot be found
+     */
+    protected Serializable readPayload( byte[] data,
+                                        Address sender,
+                                        ClassLoader classLoader ) throws IOException, ClassNotFoundException {
+        if (data.length < 2 || data[0] != CODEC_MARKER) {
+            return fromByteArray(data, classLoader);
+        }
+        PayloadCodec<Serializable> codec = payloadCodecs.get(data[1]);
+        if (codec == null) {
+            // warn only about the first message of each unknown codec, since all the following ones will be ignored too ...
+            if (unknownPayloadCodecs.add(data[1])) {
+                LOGGER.warn(ClusteringI18n.unknownPayloadCodec, data[1], sender, clusterName);
+            } else {
+                LOGGER.debug("Ignoring a message from {0} written by the unknown payload codec {1} in cluster {2}", sender, data[1],
+                             clusterName);
+            }
+            return null;
+        }
+        byte[] body = Codecs.decode(Arrays.copyOfRange(data, 2, data.length), compression);
+        return codec.decode(body);
+    }
+
     private byte[] toByteArray( Object payload ) throws IOException {
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         try (ObjectOutputStream stream = new ObjectOutputStream(output)) {
@@ -334,7 +449,10 @@ public abstract class ClusteringService {
         @Override
         public void receive( final org.jgroups.Message message ) {
             try {
-                Serializable payload = fromByteArray(message.getBuffer(), getClass().getClassLoader());
+                Serializable payload = readPayload(message.getBuffer(), message.getSrc(), getClass().getClassLoader());
+                if (payload == null) {
+                    return;
+                }
 
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("{0} from cluster {1} received payload {2}", channel.getAddress(), clusterName(), payload);
@@ -0,0 +1,65 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.clustering;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A binary format for some of the messages sent by a {@link ClusteringService}, which is used instead of Java serialization for
+ * the payloads it {@link #canEncode(Serializable) can encode}. All of the members of a cluster must register the same codecs, since
+ * a member which receives a message written by a codec it doesn't know can only drop the message.
+ *
+ * @param <T> the type of payload
+ * @see ClusteringService#addPayloadCodec(PayloadCodec)
+ * @since 5.1
+ */
+public interface PayloadCodec<T extends Serializable> {
+
+    /**
+     * Returns the identifier of this codec, which is written in each message and must be unique among the codecs registered with
+     * a clustering service.
+     *
+     * @return the id of the codec
+     */
+    byte id();
+
+    /**
+     * Determines whether the given payload can be written by this codec.
+     *
+     * @param payload the payload; never {@code null}
+     * @return {@code true} if this codec can write the payload, or {@code false} if it must be sent some other way
+     */
+    boolean canEncode( Serializable payload );
+
+    /**
+     * Writes a payload for which {@link #canEncode(Serializable)} returned {@code true}.
+     *
+     * @param payload the payload; never {@code null}
+     * @return the encoded payload; never {@code null}
+     * @throws IOException if the payload cannot be written
+     */
+    byte[] encode( T payload ) throws IOException;
+
+    /**
+     * Reads a payload written by {@link #encode(Serializable)}.
+     *
+     * @param data the encoded payload; never {@code null}
+     * @return the payload; never {@code null}
+     * @throws IOException if the data is not valid
+     */
+    T decode( byte[] data ) throws IOException;
+}
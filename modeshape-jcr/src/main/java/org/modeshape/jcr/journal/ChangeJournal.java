@@ -84,6 +84,17 @@ public interface ChangeJournal extends ChangeSetListener {
      */
     public Iterator<NodeKey> changedNodesSince( long timestamp );
 
+    /**
+     * Checks whether this journal still holds all of the changes made since a given time, i.e. it already existed at that time
+     * and none of the changes has been removed as part of {@link #removeOldRecords()}.
+     *
+     * @param timestamp the time of the oldest changes, in milliseconds (UTC)
+     * @return {@code true} if {@link #changedNodesSince(long)} returns all of the nodes changed since that time, or {@code false}
+     *         otherwise
+     * @since 5.1
+     */
+    public boolean retainsChangesSince( long timestamp );
+
     /**
      * Adds one or more journal records to a journal.
      * 
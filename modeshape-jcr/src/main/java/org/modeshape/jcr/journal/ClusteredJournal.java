@@ -16,6 +16,7 @@
 
 package org.modeshape.jcr.journal;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -30,8 +31,10 @@ import org.modeshape.common.util.DateTimeUtil;
 import org.modeshape.jcr.JcrI18n;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetCodec;
 import org.modeshape.jcr.clustering.ClusteringService;
 import org.modeshape.jcr.clustering.MessageConsumer;
+import org.modeshape.jcr.clustering.PayloadCodec;
 
 /**
  * A {@link ChangeJournal} implementation which runs in a cluster and which attempts to reconcile with other members of the cluster
@@ -90,6 +93,7 @@ public class ClusteredJournal extends MessageConsumer<ClusteredJournal.DeltaMess
         localJournal.start();
 
         //make sure this process can always process delta messages
+        clusteringService.addPayloadCodec(DeltaMessageCodec.INSTANCE);
         clusteringService.addConsumer(this);
         
         if (!clusteringService.multipleMembersInCluster()) {
@@ -169,6 +173,11 @@ public class ClusteredJournal extends MessageConsumer<ClusteredJournal.DeltaMess
         return localJournal.changedNodesSince(timestamp);
     }
 
+    @Override
+    public boolean retainsChangesSince( long timestamp ) {
+        return localJournal.retainsChangesSince(timestamp);
+    }
+
     @Override
     public void addRecords( JournalRecord... records ) {
         localJournal.addRecords(records);
@@ -325,4 +334,75 @@ public class ClusteredJournal extends MessageConsumer<ClusteredJournal.DeltaMess
             return sb.toString();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the {@link DeltaMessage delta messages} whose records all hold change sets created by the repository in the
+     * {@link ChangeSetCodec binary format}, so that the records of a response share the same dictionaries.
+     */
+    protected static final class DeltaMessageCodec implements PayloadCodec<DeltaMessage> {
+        protected static final DeltaMessageCodec INSTANCE = new DeltaMessageCodec();
+
+        private DeltaMessageCodec() {
+        }
+
+        @Override
+        public byte id() {
+            return 2;
+        }
+
+        @Override
+        public boolean canEncode( Serializable payload ) {
+            if (!(payload instanceof DeltaMessage)) {
+                return false;
+            }
+            List<JournalRecord> records = ((DeltaMessage)payload).getRespondentRecords();
+            if (records != null) {
+                for (JournalRecord record : records) {
+                    if (!record.canWrite()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public byte[] encode( DeltaMessage payload ) throws IOException {
+            ChangeSetCodec.Writer writer = new ChangeSetCodec.Writer();
+            writer.writeString(payload.getRequestorId());
+            Long lastChangeSetTime = payload.getRequestorLastChangeSetTime();
+            writer.writeByte(lastChangeSetTime != null ? (byte)1 : (byte)0);
+            if (lastChangeSetTime != null) {
+                writer.writeLong(lastChangeSetTime);
+            }
+            writer.writeString(payload.getRespondentId());
+            List<JournalRecord> records = payload.getRespondentRecords();
+            if (records == null) {
+                writer.writeVarLong(0);
+            } else {
+                writer.writeVarLong(records.size() + 1);
+                for (JournalRecord record : records) {
+                    record.write(writer);
+                }
+            }
+            return writer.toByteArray();
+        }
+
+        @Override
+        public DeltaMessage decode( byte[] data ) throws IOException {
+            ChangeSetCodec.Reader reader = new ChangeSetCodec.Reader(data);
+            String requestorId = reader.readString();
+            Long lastChangeSetTime = reader.readByte() != 0 ? reader.readLong() : null;
+            String respondentId = reader.readString();
+            int count = (int)reader.readVarLong();
+            List<JournalRecord> records = null;
+            if (count != 0) {
+                records = new ArrayList<>(count - 1);
+                for (int i = 1; i != count; ++i) {
+                    records.add(JournalRecord.read(reader));
+                }
+            }
+            return new DeltaMessage(requestorId, lastChangeSetTime, respondentId, records);
+        }
+    }
+}
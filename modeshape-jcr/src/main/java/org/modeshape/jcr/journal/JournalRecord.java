@@ -16,6 +16,7 @@
 
 package org.modeshape.jcr.journal;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.Iterator;
@@ -23,6 +24,7 @@ import java.util.Set;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.Change;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetCodec;
 
 /**
  * A record stored by the {@link LocalJournal}
@@ -53,6 +55,38 @@ public final class JournalRecord implements Serializable, Iterable<Change> {
         return this;
     }
 
+    /**
+     * Determine whether this record can be written in the {@link ChangeSetCodec binary format}.
+     *
+     * @return true if the record can be written, or false otherwise
+     */
+    boolean canWrite() {
+        return ChangeSetCodec.canEncode(content);
+    }
+
+    /**
+     * Write this record in the {@link ChangeSetCodec binary format}.
+     *
+     * @param writer the writer; may not be null
+     * @throws IOException if the record cannot be written
+     */
+    void write( ChangeSetCodec.Writer writer ) throws IOException {
+        writer.writeVarLong(timeBasedKey + 1);
+        writer.writeChangeSet(content);
+    }
+
+    /**
+     * Read a record written by {@link #write(ChangeSetCodec.Writer)}.
+     *
+     * @param reader the reader; may not be null
+     * @return the record; never null
+     * @throws IOException if the record cannot be read
+     */
+    static JournalRecord read( ChangeSetCodec.Reader reader ) throws IOException {
+        long timeBasedKey = reader.readVarLong() - 1;
+        return new JournalRecord(reader.readChangeSet()).withTimeBasedKey(timeBasedKey);
+    }
+
     /**
      * @return the time when this record was created
      */
@@ -0,0 +1,550 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import org.modeshape.common.SystemFailureException;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.JcrI18n;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetCodec;
+
+/**
+ * One file of the append-only log used by the {@link LocalJournal}. The file is memory-mapped and holds a sequence of records in
+ * ascending order of their time-based keys, each of them laid out as:
+ * <ol>
+ * <li>the length of the rest of the record, excluding the checksum (4 bytes);</li>
+ * <li>the CRC-32 of the rest of the record (4 bytes);</li>
+ * <li>the time-based key (8 bytes);</li>
+ * <li>the time of the change set, in UTC millis (8 bytes);</li>
+ * <li>the format of the change set, either {@link #FORMAT_BINARY} or {@link #FORMAT_SERIALIZED} (1 byte);</li>
+ * <li>the change set itself.</li>
+ * </ol>
+ * The unused part of a segment is filled with zeros, so the first record with a length of zero marks the end of the segment.
+ * <p>
+ * Records are only ever appended by a single thread at a time, while any number of threads can read them: the {@link Tail} of
+ * the segment is published after each append, and readers only look at the records described by the tail they've read. Every
+ * {@link #INDEX_INTERVAL}th record is added to a sparse in-memory index, which is used to find where to start reading the records
+ * with a key greater than some bound.
+ * </p>
+ *
+ * @since 5.1
+ */
+final class JournalSegment {
+
+    private static final Logger LOGGER = Logger.getLogger(JournalSegment.class);
+
+    static final byte FORMAT_BINARY = 1;
+    static final byte FORMAT_SERIALIZED = 2;
+
+    static final String FILE_PREFIX = "segment-";
+    static final String FILE_SUFFIX = ".log";
+
+    /**
+     * The number of bytes of a record before its change set.
+     */
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 1;
+
+    private static final int BODY_OFFSET = 8;
+    private static final int KEY_OFFSET = 8;
+    private static final int TIME_OFFSET = 16;
+    private static final int FORMAT_OFFSET = 24;
+    private static final int MIN_BODY_LENGTH = HEADER_SIZE - BODY_OFFSET;
+    private static final int INDEX_INTERVAL = 64;
+
+    private final File file;
+    private final long sequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private long[] indexKeys = new long[16];
+    private int[] indexOffsets = new int[16];
+    private volatile Tail tail;
+
+    private JournalSegment( File file,
+                            long sequence,
+                            FileChannel channel,
+                            MappedByteBuffer buffer ) {
+        this.file = file;
+        this.sequence = sequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.tail = Tail.EMPTY;
+    }
+
+    /**
+     * Create a new, empty segment.
+     *
+     * @param directory the directory of the journal; may not be null
+     * @param sequence the number of the segment, which must be greater than the number of all the existing segments
+     * @param capacity the size of the segment, in bytes
+     * @return the segment; never null
+     * @throws IOException if the file cannot be created
+     */
+    static JournalSegment create( File directory,
+                                  long sequence,
+                                  int capacity ) throws IOException {
+        File file = new File(directory, fileName(sequence));
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            return new JournalSegment(file, sequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open an existing segment, reading the keys of all its records to rebuild the index. When the segment ends with an incomplete
+     * or corrupt record (which can happen when the process stops before the segment has been forced to disk), that record and
+     * anything after it is discarded.
+     *
+     * @param file the segment file; may not be null
+     * @param verifyChecksums true if the checksum of each record should be verified, or false if only the lengths of the records
+     *        should be checked
+     * @return the segment; never null
+     * @throws IOException if the file cannot be read
+     */
+    static JournalSegment open( File file,
+                                boolean verifyChecksums ) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        JournalSegment segment;
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            segment = new JournalSegment(file, sequenceOf(file.getName()), channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        segment.recover(verifyChecksums);
+        return segment;
+    }
+
+    static boolean isSegmentFile( String fileName ) {
+        return fileName.startsWith(FILE_PREFIX) && fileName.endsWith(FILE_SUFFIX);
+    }
+
+    static long sequenceOf( String fileName ) {
+        return Long.parseLong(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+    }
+
+    private static String fileName( long sequence ) {
+        return String.format("%s%019d%s", FILE_PREFIX, sequence, FILE_SUFFIX);
+    }
+
+    private void recover( boolean verifyChecksums ) {
+        ByteBuffer view = buffer.duplicate();
+        int capacity = view.capacity();
+        int position = 0;
+        while (position + HEADER_SIZE <= capacity) {
+            int length = view.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int next = position + BODY_OFFSET + length;
+            if (length < MIN_BODY_LENGTH || next > capacity
+                || (verifyChecksums && view.getInt(position + 4) != checksum(view, position, length))) {
+                LOGGER.warn(JcrI18n.journalSegmentTruncated, file, position);
+                // clear the rest of the segment, so that new records can be appended after the last valid one ...
+                view.position(position);
+                byte[] zeros = new byte[Math.min(capacity - position, 64 * 1024)];
+                while (view.hasRemaining()) {
+                    view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+                }
+                buffer.force();
+                break;
+            }
+            published(position, next, view.getLong(position + KEY_OFFSET));
+            position = next;
+        }
+    }
+
+    /**
+     * Append a record to this segment. This method must not be called concurrently, and the key of the record must be greater
+     * than or equal to the {@link Tail#maxKey() largest key} in this segment.
+     *
+     * @param key the time-based key of the record
+     * @param changeTimeMillis the time of the change set, in UTC millis
+     * @param format the format of the change set
+     * @param changeSet the encoded change set; may not be null
+     * @return true if the record was appended, or false if there isn't enough room left in this segment
+     */
+    boolean append( long key,
+                    long changeTimeMillis,
+                    byte format,
+                    byte[] changeSet ) {
+        assert tail.count == 0 || key >= tail.maxKey;
+        int position = tail.end;
+        int next = position + HEADER_SIZE + changeSet.length;
+        if (next > buffer.capacity()) {
+            return false;
+        }
+        int length = next - position - BODY_OFFSET;
+        buffer.putLong(position + KEY_OFFSET, key);
+        buffer.putLong(position + TIME_OFFSET, changeTimeMillis);
+        buffer.put(position + FORMAT_OFFSET, format);
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_SIZE);
+        view.put(changeSet);
+        buffer.putInt(position + 4, checksum(buffer.duplicate(), position, length));
+        // the length is written last, since a length of zero marks the end of the segment ...
+        buffer.putInt(position, length);
+        published(position, next, key);
+        return true;
+    }
+
+    private void published( int position,
+                            int next,
+                            long key ) {
+        Tail current = tail;
+        int count = current.count;
+        int indexSize = current.indexSize;
+        if (count % INDEX_INTERVAL == 0) {
+            if (indexSize == indexKeys.length) {
+                indexKeys = Arrays.copyOf(indexKeys, indexSize * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+            }
+            indexKeys[indexSize] = key;
+            indexOffsets[indexSize] = position;
+            ++indexSize;
+        }
+        long minKey = count == 0 ? key : current.minKey;
+        tail = new Tail(next, count + 1, minKey, key, position, indexKeys, indexOffsets, indexSize);
+    }
+
+    private static int checksum( ByteBuffer view,
+                                 int position,
+                                 int length ) {
+        ByteBuffer body = view.duplicate();
+        body.limit(position + BODY_OFFSET + length);
+        body.position(position + BODY_OFFSET);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Get the description of the records which have been appended so far.
+     *
+     * @return the tail; never null
+     */
+    Tail tail() {
+        return tail;
+    }
+
+    /**
+     * Get the number of this segment. Segments created later have greater numbers.
+     *
+     * @return the sequence number
+     */
+    long sequence() {
+        return sequence;
+    }
+
+    File file() {
+        return file;
+    }
+
+    /**
+     * Write all of the records of this segment to disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Close this segment. The records which have been read before can still be used.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug(e, "Unable to close the journal segment '{0}'", file);
+        }
+    }
+
+    /**
+     * Close this segment and remove its file.
+     */
+    void delete() {
+        close();
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Create a cursor over the records of this segment whose key is greater than or equal to the given bound.
+     *
+     * @param tail the tail of this segment which describes the records which may be read; may not be null
+     * @param lowerBound the smallest key of the records which are read
+     * @param descending true if the records should be read starting with the largest key, or false otherwise
+     * @return the cursor, positioned before its first record; never null
+     */
+    Cursor cursor( Tail tail,
+                   long lowerBound,
+                   boolean descending ) {
+        return descending ? new DescendingCursor(tail, lowerBound) : new AscendingCursor(tail, lowerBound);
+    }
+
+    /**
+     * Read the record which starts at the given position.
+     *
+     * @param position the position of the record
+     * @return the record; never null
+     */
+    JournalRecord read( int position ) {
+        ByteBuffer view = buffer.duplicate();
+        int length = view.getInt(position);
+        long key = view.getLong(position + KEY_OFFSET);
+        byte format = view.get(position + FORMAT_OFFSET);
+        byte[] data = new byte[length - MIN_BODY_LENGTH];
+        view.position(position + HEADER_SIZE);
+        view.get(data);
+        try {
+            ChangeSet changeSet;
+            if (format == FORMAT_BINARY) {
+                changeSet = new ChangeSetCodec.Reader(data).readChangeSet();
+            } else {
+                try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                    changeSet = (ChangeSet)stream.readObject();
+                }
+            }
+            return new JournalRecord(changeSet).withTimeBasedKey(key);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SystemFailureException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + " (" + tail.count + " records)";
+    }
+
+    /**
+     * The state of a segment after some record has been appended.
+     */
+    static final class Tail {
+        static final Tail EMPTY = new Tail(0, 0, Long.MAX_VALUE, Long.MIN_VALUE, -1, new long[0], new int[0], 0);
+
+        private final int end;
+        private final int count;
+        private final long minKey;
+        private final long maxKey;
+        private final int lastPosition;
+        private final long[] indexKeys;
+        private final int[] indexOffsets;
+        private final int indexSize;
+
+        private Tail( int end,
+                      int count,
+                      long minKey,
+                      long maxKey,
+                      int lastPosition,
+                      long[] indexKeys,
+                      int[] indexOffsets,
+                      int indexSize ) {
+            this.end = end;
+            this.count = count;
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.lastPosition = lastPosition;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.indexSize = indexSize;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Get the number of bytes used by the records.
+         *
+         * @return the size of the records
+         */
+        int size() {
+            return end;
+        }
+
+        long minKey() {
+            return minKey;
+        }
+
+        long maxKey() {
+            return maxKey;
+        }
+
+        int lastPosition() {
+            return lastPosition;
+        }
+
+        /**
+         * Find the index entry from which to start reading the records whose key is greater than or equal to the given bound.
+         *
+         * @param lowerBound the smallest key
+         * @return the index entry
+         */
+        int indexEntryBefore( long lowerBound ) {
+            // find the last entry whose key is smaller than the bound: none of the records before it can be within the bound ...
+            int low = 0;
+            int high = indexSize - 1;
+            int result = 0;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (indexKeys[middle] < lowerBound) {
+                    result = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A cursor over some of the records of the segment.
+     */
+    abstract class Cursor {
+        protected final ByteBuffer view = buffer.duplicate();
+        protected final Tail tail;
+        protected final long lowerBound;
+        protected int position = -1;
+        protected long key;
+
+        protected Cursor( Tail tail,
+                          long lowerBound ) {
+            this.tail = tail;
+            this.lowerBound = lowerBound;
+        }
+
+        /**
+         * Move to the next record.
+         *
+         * @return true if there is a record, or false if the cursor has read all of its records
+         */
+        abstract boolean advance();
+
+        /**
+         * Get the key of the current record.
+         *
+         * @return the key
+         */
+        long key() {
+            return key;
+        }
+
+        /**
+         * Get the segment of this cursor.
+         *
+         * @return the segment; never null
+         */
+        JournalSegment segment() {
+            return JournalSegment.this;
+        }
+
+        /**
+         * Read the current record.
+         *
+         * @return the record; never null
+         */
+        JournalRecord record() {
+            return read(position);
+        }
+
+        /**
+         * Get the time of the change set of the current record.
+         *
+         * @return the time in UTC millis
+         */
+        long changeTimeMillis() {
+            return view.getLong(position + TIME_OFFSET);
+        }
+
+        protected int nextPosition( int position ) {
+            return position + BODY_OFFSET + view.getInt(position);
+        }
+    }
+
+    private final class AscendingCursor extends Cursor {
+        private int next;
+
+        protected AscendingCursor( Tail tail,
+                                   long lowerBound ) {
+            super(tail, lowerBound);
+            this.next = tail.isEmpty() ? 0 : tail.indexOffsets[tail.indexEntryBefore(lowerBound)];
+        }
+
+        @Override
+        boolean advance() {
+            while (next < tail.end) {
+                position = next;
+                key = view.getLong(position + KEY_OFFSET);
+                next = nextPosition(position);
+                if (key >= lowerBound) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final class DescendingCursor extends Cursor {
+        private final int firstIndexEntry;
+        private final int[] block = new int[INDEX_INTERVAL];
+        private int indexEntry;
+        private int blockSize;
+
+        protected DescendingCursor( Tail tail,
+                                    long lowerBound ) {
+            super(tail, lowerBound);
+            this.firstIndexEntry = tail.isEmpty() ? 0 : tail.indexEntryBefore(lowerBound);
+            this.indexEntry = tail.indexSize;
+        }
+
+        @Override
+        boolean advance() {
+            if (blockSize == 0) {
+                // read the positions of the records of the previous block ...
+                if (indexEntry == firstIndexEntry) {
+                    return false;
+                }
+                --indexEntry;
+                int blockEnd = indexEntry + 1 < tail.indexSize ? tail.indexOffsets[indexEntry + 1] : tail.end;
+                for (int current = tail.indexOffsets[indexEntry]; current < blockEnd; current = nextPosition(current)) {
+                    block[blockSize++] = current;
+                }
+            }
+            position = block[--blockSize];
+            key = view.getLong(position + KEY_OFFSET);
+            if (key < lowerBound) {
+                blockSize = 0;
+                indexEntry = firstIndexEntry;
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -16,34 +16,58 @@
 
 package org.modeshape.jcr.journal;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.NavigableMap;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
-import org.mapdb.Atomic;
-import org.mapdb.BTreeKeySerializer;
 import org.mapdb.BTreeMap;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
+import org.modeshape.common.SystemFailureException;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.NamedThreadFactory;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.common.util.TimeBasedKeys;
 import org.modeshape.jcr.JcrI18n;
 import org.modeshape.jcr.RepositoryConfiguration;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetCodec;
 import org.modeshape.schematic.annotation.ThreadSafe;
 
 /**
  * An append only journal implementation which stores each {@link ChangeSet} (either local or remove) on the local FS.
+ * <p>
+ * The records are appended to a log made of memory-mapped {@link JournalSegment segments}, in the order of their time-based keys.
+ * A new segment is started when the current one is full, or when a record is older than the last one of the current segment
+ * (which happens when records from other processes are added while reconciling a clustered journal), so each segment is sorted
+ * and the records of several segments are merged when they're read. Appending a record only copies it in the current segment:
+ * the segment is forced to disk once for all the records appended concurrently, or periodically when asynchronous writes are
+ * enabled. Old records are removed by deleting whole segments.
+ * </p>
  *
  * @author Horia Chiorean (hchiorea@redhat.com)
  */
@@ -52,8 +76,13 @@ public class LocalJournal implements ChangeJournal {
     private static final Logger LOGGER = Logger.getLogger(LocalJournal.class);
 
     private static final int DEFAULT_MAX_TIME_TO_KEEP_FILES = -1;
+    private static final int DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+    private static final long ASYNC_WRITE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final String PROPERTIES_FILE = "journal.properties";
     private static final String RECORDS_FIELD = "records";
     private static final String JOURNAL_ID_FIELD = "journalId";
+    private static final String RETAINED_FROM_FIELD = "retainedFrom";
+    private static final String CREATED_FIELD = "created";
     private static final TimeBasedKeys TIME_BASED_KEYS = TimeBasedKeys.create();
 
     /**
@@ -66,13 +95,30 @@ public class LocalJournal implements ChangeJournal {
     private final String journalLocation;
     private final boolean asyncWritesEnabled;
     private final long maxTimeToKeepEntriesMillis;
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
 
     private String journalId;
-    private DB journalDB;
+    private File journalFolder;
     /**
-     * The records are a map of {@link org.modeshape.jcr.journal.JournalRecord} instances keyed by a time-based key.
+     * The segments of the log, in the order in which they were created; the last one is the segment to which records are
+     * appended. The list is replaced (and never modified) each time a segment is added or removed.
      */
-    private BTreeMap<Long, JournalRecord> records;
+    private volatile List<JournalSegment> segments = Collections.emptyList();
+    /**
+     * The records with a smaller key have been removed, even though some of them may still be in the oldest segment.
+     */
+    private volatile long retainedFromKey = Long.MIN_VALUE;
+    /**
+     * The key from which the journal has recorded changes, i.e. the time at which it was created. The changes made before then
+     * were never recorded.
+     */
+    private volatile long createdKey = Long.MIN_VALUE;
+    private long nextSegmentSequence;
+    private long appendedCount;
+    private long syncedCount;
+    private ScheduledExecutorService asyncWriter;
+    private int segmentSize;
     private long searchTimeDelta;
     private volatile boolean stopped;
 
@@ -93,6 +139,7 @@ public class LocalJournal implements ChangeJournal {
         this.maxTimeToKeepEntriesMillis = TimeUnit.DAYS.toMillis(maxDaysToKeepEntries);
         this.stopped = true;
         this.searchTimeDelta = DEFAULT_LOCAL_SEARCH_DELTA;
+        this.segmentSize = DEFAULT_SEGMENT_SIZE;
     }
 
     protected LocalJournal( String journalLocation ) {
@@ -104,7 +151,6 @@ public class LocalJournal implements ChangeJournal {
         return !stopped;
     }
 
-    @SuppressWarnings( "rawtypes" )
     @Override
     public synchronized void start() throws RepositoryException {
         if (!stopped) {
@@ -116,57 +162,120 @@ public class LocalJournal implements ChangeJournal {
                 boolean folderHierarchyCreated = journalFileLocation.mkdirs();
                 assert folderHierarchyCreated;
             }
-
-            /**
-             * TODO author=Horia Chiorean date=1/14/14 description=The following should be enabled when append only files are available
-            DBMaker dbMaker = DBMaker.newAppendFileDB(new File(journalFileLocation, RECORDS_FIELD))
-                                     .compressionEnable()
-                                     .checksumEnable()
-                                     .closeOnJvmShutdown();
-                                     
-            */
-            DBMaker dbMaker = DBMaker.newFileDB(new File(journalFileLocation, RECORDS_FIELD))
-                                     .compressionEnable()
-                                     .checksumEnable()
-                                     .mmapFileEnableIfSupported()
-                                     .closeOnJvmShutdown();
-                                     
-            if (asyncWritesEnabled) {
-                dbMaker.asyncWriteEnable();
+            this.journalFolder = journalFileLocation;
+
+            Properties properties = loadProperties();
+            this.journalId = properties.getProperty(JOURNAL_ID_FIELD);
+            this.retainedFromKey = Long.parseLong(properties.getProperty(RETAINED_FROM_FIELD, Long.toString(Long.MIN_VALUE)));
+            this.segments = openSegments();
+            this.nextSegmentSequence = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).sequence() + 1;
+            boolean previousRecords = new File(journalFileLocation, RECORDS_FIELD).exists();
+            if (properties.containsKey(CREATED_FIELD)) {
+                this.createdKey = Long.parseLong(properties.getProperty(CREATED_FIELD));
+            } else if (properties.isEmpty() && segments.isEmpty() && !previousRecords) {
+                // a new (or wiped) journal does not hold any of the changes made before now
+                this.createdKey = TIME_BASED_KEYS.getCounterStartingAt(System.currentTimeMillis());
+            } else {
+                // a journal written by a previous version, which did not record when it was created
+                this.createdKey = Long.MIN_VALUE;
+            }
+            if (previousRecords) {
+                migrateRecords();
             }
-            this.journalDB = dbMaker.make();
-            this.records = this.journalDB.createTreeMap(RECORDS_FIELD)
-                                         .keySerializer(BTreeKeySerializer.ZERO_OR_POSITIVE_LONG)
-                                         .counterEnable()
-                                         .makeOrGet();
-            Atomic.String journalAtomic = this.journalDB.getAtomicString(JOURNAL_ID_FIELD);
-            //only write the value the first time
-            if (StringUtil.isBlank(journalAtomic.get())) {
-                journalAtomic.set("Journal_" + UUID.randomUUID().toString());
+            //only generate the id the first time
+            if (StringUtil.isBlank(journalId)) {
+                journalId = "Journal_" + UUID.randomUUID().toString();
+            }
+            storeProperties();
+            if (asyncWritesEnabled) {
+                asyncWriter = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("modeshape-journal-writer"));
+                asyncWriter.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        sync(Long.MAX_VALUE);
+                    }
+                }, ASYNC_WRITE_INTERVAL_MILLIS, ASYNC_WRITE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
             }
-            this.journalId = journalAtomic.get();
             this.stopped = false;
         } catch (Exception e) {
+            closeSegments();
             throw new RepositoryException(JcrI18n.cannotStartJournal.text(), e);
-        } 
+        }
+    }
+
+    private List<JournalSegment> openSegments() throws IOException {
+        File[] files = journalFolder.listFiles((dir, name) -> JournalSegment.isSegmentFile(name));
+        Arrays.sort(files, Comparator.comparingLong(file -> JournalSegment.sequenceOf(file.getName())));
+        List<JournalSegment> result = new ArrayList<>(files.length);
+        try {
+            for (int i = 0; i != files.length; ++i) {
+                // only the last segment can have records which were not forced to disk ...
+                result.add(JournalSegment.open(files[i], i == files.length - 1));
+            }
+        } catch (IOException | RuntimeException e) {
+            result.forEach(JournalSegment::close);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Copy the records of a journal written by a previous version, which used a MapDB store, and remove that store.
+     */
+    private void migrateRecords() throws IOException {
+        File recordsFile = new File(journalFolder, RECORDS_FIELD);
+        DB journalDB = DBMaker.newFileDB(recordsFile).compressionEnable().checksumEnable().mmapFileEnableIfSupported().make();
+        try {
+            if (journalDB.exists(JOURNAL_ID_FIELD) && StringUtil.isBlank(journalId)) {
+                journalId = journalDB.getAtomicString(JOURNAL_ID_FIELD).get();
+            }
+            if (journalDB.exists(RECORDS_FIELD)) {
+                BTreeMap<Long, JournalRecord> records = journalDB.getTreeMap(RECORDS_FIELD);
+                LOGGER.info(JcrI18n.migratingJournalRecords, records.size(), journalLocation);
+                synchronized (appendLock) {
+                    for (JournalRecord record : records.values()) {
+                        append(record);
+                    }
+                    forceLastSegment();
+                }
+            }
+        } finally {
+            journalDB.close();
+        }
+        File[] storeFiles = journalFolder.listFiles((dir, name) -> name.startsWith(RECORDS_FIELD));
+        for (File storeFile : storeFiles) {
+            Files.delete(storeFile.toPath());
+        }
     }
 
     @Override
     public synchronized void shutdown() {
-        if (this.stopped || this.journalDB.isClosed()) {
+        if (this.stopped) {
             return;
         }
-        
-        try {
-            this.journalDB.commit();
-            this.journalDB.close();
-        } catch (Exception e) {
-            LOGGER.error(e, JcrI18n.cannotStopJournal);
-        } finally {
-            this.stopped = true;
+
+        if (asyncWriter != null) {
+            asyncWriter.shutdownNow();
+            asyncWriter = null;
+        }
+        synchronized (appendLock) {
+            try {
+                forceLastSegment();
+                storeProperties();
+            } catch (Exception e) {
+                LOGGER.error(e, JcrI18n.cannotStopJournal);
+            } finally {
+                this.stopped = true;
+                closeSegments();
+            }
         }
     }
 
+    private void closeSegments() {
+        segments.forEach(JournalSegment::close);
+        segments = Collections.emptyList();
+    }
+
     @Override
     public void notify( ChangeSet changeSet ) {
         //do not store records from jcr:system
@@ -178,22 +287,166 @@ public class LocalJournal implements ChangeJournal {
     }
 
     @Override
-    public synchronized void addRecords( JournalRecord... records ) {
+    public void addRecords( JournalRecord... records ) {
         if (stopped) {
             return;
         }
         LOGGER.debug("Adding {0} records", records.length);
-        for (JournalRecord record : records) {
-            if (record.getTimeBasedKey() < 0) {
-                //generate a unique timestamp only if there isn't one. In some scenarios (i.e. running in a cluster) we
-                //always want to keep the original TS because otherwise it would be impossible to have a correct order
-                //and therefore search
-                long createTimeMillisUTC = TIME_BASED_KEYS.nextKey();
-                record.withTimeBasedKey(createTimeMillisUTC);
+        // write the change sets before appending them, so that concurrent callers only wait for each other while copying bytes
+        byte[] formats = new byte[records.length];
+        byte[][] changeSets = new byte[records.length][];
+        for (int i = 0; i != records.length; ++i) {
+            formats[i] = formatOf(records[i]);
+            changeSets[i] = write(records[i], formats[i]);
+        }
+        long appended;
+        synchronized (appendLock) {
+            if (stopped) {
+                return;
+            }
+            for (int i = 0; i != records.length; ++i) {
+                append(records[i], formats[i], changeSets[i]);
+            }
+            appended = appendedCount;
+        }
+        if (!asyncWritesEnabled) {
+            sync(appended);
+        }
+    }
+
+    private void append( JournalRecord record ) {
+        byte format = formatOf(record);
+        append(record, format, write(record, format));
+    }
+
+    private void append( JournalRecord record,
+                         byte format,
+                         byte[] changeSet ) {
+        assert Thread.holdsLock(appendLock);
+        if (record.getTimeBasedKey() < 0) {
+            //generate a unique timestamp only if there isn't one. In some scenarios (i.e. running in a cluster) we
+            //always want to keep the original TS because otherwise it would be impossible to have a correct order
+            //and therefore search
+            long createTimeMillisUTC = TIME_BASED_KEYS.nextKey();
+            record.withTimeBasedKey(createTimeMillisUTC);
+        }
+        long key = record.getTimeBasedKey();
+        long changeTimeMillis = record.getChangeTimeMillis();
+        List<JournalSegment> segments = this.segments;
+        JournalSegment current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        int recordSize = JournalSegment.HEADER_SIZE + changeSet.length;
+        if (current == null || !fits(current.tail(), key, recordSize)
+            || !current.append(key, changeTimeMillis, format, changeSet)) {
+            current = newSegment(recordSize);
+            boolean appended = current.append(key, changeTimeMillis, format, changeSet);
+            assert appended;
+        }
+        ++appendedCount;
+    }
+
+    private boolean fits( JournalSegment.Tail tail,
+                          long key,
+                          int recordSize ) {
+        // the records of a segment must be sorted, and the segment size may have changed since the segment was created ...
+        return tail.isEmpty() || (key >= tail.maxKey() && tail.size() + recordSize <= segmentSize);
+    }
+
+    private JournalSegment newSegment( int minimumCapacity ) {
+        forceLastSegment();
+        try {
+            JournalSegment segment = JournalSegment.create(journalFolder, nextSegmentSequence++,
+                                                           Math.max(segmentSize, minimumCapacity));
+            List<JournalSegment> newSegments = new ArrayList<>(segments);
+            newSegments.add(segment);
+            this.segments = newSegments;
+            LOGGER.debug("Started the journal segment '{0}'", segment);
+            return segment;
+        } catch (IOException e) {
+            throw new SystemFailureException(e);
+        }
+    }
+
+    private void forceLastSegment() {
+        List<JournalSegment> segments = this.segments;
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).force();
+        }
+    }
+
+    /**
+     * Make sure that the given number of records appended since the journal was started have been written to disk. Each caller
+     * forces all of the records appended so far, so that callers which have appended records concurrently don't need to do it.
+     * The segment is forced without holding the append lock, so that other threads can keep appending in the meantime.
+     *
+     * @param count the number of appended records
+     */
+    private void sync( long count ) {
+        synchronized (syncLock) {
+            if (syncedCount >= count) {
+                return;
+            }
+            long appended;
+            JournalSegment last;
+            synchronized (appendLock) {
+                // any previous segment has been forced when the last segment was started
+                if (stopped) {
+                    return;
+                }
+                appended = appendedCount;
+                List<JournalSegment> segments = this.segments;
+                last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            }
+            // records appended after reading the count may or may not be forced as well, and are forced by their own callers;
+            // the segment stays mapped even if it is closed or removed concurrently
+            if (last != null) {
+                last.force();
+            }
+            syncedCount = appended;
+        }
+    }
+
+    private static byte formatOf( JournalRecord record ) {
+        return record.canWrite() ? JournalSegment.FORMAT_BINARY : JournalSegment.FORMAT_SERIALIZED;
+    }
+
+    private static byte[] write( JournalRecord record,
+                                 byte format ) {
+        try {
+            if (format == JournalSegment.FORMAT_BINARY) {
+                return new ChangeSetCodec.Writer().writeChangeSet(record.getChangeSet()).toByteArray();
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (ObjectOutputStream stream = new ObjectOutputStream(output)) {
+                stream.writeObject(record.getChangeSet());
+            }
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new SystemFailureException(e);
+        }
+    }
+
+    private Properties loadProperties() throws IOException {
+        Properties properties = new Properties();
+        File propertiesFile = new File(journalFolder, PROPERTIES_FILE);
+        if (propertiesFile.exists()) {
+            try (InputStream stream = new FileInputStream(propertiesFile)) {
+                properties.load(stream);
             }
-            this.records.put(record.getTimeBasedKey(), record);
         }
-        this.journalDB.commit();
+        return properties;
+    }
+
+    private void storeProperties() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(JOURNAL_ID_FIELD, journalId);
+        properties.setProperty(RETAINED_FROM_FIELD, Long.toString(retainedFromKey));
+        properties.setProperty(CREATED_FIELD, Long.toString(createdKey));
+        File temporaryFile = new File(journalFolder, PROPERTIES_FILE + ".tmp");
+        try (OutputStream stream = new FileOutputStream(temporaryFile)) {
+            properties.store(stream, null);
+        }
+        Files.move(temporaryFile.toPath(), new File(journalFolder, PROPERTIES_FILE).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     @Override
@@ -208,10 +461,31 @@ public class LocalJournal implements ChangeJournal {
         }
         long searchBound = TIME_BASED_KEYS.getCounterEndingAt(millisInUtc);
         LOGGER.debug("Removing records older than " + searchBound);
-        NavigableMap<Long, JournalRecord> toRemove = this.records.headMap(searchBound);
-        toRemove.clear();
-        journalDB.commit();
-        journalDB.compact();
+        List<JournalSegment> removed = new ArrayList<>();
+        synchronized (appendLock) {
+            if (stopped || searchBound <= retainedFromKey) {
+                return;
+            }
+            // the records of the remaining segments which are older than the bound are simply skipped when reading ...
+            this.retainedFromKey = searchBound;
+            List<JournalSegment> remaining = new ArrayList<>(segments.size());
+            for (JournalSegment segment : segments) {
+                JournalSegment.Tail tail = segment.tail();
+                if (!tail.isEmpty() && tail.maxKey() < searchBound) {
+                    removed.add(segment);
+                } else {
+                    remaining.add(segment);
+                }
+            }
+            this.segments = remaining;
+            try {
+                storeProperties();
+            } catch (IOException e) {
+                LOGGER.warn(JcrI18n.cannotWriteJournalProperties, journalLocation, e.getMessage());
+            }
+        }
+        // any reader which is still using these segments can finish reading them ...
+        removed.forEach(JournalSegment::delete);
     }
 
     protected String getJournalLocation() {
@@ -220,12 +494,13 @@ public class LocalJournal implements ChangeJournal {
 
     @Override
     public Records allRecords( boolean descendingOrder ) {
-        return recordsFrom(records, descendingOrder);
+        return recordsFrom(Long.MIN_VALUE, descendingOrder);
     }
 
     @Override
     public JournalRecord lastRecord() {
-        return this.records == null || this.records.isEmpty() ? null : this.records.lastEntry().getValue();
+        RecordCursor cursor = new RecordCursor(segments, retainedFromKey, true);
+        return cursor.advance() ? cursor.record() : null;
     }
 
     @Override
@@ -245,42 +520,32 @@ public class LocalJournal implements ChangeJournal {
             searchBound = TIME_BASED_KEYS.getCounterStartingAt(changeSetMillisUTC - searchTimeDelta);
         }
 
-        NavigableMap<Long, JournalRecord> subMap = records.tailMap(searchBound, true);
-        if (subMap.isEmpty()) {
-            return Records.EMPTY;
-        }
-        //process each of the records from the result and look at the timestamp of the changeset, so that we're sure we only include
-        //the correct ones (we used a delta to make sure we get everything)
-        long startKeyInSubMap = -1;
-        for (Iterator<Long> timeBasedKeysIterator = subMap.keySet().iterator(); timeBasedKeysIterator.hasNext();) {
-            Long timeBasedKey = timeBasedKeysIterator.next();
-            JournalRecord record = subMap.get(timeBasedKey);
-            long recordChangeTimeMillisUTC = record.getChangeTimeMillis();
+        //look at the timestamp of the changeset of each record, so that we're sure we only include the correct ones (we used a
+        //delta to make sure we get everything)
+        RecordCursor cursor = new RecordCursor(segments, Math.max(searchBound, retainedFromKey), false);
+        while (cursor.advance()) {
+            long recordChangeTimeMillisUTC = cursor.changeTimeMillis();
             if (((recordChangeTimeMillisUTC == changeSetMillisUTC) && inclusive)
                 || recordChangeTimeMillisUTC > changeSetMillisUTC) {
-                startKeyInSubMap = timeBasedKey;
-                break;
+                return recordsFrom(cursor.key(), descendingOrder);
             }
         }
-        return startKeyInSubMap != -1 ? recordsFrom(subMap.tailMap(startKeyInSubMap, true), descendingOrder) : Records.EMPTY;
+        return Records.EMPTY;
     }
 
     @Override
     public Iterator<NodeKey> changedNodesSince( final long timestamp ) {
         // we use a delta to make sure we get everything and we filter false positives later on
         long searchBound = TIME_BASED_KEYS.getCounterStartingAt(timestamp - searchTimeDelta);
-        Collection<JournalRecord> journalRecords = records.tailMap(searchBound, true).values();
-        if (journalRecords.isEmpty()) {
-            return Collections.emptyListIterator();
-        }
-        final Iterator<JournalRecord> recordsIterator = journalRecords.iterator();  
+        final RecordCursor cursor = new RecordCursor(segments, Math.max(searchBound, retainedFromKey), false);
         return new Iterator<NodeKey>() {
             private Iterator<NodeKey> currentBatchOfKeys = null;
-            
+            private boolean exhausted = false;
+
             @Override
             public boolean hasNext() {
                 nextBatchOfKeys();
-                return currentBatchOfKeys != null && currentBatchOfKeys.hasNext();
+                return currentBatchOfKeys != null;
             }
 
             @Override
@@ -289,7 +554,6 @@ public class LocalJournal implements ChangeJournal {
                 if (currentBatchOfKeys == null) {
                     throw new NoSuchElementException();
                 }
-                assert currentBatchOfKeys.hasNext();
                 return currentBatchOfKeys.next();
             }
 
@@ -297,25 +561,30 @@ public class LocalJournal implements ChangeJournal {
             public void remove() {
                 throw new UnsupportedOperationException();
             }
-            
+
             private void nextBatchOfKeys() {
-                if ((currentBatchOfKeys == null || !currentBatchOfKeys.hasNext()) && recordsIterator.hasNext()) {
-                    while (recordsIterator.hasNext()) {
-                        JournalRecord record = recordsIterator.next();
+                while ((currentBatchOfKeys == null || !currentBatchOfKeys.hasNext()) && !exhausted) {
+                    currentBatchOfKeys = null;
+                    if (!cursor.advance()) {
+                        exhausted = true;
+                    } else if (cursor.changeTimeMillis() >= timestamp) {
                         // we searched using a delta, so we must eliminate false positives
-                        if (record.getChangeTimeMillis() >= timestamp) {
-                            currentBatchOfKeys = record.getChangeSet().changedNodes().iterator();
-                            break;
-                        }
+                        currentBatchOfKeys = cursor.record().changedNodes().iterator();
                     }
                 }
                 if (currentBatchOfKeys != null && !currentBatchOfKeys.hasNext()) {
                     currentBatchOfKeys = null;
                 }
-            }            
+            }
         };
     }
 
+    @Override
+    public boolean retainsChangesSince( long timestamp ) {
+        long key = TIME_BASED_KEYS.getCounterStartingAt(timestamp);
+        return createdKey <= key && retainedFromKey <= key;
+    }
+
     @Override
     public String journalId() {
         return journalId;
@@ -326,26 +595,60 @@ public class LocalJournal implements ChangeJournal {
         return this;
     }
 
-    private static Records recordsFrom( final NavigableMap<Long, JournalRecord> content, boolean descending ) {
-        final Iterator<JournalRecord> iterator = descending ? content.descendingMap().values().iterator() : 
-                                                              content.values().iterator();
+    protected LocalJournal withSegmentSize( final int segmentSize ) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Get the number of segments of this journal.
+     *
+     * @return the number of segments
+     */
+    protected int segmentCount() {
+        return segments.size();
+    }
+
+    private Records recordsFrom( long lowerBound,
+                                 final boolean descending ) {
+        final List<JournalSegment> segments = this.segments;
+        final long searchBound = Math.max(lowerBound, retainedFromKey);
         return new Records() {
+            private int size = -1;
+
             @Override
             public int size() {
-                return content.size();
+                if (size < 0) {
+                    int count = 0;
+                    for (RecordCursor cursor = new RecordCursor(segments, searchBound, descending); cursor.advance();) {
+                        ++count;
+                    }
+                    size = count;
+                }
+                return size;
             }
 
             @Override
             public Iterator<JournalRecord> iterator() {
+                final RecordCursor cursor = new RecordCursor(segments, searchBound, descending);
                 return new Iterator<JournalRecord>() {
+                    private Boolean hasNext;
+
                     @Override
                     public boolean hasNext() {
-                        return iterator.hasNext();
+                        if (hasNext == null) {
+                            hasNext = cursor.advance();
+                        }
+                        return hasNext;
                     }
 
                     @Override
                     public JournalRecord next() {
-                        return iterator.next();
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        hasNext = null;
+                        return cursor.record();
                     }
 
                     @Override
@@ -357,8 +660,93 @@ public class LocalJournal implements ChangeJournal {
 
             @Override
             public boolean isEmpty() {
-                return size() == 0;
+                return size >= 0 ? size == 0 : !new RecordCursor(segments, searchBound, descending).advance();
             }
         };
     }
+
+    /**
+     * Reads the records with a key greater than or equal to some bound, in the order of their keys, by merging the records of
+     * all the segments. The segments are only read once the records before them have been read, so this usually reads one
+     * segment at a time. When several segments have a record with the same key, only the record from the most recent segment is
+     * read.
+     */
+    private static final class RecordCursor {
+        private final List<JournalSegment.Cursor> pending = new ArrayList<>();
+        private final PriorityQueue<JournalSegment.Cursor> cursors;
+        private final int direction;
+        private int nextPending;
+        private JournalSegment.Cursor current;
+
+        protected RecordCursor( List<JournalSegment> segments,
+                                long lowerBound,
+                                boolean descending ) {
+            this.direction = descending ? -1 : 1;
+            for (JournalSegment segment : segments) {
+                JournalSegment.Tail tail = segment.tail();
+                if (!tail.isEmpty() && tail.maxKey() >= lowerBound) {
+                    pending.add(segment.cursor(tail, lowerBound, descending));
+                }
+            }
+            Comparator<JournalSegment.Cursor> mostRecentFirst = (cursor1, cursor2) -> Long.compare(cursor2.segment().sequence(),
+                                                                                                   cursor1.segment().sequence());
+            pending.sort(((Comparator<JournalSegment.Cursor>)(cursor1, cursor2) -> compare(startKey(cursor1), startKey(cursor2)))
+                                 .thenComparing(mostRecentFirst));
+            cursors = new PriorityQueue<>(Math.max(1, pending.size()),
+                                          ((Comparator<JournalSegment.Cursor>)(cursor1, cursor2) -> compare(cursor1.key(),
+                                                                                                           cursor2.key()))
+                                                  .thenComparing(mostRecentFirst));
+        }
+
+        private int compare( long key1,
+                             long key2 ) {
+            return direction * Long.compare(key1, key2);
+        }
+
+        private long startKey( JournalSegment.Cursor cursor ) {
+            return direction < 0 ? cursor.tail.maxKey() : cursor.tail.minKey();
+        }
+
+        protected boolean advance() {
+            if (current != null) {
+                long previousKey = current.key();
+                if (current.advance()) {
+                    cursors.add(current);
+                }
+                current = null;
+                // skip the records with the same key in older segments ...
+                while (!cursors.isEmpty() && cursors.peek().key() == previousKey) {
+                    JournalSegment.Cursor duplicate = cursors.poll();
+                    if (duplicate.advance()) {
+                        cursors.add(duplicate);
+                    }
+                }
+            }
+            // start reading the segments which may have records that come before the next one ...
+            while (nextPending < pending.size()) {
+                JournalSegment.Cursor candidate = pending.get(nextPending);
+                if (!cursors.isEmpty() && compare(startKey(candidate), cursors.peek().key()) > 0) {
+                    break;
+                }
+                ++nextPending;
+                if (candidate.advance()) {
+                    cursors.add(candidate);
+                }
+            }
+            current = cursors.poll();
+            return current != null;
+        }
+
+        protected long key() {
+            return current.key();
+        }
+
+        protected long changeTimeMillis() {
+            return current.changeTimeMillis();
+        }
+
+        protected JournalRecord record() {
+            return current.record();
+        }
+    }
 }
@@ -59,6 +59,9 @@ public interface LockingService {
 
     /**
      * Unlocks a number of locks.  
+     * <p>
+     * Locks are not counted: a lock which the calling thread has acquired several times is released by a single call.
+     * </p>
      *
      * @param names the names of the locks to unlock
      * @return a {@code true} if all the locks were successfully unlocked and {@code false} if at least one lock could not be
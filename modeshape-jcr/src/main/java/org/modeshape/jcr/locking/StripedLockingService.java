@@ -0,0 +1,209 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.locking;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.JcrI18n;
+
+/**
+ * {@link LockingService} implementation which can be used instead of {@link StandaloneLockingService} when running in 
+ * non-clustered (local) mode. 
+ * <p>
+ * Instead of creating (and later removing) a lock for each name, names are hashed onto a fixed, power-of-two number of
+ * {@link ReentrantLock lock stripes} which are created once, so locking and unlocking does not allocate or update any shared
+ * maps. The stripes requested by a single call are always acquired in the order of their stripes, so that two threads which
+ * each lock a set of names in a single call cannot deadlock each other. This ordering does not extend across calls: a thread
+ * which already holds stripes from an earlier call and locks more names may deadlock with another thread doing the same in the
+ * opposite order, until one of the calls times out. Callers which need several names at once should therefore lock them all in
+ * a single call.
+ * </p>
+ * <p>
+ * Since different names may share a stripe, two threads may occasionally wait on each other even though they lock different
+ * names. The more stripes are configured, the less likely this is.
+ * </p>
+ * <p>
+ * Like the {@link StandaloneLockingService}, a thread may lock a name it already holds, but the holds are not counted: a single
+ * {@link #unlock(String...)} releases the name no matter how many times it has been locked.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public class StripedLockingService implements LockingService {
+
+    /**
+     * The default number of stripes, used when none is explicitly configured.
+     */
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(StripedLockingService.class);
+    private static final int MAX_STRIPES = 1 << 30;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long lockTimeoutMillis;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    /**
+     * The names locked by each thread; each name holds its stripe exactly once, regardless of how many times it was locked, so
+     * that unlocking a name once always releases it
+     */
+    private final ThreadLocal<Set<String>> namesHeldByThread = ThreadLocal.withInitial(HashSet::new);
+
+    public StripedLockingService() {
+        this(DEFAULT_STRIPES, 0);
+    }
+
+    /**
+     * Creates a new service.
+     * 
+     * @param stripes the number of lock stripes, which is rounded up to the next power of two; must be positive
+     * @param lockTimeoutMillis the default amount of time to wait for each lock; must not be negative
+     */
+    public StripedLockingService(int stripes, long lockTimeoutMillis) {
+        CheckArg.isPositive(stripes, "stripes");
+        CheckArg.isNonNegative(lockTimeoutMillis, "lockTimeoutMillis");
+        int size = Math.min(Integer.highestOneBit(stripes), MAX_STRIPES);
+        if (size < stripes && size < MAX_STRIPES) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    /**
+     * Returns the number of lock stripes used by this service.
+     * 
+     * @return the number of stripes; always a power of two
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    @Override
+    public boolean tryLock(String... names) throws InterruptedException {
+        return tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS, names);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit, String... names) throws InterruptedException {
+        checkRunning();
+        Set<String> held = namesHeldByThread.get();
+        String[] toLock = new String[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (!held.contains(name)) {
+                toLock[count++] = name;
+            }
+        }
+        if (count == 0) {
+            // everything is already held by this thread
+            return true;
+        }
+        // always acquire the stripes in the same order to prevent deadlocks 
+        Arrays.sort(toLock, 0, count, Comparator.comparingInt(this::stripeIndex).thenComparing(Comparator.naturalOrder()));
+        int locked = 0;
+        try {
+            for (; locked < count; locked++) {
+                String name = toLock[locked];
+                if (held.contains(name)) {
+                    // the same name was passed in more than once
+                    continue;
+                }
+                ReentrantLock stripe = stripes[stripeIndex(name)];
+                boolean success = time > 0 ? stripe.tryLock(time, unit) : stripe.tryLock();
+                if (!success) {
+                    LOGGER.debug("Unable to acquire lock on {0}. Reverting back the already obtained locks", name);
+                    break;
+                }
+                held.add(name);
+            }
+        } finally {
+            if (locked < count) {
+                // either a lock could not be obtained or the thread was interrupted, so release what this call obtained
+                release(held, toLock, locked);
+            }
+        }
+        return locked == count;
+    }
+
+    @Override
+    public boolean unlock(String... names) {
+        checkRunning();
+        Set<String> held = namesHeldByThread.get();
+        boolean result = true;
+        for (String name : names) {
+            if (held.remove(name)) {
+                stripes[stripeIndex(name)].unlock();
+                continue;
+            }
+            ReentrantLock stripe = stripes[stripeIndex(name)];
+            if (stripe.isLocked() && !stripe.isHeldByCurrentThread()) {
+                LOGGER.warn(JcrI18n.warnAttemptingToUnlockAnotherLock, Thread.currentThread().getName(), name);
+            } else {
+                LOGGER.debug("attempting to unlock an already unlocked lock {0}", name);
+            }
+            result = false;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized boolean shutdown() {
+        if (!running.compareAndSet(true, false)) {
+            return false;
+        }
+        LOGGER.debug("Shutting down locking service...");
+        // only the locks held by the calling thread can be released
+        Set<String> held = namesHeldByThread.get();
+        held.forEach(name -> stripes[stripeIndex(name)].unlock());
+        held.clear();
+        namesHeldByThread.remove();
+        return true;
+    }
+
+    private void release( Set<String> held, String[] names, int count ) {
+        for (int i = 0; i < count; i++) {
+            if (held.remove(names[i])) {
+                stripes[stripeIndex(names[i])].unlock();
+            }
+        }
+    }
+
+    private int stripeIndex( String name ) {
+        // spread the higher bits of the hash to the lower ones, like HashMap does
+        int hash = name.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void checkRunning() {
+        if (!running.get()) {
+            throw new IllegalStateException("Service has been shut down");
+        }
+    }
+}
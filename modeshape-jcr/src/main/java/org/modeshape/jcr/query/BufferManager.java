@@ -299,9 +299,12 @@ public class BufferManager implements Serializers, AutoCloseable {
             if (db == null) {
                 try {
                     lock.lock();
-                    // Allocate it ...
-                    db = supplier.get();
-                    reference.set(db);
+                    // Another thread (e.g., one evaluating another part of the same query) may have allocated it ...
+                    db = reference.get();
+                    if (db == null) {
+                        db = supplier.get();
+                        reference.set(db);
+                    }
                 } finally {
                     lock.unlock();
                 }
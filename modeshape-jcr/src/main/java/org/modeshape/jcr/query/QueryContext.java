@@ -365,6 +365,16 @@ public class QueryContext {
         return variables;
     }
 
+    /**
+     * Get the variables whose values may be used to estimate the cost of a plan. Unlike the {@link #getVariables() variables}
+     * used to create the plan, reading these values does not make the plan specific to them, so they must not end up in the plan.
+     *
+     * @return immutable map of variable values keyed by their name; never null but possibly empty
+     */
+    public Map<String, Object> getVariablesForEstimates() {
+        return variables;
+    }
+
     @Override
     public int hashCode() {
         return HashCode.compute(this.typeSystem, this.schemata, this.variables);
@@ -75,6 +75,35 @@ public abstract class QueryEngineBuilder {
         return config().getName();
     }
 
+    /**
+     * Get the number of threads which evaluate the independent parts of a query plan concurrently.
+     *
+     * @return the parallelism; 1 if queries are executed serially
+     */
+    protected final int parallelism() {
+        return config != null ? config.getQueryExecution().parallelism() : RepositoryConfiguration.Default.QUERY_PARALLELISM;
+    }
+
+    /**
+     * Get the number of batches of rows which each part of a query evaluated in parallel may produce ahead of its consumer.
+     *
+     * @return the size of the batch queues; always positive
+     */
+    protected final int batchQueueSize() {
+        return config != null ? config.getQueryExecution().batchQueueSize() :
+                                RepositoryConfiguration.Default.QUERY_BATCH_QUEUE_SIZE;
+    }
+
+    /**
+     * Get the maximum number of optimized query plans which are kept for reuse.
+     *
+     * @return the size of the plan cache; 0 if plans are not cached
+     */
+    protected final int planCacheSize() {
+        return config != null ? config.getQueryExecution().planCacheSize() :
+                                RepositoryConfiguration.Default.QUERY_PLAN_CACHE_SIZE;
+    }
+
     protected final Planner planner() {
         return this.planner != null ? this.planner : defaultPlanner();
     }
@@ -105,7 +105,8 @@ public class IndexQueryEngine extends ScanningQueryEngine {
                 };
             }
             // Finally create the query engine ...
-            return new IndexQueryEngine(context(), repositoryName(), planner(), optimizer, indexManager());
+            return new IndexQueryEngine(context(), repositoryName(), planner(), optimizer, indexManager(), parallelism(),
+                                        batchQueueSize(), planCacheSize());
         }
 
         @Override
@@ -158,7 +159,28 @@ public class IndexQueryEngine extends ScanningQueryEngine {
                                 Planner planner,
                                 Optimizer optimizer,
                                 IndexManager indexManager ) {
-        super(context, repositoryName, planner, optimizer);
+        this(context, repositoryName, planner, optimizer, indexManager, 1, 1);
+    }
+
+    protected IndexQueryEngine( ExecutionContext context,
+                                String repositoryName,
+                                Planner planner,
+                                Optimizer optimizer,
+                                IndexManager indexManager,
+                                int parallelism,
+                                int batchQueueSize ) {
+        this(context, repositoryName, planner, optimizer, indexManager, parallelism, batchQueueSize, 0);
+    }
+
+    protected IndexQueryEngine( ExecutionContext context,
+                                String repositoryName,
+                                Planner planner,
+                                Optimizer optimizer,
+                                IndexManager indexManager,
+                                int parallelism,
+                                int batchQueueSize,
+                                int planCacheSize ) {
+        super(context, repositoryName, planner, optimizer, parallelism, batchQueueSize, planCacheSize);
         this.indexManager = indexManager;
     }
 
@@ -0,0 +1,364 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.util.HashCode;
+import org.modeshape.jcr.NodeTypes;
+import org.modeshape.jcr.RepositoryIndexes;
+import org.modeshape.jcr.query.model.QueryCommand;
+import org.modeshape.jcr.query.model.Visitors;
+import org.modeshape.jcr.query.plan.PlanHints;
+import org.modeshape.jcr.query.plan.PlanNode;
+import org.modeshape.jcr.query.validate.Schemata;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+
+/**
+ * A bounded, concurrent cache of the optimized plans of queries, so that a query which is executed repeatedly is planned and
+ * optimized only once.
+ * <p>
+ * Plans are found by their {@link Key}, which consists of the parsed query (compared by value, so that the same query written
+ * with other whitespace finds the same plan), the workspaces and the hints of the query, and the schemata, node types and index
+ * definitions that were used to plan it. Most plans do not depend on the values of the query's bind variables, and are reused
+ * for any values. But some planning steps, such as rewriting comparisons into range criteria or looking up a node by its path,
+ * use the value of a variable; the names of those variables are remembered for each query (the "bind-variable shape" of the
+ * query), and such plans are only reused for the same values of just those variables.
+ * </p>
+ * <p>
+ * The whole cache is cleared as soon as a query is planned with other schemata, node types or index definitions than the
+ * cached plans. The plans also depend on the number of rows the indexes estimate for each criteria, which change as content is
+ * added and removed; so plans are {@link #DEFAULT_MAX_AGE_IN_MILLIS only kept for a while}, and the cache should be
+ * {@link #clear() cleared} whenever the indexes are rebuilt.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public final class PlanCache {
+
+    /**
+     * The default maximum time that a plan is reused after it was made, which is 10 minutes.
+     */
+    public static final long DEFAULT_MAX_AGE_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ConcurrentMap<Key, Set<String>> variableNamesByKey;
+    private final ConcurrentMap<Key, CachedPlan> plansByKey;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final long maxAgeInNanos;
+    private final LongSupplier nanoClock;
+    private volatile Key latest;
+
+    /**
+     * Create a cache which holds the plans of at most the supplied number of queries, evicting the least recently used plans
+     * and the plans older than {@link #DEFAULT_MAX_AGE_IN_MILLIS}.
+     *
+     * @param maxSize the maximum number of plans; must be positive
+     */
+    public PlanCache( int maxSize ) {
+        this(maxSize, DEFAULT_MAX_AGE_IN_MILLIS);
+    }
+
+    /**
+     * Create a cache which holds the plans of at most the supplied number of queries, evicting the least recently used plans
+     * and the plans older than the supplied age.
+     *
+     * @param maxSize the maximum number of plans; must be positive
+     * @param maxAgeInMillis the maximum time in milliseconds that a plan is reused after it was made; must be positive
+     */
+    public PlanCache( int maxSize,
+                      long maxAgeInMillis ) {
+        this(maxSize, maxAgeInMillis, System::nanoTime);
+    }
+
+    PlanCache( int maxSize,
+               long maxAgeInMillis,
+               LongSupplier nanoClock ) {
+        assert maxSize > 0;
+        assert maxAgeInMillis > 0;
+        this.maxAgeInNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeInMillis);
+        this.nanoClock = nanoClock;
+        this.variableNamesByKey = new ConcurrentLinkedHashMap.Builder<Key, Set<String>>().maximumWeightedCapacity(maxSize)
+                                                                                          .build();
+        this.plansByKey = new ConcurrentLinkedHashMap.Builder<Key, CachedPlan>().maximumWeightedCapacity(maxSize).build();
+    }
+
+    /**
+     * Find the plan of the query with the supplied key, given the current values of the query's bind variables.
+     *
+     * @param key the key of the query; may not be null
+     * @param variables the values of the query's bind variables; may not be null
+     * @return the cached plan, or null if there is no plan for the query and these variable values
+     */
+    public CachedPlan get( Key key,
+                           Map<String, Object> variables ) {
+        invalidateIfDefinitionsChanged(key);
+        Set<String> variableNames = variableNamesByKey.get(key);
+        Key planKey = variableNames != null ? key.withValues(variableNames, variables) : null;
+        CachedPlan plan = planKey != null ? plansByKey.get(planKey) : null;
+        if (plan != null && nanoClock.getAsLong() - plan.createdAt > maxAgeInNanos) {
+            // The row counts the plan was made with may be out of date, so plan the query again ...
+            plansByKey.remove(planKey, plan);
+            plan = null;
+        }
+        if (plan != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return plan;
+    }
+
+    /**
+     * Add the plan of the query with the supplied key.
+     *
+     * @param key the key of the query; may not be null
+     * @param variableNames the names of the bind variables whose values were used to plan the query; may not be null but may be
+     *        empty
+     * @param variables the values of the query's bind variables; may not be null
+     * @param plan the optimized plan, which must not be modified afterwards; may not be null
+     * @param hints the hints as they were after the query was planned, which must not be modified afterwards; may not be null
+     * @param addedVariables the names of the variables that were added while the query was planned; may not be null but may be
+     *        empty
+     */
+    public void put( Key key,
+                     Set<String> variableNames,
+                     Map<String, Object> variables,
+                     PlanNode plan,
+                     PlanHints hints,
+                     Set<String> addedVariables ) {
+        invalidateIfDefinitionsChanged(key);
+        Set<String> existingNames = variableNamesByKey.get(key);
+        if (existingNames != null && !existingNames.equals(variableNames)) {
+            // The plan depends on other variables than before, so drop the plans that were made for the old ones ...
+            variableNamesByKey.remove(key);
+            plansByKey.keySet().removeIf(cached -> cached.hasSameStatementAs(key));
+        }
+        Set<String> names = Collections.unmodifiableSet(new HashSet<>(variableNames));
+        variableNamesByKey.put(key, names);
+        plansByKey.put(key.withValues(names, variables), new CachedPlan(plan, hints, addedVariables, nanoClock.getAsLong()));
+    }
+
+    /**
+     * Returns the number of times the plan of a query was found in the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of times the plan of a query was not found in the cache, and the query had to be planned.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of plans in the cache.
+     *
+     * @return the number of plans
+     */
+    public int size() {
+        return plansByKey.size();
+    }
+
+    /**
+     * Remove all of the plans from the cache.
+     */
+    public void clear() {
+        variableNamesByKey.clear();
+        plansByKey.clear();
+    }
+
+    private void invalidateIfDefinitionsChanged( Key key ) {
+        Key latest = this.latest;
+        if (latest == null || !latest.hasSameDefinitionsAs(key)) {
+            this.latest = key;
+            if (latest != null) clear();
+        }
+    }
+
+    /**
+     * The key of a query in the {@link PlanCache}.
+     */
+    @Immutable
+    public static final class Key {
+        private final QueryCommand query;
+        private final Set<String> workspaceNames;
+        private final PlanHints hints;
+        private final Schemata schemata;
+        private final int nodeTypesVersion;
+        private final RepositoryIndexes indexes;
+        private final Map<String, Object> values;
+        private final int hc;
+
+        /**
+         * Create the key of a query.
+         *
+         * @param query the parsed query; may not be null
+         * @param workspaceNames the names of the workspaces the query is run against; may not be null
+         * @param hints the hints of the query before it was planned; may not be null
+         * @param schemata the schemata used to plan the query; may not be null
+         * @param nodeTypes the node types used to plan the query; may not be null
+         * @param indexes the index definitions used to plan the query; may not be null
+         */
+        public Key( QueryCommand query,
+                    Set<String> workspaceNames,
+                    PlanHints hints,
+                    Schemata schemata,
+                    NodeTypes nodeTypes,
+                    RepositoryIndexes indexes ) {
+            this(query, new HashSet<>(workspaceNames), requestedHints(hints), schemata, nodeTypes.getVersion(), indexes,
+                 Collections.<String, Object>emptyMap());
+        }
+
+        private static PlanHints requestedHints( PlanHints hints ) {
+            // The hints describing the query are set by the planner, and may be left over from a previous execution ...
+            PlanHints requested = hints.clone();
+            requested.hasCriteria = false;
+            requested.hasJoin = false;
+            requested.hasSort = false;
+            requested.hasSetQuery = false;
+            requested.hasLimit = false;
+            requested.isExistsQuery = false;
+            requested.hasOptionalJoin = false;
+            requested.hasFullTextSearch = false;
+            requested.hasSubqueries = false;
+            requested.hasView = false;
+            return requested;
+        }
+
+        private Key( QueryCommand query,
+                     Set<String> workspaceNames,
+                     PlanHints hints,
+                     Schemata schemata,
+                     int nodeTypesVersion,
+                     RepositoryIndexes indexes,
+                     Map<String, Object> values ) {
+            this.query = query;
+            this.workspaceNames = workspaceNames;
+            this.hints = hints;
+            this.schemata = schemata;
+            this.nodeTypesVersion = nodeTypesVersion;
+            this.indexes = indexes;
+            this.values = values;
+            this.hc = HashCode.compute(query, workspaceNames, values);
+        }
+
+        protected Key withValues( Set<String> variableNames,
+                                  Map<String, Object> variables ) {
+            if (variableNames.isEmpty()) return this;
+            Map<String, Object> values = new HashMap<>();
+            for (String name : variableNames) {
+                values.put(name, variables.get(name));
+            }
+            return new Key(query, workspaceNames, hints, schemata, nodeTypesVersion, indexes, values);
+        }
+
+        protected boolean hasSameDefinitionsAs( Key other ) {
+            return this.schemata == other.schemata && this.nodeTypesVersion == other.nodeTypesVersion
+                   && this.indexes == other.indexes;
+        }
+
+        protected boolean hasSameStatementAs( Key other ) {
+            return this.query.equals(other.query) && this.workspaceNames.equals(other.workspaceNames)
+                   && this.hints.equals(other.hints) && hasSameDefinitionsAs(other);
+        }
+
+        @Override
+        public int hashCode() {
+            return hc;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if (obj == this) return true;
+            if (obj instanceof Key) {
+                Key that = (Key)obj;
+                return this.hc == that.hc && hasSameStatementAs(that) && this.values.equals(that.values);
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return Visitors.readable(query) + (values.isEmpty() ? "" : " with " + values);
+        }
+    }
+
+    /**
+     * A plan in the {@link PlanCache}.
+     */
+    @Immutable
+    public static final class CachedPlan {
+        private final PlanNode plan;
+        private final PlanHints hints;
+        private final Set<String> addedVariables;
+        private final long createdAt;
+
+        protected CachedPlan( PlanNode plan,
+                              PlanHints hints,
+                              Set<String> addedVariables,
+                              long createdAt ) {
+            this.plan = plan;
+            this.hints = hints;
+            this.addedVariables = Collections.unmodifiableSet(new HashSet<>(addedVariables));
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * Get a copy of the optimized plan, which may be modified when the query is executed.
+         *
+         * @return the copy of the plan; never null
+         */
+        public PlanNode getPlan() {
+            return plan.clone();
+        }
+
+        /**
+         * Get the hints as they were after the query was planned.
+         *
+         * @return the hints, which must not be modified; never null
+         */
+        public PlanHints getHints() {
+            return hints;
+        }
+
+        /**
+         * Get the names of the variables that were added while the query was planned, such as the variables holding the results
+         * of subqueries.
+         *
+         * @return the names of the added variables; never null but possibly empty
+         */
+        public Set<String> getAddedVariables() {
+            return addedVariables;
+        }
+    }
+}
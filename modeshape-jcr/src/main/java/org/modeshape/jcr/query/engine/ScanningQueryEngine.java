@@ -15,6 +15,7 @@
  */
 package org.modeshape.jcr.query.engine;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,6 +28,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
@@ -72,6 +76,8 @@ import org.modeshape.jcr.query.engine.process.DistinctSequence;
 import org.modeshape.jcr.query.engine.process.ExceptSequence;
 import org.modeshape.jcr.query.engine.process.HashJoinSequence;
 import org.modeshape.jcr.query.engine.process.IntersectSequence;
+import org.modeshape.jcr.query.engine.process.MergeJoinSequence;
+import org.modeshape.jcr.query.engine.process.PrefetchingSequence;
 import org.modeshape.jcr.query.engine.process.JoinSequence.Range;
 import org.modeshape.jcr.query.engine.process.JoinSequence.RangeProducer;
 import org.modeshape.jcr.query.engine.process.SortingSequence;
@@ -134,10 +140,12 @@ import org.modeshape.jcr.query.plan.Planner;
 import org.modeshape.jcr.query.validate.Schemata;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.NameFactory;
+import org.modeshape.jcr.value.NamespaceRegistry;
 import org.modeshape.jcr.value.Path;
 import org.modeshape.jcr.value.PathFactory;
 import org.modeshape.jcr.value.PropertyType;
 import org.modeshape.jcr.value.StringFactory;
+import org.modeshape.jcr.value.basic.LocalNamespaceRegistry;
 import org.modeshape.jcr.value.binary.BinaryStore;
 
 /**
@@ -163,7 +171,8 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
 
         @Override
         public QueryEngine build() {
-            return new ScanningQueryEngine(context(), repositoryName(), planner(), optimizer());
+            return new ScanningQueryEngine(context(), repositoryName(), planner(), optimizer(), parallelism(), batchQueueSize(),
+                                           planCacheSize());
         }
 
         @Override
@@ -179,16 +188,73 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
     protected final String repositoryName;
     protected final Planner planner;
     protected final Optimizer optimizer;
+    private final ForkJoinPool pool;
+    private final int batchQueueSize;
+    private final PlanCache planCache;
 
     public ScanningQueryEngine( ExecutionContext context,
                                 String repositoryName,
                                 Planner planner,
                                 Optimizer optimizer ) {
+        this(context, repositoryName, planner, optimizer, 1, 1);
+    }
+
+    /**
+     * Create a query engine which may evaluate the independent parts of each query plan concurrently.
+     *
+     * @param context the execution context of the repository; may not be null
+     * @param repositoryName the name of the repository
+     * @param planner the planner which creates the canonical query plans; may not be null
+     * @param optimizer the optimizer of the query plans; may not be null
+     * @param parallelism the number of threads which evaluate the independent parts of a query plan, such as the two sides of
+     *        a join or the operands of a set operation, concurrently; 1 if queries are to be executed serially
+     * @param batchQueueSize the number of batches of rows each part of a query evaluated in parallel may produce ahead of the
+     *        thread consuming them
+     */
+    public ScanningQueryEngine( ExecutionContext context,
+                                String repositoryName,
+                                Planner planner,
+                                Optimizer optimizer,
+                                int parallelism,
+                                int batchQueueSize ) {
+        this(context, repositoryName, planner, optimizer, parallelism, batchQueueSize, 0);
+    }
+
+    /**
+     * Create a query engine which may evaluate the independent parts of each query plan concurrently, and which may reuse the
+     * plans of queries that are executed repeatedly.
+     *
+     * @param context the execution context of the repository; may not be null
+     * @param repositoryName the name of the repository
+     * @param planner the planner which creates the canonical query plans; may not be null
+     * @param optimizer the optimizer of the query plans; may not be null
+     * @param parallelism the number of threads which evaluate the independent parts of a query plan, such as the two sides of
+     *        a join or the operands of a set operation, concurrently; 1 if queries are to be executed serially
+     * @param batchQueueSize the number of batches of rows each part of a query evaluated in parallel may produce ahead of the
+     *        thread consuming them
+     * @param planCacheSize the maximum number of optimized query plans that are kept for reuse; 0 if plans are not to be
+     *        cached
+     */
+    public ScanningQueryEngine( ExecutionContext context,
+                                String repositoryName,
+                                Planner planner,
+                                Optimizer optimizer,
+                                int parallelism,
+                                int batchQueueSize,
+                                int planCacheSize ) {
         assert planner != null;
         assert optimizer != null;
         this.repositoryName = repositoryName;
         this.planner = planner;
         this.optimizer = optimizer;
+        this.batchQueueSize = Math.max(1, batchQueueSize);
+        this.planCache = planCacheSize > 0 ? new PlanCache(planCacheSize) : null;
+        // the pool starts its threads only when the first query is executed in parallel ...
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("modeshape-query-" + repositoryName + "-" + thread.getPoolIndex());
+            return thread;
+        }, null, true) : null;
     }
 
     /**
@@ -227,15 +293,38 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                          context.getWorkspaceNames(), repositoryName, query, context.id());
         }
 
-        // Create the canonical plan ...
+        // Reuse the plan of this query if it has already been planned and optimized ...
         long start = System.nanoTime();
-        PlanNode plan = planner.createPlan(context, query);
+        PlanCache.Key cacheKey = planCacheKey(context, query);
+        PlanCache.CachedPlan cachedPlan = cacheKey != null ? planCache.get(cacheKey, context.getVariables()) : null;
+        Set<String> variableNames = null;
+        Set<String> variableNamesRead = null;
+        PlanNode plan = null;
+        if (cachedPlan != null) {
+            plan = cachedPlan.getPlan();
+            context.getHints().setAll(cachedPlan.getHints());
+            for (String addedVariable : cachedPlan.getAddedVariables()) {
+                context.getVariables().putIfAbsent(addedVariable, null);
+            }
+        } else {
+            if (cacheKey != null) {
+                // Find out which variables the plan depends upon ...
+                variableNames = new HashSet<>(context.getVariables().keySet());
+                variableNamesRead = context.recordVariableReads();
+            }
+            // Create the canonical plan ...
+            plan = planner.createPlan(context, query);
+        }
         long duration = Math.abs(System.nanoTime() - start);
         Statistics stats = new Statistics(duration);
         final String workspaceName = context.getWorkspaceNames().iterator().next();
 
         if (trace) {
-            LOGGER.trace("Computed canonical query plan for query {0}: {1}", context.id(), plan);
+            if (cachedPlan != null) {
+                LOGGER.trace("Reusing cached query plan for query {0}: {1}", context.id(), plan);
+            } else {
+                LOGGER.trace("Computed canonical query plan for query {0}: {1}", context.id(), plan);
+            }
         }
 
         checkCancelled(context);
@@ -243,7 +332,16 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
         if (!context.getProblems().hasErrors()) {
             // Optimize the plan ...
             start = System.nanoTime();
-            PlanNode optimizedPlan = optimizer.optimize(context, plan);
+            PlanNode optimizedPlan = cachedPlan != null ? plan : optimizer.optimize(context, plan);
+            if (variableNamesRead != null) {
+                context.stopRecordingVariableReads();
+                if (!context.getProblems().hasProblems()) {
+                    Set<String> addedVariables = new HashSet<>(context.getVariables().keySet());
+                    addedVariables.removeAll(variableNames);
+                    planCache.put(cacheKey, variableNamesRead, context.getVariables(), optimizedPlan.clone(),
+                                  context.getHints().clone(), addedVariables);
+                }
+            }
             duration = Math.abs(System.nanoTime() - start);
             stats = stats.withOptimizationTime(duration);
 
@@ -450,7 +548,56 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
 
     @Override
     public void shutdown() {
-        // nothing to do
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (planCache != null) {
+            planCache.clear();
+        }
+    }
+
+    /**
+     * Get the cache of the optimized plans of the queries executed by this engine.
+     *
+     * @return the plan cache, or null if plans are not cached
+     */
+    public PlanCache planCache() {
+        return planCache;
+    }
+
+    /**
+     * Evaluate the supplied sequences, which belong to independent parts of a query plan, concurrently if this engine executes
+     * queries in parallel. The sequences are read on the engine's threads only once the first batch of any of them is requested.
+     * Queries executed within a transaction are always evaluated on the calling thread, since the transaction and the state
+     * bound to it are only visible to that thread.
+     *
+     * @param context the context in which the query is executed; may not be null
+     * @param sequences the sequences of the independent parts of the plan; may not be null
+     * @return the sequences which are to be used instead of the supplied ones, in the same order; never null
+     */
+    protected NodeSequence[] inParallel( QueryContext context,
+                                         NodeSequence... sequences ) {
+        if (pool == null || pool.isShutdown()) return sequences;
+        for (NodeSequence sequence : sequences) {
+            // there's nothing to gain when one of the sequences has no rows ...
+            if (sequence.isEmpty()) return sequences;
+        }
+        return PrefetchingSequence.prefetch(pool, batchQueueSize, context, sequences);
+    }
+
+    /**
+     * Determine whether a {@link JoinAlgorithm#MERGE merge} join with the supplied condition and type can be performed by
+     * streaming both of its (ordered) sides through a {@link MergeJoinSequence}. Only joins on the node keys qualify, since the
+     * plan cannot order the rows by any other join condition value; all other merge joins are performed with a hash join.
+     *
+     * @param joinCondition the join condition; may not be null
+     * @param joinType the join type; may not be null
+     * @return true if the join can use a {@link MergeJoinSequence}, or false otherwise
+     */
+    protected boolean isMergeable( JoinCondition joinCondition,
+                                   JoinType joinType ) {
+        if (joinType == JoinType.CROSS || !(joinCondition instanceof SameNodeJoinCondition)) return false;
+        return ((SameNodeJoinCondition)joinCondition).getSelector2Path() == null;
     }
 
     @Override
@@ -469,6 +616,25 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                                     new HashMap<PlanNode, Columns>());
     }
 
+    /**
+     * Get the key under which the plan of the supplied query is cached. Plans are not cached when the session has overridden
+     * some namespace prefixes, since the names used in the query and its plan then depend upon the session.
+     *
+     * @param context the context in which the query is to be executed; may not be null
+     * @param query the query that is to be executed; may not be null
+     * @return the key of the plan, or null if the plan is not to be cached
+     */
+    protected PlanCache.Key planCacheKey( ScanQueryContext context,
+                                          QueryCommand query ) {
+        if (planCache == null || context.getProblems().hasProblems()) return null;
+        NamespaceRegistry registry = context.getExecutionContext().getNamespaceRegistry();
+        if (registry instanceof LocalNamespaceRegistry && !((LocalNamespaceRegistry)registry).getLocalNamespaces().isEmpty()) {
+            return null;
+        }
+        return new PlanCache.Key(query, context.getWorkspaceNames(), context.getHints(), context.getSchemata(),
+                                 context.getNodeTypes(), context.getIndexDefinitions());
+    }
+
     /**
      * Execute the optimized query defined by the supplied {@link PlanNode plan node}.
      * 
@@ -618,6 +784,9 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
 
                 NodeSequence left = createNodeSequence(originalQuery, joinQueryContext, leftPlan, leftColumns, sources);
                 NodeSequence right = createNodeSequence(originalQuery, joinQueryContext, rightPlan, rightColumns, sources);
+                NodeSequence[] sides = inParallel(context, left, right);
+                left = sides[0];
+                right = sides[1];
 
                 // Figure out the join algorithm ...
                 JoinAlgorithm algorithm = plan.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class);
@@ -755,8 +924,13 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                     if (!rightType.equals(commonType)) rightExtractor = RowExtractors.convert(rightExtractor, commonType);
                 }
 
-                rows = new HashJoinSequence(workspaceName, left, right, leftExtractor, rightExtractor, joinType,
-                                            context.getBufferManager(), cache, rangeProducer, pack, useHeap);
+                if (algorithm == JoinAlgorithm.MERGE && isMergeable(joinCondition, joinType)) {
+                    // Both sides are already ordered by their node keys, so stream them through a merge join ...
+                    rows = new MergeJoinSequence(workspaceName, left, right, leftExtractor, rightExtractor, joinType, cache);
+                } else {
+                    rows = new HashJoinSequence(workspaceName, left, right, leftExtractor, rightExtractor, joinType,
+                                                context.getBufferManager(), cache, rangeProducer, pack, useHeap);
+                }
                 // For each Constraint object applied to the JOIN, simply create a SelectComponent on top ...
                 RowFilter filter = null;
                 List<Constraint> constraints = plan.getPropertyAsList(Property.JOIN_CONSTRAINTS, Constraint.class);
@@ -820,6 +994,9 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                     second = NodeSequence.slice(second, secondColumns);
                     assert first.width() == second.width();
                 }
+                NodeSequence[] operands = inParallel(context, first, second);
+                first = operands[0];
+                second = operands[1];
                 pack = false;
                 switch (operation) {
                     case UNION: {
@@ -896,23 +1073,12 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                             sortExtractor = createSortingExtractor(orderings, sourceNamesByAlias, context, columns, sources);
                         } else {
                             // Order by the location(s) because it's before a merge-join ...
-                            final TypeFactory<?> keyType = context.getTypeSystem().getReferenceFactory();
+                            // (using the same node key values as the join, so that a merge join sees the same order) ...
                             List<ExtractFromRow> extractors = new ArrayList<>();
                             for (Object ordering : orderBys) {
                                 SelectorName selectorName = (SelectorName)ordering;
-                                final int index = columns.getSelectorIndex(selectorName.name());
-                                extractors.add(new ExtractFromRow() {
-                                    @Override
-                                    public TypeFactory<?> getType() {
-                                        return keyType;
-                                    }
-
-                                    @Override
-                                    public Object getValueInRow( RowAccessor row ) {
-                                        CachedNode node = row.getNode(index);
-                                        return node != null ? node.getKey() : null;
-                                    }
-                                });
+                                int index = columns.getSelectorIndex(selectorName.name());
+                                extractors.add(RowExtractors.extractNodeKey(index, cache, types));
                             }
                             // This is jsut for a merge join, so use standard null ordering ...
                             nullOrder = NullOrder.NULLS_LAST;
@@ -3031,6 +3197,7 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
     static class ScanQueryContext extends QueryContext {
 
         protected final Map<PlanNode, Columns> columnsByPlanNode;
+        private final AtomicReference<Set<String>> variableNamesRead;
 
         protected ScanQueryContext( ExecutionContext context,
                                     RepositoryCache repositoryCache,
@@ -3044,9 +3211,53 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                                     Problems problems,
                                     Map<String, Object> variables,
                                     Map<PlanNode, Columns> columnsByPlanNode ) {
+            this(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata, indexDefns, nodeTypes,
+                 bufferManager, hints, problems, variables, columnsByPlanNode, new AtomicReference<Set<String>>());
+        }
+
+        private ScanQueryContext( ExecutionContext context,
+                                  RepositoryCache repositoryCache,
+                                  Set<String> workspaceNames,
+                                  Map<String, NodeCache> overriddenNodeCachesByWorkspaceName,
+                                  Schemata schemata,
+                                  RepositoryIndexes indexDefns,
+                                  NodeTypes nodeTypes,
+                                  BufferManager bufferManager,
+                                  PlanHints hints,
+                                  Problems problems,
+                                  Map<String, Object> variables,
+                                  Map<PlanNode, Columns> columnsByPlanNode,
+                                  AtomicReference<Set<String>> variableNamesRead ) {
             super(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata, indexDefns, nodeTypes,
                   bufferManager, hints, problems, variables);
             this.columnsByPlanNode = columnsByPlanNode;
+            this.variableNamesRead = variableNamesRead;
+        }
+
+        @Override
+        public Map<String, Object> getVariables() {
+            Map<String, Object> variables = super.getVariables();
+            Set<String> names = variableNamesRead.get();
+            return names != null ? new RecordingVariables(variables, names) : variables;
+        }
+
+        /**
+         * Start recording the names of the variables whose values are read from this context or any copy of it, until
+         * {@link #stopRecordingVariableReads()} is called.
+         *
+         * @return the set to which the names of the variables are added; never null
+         */
+        protected Set<String> recordVariableReads() {
+            Set<String> names = new HashSet<>();
+            variableNamesRead.set(names);
+            return names;
+        }
+
+        /**
+         * Stop recording the names of the variables whose values are read.
+         */
+        protected void stopRecordingVariableReads() {
+            variableNamesRead.set(null);
         }
 
         /**
@@ -3073,25 +3284,66 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
         @Override
         public ScanQueryContext with( Map<String, Object> variables ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode,
+                                        variableNamesRead);
         }
 
         @Override
         public ScanQueryContext with( PlanHints hints ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode,
+                                        variableNamesRead);
         }
 
         @Override
         public ScanQueryContext with( Problems problems ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode,
+                                        variableNamesRead);
         }
 
         @Override
         public ScanQueryContext with( Schemata schemata ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode,
+                                        variableNamesRead);
+        }
+    }
+    /**
+     * A view of the variables of a query which records the names of the variables whose values are read.
+     */
+    protected static final class RecordingVariables extends AbstractMap<String, Object> {
+        private final Map<String, Object> variables;
+        private final Set<String> namesRead;
+
+        protected RecordingVariables( Map<String, Object> variables,
+                                      Set<String> namesRead ) {
+            this.variables = variables;
+            this.namesRead = namesRead;
+        }
+
+        @Override
+        public Object get( Object key ) {
+            if (key instanceof String) namesRead.add((String)key);
+            return variables.get(key);
+        }
+
+        @Override
+        public boolean containsKey( Object key ) {
+            return variables.containsKey(key);
+        }
+
+        @Override
+        public Object put( String key,
+                           Object value ) {
+            return variables.put(key, value);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            // The caller may read any of the values ...
+            namesRead.addAll(variables.keySet());
+            return variables.entrySet();
         }
     }
 }
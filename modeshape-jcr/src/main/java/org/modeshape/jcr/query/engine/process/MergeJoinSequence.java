@@ -0,0 +1,345 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine.process;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.modeshape.common.annotation.NotThreadSafe;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.CachedNodeSupplier;
+import org.modeshape.jcr.query.NodeSequence;
+import org.modeshape.jcr.query.RowExtractors.ExtractFromRow;
+import org.modeshape.jcr.query.engine.process.BufferedRows.BufferedRow;
+import org.modeshape.jcr.query.engine.process.BufferedRows.BufferedRowFactory;
+import org.modeshape.jcr.query.model.JoinType;
+
+/**
+ * A {@link NodeSequence} implementation that performs an equijoin of two delegate sequences that are both already sorted in
+ * ascending order of their join condition values. The sort-merge algorithm reads both sides only once and at the same pace,
+ * keeping in memory just the right rows that have the join condition value of the current left row. Unlike the
+ * {@link HashJoinSequence}, it therefore never buffers a whole side of the join.
+ * <p>
+ * Rows with a null join condition value never match, and are returned without a matching row only for outer joins. The join
+ * condition values must be single-valued, and the {@link JoinType#CROSS cross join} is not supported.
+ * </p>
+ *
+ * @since 5.1
+ */
+@NotThreadSafe
+public class MergeJoinSequence extends NodeSequence {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    protected final String workspaceName;
+    protected final NodeSequence left;
+    protected final NodeSequence right;
+    protected final ExtractFromRow leftExtractor;
+    protected final ExtractFromRow rightExtractor;
+    protected final JoinType joinType;
+    protected final int leftWidth;
+    protected final int totalWidth;
+    private final Comparator<Object> comparator;
+    private final boolean includeUnmatchedLeftRows;
+    private final boolean includeUnmatchedRightRows;
+    private final Cursor leftRows;
+    private final Cursor rightRows;
+    private final List<BufferedRow> rightGroup = new ArrayList<>();
+    private Object rightGroupKey;
+    private boolean rightGroupMatched;
+    private boolean done;
+
+    @SuppressWarnings( "unchecked" )
+    public MergeJoinSequence( String workspaceName,
+                              NodeSequence left,
+                              NodeSequence right,
+                              ExtractFromRow leftExtractor,
+                              ExtractFromRow rightExtractor,
+                              JoinType joinType,
+                              CachedNodeSupplier nodeCache ) {
+        assert joinType != JoinType.CROSS : "A merge join requires a join condition";
+        this.workspaceName = workspaceName;
+        this.left = left;
+        this.right = right;
+        this.leftExtractor = leftExtractor;
+        this.rightExtractor = rightExtractor;
+        this.joinType = joinType;
+        this.leftWidth = left.width();
+        this.totalWidth = left.width() + right.width();
+        this.comparator = (Comparator<Object>)leftExtractor.getType().getComparator();
+        this.includeUnmatchedLeftRows = joinType == JoinType.LEFT_OUTER || joinType == JoinType.FULL_OUTER;
+        this.includeUnmatchedRightRows = joinType == JoinType.RIGHT_OUTER || joinType == JoinType.FULL_OUTER;
+        this.leftRows = new Cursor(left, leftExtractor, BufferedRows.serializer(nodeCache, left.width()));
+        this.rightRows = new Cursor(right, rightExtractor, BufferedRows.serializer(nodeCache, right.width()));
+    }
+
+    @Override
+    public int width() {
+        return totalWidth;
+    }
+
+    @Override
+    public long getRowCount() {
+        return -1L;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (left.isEmpty()) {
+            // Only the unmatched right rows can be returned ...
+            return !includeUnmatchedRightRows || right.isEmpty();
+        }
+        return false;
+    }
+
+    @Override
+    public Batch nextBatch() {
+        if (done) return null;
+        List<JoinedRow> rows = new ArrayList<>();
+        while (rows.size() < DEFAULT_BATCH_SIZE) {
+            if (!step(rows)) {
+                done = true;
+                break;
+            }
+        }
+        return rows.isEmpty() ? null : new JoinedRowsBatch(rows);
+    }
+
+    /**
+     * Join the next left row with the matching right rows or, once all left rows have been read, find the next unmatched right
+     * row.
+     *
+     * @param rows the list to which the joined rows are added; never null
+     * @return true if there may be more rows, or false if the join is complete
+     */
+    private boolean step( List<JoinedRow> rows ) {
+        if (leftRows.advance()) {
+            BufferedRow leftRow = leftRows.row;
+            Object key = leftRows.key;
+            if (key != null && advanceRightTo(key, rows)) {
+                for (BufferedRow rightRow : rightGroup) {
+                    rows.add(new JoinedRow(leftRow, rightRow));
+                }
+                rightGroupMatched = true;
+            } else if (includeUnmatchedLeftRows) {
+                rows.add(new JoinedRow(leftRow, null));
+            }
+            return true;
+        }
+        // There are no more left rows ...
+        if (!includeUnmatchedRightRows) return false;
+        discardRightGroup(rows);
+        if (rightRows.hasRow()) {
+            rows.add(new JoinedRow(null, rightRows.row));
+            rightRows.advance();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Move forward on the right side until the group of right rows with the supplied join condition value has been read.
+     *
+     * @param key the non-null join condition value of the current left row
+     * @param rows the list to which any unmatched right rows are added; never null
+     * @return true if there are right rows with the supplied value, or false otherwise
+     */
+    private boolean advanceRightTo( Object key,
+                                    List<JoinedRow> rows ) {
+        if (!rightGroup.isEmpty()) {
+            int diff = comparator.compare(rightGroupKey, key);
+            if (diff == 0) return true;
+            if (diff > 0) return false;
+            // The left side has moved past the current group ...
+            discardRightGroup(rows);
+        }
+        while (rightRows.hasRow()) {
+            Object rightKey = rightRows.key;
+            int diff = rightKey == null ? -1 : comparator.compare(rightKey, key);
+            if (diff > 0) return false;
+            if (diff < 0) {
+                // This right row can never be matched ...
+                if (includeUnmatchedRightRows) rows.add(new JoinedRow(null, rightRows.row));
+                rightRows.advance();
+                continue;
+            }
+            // Read all of the right rows with this value ...
+            rightGroupKey = rightKey;
+            rightGroupMatched = false;
+            do {
+                rightGroup.add(rightRows.row);
+            } while (rightRows.advance() && rightRows.key != null && comparator.compare(rightRows.key, rightGroupKey) == 0);
+            return true;
+        }
+        return false;
+    }
+
+    private void discardRightGroup( List<JoinedRow> rows ) {
+        if (!rightGroupMatched && includeUnmatchedRightRows) {
+            for (BufferedRow rightRow : rightGroup) {
+                rows.add(new JoinedRow(null, rightRow));
+            }
+        }
+        rightGroup.clear();
+        rightGroupKey = null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            left.close();
+        } finally {
+            right.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(merge-join width=" + width() + " " + joinType + " left=" + left + ", right=" + right + ", on " + leftExtractor
+               + "=" + rightExtractor + " )";
+    }
+
+    /**
+     * A forward-only position within one side of the join, which holds a copy of the current row and its join condition value.
+     */
+    private static final class Cursor {
+        private final NodeSequence sequence;
+        private final ExtractFromRow extractor;
+        private final BufferedRowFactory<? extends BufferedRow> rowFactory;
+        private Batch batch;
+        private boolean started;
+        private boolean exhausted;
+        protected BufferedRow row;
+        protected Object key;
+
+        protected Cursor( NodeSequence sequence,
+                          ExtractFromRow extractor,
+                          BufferedRowFactory<? extends BufferedRow> rowFactory ) {
+            this.sequence = sequence;
+            this.extractor = extractor;
+            this.rowFactory = rowFactory;
+        }
+
+        /**
+         * Determine whether there is a current row, reading the first row if needed.
+         *
+         * @return true if there is a current row, or false if all rows have been read
+         */
+        protected boolean hasRow() {
+            if (!started) advance();
+            return row != null;
+        }
+
+        /**
+         * Move to the next row.
+         *
+         * @return true if there is a next row, or false if all rows have been read
+         */
+        protected boolean advance() {
+            started = true;
+            while (!exhausted) {
+                if (batch != null && batch.hasNext()) {
+                    batch.nextRow();
+                    key = extractor.getValueInRow(batch);
+                    row = rowFactory.createRow(batch);
+                    return true;
+                }
+                batch = sequence.nextBatch();
+                exhausted = batch == null;
+            }
+            row = null;
+            key = null;
+            return false;
+        }
+    }
+
+    private static final class JoinedRow {
+        protected final BufferedRow left;
+        protected final BufferedRow right;
+
+        protected JoinedRow( BufferedRow left,
+                             BufferedRow right ) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private final class JoinedRowsBatch implements Batch {
+        private final List<JoinedRow> rows;
+        private int index = -1;
+        private JoinedRow current;
+
+        protected JoinedRowsBatch( List<JoinedRow> rows ) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int width() {
+            return totalWidth;
+        }
+
+        @Override
+        public String getWorkspaceName() {
+            return workspaceName;
+        }
+
+        @Override
+        public long rowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return rows.isEmpty();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < rows.size();
+        }
+
+        @Override
+        public void nextRow() {
+            current = rows.get(++index);
+        }
+
+        @Override
+        public CachedNode getNode() {
+            return getNode(0);
+        }
+
+        @Override
+        public CachedNode getNode( int index ) {
+            if (index < leftWidth) {
+                return current.left != null ? current.left.getNode(index) : null;
+            }
+            return current.right != null ? current.right.getNode(index - leftWidth) : null;
+        }
+
+        @Override
+        public float getScore() {
+            return getScore(0);
+        }
+
+        @Override
+        public float getScore( int index ) {
+            if (index < leftWidth) {
+                return current.left != null ? current.left.getScore(index) : 0.0f;
+            }
+            return current.right != null ? current.right.getScore(index - leftWidth) : 0.0f;
+        }
+    }
+}
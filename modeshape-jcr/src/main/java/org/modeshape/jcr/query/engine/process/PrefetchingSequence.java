@@ -0,0 +1,279 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine.process;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.cache.RepositoryCache;
+import org.modeshape.jcr.query.NodeSequence;
+import org.modeshape.jcr.query.QueryContext;
+
+/**
+ * A {@link NodeSequence} which reads the batches of another sequence on a separate thread, so that independent parts of a query
+ * plan (for example the two sides of a join or the operands of a set operation) can be evaluated concurrently. Each batch is
+ * {@link NodeSequence#copy(Batch) copied} on the producing thread, so that its nodes are loaded and its filters are applied
+ * there, and is then handed to the consuming thread through a bounded queue.
+ * <p>
+ * The sequences created {@link #prefetch(Executor, int, QueryContext, NodeSequence...) together} start producing batches only
+ * when the first batch of any of them is requested, and stop when they are {@link #close() closed}, when the query is
+ * {@link QueryContext#cancel() cancelled}, or when they are no longer referenced by the consumer.
+ * </p>
+ *
+ * @since 5.1
+ */
+public class PrefetchingSequence extends NodeSequence {
+
+    private static final Logger LOGGER = Logger.getLogger(PrefetchingSequence.class);
+    private static final long POLL_INTERVAL_MILLIS = 100L;
+    private static final Object END = new Object();
+
+    /**
+     * Create sequences which read the batches of the supplied sequences concurrently, using the given executor. All of the
+     * returned sequences start reading as soon as the first batch of any of them is requested. The sequences of a query which is
+     * executed within a transaction are returned as they are, since the transaction and the state bound to it (such as the
+     * transactional workspace caches and the connections of the persistent store) are only visible to the calling thread.
+     *
+     * @param executor the executor which runs the threads reading the supplied sequences; may not be null
+     * @param queueSize the maximum number of batches each sequence reads ahead of its consumer; must be positive
+     * @param context the context of the query, used to stop reading when the query is cancelled; may not be null
+     * @param sequences the sequences which are to be read concurrently; may not be null
+     * @return the prefetching sequences, or the supplied sequences if the query is executed within a transaction, in the same
+     *         order as the supplied sequences; never null
+     */
+    public static NodeSequence[] prefetch( Executor executor,
+                                           int queueSize,
+                                           QueryContext context,
+                                           NodeSequence... sequences ) {
+        RepositoryCache repositoryCache = context.getRepositoryCache();
+        if (repositoryCache != null && repositoryCache.isInTransaction()) return sequences;
+        Group group = new Group(sequences.length);
+        NodeSequence[] result = new NodeSequence[sequences.length];
+        for (int i = 0; i != sequences.length; ++i) {
+            result[i] = group.members[i] = new PrefetchingSequence(sequences[i], executor, queueSize, context, group);
+        }
+        return result;
+    }
+
+    private final int width;
+    private final long rowCount;
+    private final boolean empty;
+    private final Executor executor;
+    private final Group group;
+    private final Producer producer;
+    private boolean exhausted;
+
+    protected PrefetchingSequence( NodeSequence delegate,
+                                   Executor executor,
+                                   int queueSize,
+                                   QueryContext context,
+                                   Group group ) {
+        // the delegate is used by the producer only, so capture what the consumer may ask for before it starts ...
+        this.width = delegate.width();
+        this.rowCount = delegate.getRowCount();
+        this.empty = delegate.isEmpty();
+        this.executor = executor;
+        this.group = group;
+        this.producer = new Producer(delegate, new ArrayBlockingQueue<>(queueSize), context, this);
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    @Override
+    public Batch nextBatch() {
+        if (exhausted) return null;
+        group.start();
+        Object next = producer.take();
+        if (next instanceof Batch) {
+            return (Batch)next;
+        }
+        exhausted = true;
+        if (next instanceof Throwable) {
+            Throwable failure = (Throwable)next;
+            if (failure instanceof Error) throw (Error)failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+            throw new RuntimeException(failure);
+        }
+        // the delegate has no more batches or the query was cancelled ...
+        return null;
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+        if (!producer.stop()) {
+            // the producer never ran, so the delegate has to be closed here ...
+            producer.delegate.close();
+        }
+    }
+
+    protected void start() {
+        if (producer.started.compareAndSet(false, true)) {
+            executor.execute(producer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(prefetch " + producer.delegate + ")";
+    }
+
+    /**
+     * The sequences which start reading their delegates together.
+     */
+    protected static final class Group {
+        private final AtomicBoolean started = new AtomicBoolean();
+        protected PrefetchingSequence[] members;
+
+        protected Group( int size ) {
+            this.members = new PrefetchingSequence[size];
+        }
+
+        protected void start() {
+            if (started.compareAndSet(false, true)) {
+                PrefetchingSequence[] members = this.members;
+                // don't keep the other members reachable from the one which is being consumed ...
+                this.members = null;
+                for (PrefetchingSequence member : members) {
+                    member.start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads all of the batches of the delegate sequence and puts copies of them into the queue, followed by either the
+     * {@link PrefetchingSequence#END end marker} or the failure which stopped it. The producer owns the delegate, which it
+     * closes when it is done.
+     */
+    protected static final class Producer implements Runnable {
+        protected final NodeSequence delegate;
+        protected final AtomicBoolean started = new AtomicBoolean();
+        private final BlockingQueue<Object> queue;
+        private final QueryContext context;
+        private final WeakReference<PrefetchingSequence> consumer;
+        private volatile boolean stopped;
+
+        protected Producer( NodeSequence delegate,
+                            BlockingQueue<Object> queue,
+                            QueryContext context,
+                            PrefetchingSequence consumer ) {
+            this.delegate = delegate;
+            this.queue = queue;
+            this.context = context;
+            this.consumer = new WeakReference<>(consumer);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch = null;
+                while (!isStopped() && (batch = delegate.nextBatch()) != null) {
+                    if (batch.isEmpty() || !batch.hasNext()) continue;
+                    if (!put(NodeSequence.copy(batch))) return;
+                }
+                put(END);
+            } catch (Throwable t) {
+                if (isStopped()) {
+                    LOGGER.debug(t, "Ignoring failure of query sequence which is no longer used: {0}", delegate);
+                } else {
+                    put(t);
+                }
+            } finally {
+                delegate.close();
+            }
+        }
+
+        /**
+         * Stop reading the delegate sequence.
+         *
+         * @return true if the producer has been started, and thus closes the delegate sequence itself, or false otherwise
+         */
+        protected boolean stop() {
+            stopped = true;
+            queue.clear();
+            return !started.compareAndSet(false, true);
+        }
+
+        private boolean isStopped() {
+            return stopped || context.isCancelled() || consumer.get() == null;
+        }
+
+        private boolean put( final Object item ) {
+            final boolean[] added = { false };
+            try {
+                while (!added[0] && !isStopped()) {
+                    ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                        @Override
+                        public boolean block() throws InterruptedException {
+                            added[0] = queue.offer(item, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                            return true;
+                        }
+
+                        @Override
+                        public boolean isReleasable() {
+                            return added[0] || (added[0] = queue.offer(item));
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return added[0];
+        }
+
+        protected Object take() {
+            final Object[] taken = { null };
+            try {
+                while (taken[0] == null && !context.isCancelled()) {
+                    ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                        @Override
+                        public boolean block() throws InterruptedException {
+                            taken[0] = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                            return true;
+                        }
+
+                        @Override
+                        public boolean isReleasable() {
+                            return taken[0] != null || (taken[0] = queue.poll()) != null;
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return taken[0] != null ? taken[0] : END;
+        }
+    }
+}
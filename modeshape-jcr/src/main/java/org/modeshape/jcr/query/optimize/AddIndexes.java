@@ -212,7 +212,7 @@ public class AddIndexes implements OptimizerRule {
 
                     @Override
                     public Map<String, Object> getVariables() {
-                        return context.getVariables();
+                        return context.getVariablesForEstimates();
                     }
 
                     @Override
@@ -21,14 +21,17 @@ import java.util.Set;
 import org.modeshape.common.annotation.Immutable;
 import org.modeshape.jcr.query.QueryContext;
 import org.modeshape.jcr.query.model.ChildNodeJoinCondition;
+import org.modeshape.jcr.query.model.Constraint;
 import org.modeshape.jcr.query.model.DescendantNodeJoinCondition;
 import org.modeshape.jcr.query.model.DynamicOperand;
 import org.modeshape.jcr.query.model.EquiJoinCondition;
 import org.modeshape.jcr.query.model.JoinCondition;
+import org.modeshape.jcr.query.model.JoinType;
 import org.modeshape.jcr.query.model.NullOrder;
 import org.modeshape.jcr.query.model.Order;
 import org.modeshape.jcr.query.model.Ordering;
 import org.modeshape.jcr.query.model.PropertyValue;
+import org.modeshape.jcr.query.model.SameNode;
 import org.modeshape.jcr.query.model.SameNodeJoinCondition;
 import org.modeshape.jcr.query.model.SelectorName;
 import org.modeshape.jcr.query.plan.JoinAlgorithm;
@@ -99,17 +102,34 @@ import org.modeshape.jcr.query.plan.PlanNode.Type;
  * </li>
  * </ol>
  * </p>
+ * <p>
+ * Finally, the {@link #USE_MERGE_JOIN_FOR_ORDERED_INPUTS} instance never changes the structure of the plan, but uses the
+ * {@link JoinAlgorithm#MERGE merge} algorithm for a {@link SameNodeJoinCondition} whenever both children of the JOIN node already
+ * produce their rows in the order of the joined nodes, since the join can then stream both sides instead of buffering one of
+ * them. That is the case when a child is a SORT node ordering by the joined selector, or when it has a criteria limiting the
+ * joined selector to a single node, possibly below nodes that do not change the order of the rows (e.g., SELECT, PROJECT,
+ * DUP_REMOVE, LIMIT or ACCESS nodes, or the left side of an inner or left outer JOIN node). All other joins use the
+ * {@link JoinAlgorithm#NESTED_LOOP nested-loop} algorithm.
+ * </p>
  */
 @Immutable
 public class ChooseJoinAlgorithm implements OptimizerRule {
 
     public static final ChooseJoinAlgorithm USE_ONLY_NESTED_JOIN_ALGORITHM = new ChooseJoinAlgorithm(true);
     public static final ChooseJoinAlgorithm USE_BEST_JOIN_ALGORITHM = new ChooseJoinAlgorithm(false);
+    public static final ChooseJoinAlgorithm USE_MERGE_JOIN_FOR_ORDERED_INPUTS = new ChooseJoinAlgorithm(true, true);
 
     private final boolean useOnlyNested;
+    private final boolean mergeOrderedInputs;
 
     protected ChooseJoinAlgorithm( boolean useOnlyNested ) {
+        this(useOnlyNested, false);
+    }
+
+    protected ChooseJoinAlgorithm( boolean useOnlyNested,
+                                   boolean mergeOrderedInputs ) {
         this.useOnlyNested = useOnlyNested;
+        this.mergeOrderedInputs = mergeOrderedInputs;
     }
 
     @Override
@@ -120,8 +140,12 @@ public class ChooseJoinAlgorithm implements OptimizerRule {
         for (PlanNode joinNode : plan.findAllAtOrBelow(Type.JOIN)) {
             JoinCondition condition = joinNode.getProperty(Property.JOIN_CONDITION, JoinCondition.class);
             if (useOnlyNested) {
-                joinNode.setProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.NESTED_LOOP);
-                break;
+                if (mergeOrderedInputs && hasOrderedInputs(joinNode, condition)) {
+                    joinNode.setProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.MERGE);
+                } else {
+                    joinNode.setProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.NESTED_LOOP);
+                }
+                continue;
             }
 
             if (condition instanceof DescendantNodeJoinCondition) {
@@ -162,6 +186,68 @@ public class ChooseJoinAlgorithm implements OptimizerRule {
         return plan;
     }
 
+    /**
+     * Determine whether both children of the supplied JOIN node produce their rows in the order of the nodes joined by the
+     * supplied condition.
+     *
+     * @param joinNode the JOIN node; may not be null
+     * @param condition the join condition; may be null
+     * @return true if both sides of the join are ordered by the joined nodes, or false otherwise
+     */
+    protected boolean hasOrderedInputs( PlanNode joinNode,
+                                        JoinCondition condition ) {
+        if (!(condition instanceof SameNodeJoinCondition)) return false;
+        SameNodeJoinCondition sameNode = (SameNodeJoinCondition)condition;
+        if (sameNode.getSelector2Path() != null) return false;
+        PlanNode left = joinNode.getFirstChild();
+        PlanNode right = joinNode.getLastChild();
+        SelectorName name1 = sameNode.selector1Name();
+        SelectorName name2 = sameNode.selector2Name();
+        if (left.getSelectors().contains(name1)) {
+            return isOrderedBy(left, name1) && isOrderedBy(right, name2);
+        }
+        return isOrderedBy(left, name2) && isOrderedBy(right, name1);
+    }
+
+    /**
+     * Determine whether the rows produced by the supplied plan node are ordered by the nodes of the given selector.
+     *
+     * @param node the plan node; may not be null
+     * @param selector the name of the selector; may not be null
+     * @return true if the rows are known to be in the order of the selector's nodes, or false otherwise
+     */
+    protected boolean isOrderedBy( PlanNode node,
+                                   SelectorName selector ) {
+        switch (node.getType()) {
+            case SORT:
+                List<Object> orderBys = node.getPropertyAsList(Property.SORT_ORDER_BY, Object.class);
+                return orderBys != null && !orderBys.isEmpty() && selector.equals(orderBys.get(0));
+            case SELECT:
+                Constraint criteria = node.getProperty(Property.SELECT_CRITERIA, Constraint.class);
+                if (criteria instanceof SameNode && selector.equals(((SameNode)criteria).selectorName())) {
+                    // All rows have the same node for this selector ...
+                    return true;
+                }
+                return isOrderedBy(node.getFirstChild(), selector);
+            case LIMIT:
+                Integer rowLimit = node.getProperty(Property.LIMIT_COUNT, Integer.class);
+                if (rowLimit != null && rowLimit.intValue() <= 1) return true;
+                return isOrderedBy(node.getFirstChild(), selector);
+            case JOIN:
+                // Inner and left outer joins return their rows in the order of the left rows ...
+                JoinType joinType = node.getProperty(Property.JOIN_TYPE, JoinType.class);
+                if (joinType != JoinType.INNER && joinType != JoinType.LEFT_OUTER) return false;
+                PlanNode left = node.getFirstChild();
+                return left.getSelectors().contains(selector) && isOrderedBy(left, selector);
+            case ACCESS:
+            case PROJECT:
+            case DUP_REMOVE:
+                return node.getChildCount() == 1 && isOrderedBy(node.getFirstChild(), selector);
+            default:
+                return false;
+        }
+    }
+
     protected void createOrderBysForJoinCondition( JoinCondition condition,
                                                    Set<SelectorName> leftSelectors,
                                                    List<Object> leftSortBy,
@@ -0,0 +1,587 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.optimize;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.jcr.api.query.qom.Operator;
+import org.modeshape.jcr.query.QueryContext;
+import org.modeshape.jcr.query.engine.IndexPlan;
+import org.modeshape.jcr.query.model.And;
+import org.modeshape.jcr.query.model.Between;
+import org.modeshape.jcr.query.model.ChildNode;
+import org.modeshape.jcr.query.model.ChildNodeJoinCondition;
+import org.modeshape.jcr.query.model.Comparison;
+import org.modeshape.jcr.query.model.Constraint;
+import org.modeshape.jcr.query.model.DescendantNode;
+import org.modeshape.jcr.query.model.DescendantNodeJoinCondition;
+import org.modeshape.jcr.query.model.EquiJoinCondition;
+import org.modeshape.jcr.query.model.FullTextSearch;
+import org.modeshape.jcr.query.model.JoinCondition;
+import org.modeshape.jcr.query.model.JoinType;
+import org.modeshape.jcr.query.model.Not;
+import org.modeshape.jcr.query.model.Or;
+import org.modeshape.jcr.query.model.PropertyExistence;
+import org.modeshape.jcr.query.model.Relike;
+import org.modeshape.jcr.query.model.SameNode;
+import org.modeshape.jcr.query.model.SameNodeJoinCondition;
+import org.modeshape.jcr.query.model.SelectorName;
+import org.modeshape.jcr.query.model.SetCriteria;
+import org.modeshape.jcr.query.model.Visitors;
+import org.modeshape.jcr.query.plan.PlanNode;
+import org.modeshape.jcr.query.plan.PlanNode.Property;
+import org.modeshape.jcr.query.plan.PlanNode.Type;
+
+/**
+ * An {@link OptimizerRule optimizer rule} that uses estimates of the number of rows produced by each part of the plan to choose
+ * the order in which a tree of inner joins is evaluated, and the side of each join that is buffered.
+ * <p>
+ * The rule finds each group of adjacent {@link JoinType#INNER inner} JOIN nodes, and treats the children of that group that are
+ * not themselves inner JOIN nodes as the inputs. Starting with the input that has the smallest estimated cardinality, it then
+ * repeatedly joins the input (connected to those already joined by one of the group's join conditions) that produces the fewest
+ * rows. The resulting left-deep tree places the smaller input of each join on the right side, which is the side buffered by the
+ * join, except when a {@link DescendantNodeJoinCondition} or {@link ChildNodeJoinCondition} requires the ancestor or parent to be
+ * on the left (see {@link JoinOrder}). Any {@link Property#JOIN_CONSTRAINTS join constraints} are moved to the lowest JOIN node
+ * that has all of the selectors they use. The new tree only replaces the existing one when its estimated cost is materially
+ * lower, so that plans without useful estimates remain unchanged.
+ * </p>
+ * <p>
+ * The cardinality of each source is the {@link IndexPlan#getCardinalityEstimate() cardinality estimate} of its best index when
+ * that index applies some of the source's criteria, or otherwise the total number of nodes derived from the
+ * {@link IndexPlan#getSelectivityEstimate() selectivity} of an index (or {@link #DEFAULT_SOURCE_CARDINALITY} when there is
+ * none) reduced by a heuristic selectivity of each criteria that is not applied by the index. A join on a
+ * {@link ChildNodeJoinCondition} produces at most one row per child, and an {@link EquiJoinCondition equi-join} produces the
+ * product of the cardinalities of its sides divided by the number of distinct values of the larger side (assumed to be
+ * {@link #DEFAULT_DISTINCT_VALUE_FRACTION a fraction} of its rows). When the plan is to be shown, each
+ * JOIN node is annotated with its {@link Property#CARDINALITY_ESTIMATE estimated cardinality} and {@link Property#COST_ESTIMATE
+ * estimated cost}.
+ * </p>
+ * <p>
+ * This rule must run after the {@link AddIndexes indexes} have been added to the plan and {@link OrderIndexesByCost ordered},
+ * but before the {@link ChooseJoinAlgorithm join algorithms} are chosen.
+ * </p>
+ *
+ * @since 5.1
+ */
+@Immutable
+public class CostBasedJoinOrder implements OptimizerRule {
+
+    public static final CostBasedJoinOrder INSTANCE = new CostBasedJoinOrder();
+
+    /** The number of nodes assumed for a source when none of its indexes provides an estimate. */
+    public static final long DEFAULT_SOURCE_CARDINALITY = 10000L;
+
+    /**
+     * The fraction of the rows of each side of an {@link EquiJoinCondition equi-join} that are assumed to have distinct values
+     * of the joined property.
+     */
+    protected static final double DEFAULT_DISTINCT_VALUE_FRACTION = 0.1d;
+
+    /** The cost of buffering a row on the right side of a join, relative to reading a row on the left side. */
+    protected static final double BUILD_COST_FACTOR = 2.0d;
+
+    /** The fraction of the existing cost that a new join order must not exceed to replace the existing order. */
+    protected static final double IMPROVEMENT_THRESHOLD = 0.8d;
+
+    @Override
+    public PlanNode execute( QueryContext context,
+                             PlanNode plan,
+                             LinkedList<OptimizerRule> ruleStack ) {
+        // Reorder the groups of inner joins from the bottom up, so that the estimates of the outer groups use the new order ...
+        List<PlanNode> joins = plan.findAllAtOrBelow(Type.JOIN);
+        for (int i = joins.size() - 1; i >= 0; --i) {
+            PlanNode join = joins.get(i);
+            if (isReorderable(join) && !isReorderable(join.getParent())) {
+                reorder(join);
+            }
+        }
+        if (context.getHints().showPlan) {
+            for (PlanNode join : joins) {
+                Estimate estimate = estimate(join);
+                join.setProperty(Property.CARDINALITY_ESTIMATE, estimate.cardinality());
+                join.setProperty(Property.COST_ESTIMATE, estimate.cost());
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Determine whether the supplied node is an inner JOIN node that can be reordered with its adjacent inner JOIN nodes.
+     *
+     * @param node the plan node; may be null
+     * @return true if the node is an inner join with a join condition, or false otherwise
+     */
+    protected boolean isReorderable( PlanNode node ) {
+        return node != null && node.is(Type.JOIN) && node.getChildCount() == 2
+               && node.getProperty(Property.JOIN_TYPE, JoinType.class) == JoinType.INNER
+               && node.hasProperty(Property.JOIN_CONDITION);
+    }
+
+    /**
+     * Reorder the group of inner joins with the supplied root, if a join order with a materially lower cost can be found.
+     *
+     * @param root the top-most JOIN node of the group; may not be null
+     */
+    protected void reorder( PlanNode root ) {
+        List<PlanNode> joins = new ArrayList<PlanNode>();
+        List<PlanNode> inputs = new ArrayList<PlanNode>();
+        collect(root, joins, inputs);
+        List<JoinCondition> conditions = new ArrayList<JoinCondition>(joins.size());
+        List<Constraint> constraints = new ArrayList<Constraint>();
+        for (PlanNode join : joins) {
+            conditions.add(join.getProperty(Property.JOIN_CONDITION, JoinCondition.class));
+            List<Constraint> joinConstraints = join.getPropertyAsList(Property.JOIN_CONSTRAINTS, Constraint.class);
+            if (joinConstraints != null) constraints.addAll(joinConstraints);
+        }
+
+        List<Step> steps = chooseOrder(inputs, conditions, constraints);
+        if (steps == null) return;
+        Estimate existing = estimate(root);
+        Estimate proposed = steps.get(steps.size() - 1).estimate;
+        if (proposed.cost >= existing.cost * IMPROVEMENT_THRESHOLD) return;
+
+        // Rebuild the tree using the existing JOIN nodes, keeping the root in its place ...
+        for (PlanNode join : joins) {
+            join.removeAllChildren();
+        }
+        List<PlanNode> available = new LinkedList<PlanNode>(joins);
+        available.remove(root);
+        PlanNode current = null;
+        for (Step step : steps) {
+            if (current == null) {
+                // The first step is the starting input ...
+                current = step.input;
+                continue;
+            }
+            PlanNode join = available.isEmpty() ? root : available.remove(0);
+            PlanNode left = step.inputOnLeft ? step.input : current;
+            PlanNode right = step.inputOnLeft ? current : step.input;
+            join.addLastChild(left);
+            join.addLastChild(right);
+            join.setProperty(Property.JOIN_CONDITION, step.condition);
+            join.getSelectors().clear();
+            join.addSelectors(left.getSelectors());
+            join.addSelectors(right.getSelectors());
+            List<Constraint> joinConstraints = new LinkedList<Constraint>();
+            for (Constraint constraint : step.constraints) {
+                joinConstraints.add(constraint);
+            }
+            if (joinConstraints.isEmpty()) {
+                join.removeProperty(Property.JOIN_CONSTRAINTS);
+            } else {
+                join.setProperty(Property.JOIN_CONSTRAINTS, joinConstraints);
+            }
+            current = join;
+        }
+        assert current == root;
+    }
+
+    private void collect( PlanNode node,
+                          List<PlanNode> joins,
+                          List<PlanNode> inputs ) {
+        if (joins.isEmpty() || isReorderable(node)) {
+            joins.add(node);
+            for (PlanNode child : node) {
+                collect(child, joins, inputs);
+            }
+        } else {
+            inputs.add(node);
+        }
+    }
+
+    /**
+     * Greedily choose the order in which the supplied inputs are to be joined.
+     *
+     * @param inputs the inputs of the group of joins; may not be null
+     * @param conditions the join conditions of the group; may not be null
+     * @param constraints the join constraints of the group; may not be null
+     * @return the steps of the new left-deep join tree, starting with the first input; or null if no order could be found
+     */
+    private List<Step> chooseOrder( List<PlanNode> inputs,
+                                    List<JoinCondition> conditions,
+                                    List<Constraint> constraints ) {
+        int first = 0;
+        List<Estimate> estimates = new ArrayList<Estimate>(inputs.size());
+        for (PlanNode input : inputs) {
+            Estimate estimate = estimate(input);
+            if (!estimates.isEmpty() && estimate.cardinality < estimates.get(first).cardinality) first = estimates.size();
+            estimates.add(estimate);
+        }
+        List<Step> steps = new ArrayList<Step>(inputs.size());
+        Set<PlanNode> joined = new HashSet<PlanNode>();
+        Set<SelectorName> joinedSelectors = new HashSet<SelectorName>();
+        List<JoinCondition> remainingConditions = new LinkedList<JoinCondition>(conditions);
+        List<Constraint> remainingConstraints = new LinkedList<Constraint>(constraints);
+
+        PlanNode start = inputs.get(first);
+        steps.add(new Step(start, null, false, new ArrayList<Constraint>(0), estimates.get(first)));
+        joined.add(start);
+        joinedSelectors.addAll(start.getSelectors());
+        while (!remainingConditions.isEmpty()) {
+            Estimate current = steps.get(steps.size() - 1).estimate;
+            Step best = null;
+            for (JoinCondition condition : remainingConditions) {
+                SelectorName[] names = selectorsOf(condition);
+                if (names == null) return null;
+                SelectorName other = null;
+                if (joinedSelectors.contains(names[0]) && !joinedSelectors.contains(names[1])) {
+                    other = names[1];
+                } else if (joinedSelectors.contains(names[1]) && !joinedSelectors.contains(names[0])) {
+                    other = names[0];
+                }
+                int index = other != null ? indexOf(inputs, other) : -1;
+                if (index == -1 || joined.contains(inputs.get(index))) continue;
+
+                PlanNode input = inputs.get(index);
+                Estimate inputEstimate = estimates.get(index);
+                SelectorName requiredOnLeft = requiredOnLeft(condition);
+                // The smaller side is buffered on the right, unless the condition requires a particular order ...
+                boolean inputOnLeft = requiredOnLeft != null ? input.getSelectors().contains(requiredOnLeft)
+                                                               : inputEstimate.cardinality > current.cardinality;
+
+                Set<SelectorName> selectors = new HashSet<SelectorName>(joinedSelectors);
+                selectors.addAll(input.getSelectors());
+                List<Constraint> covered = new ArrayList<Constraint>();
+                for (Constraint constraint : remainingConstraints) {
+                    if (selectors.containsAll(Visitors.getSelectorsReferencedBy(constraint))) covered.add(constraint);
+                }
+                Estimate left = inputOnLeft ? inputEstimate : current;
+                Estimate right = inputOnLeft ? current : inputEstimate;
+                Set<SelectorName> leftSelectors = inputOnLeft ? input.getSelectors() : joinedSelectors;
+                Estimate estimate = estimateJoin(JoinType.INNER, condition, covered, leftSelectors, left, right);
+                if (best == null || estimate.cardinality < best.estimate.cardinality
+                    || (estimate.cardinality == best.estimate.cardinality && estimate.cost < best.estimate.cost)) {
+                    best = new Step(input, condition, inputOnLeft, covered, estimate);
+                }
+            }
+            if (best == null) return null;
+            steps.add(best);
+            joined.add(best.input);
+            joinedSelectors.addAll(best.input.getSelectors());
+            remainingConditions.remove(best.condition);
+            remainingConstraints.removeAll(best.constraints);
+        }
+        if (joined.size() != inputs.size() || !remainingConstraints.isEmpty()) return null;
+        return steps;
+    }
+
+    private static int indexOf( List<PlanNode> inputs,
+                                SelectorName selector ) {
+        for (int i = 0; i != inputs.size(); ++i) {
+            if (inputs.get(i).getSelectors().contains(selector)) return i;
+        }
+        return -1;
+    }
+
+    private static SelectorName[] selectorsOf( JoinCondition condition ) {
+        if (condition instanceof SameNodeJoinCondition) {
+            SameNodeJoinCondition sameNode = (SameNodeJoinCondition)condition;
+            return new SelectorName[] {sameNode.selector1Name(), sameNode.selector2Name()};
+        }
+        if (condition instanceof ChildNodeJoinCondition) {
+            ChildNodeJoinCondition childNode = (ChildNodeJoinCondition)condition;
+            return new SelectorName[] {childNode.parentSelectorName(), childNode.childSelectorName()};
+        }
+        if (condition instanceof DescendantNodeJoinCondition) {
+            DescendantNodeJoinCondition descendantNode = (DescendantNodeJoinCondition)condition;
+            return new SelectorName[] {descendantNode.ancestorSelectorName(), descendantNode.descendantSelectorName()};
+        }
+        if (condition instanceof EquiJoinCondition) {
+            EquiJoinCondition equiJoin = (EquiJoinCondition)condition;
+            return new SelectorName[] {equiJoin.selector1Name(), equiJoin.selector2Name()};
+        }
+        return null;
+    }
+
+    /**
+     * Get the selector that the supplied join condition requires on the left side of the join, as expected by {@link JoinOrder}.
+     *
+     * @param condition the join condition; may not be null
+     * @return the selector that must be on the left side, or null if either side can be on the left
+     */
+    protected SelectorName requiredOnLeft( JoinCondition condition ) {
+        if (condition instanceof DescendantNodeJoinCondition) {
+            return ((DescendantNodeJoinCondition)condition).ancestorSelectorName();
+        }
+        if (condition instanceof ChildNodeJoinCondition) {
+            return ((ChildNodeJoinCondition)condition).parentSelectorName();
+        }
+        return null;
+    }
+
+    /**
+     * Estimate the number of rows produced by the supplied plan node and the cost of producing them.
+     *
+     * @param node the plan node; may not be null
+     * @return the estimate; never null
+     */
+    protected Estimate estimate( PlanNode node ) {
+        switch (node.getType()) {
+            case JOIN:
+                JoinType joinType = node.getProperty(Property.JOIN_TYPE, JoinType.class);
+                JoinCondition condition = node.getProperty(Property.JOIN_CONDITION, JoinCondition.class);
+                List<Constraint> constraints = node.getPropertyAsList(Property.JOIN_CONSTRAINTS, Constraint.class);
+                return estimateJoin(joinType, condition, constraints, node.getFirstChild().getSelectors(),
+                                    estimate(node.getFirstChild()), estimate(node.getLastChild()));
+            case SOURCE:
+                return estimateSource(node);
+            case SELECT:
+                Estimate input = estimate(node.getFirstChild());
+                Constraint criteria = node.getProperty(Property.SELECT_CRITERIA, Constraint.class);
+                if (criteria == null || isAppliedByIndex(node, criteria)) return input;
+                if (criteria instanceof SameNode) {
+                    // There is at most one node ...
+                    return new Estimate(Math.min(input.cardinality, 1.0d), input.cost);
+                }
+                return new Estimate(input.cardinality * selectivityOf(criteria), input.cost);
+            case LIMIT:
+                input = estimate(node.getFirstChild());
+                Integer limit = node.getProperty(Property.LIMIT_COUNT, Integer.class);
+                return limit == null ? input : new Estimate(Math.min(input.cardinality, limit.doubleValue()), input.cost);
+            case NULL:
+                return Estimate.NONE;
+            case ACCESS:
+                if (node.hasProperty(Property.ACCESS_NO_RESULTS)) return Estimate.NONE;
+                break;
+            case SET_OPERATION:
+                double cardinality = 0.0d;
+                double cost = 0.0d;
+                for (PlanNode child : node) {
+                    Estimate estimate = estimate(child);
+                    cardinality += estimate.cardinality;
+                    cost += estimate.cost;
+                }
+                return new Estimate(cardinality, cost);
+            default:
+                break;
+        }
+        // Otherwise, the node returns the rows of its last child ...
+        if (node.getChildCount() == 0) return Estimate.NONE;
+        double cost = 0.0d;
+        for (PlanNode child : node) {
+            cost += estimate(child).cost;
+        }
+        return new Estimate(estimate(node.getLastChild()).cardinality, cost);
+    }
+
+    /**
+     * Estimate the number of rows produced by the supplied JOIN and the cost of producing them.
+     *
+     * @param joinType the type of join; may be null if not known
+     * @param condition the join condition; may be null for a cross join
+     * @param constraints the join constraints; may be null
+     * @param leftSelectors the selectors of the left side of the join; may not be null
+     * @param left the estimate for the left side of the join; may not be null
+     * @param right the estimate for the right side of the join; may not be null
+     * @return the estimate; never null
+     */
+    protected Estimate estimateJoin( JoinType joinType,
+                                     JoinCondition condition,
+                                     Collection<Constraint> constraints,
+                                     Set<SelectorName> leftSelectors,
+                                     Estimate left,
+                                     Estimate right ) {
+        double cardinality;
+        if (condition instanceof DescendantNodeJoinCondition) {
+            // Each descendant may be below several ancestors ...
+            cardinality = Math.min(left.cardinality * right.cardinality, Math.max(left.cardinality, right.cardinality));
+        } else if (condition instanceof ChildNodeJoinCondition) {
+            // Each child has exactly one parent, while each parent may have many children ...
+            SelectorName child = ((ChildNodeJoinCondition)condition).childSelectorName();
+            Estimate children = leftSelectors.contains(child) ? left : right;
+            cardinality = Math.min(left.cardinality * right.cardinality, children.cardinality);
+        } else if (condition instanceof EquiJoinCondition) {
+            // Each value of the side with the most distinct values matches the same number of rows on the other side ...
+            double distinctValues = DEFAULT_DISTINCT_VALUE_FRACTION * Math.max(left.cardinality, right.cardinality);
+            cardinality = left.cardinality * right.cardinality / Math.max(distinctValues, 1.0d);
+        } else if (condition != null) {
+            // Each node matches at most one node on the other side ...
+            cardinality = Math.min(left.cardinality, right.cardinality);
+        } else {
+            cardinality = left.cardinality * right.cardinality;
+        }
+        if (constraints != null) {
+            for (Constraint constraint : constraints) {
+                cardinality *= selectivityOf(constraint);
+            }
+        }
+        if (joinType == JoinType.LEFT_OUTER) {
+            cardinality = Math.max(cardinality, left.cardinality);
+        } else if (joinType == JoinType.RIGHT_OUTER) {
+            cardinality = Math.max(cardinality, right.cardinality);
+        } else if (joinType == JoinType.FULL_OUTER) {
+            cardinality = Math.max(cardinality, left.cardinality + right.cardinality);
+        }
+        // The left side is read once, while the right side is buffered ...
+        double cost = left.cost + right.cost + left.cardinality + BUILD_COST_FACTOR * right.cardinality + cardinality;
+        return new Estimate(cardinality, cost);
+    }
+
+    /**
+     * Estimate the number of rows produced by the supplied SOURCE node, using the estimates of its indexes when available.
+     *
+     * @param source the SOURCE node; may not be null
+     * @return the estimate; never null
+     */
+    protected Estimate estimateSource( PlanNode source ) {
+        double total = DEFAULT_SOURCE_CARDINALITY;
+        IndexPlan best = null;
+        for (PlanNode child : source) {
+            if (child.isNot(Type.INDEX)) continue;
+            IndexPlan index = child.getProperty(Property.INDEX_SPECIFICATION, IndexPlan.class);
+            if (index == null) continue;
+            if (best == null) best = index;
+            long cardinality = index.getCardinalityEstimate();
+            Float selectivity = index.getSelectivityEstimate();
+            if (cardinality != Long.MAX_VALUE && selectivity != null && selectivity.floatValue() > 0.0f) {
+                // This is equivalent to the total count of the index ...
+                total = cardinality / selectivity.doubleValue();
+                break;
+            }
+        }
+        double cardinality = total;
+        if (best != null && !best.getConstraints().isEmpty() && best.getCardinalityEstimate() != Long.MAX_VALUE) {
+            cardinality = best.getCardinalityEstimate();
+        }
+        return new Estimate(cardinality, cardinality);
+    }
+
+    private boolean isAppliedByIndex( PlanNode select,
+                                      Constraint criteria ) {
+        PlanNode source = select.findAtOrBelow(Type.SOURCE);
+        if (source == null) return false;
+        for (PlanNode child : source) {
+            if (child.is(Type.INDEX)) {
+                // Only the first index is used ...
+                IndexPlan index = child.getProperty(Property.INDEX_SPECIFICATION, IndexPlan.class);
+                return index != null && index.getCardinalityEstimate() != Long.MAX_VALUE
+                       && index.getConstraints().contains(criteria);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the heuristic fraction of rows that satisfy the supplied constraint.
+     *
+     * @param constraint the constraint; may not be null
+     * @return the selectivity, between 0 and 1.0 (inclusive)
+     */
+    protected double selectivityOf( Constraint constraint ) {
+        if (constraint instanceof And) {
+            And and = (And)constraint;
+            return selectivityOf(and.left()) * selectivityOf(and.right());
+        }
+        if (constraint instanceof Or) {
+            Or or = (Or)constraint;
+            double left = selectivityOf(or.left());
+            double right = selectivityOf(or.right());
+            return left + right - left * right;
+        }
+        if (constraint instanceof Not) {
+            return 1.0d - selectivityOf(((Not)constraint).getConstraint());
+        }
+        if (constraint instanceof Comparison) {
+            Operator operator = ((Comparison)constraint).operator();
+            switch (operator) {
+                case EQUAL_TO:
+                    return 0.1d;
+                case NOT_EQUAL_TO:
+                    return 0.9d;
+                case LIKE:
+                    return 0.25d;
+                default:
+                    return 1.0d / 3.0d;
+            }
+        }
+        if (constraint instanceof SetCriteria) {
+            return Math.min(1.0d, 0.1d * ((SetCriteria)constraint).rightOperands().size());
+        }
+        if (constraint instanceof Between || constraint instanceof Relike) {
+            return 0.25d;
+        }
+        if (constraint instanceof PropertyExistence || constraint instanceof DescendantNode) {
+            return 0.5d;
+        }
+        if (constraint instanceof FullTextSearch || constraint instanceof ChildNode) {
+            return 0.1d;
+        }
+        if (constraint instanceof SameNode) {
+            return 0.01d;
+        }
+        return 1.0d;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * An estimate of the number of rows produced by a plan node and of the relative cost of producing them.
+     */
+    @Immutable
+    protected static final class Estimate {
+        protected static final Estimate NONE = new Estimate(0.0d, 0.0d);
+
+        protected final double cardinality;
+        protected final double cost;
+
+        protected Estimate( double cardinality,
+                            double cost ) {
+            this.cardinality = cardinality;
+            this.cost = cost;
+        }
+
+        public long cardinality() {
+            return Math.round(Math.ceil(cardinality));
+        }
+
+        public long cost() {
+            return Math.round(Math.ceil(cost));
+        }
+
+        @Override
+        public String toString() {
+            return "cardinality=" + cardinality() + ", cost=" + cost();
+        }
+    }
+
+    private static final class Step {
+        protected final PlanNode input;
+        protected final JoinCondition condition;
+        protected final boolean inputOnLeft;
+        protected final List<Constraint> constraints;
+        protected final Estimate estimate;
+
+        protected Step( PlanNode input,
+                        JoinCondition condition,
+                        boolean inputOnLeft,
+                        List<Constraint> constraints,
+                        Estimate estimate ) {
+            this.input = input;
+            this.condition = condition;
+            this.inputOnLeft = inputOnLeft;
+            this.constraints = constraints;
+            this.estimate = estimate;
+        }
+    }
+}
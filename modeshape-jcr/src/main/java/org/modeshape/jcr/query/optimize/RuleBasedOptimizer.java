@@ -66,7 +66,6 @@ public class RuleBasedOptimizer implements Optimizer {
         ruleStack.addFirst(RewriteAsRangeCriteria.INSTANCE);
         if (hints.hasJoin) {
             ruleStack.addFirst(AddJoinConditionColumnsToSources.INSTANCE);
-            ruleStack.addFirst(ChooseJoinAlgorithm.USE_ONLY_NESTED_JOIN_ALGORITHM);
             ruleStack.addFirst(RewriteIdentityJoins.INSTANCE);
         }
         ruleStack.addFirst(AddOrderingColumnsToSources.INSTANCE);
@@ -83,6 +82,11 @@ public class RuleBasedOptimizer implements Optimizer {
         // Add indexes determination last ...
         populateIndexingRules(ruleStack, hints);
         ruleStack.addLast(OrderIndexesByCost.INSTANCE);
+        if (hints.hasJoin) {
+            // Join order and algorithms depend upon the estimates of the indexes ...
+            ruleStack.addLast(CostBasedJoinOrder.INSTANCE);
+            ruleStack.addLast(ChooseJoinAlgorithm.USE_MERGE_JOIN_FOR_ORDERED_INPUTS);
+        }
     }
 
     /**
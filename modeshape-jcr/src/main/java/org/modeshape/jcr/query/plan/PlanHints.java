@@ -18,6 +18,7 @@ package org.modeshape.jcr.query.plan;
 import java.io.Serializable;
 import javax.jcr.query.QueryResult;
 import org.modeshape.common.annotation.NotThreadSafe;
+import org.modeshape.common.util.HashCode;
 import org.modeshape.jcr.query.QueryResults;
 
 @NotThreadSafe
@@ -133,27 +134,71 @@ public final class PlanHints implements Serializable, Cloneable {
         return sb.toString();
     }
 
+    @Override
+    public int hashCode() {
+        return HashCode.compute(hasCriteria, hasView, hasJoin, hasSort, hasSetQuery, hasLimit, hasOptionalJoin, hasFullTextSearch,
+                                hasSubqueries, isExistsQuery, showPlan, planOnly, validateColumnExistance, includeSystemContent,
+                                useSessionContent, qualifyExpandedColumnNames, restartable, rowsKeptInMemory);
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if (obj == this) return true;
+        if (obj instanceof PlanHints) {
+            PlanHints that = (PlanHints)obj;
+            if (this.hasCriteria != that.hasCriteria) return false;
+            if (this.hasView != that.hasView) return false;
+            if (this.hasJoin != that.hasJoin) return false;
+            if (this.hasSort != that.hasSort) return false;
+            if (this.hasSetQuery != that.hasSetQuery) return false;
+            if (this.hasLimit != that.hasLimit) return false;
+            if (this.hasOptionalJoin != that.hasOptionalJoin) return false;
+            if (this.hasFullTextSearch != that.hasFullTextSearch) return false;
+            if (this.hasSubqueries != that.hasSubqueries) return false;
+            if (this.isExistsQuery != that.isExistsQuery) return false;
+            if (this.showPlan != that.showPlan) return false;
+            if (this.planOnly != that.planOnly) return false;
+            if (this.validateColumnExistance != that.validateColumnExistance) return false;
+            if (this.includeSystemContent != that.includeSystemContent) return false;
+            if (this.useSessionContent != that.useSessionContent) return false;
+            if (this.qualifyExpandedColumnNames != that.qualifyExpandedColumnNames) return false;
+            if (this.restartable != that.restartable) return false;
+            if (this.rowsKeptInMemory != that.rowsKeptInMemory) return false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set all of the hints to the values of the supplied hints.
+     *
+     * @param other the hints whose values are to be copied; may not be null
+     */
+    public void setAll( PlanHints other ) {
+        this.hasCriteria = other.hasCriteria;
+        this.hasView = other.hasView;
+        this.hasJoin = other.hasJoin;
+        this.hasSort = other.hasSort;
+        this.hasSetQuery = other.hasSetQuery;
+        this.hasLimit = other.hasLimit;
+        this.hasOptionalJoin = other.hasOptionalJoin;
+        this.hasFullTextSearch = other.hasFullTextSearch;
+        this.hasSubqueries = other.hasSubqueries;
+        this.isExistsQuery = other.isExistsQuery;
+        this.showPlan = other.showPlan;
+        this.planOnly = other.planOnly;
+        this.validateColumnExistance = other.validateColumnExistance;
+        this.includeSystemContent = other.includeSystemContent;
+        this.useSessionContent = other.useSessionContent;
+        this.qualifyExpandedColumnNames = other.qualifyExpandedColumnNames;
+        this.restartable = other.restartable;
+        this.rowsKeptInMemory = other.rowsKeptInMemory;
+    }
+
     @Override
     public PlanHints clone() {
         PlanHints clone = new PlanHints();
-        clone.hasCriteria = this.hasCriteria;
-        clone.hasView = this.hasView;
-        clone.hasJoin = this.hasJoin;
-        clone.hasSort = this.hasSort;
-        clone.hasSetQuery = this.hasSetQuery;
-        clone.hasLimit = this.hasLimit;
-        clone.hasOptionalJoin = this.hasOptionalJoin;
-        clone.hasFullTextSearch = this.hasFullTextSearch;
-        clone.hasSubqueries = this.hasSubqueries;
-        clone.isExistsQuery = this.isExistsQuery;
-        clone.showPlan = this.showPlan;
-        clone.planOnly = this.planOnly;
-        clone.validateColumnExistance = this.validateColumnExistance;
-        clone.includeSystemContent = this.includeSystemContent;
-        clone.useSessionContent = this.useSessionContent;
-        clone.qualifyExpandedColumnNames = this.qualifyExpandedColumnNames;
-        clone.restartable = this.restartable;
-        clone.rowsKeptInMemory = this.rowsKeptInMemory;
+        clone.setAll(this);
         return clone;
     }
 }
@@ -207,6 +207,11 @@ public final class PlanNode implements Iterable<PlanNode>, Readable, Cloneable,
         INDEX_SPECIFICATION,
         /** Flag specifying whether the index has been used in the query. Value is a {@link Boolean} value. */
         INDEX_USED,
+
+        /** For JOIN nodes, the estimated number of rows returned by the node. Value is a {@link Long} object. */
+        CARDINALITY_ESTIMATE,
+        /** For JOIN nodes, the estimated relative cost of producing the rows of the node. Value is a {@link Long} object. */
+        COST_ESTIMATE,
     }
 
     public static interface Operation {
@@ -81,7 +81,8 @@ public interface IndexCostCalculator {
     Collection<JoinCondition> joinConditions();
 
     /**
-     * Get the variables that are to be substituted into the {@link BindVariableName} used in the query.
+     * Get the variables that are to be substituted into the {@link BindVariableName} used in the query. The values should only
+     * be used to estimate the cost and cardinality of an index, since the resulting plan may be reused for other values.
      *
      * @return immutable map of variable values keyed by their name; never null but possibly empty
      */
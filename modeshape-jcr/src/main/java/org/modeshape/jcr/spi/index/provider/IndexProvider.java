@@ -783,7 +783,7 @@ public abstract class IndexProvider {
             }
         }
         if (!applicableConstraints.isEmpty()) {
-            long cardinality = index.estimateCardinality(applicableConstraints, context.getVariables());
+            long cardinality = index.estimateCardinality(applicableConstraints, context.getVariablesForEstimates());
             long total = index.estimateTotalCount();
             Float selectivity = null;
             if (total > 0L) {
@@ -40,10 +40,10 @@ public class NodeKeyReference implements Reference {
         this(key, weak, foreign, false);
     }
 
-    protected NodeKeyReference( NodeKey key,
-                                boolean weak,
-                                boolean foreign,
-                                boolean simple ) {
+    public NodeKeyReference( NodeKey key,
+                             boolean weak,
+                             boolean foreign,
+                             boolean simple ) {
         this.key = key;
         this.weak = weak;
         this.foreign = foreign;
@@ -172,6 +172,23 @@ public abstract class AbstractBinaryStore implements BinaryStore {
         return detectedMimeType;
     }
 
+    /**
+     * Read bytes from the supplied stream until the given number of bytes has been read or the end of the stream is reached.
+     *
+     * @param stream the stream; may not be null
+     * @param buffer the buffer into which the bytes are read; may not be null
+     * @param offset the offset in the buffer at which the first byte is written
+     * @param length the maximum number of bytes to read
+     * @return the number of bytes read, or -1 if the stream ended before any byte could be read
+     * @throws IOException if the stream cannot be read
+     */
+    protected static int readFully( InputStream stream,
+                                    byte[] buffer,
+                                    int offset,
+                                    int length ) throws IOException {
+        return RangeInputStream.readFully(stream, buffer, offset, length);
+    }
+
     @Override
     public boolean hasBinary( BinaryKey key ) {
         try {
@@ -20,6 +20,7 @@ import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.util.CheckArg;
 import org.modeshape.jcr.TextExtractors;
 import org.modeshape.jcr.mimetype.MimeTypeDetector;
 import org.modeshape.jcr.value.BinaryKey;
@@ -106,6 +107,60 @@ public interface BinaryStore {
      */
     InputStream getInputStream( BinaryKey key ) throws BinaryStoreException;
 
+    /**
+     * Get an {@link InputStream} to a range of the binary content with the supplied key. Stores which can read from an arbitrary
+     * position of a value should do so without reading the bytes before that position, so that clients reading a small part of
+     * a large value (for example to answer an HTTP range request) do not transfer the whole value.
+     * <p>
+     * The default implementation skips the bytes before the range on the {@link #getInputStream(BinaryKey) stream of the whole
+     * value}. Stores which can read from an arbitrary position of a value should override it.
+     * </p>
+     *
+     * @param key the key to the binary content; never null
+     * @param position the position of the first byte of the range; must not be negative
+     * @param length the maximum number of bytes of the range; must not be negative
+     * @return the input stream through which the bytes of the range can be read; the stream ends at the end of the range or at
+     *         the end of the content, whichever comes first; never null
+     * @throws BinaryStoreException if there is a problem reading the content from the store or if a valid, non-null
+     *         {@link InputStream} cannot be returned for the given key.
+     * @since 5.1
+     */
+    default InputStream getInputStream( BinaryKey key,
+                                        long position,
+                                        long length ) throws BinaryStoreException {
+        CheckArg.isNonNegative(position, "position");
+        CheckArg.isNonNegative(length, "length");
+        return new RangeInputStream(getInputStream(key), position, length);
+    }
+
+    /**
+     * Read bytes of the binary content with the supplied key, starting at the given position of the content.
+     * <p>
+     * The default implementation reads the bytes from the {@link #getInputStream(BinaryKey, long, long) stream of the range}.
+     * </p>
+     *
+     * @param key the key to the binary content; never null
+     * @param position the position of the first byte to read; must not be negative
+     * @param buffer the buffer into which the bytes are read; never null
+     * @param offset the offset in the buffer at which the first byte is written
+     * @param length the maximum number of bytes to read
+     * @return the number of bytes read, which is less than {@code length} only if the end of the content has been reached, or
+     *         -1 if {@code position} is at or past the end of the content
+     * @throws BinaryStoreException if there is a problem reading the content from the store or if the value cannot be found
+     * @since 5.1
+     */
+    default int read( BinaryKey key,
+                      long position,
+                      byte[] buffer,
+                      int offset,
+                      int length ) throws BinaryStoreException {
+        try (InputStream stream = getInputStream(key, position, length)) {
+            return RangeInputStream.readFully(stream, buffer, offset, length);
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
     /**
      * Searches for a binary which has the given key in this store. The store should return {@code true} as long the binary
      * is still present physically, regardless of any "trash" semantics.
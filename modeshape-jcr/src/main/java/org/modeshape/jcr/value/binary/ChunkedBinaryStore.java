@@ -0,0 +1,720 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.value.binary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.modeshape.common.SystemFailureException;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.NamedThreadFactory;
+import org.modeshape.common.util.SecureHash;
+import org.modeshape.common.util.SecureHash.Algorithm;
+import org.modeshape.common.util.SecureHash.HashingInputStream;
+import org.modeshape.jcr.JcrI18n;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+
+/**
+ * A {@link FileSystemBinaryStore} which splits the content of binary values into chunks and stores each distinct chunk only once.
+ * <p>
+ * The boundaries of the chunks are defined by the content itself (using a rolling "gear" hash over the last 64 bytes), so
+ * inserting or removing bytes in a large value only changes the chunks around the modification: the different versions of the
+ * same document share most of their chunks. While the content is read from the supplied stream, each chunk is hashed,
+ * compressed and written by a pool of threads, so the ingestion of large values scales with the number of cores.
+ * </p>
+ * <p>
+ * Each binary value is stored as a small manifest file (in place of the content stored by the {@link FileSystemBinaryStore}),
+ * which lists the SHA-1 hashes and the lengths of its chunks. All the other features of the file system store (trash, mime types
+ * and extracted text) work the same way, and values stored by a {@link FileSystemBinaryStore} in the same directory can still be
+ * read. Chunks which are no longer referenced by any manifest are removed by {@link #removeValuesUnusedLongerThan(long, TimeUnit)}.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public class ChunkedBinaryStore extends FileSystemBinaryStore {
+
+    /**
+     * The default average size of the chunks, in bytes.
+     */
+    public static final int DEFAULT_AVERAGE_CHUNK_SIZE = 1 << 16; // 64K
+
+    protected static final String CHUNK_DIRECTORY_NAME = "chunks";
+
+    private static final String TEMP_FILE_PREFIX = "ms-chunked-binstore";
+    private static final String TEMP_FILE_SUFFIX = "manifest";
+    private static final byte[] MANIFEST_MAGIC = {'M', 'S', 'C', 'M'};
+    private static final byte MANIFEST_VERSION = 1;
+    private static final int MANIFEST_HEADER_LENGTH = MANIFEST_MAGIC.length + 1 + 8 + 4;
+    private static final int MANIFEST_ENTRY_LENGTH = 20 + 4;
+
+    /**
+     * The random values of the gear hash. The seed is fixed, because the boundaries of the chunks must not change across
+     * processes.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x4d6f6465536861L);
+        for (int i = 0; i != GEAR.length; ++i) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private static final ConcurrentHashMap<String, ChunkedBinaryStore> INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new chunked binary store instance
+     *
+     * @param directory a {@link File} instance where the manifests of the binary values and the chunks will be stored; may not
+     *        be {@code null}
+     * @param trash a {@link File} instance where unused binary data is transferred to, until completely being removed from disk;
+     *        may be {@code null} in which case a default location will be used.
+     * @param averageChunkSize the average size of the chunks in bytes, which is rounded down to a power of two; must be positive
+     * @param compression the name of the {@link Codecs codec} used to compress the chunks; may not be null
+     * @param threads the number of threads which hash, compress and write the chunks; must be positive
+     * @return a {@link ChunkedBinaryStore} instance
+     */
+    public static ChunkedBinaryStore create( File directory,
+                                             File trash,
+                                             int averageChunkSize,
+                                             String compression,
+                                             int threads ) {
+        String key = directory.getAbsolutePath();
+        ChunkedBinaryStore store = INSTANCES.get(key);
+        if (store == null) {
+            if (trash == null) {
+                trash = new File(directory, TRASH_DIRECTORY_NAME);
+            }
+            store = new ChunkedBinaryStore(directory, trash, averageChunkSize, compression, threads);
+            ChunkedBinaryStore existing = INSTANCES.putIfAbsent(key, store);
+            if (existing != null) {
+                store = existing;
+            }
+        }
+        return store;
+    }
+
+    private final File chunkDirectory;
+    private final Codec codec;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long boundaryMask;
+    private final ThreadPoolExecutor workers;
+    private final int maxChunksInFlight;
+    /**
+     * Prevents the removal of unreferenced chunks while values are stored, since the chunks of a value are written before its
+     * manifest.
+     */
+    private final ReadWriteLock chunkRemovalLock = new ReentrantReadWriteLock();
+
+    protected ChunkedBinaryStore( File directory,
+                                  File trash,
+                                  int averageChunkSize,
+                                  String compression,
+                                  int threads ) {
+        super(directory, trash);
+        CheckArg.isPositive(averageChunkSize, "averageChunkSize");
+        CheckArg.isNotNull(compression, "compression");
+        CheckArg.isPositive(threads, "threads");
+        this.chunkDirectory = new File(directory, CHUNK_DIRECTORY_NAME);
+        this.codec = Codecs.forName(compression);
+        int average = Math.max(Integer.highestOneBit(averageChunkSize), 256);
+        this.minChunkSize = average / 4;
+        this.maxChunkSize = average * 4;
+        // a boundary is found when the highest bits of the hash are all 0, which happens on average every 'average' bytes ...
+        int bits = Integer.numberOfTrailingZeros(average);
+        this.boundaryMask = -1L << (64 - bits);
+        this.workers = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                                              new NamedThreadFactory("modeshape-binary-chunking"));
+        // let idle threads terminate, since the store may be shared by several repositories ...
+        this.workers.allowCoreThreadTimeOut(true);
+        // limit the memory used by the chunks which have been read but not written yet ...
+        this.maxChunksInFlight = threads * 2;
+    }
+
+    /**
+     * Get the directory in which the chunks are stored.
+     *
+     * @return the directory; never null
+     */
+    public File getChunkDirectory() {
+        return chunkDirectory;
+    }
+
+    @Override
+    public BinaryValue storeValue( InputStream stream,
+                                   boolean markAsUnused ) throws BinaryStoreException {
+        try {
+            // Split the content into chunks, and while we do grab the SHA-1 hash of the whole content ...
+            HashingInputStream hashingStream = SecureHash.createHashingStream(Algorithm.SHA_1, stream);
+            Ingestion ingestion = new Ingestion();
+            BinaryKey key;
+            try {
+                split(hashingStream, ingestion);
+                // the hash is computed when the stream is closed ...
+                hashingStream.close();
+                key = new BinaryKey(hashingStream.getHash());
+                if (!ingestion.isStoringChunks()) {
+                    // The content is small enough to just store in-memory ...
+                    return new InMemoryBinaryValue(this, key, ingestion.pendingContent());
+                }
+                storeManifest(key, ingestion.length(), ingestion.storedChunks(), ingestion.chunkLengths());
+            } finally {
+                ingestion.close();
+            }
+            if (markAsUnused) {
+                markAsUnused(key);
+            }
+            return new StoredBinaryValue(this, key, ingestion.length());
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemFailureException(e);
+        }
+    }
+
+    private void split( InputStream stream,
+                        Ingestion ingestion ) throws IOException, BinaryStoreException {
+        byte[] buffer = new byte[AbstractBinaryStore.MEDIUM_BUFFER_SIZE];
+        byte[] chunk = new byte[maxChunkSize];
+        int size = 0;
+        long hash = 0L;
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            for (int i = 0; i != read; ++i) {
+                byte b = buffer[i];
+                chunk[size++] = b;
+                hash = (hash << 1) + GEAR[b & 0xff];
+                if ((size >= minChunkSize && (hash & boundaryMask) == 0L) || size == maxChunkSize) {
+                    ingestion.add(Arrays.copyOf(chunk, size));
+                    size = 0;
+                    hash = 0L;
+                }
+            }
+        }
+        if (size > 0) {
+            ingestion.add(Arrays.copyOf(chunk, size));
+        }
+    }
+
+    private void storeManifest( BinaryKey key,
+                                long length,
+                                List<BinaryKey> chunks,
+                                List<Integer> chunkLengths ) throws IOException, BinaryStoreException {
+        File tmpFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                output.write(MANIFEST_MAGIC);
+                output.writeByte(MANIFEST_VERSION);
+                output.writeLong(length);
+                output.writeInt(chunks.size());
+                for (int i = 0; i != chunks.size(); ++i) {
+                    output.write(chunks.get(i).toBytes());
+                    output.writeInt(chunkLengths.get(i));
+                }
+            }
+            // if the value has already been stored, this simply removes it from the trash ...
+            saveTempFileToStore(tmpFile, key, length);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Hash, compress and write a chunk, unless it has already been stored.
+     *
+     * @param content the content of the chunk; may not be null
+     * @return the key of the chunk; never null
+     * @throws IOException if the chunk cannot be written
+     */
+    protected BinaryKey storeChunk( byte[] content ) throws IOException {
+        BinaryKey key = BinaryKey.keyFor(content);
+        File file = chunkFile(key);
+        if (file.exists()) {
+            // refresh the age of the chunk, so that it is not removed as unreferenced while the value is stored ...
+            file.setLastModified(System.currentTimeMillis());
+            return key;
+        }
+        byte[] encoded = Codecs.encode(codec, content);
+        if (encoded.length > content.length + Codecs.HEADER_LENGTH) {
+            // the chunk is not compressible (e.g. part of an image or an archive), so keep it as it is ...
+            encoded = Codecs.encode(Codecs.forName(Codecs.NONE), content);
+        }
+        File parent = file.getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException(JcrI18n.unableToCreateDirectoryForBinaryStore.text(parent.getAbsolutePath(), key));
+        }
+        // write to a temporary file first, so that readers never see a partial chunk ...
+        File tmpFile = new File(parent, key + "-" + UUID.randomUUID());
+        try {
+            try (OutputStream output = new FileOutputStream(tmpFile)) {
+                output.write(encoded);
+            }
+            if (!tmpFile.renameTo(file) && !file.exists()) {
+                throw new IOException(JcrI18n.unableToWriteBinaryChunk.text(key, parent.getAbsolutePath()));
+            }
+        } finally {
+            tmpFile.delete();
+        }
+        return key;
+    }
+
+    protected byte[] readChunk( BinaryKey key ) throws IOException {
+        File file = chunkFile(key);
+        if (!file.exists()) {
+            throw new IOException(JcrI18n.unableToFindBinaryValue.text(key, chunkDirectory.getPath()));
+        }
+        return Codecs.decode(Files.readAllBytes(file.toPath()), codec);
+    }
+
+    private File chunkFile( BinaryKey key ) {
+        String sha1 = key.toString();
+        File first = new File(chunkDirectory, sha1.substring(0, 2));
+        File second = new File(first, sha1.substring(2, 4));
+        File third = new File(second, sha1.substring(4, 6));
+        return new File(third, sha1);
+    }
+
+    @Override
+    public InputStream getInputStream( BinaryKey key ) throws BinaryStoreException {
+        return getInputStream(key, 0L, Long.MAX_VALUE);
+    }
+
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long position,
+                                       long length ) throws BinaryStoreException {
+        CheckArg.isNonNegative(position, "position");
+        CheckArg.isNonNegative(length, "length");
+        BufferedInputStream stream = new BufferedInputStream(super.getInputStream(key), MEDIUM_BUFFER_SIZE);
+        try {
+            Manifest manifest = readManifest(key, stream);
+            if (manifest == null) {
+                // this is not a manifest, but the content itself (e.g. a mime type or an extracted text) ...
+                return position == 0L && length == Long.MAX_VALUE ? stream : new RangeInputStream(stream, position, length);
+            }
+            stream.close();
+            // only the chunks of the range are read ...
+            return new ChunkedInputStream(manifest, position, length);
+        } catch (IOException e) {
+            closeQuietly(stream);
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    @Override
+    public int read( BinaryKey key,
+                     long position,
+                     byte[] buffer,
+                     int offset,
+                     int length ) throws BinaryStoreException {
+        Manifest manifest = manifestOf(key);
+        if (manifest == null) {
+            return super.read(key, position, buffer, offset, length);
+        }
+        try (InputStream stream = new ChunkedInputStream(manifest, position, length)) {
+            return readFully(stream, buffer, offset, length);
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    @Override
+    public long transferTo( BinaryKey key,
+                            long position,
+                            long length,
+                            WritableByteChannel target ) throws BinaryStoreException {
+        Manifest manifest = manifestOf(key);
+        if (manifest == null) {
+            return super.transferTo(key, position, length, target);
+        }
+        // the chunks have to be decompressed, so they cannot be transferred by the file system ...
+        try (ReadableByteChannel source = Channels.newChannel(new ChunkedInputStream(manifest, position, length))) {
+            ByteBuffer buffer = ByteBuffer.allocate(MEDIUM_BUFFER_SIZE);
+            long written = 0L;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    written += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return written;
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    private Manifest manifestOf( BinaryKey key ) throws BinaryStoreException {
+        try (BufferedInputStream stream = new BufferedInputStream(super.getInputStream(key), MEDIUM_BUFFER_SIZE)) {
+            return readManifest(key, stream);
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Read the manifest at the start of the supplied stream.
+     *
+     * @param key the key of the binary value; may not be null
+     * @param stream the stream; may not be null
+     * @return the manifest, or null if the stream does not contain a manifest, in which case the stream has been reset to its
+     *         first byte
+     * @throws IOException if the stream cannot be read
+     */
+    private Manifest readManifest( BinaryKey key,
+                                   BufferedInputStream stream ) throws IOException {
+        stream.mark(MANIFEST_HEADER_LENGTH);
+        byte[] magic = new byte[MANIFEST_MAGIC.length];
+        int read = readFully(stream, magic, 0, magic.length);
+        if (read != magic.length || !Arrays.equals(magic, MANIFEST_MAGIC)) {
+            stream.reset();
+            return null;
+        }
+        DataInputStream input = new DataInputStream(stream);
+        byte version = input.readByte();
+        long length = input.readLong();
+        int count = input.readInt();
+        if (version != MANIFEST_VERSION || length < 0L || count < 0) {
+            // the content of a value which has been stored by a file system store just happens to start with the magic ...
+            stream.reset();
+            return null;
+        }
+        BinaryKey[] chunks = new BinaryKey[count];
+        long[] offsets = new long[count];
+        byte[] hash = new byte[MANIFEST_ENTRY_LENGTH - 4];
+        long offset = 0L;
+        for (int i = 0; i != count; ++i) {
+            input.readFully(hash);
+            chunks[i] = new BinaryKey(hash);
+            offsets[i] = offset;
+            offset += input.readInt();
+        }
+        if (offset != length) {
+            throw new IOException(JcrI18n.invalidBinaryManifest.text(key, getDirectory()));
+        }
+        return new Manifest(length, chunks, offsets);
+    }
+
+    @Override
+    public void removeValuesUnusedLongerThan( long minimumAge,
+                                              TimeUnit unit ) throws BinaryStoreException {
+        long oldestTimestamp = System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert(minimumAge, unit);
+        // remove the manifests of the unused values first ...
+        super.removeValuesUnusedLongerThan(minimumAge, unit);
+        // and then the chunks which are no longer used by any value ...
+        Lock lock = chunkRemovalLock.writeLock();
+        lock.lock();
+        try {
+            Set<BinaryKey> referenced = new HashSet<>();
+            collectReferencedChunks(getDirectory(), 0, referenced);
+            removeUnreferencedChunks(chunkDirectory, 0, referenced, oldestTimestamp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void collectReferencedChunks( File directory,
+                                          int depth,
+                                          Set<BinaryKey> referenced ) throws BinaryStoreException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (depth < 3) {
+                // the manifests are stored in the same directory structure as the files of the file system store ...
+                if (file.isDirectory() && file.getName().length() == 2) {
+                    collectReferencedChunks(file, depth + 1, referenced);
+                }
+            } else if (file.isFile() && file.getName().length() == 40) {
+                Manifest manifest = manifestOf(new BinaryKey(file.getName()));
+                if (manifest != null) {
+                    referenced.addAll(Arrays.asList(manifest.chunks));
+                }
+            }
+        }
+    }
+
+    private void removeUnreferencedChunks( File directory,
+                                           int depth,
+                                           Set<BinaryKey> referenced,
+                                           long oldestTimestamp ) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (depth < 3) {
+                if (file.isDirectory()) {
+                    removeUnreferencedChunks(file, depth + 1, referenced, oldestTimestamp);
+                }
+            } else if (file.isFile() && file.lastModified() < oldestTimestamp) {
+                // this also removes the temporary files which have been left behind by a failure ...
+                String name = file.getName();
+                boolean isChunk = name.length() == 40 && BinaryKey.isProperlyFormattedKey(name);
+                if ((!isChunk || !referenced.contains(new BinaryKey(name))) && file.delete()) {
+                    logger.debug("Removed unused chunk {0}", name);
+                }
+            }
+        }
+        if (depth > 0) {
+            pruneEmptyDirectories(chunkDirectory, directory);
+        }
+    }
+
+    private static void closeQuietly( InputStream stream ) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // ignore, since another exception is being thrown
+        }
+    }
+
+    /**
+     * The list of chunks of a binary value.
+     */
+    @Immutable
+    protected static final class Manifest {
+        protected final long length;
+        protected final BinaryKey[] chunks;
+        protected final long[] offsets;
+
+        protected Manifest( long length,
+                            BinaryKey[] chunks,
+                            long[] offsets ) {
+            this.length = length;
+            this.chunks = chunks;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Get the index of the chunk which contains the byte at the given position.
+         *
+         * @param position the position; must be smaller than the length of the value
+         * @return the index of the chunk
+         */
+        protected int chunkAt( long position ) {
+            int index = Arrays.binarySearch(offsets, position);
+            return index >= 0 ? index : -index - 2;
+        }
+    }
+
+    /**
+     * The chunks of a value which is being stored. The chunks are kept in memory until the content is larger than the
+     * {@link #getMinimumBinarySizeInBytes() minimum size} of the values stored in the store, and are then hashed, compressed
+     * and written by the worker threads, at most {@link #maxChunksInFlight} at a time.
+     */
+    private final class Ingestion {
+        private final Semaphore permits = new Semaphore(maxChunksInFlight);
+        private final List<Future<BinaryKey>> chunks = new ArrayList<>();
+        private final List<Integer> chunkLengths = new ArrayList<>();
+        private List<byte[]> pending = new ArrayList<>();
+        private Lock removalLock;
+        private long length;
+
+        protected void add( byte[] chunk ) throws BinaryStoreException {
+            length += chunk.length;
+            chunkLengths.add(chunk.length);
+            if (pending == null) {
+                submit(chunk);
+                return;
+            }
+            pending.add(chunk);
+            if (length >= getMinimumBinarySizeInBytes()) {
+                removalLock = chunkRemovalLock.readLock();
+                removalLock.lock();
+                for (byte[] pendingChunk : pending) {
+                    submit(pendingChunk);
+                }
+                pending = null;
+            }
+        }
+
+        private void submit( final byte[] chunk ) throws BinaryStoreException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BinaryStoreException(e);
+            }
+            try {
+                chunks.add(workers.submit(() -> {
+                    try {
+                        return storeChunk(chunk);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        protected boolean isStoringChunks() {
+            return pending == null;
+        }
+
+        protected byte[] pendingContent() {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int)length);
+            for (byte[] chunk : pending) {
+                content.write(chunk, 0, chunk.length);
+            }
+            return content.toByteArray();
+        }
+
+        protected long length() {
+            return length;
+        }
+
+        protected List<Integer> chunkLengths() {
+            return chunkLengths;
+        }
+
+        protected List<BinaryKey> storedChunks() throws BinaryStoreException {
+            List<BinaryKey> keys = new ArrayList<>(chunks.size());
+            for (Future<BinaryKey> chunk : chunks) {
+                try {
+                    keys.add(chunk.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BinaryStoreException(e);
+                } catch (ExecutionException e) {
+                    throw new BinaryStoreException(e.getCause());
+                }
+            }
+            return keys;
+        }
+
+        protected void close() {
+            if (removalLock != null) {
+                removalLock.unlock();
+                removalLock = null;
+            }
+        }
+    }
+
+    /**
+     * A stream over a range of the content of a chunked value, which reads the chunks of the range one at a time.
+     */
+    private final class ChunkedInputStream extends InputStream {
+        private final Manifest manifest;
+        private int nextChunk;
+        private byte[] chunk;
+        private int positionInChunk;
+        private long remaining;
+
+        protected ChunkedInputStream( Manifest manifest,
+                                      long position,
+                                      long length ) {
+            this.manifest = manifest;
+            if (position >= manifest.length) {
+                this.remaining = 0L;
+            } else {
+                this.remaining = Math.min(length, manifest.length - position);
+                this.nextChunk = manifest.chunkAt(position);
+                this.positionInChunk = (int)(position - manifest.offsets[nextChunk]);
+            }
+        }
+
+        private boolean ensureChunk() throws IOException {
+            if (remaining == 0L) {
+                return false;
+            }
+            if (chunk == null || positionInChunk == chunk.length) {
+                if (chunk != null) {
+                    positionInChunk = 0;
+                }
+                chunk = readChunk(manifest.chunks[nextChunk++]);
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureChunk()) {
+                return -1;
+            }
+            --remaining;
+            return chunk[positionInChunk++] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b,
+                         int off,
+                         int len ) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureChunk()) {
+                return -1;
+            }
+            int count = (int)Math.min(Math.min(len, chunk.length - positionInChunk), remaining);
+            System.arraycopy(chunk, positionInChunk, b, off, count);
+            positionInChunk += count;
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunk == null ? 0 : (int)Math.min(chunk.length - positionInChunk, remaining);
+        }
+
+        @Override
+        public void close() {
+            chunk = null;
+            remaining = 0L;
+        }
+    }
+}
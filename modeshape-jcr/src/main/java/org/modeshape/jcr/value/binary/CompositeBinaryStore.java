@@ -225,6 +225,56 @@ public class CompositeBinaryStore implements BinaryStore {
         throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, this.toString()));
     }
 
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long position,
+                                       long length ) throws BinaryStoreException {
+        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
+
+        while (it.hasNext()) {
+            final Map.Entry<String, BinaryStore> entry = it.next();
+
+            final String binaryStoreKey = entry.getKey();
+
+            BinaryStore binaryStore = entry.getValue();
+            logger.trace("Checking binary store " + binaryStoreKey + " for key " + key);
+            try {
+                return binaryStore.getInputStream(key, position, length);
+            } catch (BinaryStoreException e) {
+                // this exception is "normal", and is thrown
+                logger.trace(e, "The named store " + binaryStoreKey + " raised exception");
+            }
+        }
+
+        throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, this.toString()));
+    }
+
+    @Override
+    public int read( BinaryKey key,
+                     long position,
+                     byte[] buffer,
+                     int offset,
+                     int length ) throws BinaryStoreException {
+        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
+
+        while (it.hasNext()) {
+            final Map.Entry<String, BinaryStore> entry = it.next();
+
+            final String binaryStoreKey = entry.getKey();
+
+            BinaryStore binaryStore = entry.getValue();
+            logger.trace("Checking binary store " + binaryStoreKey + " for key " + key);
+            try {
+                return binaryStore.read(key, position, buffer, offset, length);
+            } catch (BinaryStoreException e) {
+                // this exception is "normal", and is thrown
+                logger.trace(e, "The named store " + binaryStoreKey + " raised exception");
+            }
+        }
+
+        throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, this.toString()));
+    }
+
     @Override
     public boolean hasBinary( BinaryKey key ) {
         Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
@@ -18,12 +18,14 @@ package org.modeshape.jcr.value.binary;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
@@ -275,21 +277,42 @@ public class Database {
      */
     protected InputStream readContent( BinaryKey key,
                                        Connection connection ) throws SQLException {
+        return readContent(key, 0L, Long.MAX_VALUE, connection);
+    }
+
+    /**
+     * Attempts to return a stream over a range of the content of a given binary value. When the content is stored in a BLOB
+     * column, only the bytes of the range are read from the database; otherwise the bytes before the range are skipped.
+     *
+     * @param key a {@link org.modeshape.jcr.value.BinaryKey} the key of the binary value, may not be null
+     * @param position the position of the first byte of the range; must not be negative
+     * @param length the maximum number of bytes of the range; must not be negative
+     * @param connection a {@link java.sql.Connection} instance, may not be null
+     * @return either a stream that wraps the input stream of the range and closes the connection and the statement when it
+     *         terminates or {@code null}, meaning that the binary was not found.
+     * @throws SQLException if anything unexpected fails
+     * @since 5.1
+     */
+    protected InputStream readContent( BinaryKey key,
+                                       long position,
+                                       long length,
+                                       Connection connection ) throws SQLException {
         try {
             // first search the contents which are in use
-            InputStream is = readStreamFromStatement(USED_CONTENT_STMT_KEY, key, connection);
+            InputStream is = readStreamFromStatement(USED_CONTENT_STMT_KEY, key, position, length, connection);
             if (is != null) {
                 return is;
             }
             // then search the contents which are in the trash
-            return readStreamFromStatement(UNUSED_CONTENT_STMT_KEY, key, connection);
+            return readStreamFromStatement(UNUSED_CONTENT_STMT_KEY, key, position, length, connection);
         } catch (Throwable t) {
             tryToClose(connection);
             throw t;
         }
     }
 
-    private InputStream readStreamFromStatement( String statement, BinaryKey key, Connection connection ) throws SQLException {
+    private InputStream readStreamFromStatement( String statement, BinaryKey key, long position, long length,
+                                                 Connection connection ) throws SQLException {
         PreparedStatement readContentStatement = prepareStatement(statement, connection);
         try {
             readContentStatement.setString(1, key.toString());
@@ -298,7 +321,7 @@ public class Database {
                 tryToClose(readContentStatement);
                 return null;
             }
-            return new DatabaseBinaryStream(connection, readContentStatement, rs.getBinaryStream(1));
+            return new DatabaseBinaryStream(connection, readContentStatement, readRange(rs, position, length));
         } catch (SQLException e) {
             tryToClose(readContentStatement);
             throw e;
@@ -308,6 +331,30 @@ public class Database {
         }
     }
 
+    private InputStream readRange( ResultSet rs, long position, long length ) throws SQLException {
+        if (position == 0L && length == Long.MAX_VALUE) {
+            return rs.getBinaryStream(1);
+        }
+        if (rs.getMetaData().getColumnType(1) == Types.BLOB) {
+            // the driver only reads the bytes of the range from the BLOB ...
+            Blob blob = rs.getBlob(1);
+            long available = blob != null ? blob.length() - position : 0L;
+            if (available <= 0L || length == 0L) {
+                // the value exists, but the range is empty ...
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            try {
+                // BLOB positions start at 1 ...
+                return blob.getBinaryStream(position + 1, Math.min(length, available));
+            } catch (SQLException e) {
+                // not all drivers support reading a part of a BLOB (e.g. H2), so skip the bytes before the range instead ...
+                LOGGER.debug(e, "Cannot read a range of the BLOB, reading the whole content instead");
+            }
+        }
+        InputStream stream = rs.getBinaryStream(1);
+        return stream != null ? new RangeInputStream(stream, position, length) : new ByteArrayInputStream(new byte[0]);
+    }
+
     protected void markUnused( Iterable<BinaryKey> keys,
                                Connection connection ) throws SQLException {
         try (PreparedStatement markUnusedSql = prepareStatement(MARK_UNUSED_STMT_KEY, connection)) {
@@ -26,6 +26,7 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.jcr.JcrI18n;
 import org.modeshape.jcr.value.BinaryKey;
@@ -202,6 +203,25 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
         }
     }
 
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long position,
+                                       long length ) throws BinaryStoreException {
+        CheckArg.isNonNegative(position, "position");
+        CheckArg.isNonNegative(length, "length");
+        Connection connection = newConnection();
+        try {
+            InputStream inputStream = database.readContent(key, position, length, connection);
+            if (inputStream == null) {
+                throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, database.getTableName()));
+            }
+            // the connection & statement will be left open until the stream is closed !
+            return inputStream;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
     @Override
     public void markAsUsed(final Iterable<BinaryKey> keys ) throws BinaryStoreException {
         dbCall(connection -> {
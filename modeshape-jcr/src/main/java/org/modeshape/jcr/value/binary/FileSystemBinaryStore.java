@@ -23,8 +23,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
 import java.util.Set;
@@ -34,6 +36,7 @@ import java.util.concurrent.locks.Lock;
 import org.modeshape.common.SystemFailureException;
 import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.util.SecureHash;
 import org.modeshape.common.util.SecureHash.Algorithm;
@@ -140,9 +143,9 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
         }
     }
 
-    private BinaryValue saveTempFileToStore( File tmpFile,
-                                             BinaryKey key,
-                                             long numberOfBytes ) throws BinaryStoreException {
+    protected BinaryValue saveTempFileToStore( File tmpFile,
+                                               BinaryKey key,
+                                               long numberOfBytes ) throws BinaryStoreException {
         // Now that we know the SHA-1, find the File object that corresponds to the existing persisted file ...
         File persistedFile = findFile(directory, key, true);
 
@@ -314,10 +317,7 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
     @Override
     public InputStream getInputStream( BinaryKey key ) throws BinaryStoreException {
         // Now that we know the SHA-1, find the File object that corresponds to the existing persisted file ...
-        File persistedFile = findFile(directory, key, false);
-        if (!persistedFile.exists() || !persistedFile.canRead()) {
-            throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, directory.getPath()));
-        }
+        File persistedFile = findExistingFile(key);
 
         // We now know that the file (which does exist) is not being written by this process, but another
         // process might be actively writing to it. So use an InputStream that lazily obtains a shared lock
@@ -325,6 +325,120 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
         return new SharedLockingInputStream(key, persistedFile, locks);
     }
 
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long position,
+                                       long length ) throws BinaryStoreException {
+        CheckArg.isNonNegative(position, "position");
+        CheckArg.isNonNegative(length, "length");
+        // the stream starts reading the file at the position, so the bytes before the range are never read ...
+        return new RangeInputStream(new SharedLockingInputStream(key, findExistingFile(key), locks, position), 0L, length);
+    }
+
+    @Override
+    public int read( BinaryKey key,
+                     long position,
+                     byte[] buffer,
+                     int offset,
+                     int length ) throws BinaryStoreException {
+        CheckArg.isNonNegative(position, "position");
+        File persistedFile = findExistingFile(key);
+        // get the same locks as a stream to prevent other threads and processes from modifying the file ...
+        Lock processLock = locks.readLock(key.toString());
+        try {
+            FileLocks.WrappedLock fileLock = FileLocks.get().readLock(persistedFile);
+            try (FileChannel source = new RandomAccessFile(persistedFile, "r").getChannel()) {
+                if (position >= source.size()) {
+                    return length == 0 ? 0 : -1;
+                }
+                // positional reads do not change the position of the channel, and read directly into the supplied buffer ...
+                ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+                while (target.hasRemaining()) {
+                    int read = source.read(target, position + target.position() - offset);
+                    if (read == -1) {
+                        break;
+                    }
+                }
+                return target.position() - offset;
+            } finally {
+                fileLock.unlock();
+            }
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    private File findExistingFile( BinaryKey key ) throws BinaryStoreException {
+        File persistedFile = findFile(directory, key, false);
+        if (!persistedFile.exists() || !persistedFile.canRead()) {
+            throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, directory.getPath()));
+        }
+        return persistedFile;
+    }
+
+    /**
+     * Copy the content of a binary value into a new file. The content is transferred from one file to the other by the file system
+     * (see {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}), without being read by this process,
+     * which is much faster than reading the {@link #getInputStream(BinaryKey) stream} of the binary value when it is large.
+     *
+     * @param key the key of the binary value; may not be null
+     * @param destination the file to which the content should be written; may not be null
+     * @return the number of bytes which have been copied
+     * @throws BinaryStoreException if the binary value cannot be found or copied
+     * @since 5.1
+     */
+    public long copyTo( BinaryKey key,
+                        File destination ) throws BinaryStoreException {
+        try (FileChannel target = new FileOutputStream(destination).getChannel()) {
+            return transferTo(key, 0L, Long.MAX_VALUE, target);
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Write part of the content of a binary value to a channel, using {@link FileChannel#transferTo(long, long,
+     * WritableByteChannel)}. The content is only transferred by the file system without being copied through buffers on the
+     * heap when the target is a file or socket channel; for any other channel (such as one created by
+     * {@link java.nio.channels.Channels#newChannel(java.io.OutputStream)}) it is copied through a buffer.
+     *
+     * @param key the key of the binary value; may not be null
+     * @param position the offset of the first byte to be written; must not be negative
+     * @param length the maximum number of bytes to be written; must not be negative
+     * @param target the channel to which the content is written; may not be null
+     * @return the number of bytes which have been written, which is smaller than {@code length} only if the end of the content
+     *         has been reached
+     * @throws BinaryStoreException if the binary value cannot be found or written
+     * @since 5.1
+     */
+    public long transferTo( BinaryKey key,
+                            long position,
+                            long length,
+                            WritableByteChannel target ) throws BinaryStoreException {
+        File persistedFile = findExistingFile(key);
+        // get the same locks as a stream to prevent other threads and processes from modifying the file ...
+        Lock processLock = locks.readLock(key.toString());
+        try {
+            FileLocks.WrappedLock fileLock = FileLocks.get().readLock(persistedFile);
+            try (FileChannel source = new RandomAccessFile(persistedFile, "r").getChannel()) {
+                long end = Math.min(source.size(), position + Math.min(length, Long.MAX_VALUE - position));
+                long offset = position;
+                while (offset < end) {
+                    offset += source.transferTo(offset, end - offset, target);
+                }
+                return Math.max(0L, end - position);
+            } finally {
+                fileLock.unlock();
+            }
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        } finally {
+            processLock.unlock();
+        }
+    }
+
     @SuppressWarnings( "unused" )
     protected void initializeStorage( File directory ) throws BinaryStoreException {
         // do nothing by default
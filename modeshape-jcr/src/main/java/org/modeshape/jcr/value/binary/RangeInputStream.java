@@ -0,0 +1,162 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.value.binary;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} which reads a range of the bytes of another stream. The bytes before the range are skipped when the
+ * stream is first read, and the stream ends once the last byte of the range has been read, even if the wrapped stream has more
+ * bytes. Closing this stream closes the wrapped stream.
+ *
+ * @since 5.1
+ */
+final class RangeInputStream extends FilterInputStream {
+
+    private long toSkip;
+    private long remaining;
+
+    /**
+     * Create a stream which reads a range of the supplied stream.
+     *
+     * @param stream the stream positioned on the first byte of the content; may not be null
+     * @param position the position of the first byte of the range in the content; must not be negative
+     * @param length the maximum number of bytes of the range; must not be negative
+     */
+    RangeInputStream( InputStream stream,
+                      long position,
+                      long length ) {
+        super(stream);
+        assert stream != null;
+        assert position >= 0L;
+        assert length >= 0L;
+        this.toSkip = position;
+        this.remaining = length;
+    }
+
+    /**
+     * Read bytes from the supplied stream until the given number of bytes has been read or the end of the stream is reached.
+     *
+     * @param stream the stream; may not be null
+     * @param buffer the buffer into which the bytes are read; may not be null
+     * @param offset the offset in the buffer at which the first byte is written
+     * @param length the maximum number of bytes to read
+     * @return the number of bytes read, or -1 if the stream ended before any byte could be read
+     * @throws IOException if the stream cannot be read
+     */
+    static int readFully( InputStream stream,
+                          byte[] buffer,
+                          int offset,
+                          int length ) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < length) {
+            int read = stream.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private boolean skipToRange() throws IOException {
+        while (toSkip > 0L) {
+            long skipped = in.skip(toSkip);
+            if (skipped <= 0L) {
+                // some streams do not skip at all, so find out whether the end of the stream has been reached ...
+                if (in.read() == -1) {
+                    toSkip = 0L;
+                    remaining = 0L;
+                    break;
+                }
+                skipped = 1L;
+            }
+            toSkip -= skipped;
+        }
+        return remaining > 0L;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!skipToRange()) {
+            return -1;
+        }
+        int result = in.read();
+        if (result == -1) {
+            remaining = 0L;
+        } else {
+            --remaining;
+        }
+        return result;
+    }
+
+    @Override
+    public int read( byte[] b,
+                     int off,
+                     int len ) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!skipToRange()) {
+            return -1;
+        }
+        int result = in.read(b, off, (int)Math.min(len, remaining));
+        if (result == -1) {
+            remaining = 0L;
+        } else {
+            remaining -= result;
+        }
+        return result;
+    }
+
+    @Override
+    public long skip( long n ) throws IOException {
+        if (n <= 0L || !skipToRange()) {
+            return 0L;
+        }
+        long skipped = in.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (toSkip > 0L) {
+            return 0;
+        }
+        return (int)Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark( int readlimit ) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -40,6 +40,7 @@ public final class SharedLockingInputStream extends InputStream {
     protected Lock processLock;
     protected FileLocks.WrappedLock fileLock;
     protected boolean eofReached;
+    private final long position;
 
     /**
      * Create a self-closing, (shared) locking {@link InputStream} to read the content of the supplied {@link File file}.
@@ -52,11 +53,31 @@ public final class SharedLockingInputStream extends InputStream {
     public SharedLockingInputStream( BinaryKey key,
                                      File file,
                                      NamedLocks lockManager ) {
+        this(key, file, lockManager, 0L);
+    }
+
+    /**
+     * Create a self-closing, (shared) locking {@link InputStream} to read the content of the supplied {@link File file}, starting
+     * at the given position of the file.
+     *
+     * @param key the binary key; may not be null
+     * @param file the file that is to be read; may not be null
+     * @param lockManager the manager of the locks, from which a read lock is to be obtained; may be null if no read lock is
+     *        needed
+     * @param position the position in the file of the first byte to be read; must not be negative
+     * @since 5.1
+     */
+    public SharedLockingInputStream( BinaryKey key,
+                                     File file,
+                                     NamedLocks lockManager,
+                                     long position ) {
         assert key != null;
         assert file != null;
+        assert position >= 0L;
         this.key = key;
         this.file = file;
         this.lockManager = lockManager;
+        this.position = position;
     }
 
     protected void open() throws IOException {
@@ -72,9 +93,13 @@ public final class SharedLockingInputStream extends InputStream {
                     // Also get a shared file lock to prevent other processes from modifying the file ...
                     SharedLockingInputStream.this.fileLock = FileLocks.get().readLock(file);
 
-                    // Now create a buffered stream ...
+                    // Now create a buffered stream, which starts reading the file at the position ...
+                    FileInputStream input = new FileInputStream(file);
+                    if (position > 0L) {
+                        input.getChannel().position(position);
+                    }
                     SharedLockingInputStream.this.stream = new BufferedInputStream(
-                                                                                   new FileInputStream(file),
+                                                                                   input,
                                                                                    AbstractBinaryStore.bestBufferSize(file.length()));
                     SharedLockingInputStream.this.eofReached = false;
                 }
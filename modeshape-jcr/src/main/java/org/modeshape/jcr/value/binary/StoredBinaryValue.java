@@ -17,6 +17,10 @@ package org.modeshape.jcr.value.binary;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.Immutable;
 import org.modeshape.jcr.value.BinaryKey;
@@ -65,6 +69,36 @@ public class StoredBinaryValue extends AbstractBinary {
         return mimeType;
     }
 
+    @Override
+    public long transferTo( long position,
+                            long length,
+                            WritableByteChannel target ) throws IOException, RepositoryException {
+        if (store instanceof FileSystemBinaryStore) {
+            return ((FileSystemBinaryStore)store).transferTo(getKey(), position, length, target);
+        }
+        // otherwise read only the range from the store, rather than skipping through the whole value ...
+        try (ReadableByteChannel source = Channels.newChannel(store.getInputStream(getKey(), position, length))) {
+            ByteBuffer buffer = ByteBuffer.allocate(AbstractBinaryStore.bestBufferSize(Math.min(length, size)));
+            long written = 0L;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    written += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return written;
+        }
+    }
+
+    @Override
+    public int read( byte[] b,
+                     long position ) throws IOException, RepositoryException {
+        if (getSize() <= position) return -1;
+        // let the store read from the position, without reading the bytes before it when it can ...
+        return store.read(getKey(), position, b, 0, b.length);
+    }
+
     @Override
     protected InputStream internalStream() throws RepositoryException {
         return store.getInputStream(getKey());
@@ -103,6 +103,7 @@ import org.modeshape.jcr.cache.ChildReferences;
 import org.modeshape.jcr.cache.NodeCache;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.query.JcrQueryResult;
+import org.modeshape.jcr.query.engine.PlanCache;
 import org.modeshape.jcr.security.SimplePrincipal;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.Path;
@@ -2502,6 +2503,32 @@ public class JcrQueryManagerTest extends MultiUseAbstractTest {
         validateQuery().rowCount(13).hasColumns(carColumnNames("car:Car")).validate(query, result);
     }
 
+    @Test
+    public void shouldReuseCachedQueryPlanWithOtherBindVariableValues() throws RepositoryException {
+        String sql = "SELECT * FROM [car:Car] WHERE [car:year] < $year ORDER BY [jcr:path]";
+        Query query = session.getWorkspace().getQueryManager().createQuery(sql, Query.JCR_SQL2);
+        query.bindValue("year", session.getValueFactory().createValue(2009L));
+        validateQuery().rowCount(13).hasColumns(carColumnNames("car:Car")).validate(query, query.execute());
+
+        PlanCache planCache = repository.runningState().queryManager().planCache();
+        assertThat(planCache, is(notNullValue()));
+        long hits = planCache.getHits();
+        query = session.getWorkspace().getQueryManager().createQuery(sql, Query.JCR_SQL2);
+        query.bindValue("year", session.getValueFactory().createValue(1900L));
+        validateQuery().rowCount(0).validate(query, query.execute());
+        query.bindValue("year", session.getValueFactory().createValue(2009L));
+        validateQuery().rowCount(13).hasColumns(carColumnNames("car:Car")).validate(query, query.execute());
+        assertThat(planCache.getHits() - hits, is(2L));
+
+        // The variables holding the results of subqueries are still set when the plan is reused ...
+        sql = "SELECT * FROM [car:Car] WHERE [car:maker] IN (SELECT [car:maker] FROM [car:Car] WHERE [car:year] >= $year)";
+        for (int i = 0; i != 2; ++i) {
+            query = session.getWorkspace().getQueryManager().createQuery(sql, Query.JCR_SQL2);
+            query.bindValue("year", session.getValueFactory().createValue(2008L));
+            validateQuery().rowCount(13).hasColumns(carColumnNames("car:Car")).validate(query, query.execute());
+        }
+    }
+
     @FixFor( "MODE-869" )
     @Test
     public void shouldBeAbleToCreateAndExecuteJcrSql2QueryWithSubqueryInCriteria2() throws RepositoryException {
@@ -80,6 +80,7 @@ import org.modeshape.jcr.api.monitor.Statistics;
 import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.api.monitor.Window;
 import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.document.OffHeapDocumentCache;
 import org.modeshape.jcr.journal.JournalRecord;
 import org.modeshape.jcr.journal.LocalJournal;
 import org.modeshape.jcr.security.SimplePrincipal;
@@ -1270,6 +1271,36 @@ public class JcrRepositoryTest {
         assertEquals(0, repository.getActiveSessionsCount());
     }
 
+    @Test
+    public void shouldReadNodesThroughOffHeapDocumentCache() throws Exception {
+        shutdownDefaultRepository();
+        RepositoryConfiguration config = RepositoryConfiguration.read(
+                "{ \"name\" : \"repoName\", \"storage\" : { \"documentCacheSizeInBytes\" : 4194304 } }");
+        config = new RepositoryConfiguration(config.getDocument(), "repoName", new TestingEnvironment());
+        repository = new JcrRepository(config);
+        repository.start();
+        OffHeapDocumentCache documentCache = repository.documentStore().localStore().documentCache();
+        assertNotNull(documentCache);
+
+        JcrSession session1 = repository.login();
+        Node node = session1.getRootNode().addNode("cached");
+        node.setProperty("prop", "value1");
+        session1.save();
+        session1.logout();
+
+        JcrSession session2 = repository.login();
+        assertEquals("value1", session2.getNode("/cached").getProperty("prop").getString());
+        session2.getNode("/cached").setProperty("prop", "value2");
+        session2.save();
+        session2.logout();
+
+        JcrSession session3 = repository.login();
+        assertEquals("value2", session3.getNode("/cached").getProperty("prop").getString());
+        session3.logout();
+        assertTrue(documentCache.getHits() + documentCache.getMisses() > 0);
+        assertTrue(documentCache.size() > 0);
+    }
+
     @FixFor( "MODE-2033" )
     @Test
     public void shouldStartAndReturnStartupProblems() throws Exception {
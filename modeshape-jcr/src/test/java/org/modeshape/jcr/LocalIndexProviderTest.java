@@ -48,6 +48,7 @@ import org.modeshape.common.util.FileUtil;
 import org.modeshape.jcr.api.index.IndexManager;
 import org.modeshape.jcr.api.query.Query;
 import org.modeshape.jcr.query.engine.IndexPlanners;
+import org.modeshape.jcr.query.engine.PlanCache;
 
 /**
  * This test verifies that the local index provider works when the indexes are updated <em>synchronous</em>. See
@@ -1294,4 +1295,22 @@ public class LocalIndexProviderTest extends AbstractIndexProviderTest {
                 .hasNodesAtPaths("/node1")
                 .validate(query, query.execute());
     }
+
+    @Test
+    public void shouldClearCachedQueryPlansAfterReindexing() throws Exception {
+        registerValueIndex("unstructuredNodes", "nt:unstructured", null, "*", "jcr:primaryType", PropertyType.NAME);
+
+        session().getRootNode().addNode("node1");
+        session.save();
+
+        Query query = jcrSql2Query("SELECT * FROM [nt:unstructured]");
+        validateQuery().rowCount(1L).useIndex("unstructuredNodes").validate(query, query.execute());
+        PlanCache planCache = repository.runningState().queryManager().planCache();
+        assertThat(planCache.size() > 0, is(true));
+
+        // The rebuilt index may estimate other row counts, so the query is planned again ...
+        session.getWorkspace().reindex("/");
+        assertThat(planCache.size(), is(0));
+        validateQuery().rowCount(1L).useIndex("unstructuredNodes").validate(query, query.execute());
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import javax.jcr.Node;
+import javax.jcr.query.Query;
+import javax.transaction.TransactionManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs all of the {@link JcrQueryManagerTest query tests} against a repository which evaluates the independent parts of each
+ * query plan in parallel.
+ */
+public class ParallelQueryExecutionTest extends JcrQueryManagerTest {
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        String configFileName = ParallelQueryExecutionTest.class.getSimpleName() + ".json";
+        JcrQueryManagerTest.beforeAll(configFileName);
+    }
+
+    @Test
+    public void shouldExecuteJoinWithinTransaction() throws Exception {
+        Node parent = session.getRootNode().addNode("changedInTransaction");
+        parent.setProperty("txRole", "parent");
+        parent.addNode("child1").setProperty("txRole", "before");
+        parent.addNode("child2").setProperty("txRole", "before");
+        session.save();
+
+        TransactionManager txnMgr = repository.transactionManager();
+        txnMgr.begin();
+        try {
+            session.getNode("/changedInTransaction/child1").setProperty("txRole", "after");
+            session.save();
+            String sql = "SELECT child.[jcr:path] FROM [nt:unstructured] AS parent "
+                         + "JOIN [nt:unstructured] AS child ON ISCHILDNODE(child,parent) WHERE parent.txRole = 'parent'";
+            Query query = session.getWorkspace().getQueryManager().createQuery(sql, Query.JCR_SQL2);
+            validateQuery().rowCount(2).validate(query, query.execute());
+            // the nodes read by the query are those of the transaction ...
+            assertThat(session.getNode("/changedInTransaction/child1").getProperty("txRole").getString(), is("after"));
+        } finally {
+            txnMgr.rollback();
+            session.refresh(false);
+            session.getNode("/changedInTransaction").remove();
+            session.save();
+        }
+    }
+}
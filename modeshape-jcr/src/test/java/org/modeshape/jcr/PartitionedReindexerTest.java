@@ -0,0 +1,189 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.jcr.Node;
+import org.junit.Test;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.ChildReference;
+import org.modeshape.jcr.cache.NodeCache;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.spi.index.IndexWriter;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+
+/**
+ * Unit test for {@link PartitionedReindexer}.
+ */
+public class PartitionedReindexerTest extends SingleUseAbstractTest {
+
+    private static final int PARENTS = 20;
+    private static final int CHILDREN = 10;
+
+    @Test
+    public void shouldReindexEveryNodeExactlyOnce() throws Exception {
+        createContent();
+        RecordingWriter writer = new RecordingWriter(false);
+        assertTrue(reindexer(4).reindex("default", cache(), cache().getRootKey(), rootChildren(), writer));
+        assertEquals(PARENTS * (CHILDREN + 1), writer.keys.size());
+        assertEquals(writer.keys.size(), new HashSet<>(writer.keys).size());
+        assertTrue(writer.committed);
+        assertNull(checkpoint());
+    }
+
+    @Test
+    public void shouldResumeFromCheckpoint() throws Exception {
+        createContent();
+        // interrupt the reindexing (as a shutdown would) while reindexing the children of the last node, which is in the last
+        // partition ...
+        RecordingWriter interruptingWriter = new RecordingWriter(Thread.currentThread());
+        reindexer(2).reindex("default", cache(), cache().getRootKey(), rootChildren(), interruptingWriter);
+        assertTrue(Thread.interrupted());
+        assertNotNull(checkpoint());
+
+        RecordingWriter writer = new RecordingWriter(false);
+        reindexer(2).reindex("default", cache(), cache().getRootKey(), rootChildren(), writer);
+        // the completed partitions were not reindexed again ...
+        assertTrue(writer.keys.size() < PARENTS * (CHILDREN + 1));
+        Set<NodeKey> all = new HashSet<>(interruptingWriter.keys);
+        all.addAll(writer.keys);
+        assertEquals(PARENTS * (CHILDREN + 1), all.size());
+        assertNull(checkpoint());
+    }
+
+    @Test
+    public void shouldRemoveCheckpointWhenReindexingFails() throws Exception {
+        createContent();
+        // fail while reindexing the children of the last node, which is in the last partition ...
+        RecordingWriter failingWriter = new RecordingWriter(true);
+        try {
+            reindexer(2).reindex("default", cache(), cache().getRootKey(), rootChildren(), failingWriter);
+            fail("The reindexing should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertNull(checkpoint());
+    }
+
+    private PartitionedReindexer reindexer( int threads ) {
+        JcrRepository.RunningState runningState = repository.runningState();
+        return new PartitionedReindexer(repository.getName(), runningState.documentStore().localStore(),
+                                        runningState.statistics(), threads, 3);
+    }
+
+    private NodeCache cache() {
+        return repository.runningState().repositoryCache().getWorkspaceCache("default");
+    }
+
+    private List<NodeKey> rootChildren() {
+        NodeCache cache = cache();
+        List<NodeKey> keys = new ArrayList<>();
+        CachedNode root = cache.getNode(cache.getRootKey());
+        for (ChildReference ref : root.getChildReferences(cache)) {
+            if (!ref.getKey().getWorkspaceKey().equals(repository.runningState().systemWorkspaceKey())) {
+                keys.add(ref.getKey());
+            }
+        }
+        return keys;
+    }
+
+    private Object checkpoint() {
+        // the checkpoint of the whole workspace, whose root is the root node ...
+        return repository.runningState().documentStore().localStore()
+                         .get(PartitionedReindexer.CHECKPOINT_KEY_PREFIX + "default:/");
+    }
+
+    private void createContent() throws Exception {
+        for (int i = 0; i < PARENTS; i++) {
+            Node parent = session.getRootNode().addNode("parent" + i);
+            for (int j = 0; j < CHILDREN; j++) {
+                parent.addNode("child" + j).setProperty("index", j);
+            }
+        }
+        session.save();
+    }
+
+    /**
+     * Records the keys of the nodes it is asked to index, optionally failing or interrupting a thread on the children of the last
+     * parent node.
+     */
+    private static final class RecordingWriter implements IndexWriter {
+        private final boolean failing;
+        private final Thread toInterrupt;
+        private final Set<NodeKey> keys = ConcurrentHashMap.newKeySet();
+        private volatile boolean committed;
+
+        protected RecordingWriter( boolean failing ) {
+            this.failing = failing;
+            this.toInterrupt = null;
+        }
+
+        protected RecordingWriter( Thread toInterrupt ) {
+            this.failing = false;
+            this.toInterrupt = toInterrupt;
+        }
+
+        @Override
+        public boolean canBeSkipped() {
+            return false;
+        }
+
+        @Override
+        public void clearAllIndexes() {
+        }
+
+        @Override
+        public boolean add( String workspace,
+                            NodeKey key,
+                            Path path,
+                            Name primaryType,
+                            Set<Name> mixinTypes,
+                            CachedNode.Properties properties ) {
+            if (path.size() == 2
+                && path.getParent().getLastSegment().getName().getLocalName().equals("parent" + (PARENTS - 1))) {
+                if (failing) {
+                    throw new IllegalStateException("Failing on " + path);
+                }
+                if (toInterrupt != null) {
+                    toInterrupt.interrupt();
+                }
+            }
+            assertTrue("Node indexed twice: " + path, keys.add(key));
+            return true;
+        }
+
+        @Override
+        public boolean remove( String workspace,
+                               NodeKey key ) {
+            return false;
+        }
+
+        @Override
+        public void commit( String workspace ) {
+            committed = true;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashSet;
@@ -42,6 +43,9 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
+import javax.jcr.version.Version;
+import javax.jcr.version.VersionHistory;
+import javax.jcr.version.VersionManager;
 import javax.transaction.NotSupportedException;
 import javax.transaction.SystemException;
 import javax.transaction.TransactionManager;
@@ -54,6 +58,8 @@ import org.modeshape.jcr.api.BackupOptions;
 import org.modeshape.jcr.api.JcrTools;
 import org.modeshape.jcr.api.Problems;
 import org.modeshape.jcr.api.RestoreOptions;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.Json;
 
 /**
  * Tests repository backup and restore
@@ -134,6 +140,193 @@ public class RepositoryBackupAndRestoreTest extends SingleUseAbstractTest {
         verifyBinaryContent();
     }
 
+    @Test
+    public void shouldBackupAndRestoreRepositoryWithSeveralThreads() throws Exception {
+        loadBinaryContent();
+        makeBackup(new BackupOptions() {
+            @Override
+            public int parallelism() {
+                return 4;
+            }
+        });
+        assertDocumentFilesInManifest(4);
+        wipeRepository();
+        restoreBackup(new RestoreOptions() {
+            @Override
+            public int parallelism() {
+                return 4;
+            }
+        });
+        verifyBinaryContent();
+    }
+
+    @Test
+    public void shouldBackupUncompressedBinaryValuesWithSeveralThreadsAndRestoreWithOneThread() throws Exception {
+        loadBinaryContent();
+        makeBackup(new BackupOptions() {
+            @Override
+            public boolean compress() {
+                return false;
+            }
+
+            @Override
+            public int parallelism() {
+                return 3;
+            }
+        });
+        assertDocumentFilesInManifest(3);
+        wipeRepository();
+        restoreBackup();
+        verifyBinaryContent();
+    }
+
+    @Test
+    public void shouldBackupAndRestoreChainOfIncrementalBackups() throws Exception {
+        startRepositoryWithConfigurationFrom("config/backup-repo-config-journaling.json");
+        loadContent();
+        Node node = session().getRootNode().addNode("toBeChanged");
+        node.setProperty("version", 1L);
+        session().getRootNode().addNode("toBeRemoved").addNode("child");
+        session().save();
+        Problems problems = session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory);
+        assertNoProblems(problems);
+
+        session().getNode("/toBeChanged").setProperty("version", 2L);
+        session().getNode("/toBeRemoved").remove();
+        session().getRootNode().addNode("added");
+        session().save();
+        assertNoProblems(makeIncrementalBackup(backupDirectory2, backupDirectory));
+
+        File backupDirectory3 = new File(backupArea, "repoBackupsIncremental_" + UUID.randomUUID());
+        Node file = new JcrTools().uploadFile(session(), "/added/file", resourceStream(BINARY_RESOURCES[0]));
+        assertNotNull(file);
+        session().getNode("/toBeChanged").setProperty("version", 3L);
+        session().save();
+        assertNoProblems(makeIncrementalBackup(backupDirectory3, backupDirectory2));
+
+        // the incremental backups only hold the changed documents and binary values ...
+        Document full = BackupService.readManifest(backupDirectory);
+        Document incremental = BackupService.readManifest(backupDirectory3);
+        assertTrue(incremental.getLong(BackupService.FieldName.DOCUMENT_COUNT) < full.getLong(BackupService.FieldName.DOCUMENT_COUNT));
+        assertThat(incremental.getLong(BackupService.FieldName.BINARY_VALUE_COUNT), is(1L));
+        assertThat(BackupService.backupChain(backupDirectory3).size(), is(3));
+
+        // make changes which are not in any backup, then restore the latest incremental backup ...
+        session().getNode("/toBeChanged").setProperty("version", 4L);
+        session().getRootNode().addNode("notInBackup");
+        session().save();
+        JcrSession session = repository().login();
+        try {
+            assertNoProblems(session.getWorkspace().getRepositoryManager().restoreRepository(backupDirectory3));
+        } finally {
+            session.logout();
+        }
+
+        session = repository().login();
+        try {
+            assertThat(session.getNode("/toBeChanged").getProperty("version").getLong(), is(3L));
+            assertThat(session.nodeExists("/toBeRemoved"), is(false));
+            assertThat(session.nodeExists("/toBeRemoved/child"), is(false));
+            assertThat(session.nodeExists("/notInBackup"), is(false));
+            Binary binary = session.getNode("/added/file/jcr:content").getProperty("jcr:data").getBinary();
+            assertArrayEquals(IoUtil.readBytes(resourceStream(BINARY_RESOURCES[0])), IoUtil.readBytes(binary.getStream()));
+        } finally {
+            session.logout();
+        }
+        assertContentInWorkspace(repository(), "default");
+    }
+
+    @Test
+    public void shouldNotMakeIncrementalBackupWithoutJournal() throws Exception {
+        loadContent();
+        assertNoProblems(session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory));
+        Problems problems = makeIncrementalBackup(backupDirectory2, backupDirectory);
+        assertThat(problems.hasProblems(), is(true));
+    }
+
+    @Test
+    public void shouldNotMakeIncrementalBackupAfterJournalWasRemoved() throws Exception {
+        startRepositoryWithConfigurationFrom("config/backup-repo-config-journaling.json");
+        session().getRootNode().addNode("beforeBackup");
+        session().save();
+        assertNoProblems(session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory));
+
+        // the new journal does not hold the changes made between the backup and its creation ...
+        stopRepository();
+        assertTrue(FileUtil.delete(new File(backupRepoDir, "journal")));
+        startRepositoryWithConfigurationFrom("config/backup-repo-config-journaling.json");
+        session().getRootNode().addNode("afterBackup");
+        session().save();
+        Problems problems = makeIncrementalBackup(backupDirectory2, backupDirectory);
+        assertThat(problems.hasProblems(), is(true));
+    }
+
+    @Test
+    public void shouldIncludeVersionHistoriesInIncrementalBackups() throws Exception {
+        startRepositoryWithConfigurationFrom("config/backup-repo-config-journaling.json");
+        Node node = session().getRootNode().addNode("versioned");
+        node.addMixin("mix:versionable");
+        node.setProperty("version", 1L);
+        session().save();
+        VersionManager versionManager = session().getWorkspace().getVersionManager();
+        versionManager.checkin("/versioned");
+        assertNoProblems(session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory));
+
+        versionManager.checkout("/versioned");
+        session().getNode("/versioned").setProperty("version", 2L);
+        session().save();
+        versionManager.checkin("/versioned");
+        assertNoProblems(makeIncrementalBackup(backupDirectory2, backupDirectory));
+
+        // check in a version which is not in any backup, then restore the incremental backup ...
+        versionManager.checkout("/versioned");
+        session().getNode("/versioned").setProperty("version", 3L);
+        session().save();
+        versionManager.checkin("/versioned");
+        JcrSession session = repository().login();
+        try {
+            assertNoProblems(session.getWorkspace().getRepositoryManager().restoreRepository(backupDirectory2));
+        } finally {
+            session.logout();
+        }
+
+        session = repository().login();
+        try {
+            assertThat(session.getNode("/versioned").getProperty("version").getLong(), is(2L));
+            VersionHistory history = session.getWorkspace().getVersionManager().getVersionHistory("/versioned");
+            assertThat(history.getAllVersions().getSize(), is(3L));
+            Version version = history.getVersion("1.1");
+            assertThat(version.getFrozenNode().getProperty("version").getLong(), is(2L));
+            assertThat(history.hasVersionLabel("1.2"), is(false));
+            assertThat(session.getWorkspace().getVersionManager().getBaseVersion("/versioned").getName(), is("1.1"));
+        } finally {
+            session.logout();
+        }
+    }
+
+    private Problems makeIncrementalBackup( File directory,
+                                            final File base ) throws RepositoryException {
+        return session().getWorkspace().getRepositoryManager().backupRepository(directory, new BackupOptions() {
+            @Override
+            public File incrementalBase() {
+                return base;
+            }
+        });
+    }
+
+    private void assertDocumentFilesInManifest( int count ) throws Exception {
+        File manifest = new File(backupDirectory, BackupService.MANIFEST_FILE_NAME);
+        assertTrue(manifest.exists());
+        Document doc;
+        try (FileInputStream stream = new FileInputStream(manifest)) {
+            doc = Json.read(stream);
+        }
+        assertThat(doc.getInteger(BackupService.FieldName.PARALLELISM), is(count));
+        assertThat(doc.getArray(BackupService.FieldName.DOCUMENT_FILES).size(), is(count));
+        assertTrue(doc.getLong(BackupService.FieldName.DOCUMENT_COUNT) > 0L);
+        assertTrue(doc.getLong(BackupService.FieldName.BINARY_VALUE_COUNT) > 0L);
+    }
+
     private void makeBackup(BackupOptions options) throws RepositoryException {
         TestingUtil.waitUntilFolderCleanedUp(backupDirectory.getPath());
         JcrSession session = repository().login();
@@ -152,9 +345,13 @@ public class RepositoryBackupAndRestoreTest extends SingleUseAbstractTest {
     }
 
     private void restoreBackup() throws Exception {
+        restoreBackup(RestoreOptions.DEFAULT);
+    }
+
+    private void restoreBackup( RestoreOptions options ) throws Exception {
         startRepositoryWithConfiguration(resourceStream("config/backup-repo-config.json"));
         JcrSession session = repository().login();
-        Problems problems = session.getWorkspace().getRepositoryManager().restoreRepository(backupDirectory);
+        Problems problems = session.getWorkspace().getRepositoryManager().restoreRepository(backupDirectory, options);
         assertNoProblems(problems);
         session.logout();
     }
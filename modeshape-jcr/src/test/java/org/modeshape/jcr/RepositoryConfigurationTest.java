@@ -16,6 +16,7 @@
 package org.modeshape.jcr;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertEquals;
@@ -30,6 +31,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.modeshape.common.FixFor;
 import org.modeshape.common.collection.Problems;
+import org.modeshape.common.collection.ring.BlockingWaitStrategy;
+import org.modeshape.common.collection.ring.BusySpinWaitStrategy;
+import org.modeshape.common.collection.ring.PhasedBackoffWaitStrategy;
+import org.modeshape.common.collection.ring.YieldingWaitStrategy;
 import org.modeshape.jcr.RepositoryConfiguration.AnonymousSecurity;
 import org.modeshape.jcr.RepositoryConfiguration.Default;
 import org.modeshape.jcr.RepositoryConfiguration.DocumentOptimization;
@@ -39,6 +44,7 @@ import org.modeshape.jcr.RepositoryConfiguration.JaasSecurity;
 import org.modeshape.jcr.RepositoryConfiguration.Security;
 import org.modeshape.jcr.api.index.IndexDefinition;
 import org.modeshape.jcr.api.index.IndexDefinition.IndexKind;
+import org.modeshape.jcr.value.binary.ChunkedBinaryStore;
 
 public class RepositoryConfigurationTest {
     private boolean print = false;
@@ -149,6 +155,13 @@ public class RepositoryConfigurationTest {
         assertValid("config/mongo-binary-storage.json");
     }
 
+    @Test
+    public void shouldSuccessfullyValidateChunkedBinaryStorageConfiguration() throws Exception {
+        assertValid("config/chunked-binary-storage.json");
+        RepositoryConfiguration config = RepositoryConfiguration.read("config/chunked-binary-storage.json");
+        assertThat(config.getBinaryStorage().getBinaryStore(), is(instanceOf(ChunkedBinaryStore.class)));
+    }
+
     @Test
     public void shouldSuccessfullyValidateCompositeBinaryStorageConfiguration() {
         assertValid("config/composite-binary-storage.json");
@@ -482,6 +495,86 @@ public class RepositoryConfigurationTest {
         RepositoryConfiguration config = RepositoryConfiguration.read("{ 'name' = 'nm', 'lockTimeoutMillis' : 100}");
         assertEquals(100, config.getLockTimeoutMillis());
     }
+
+    @Test
+    public void shouldConfigureWorkspaceCacheWeightAndEvictionPolicy() throws Exception {
+        RepositoryConfiguration config = assertValid("{ 'name' = 'nm'}");
+        assertEquals(Default.WORKSPACE_CACHE_SIZE_IN_BYTES, config.getWorkspaceCacheSizeInBytes());
+        assertEquals(Default.WORKSPACE_CACHE_EVICTION_POLICY, config.getWorkspaceCacheEvictionPolicy());
+        config = assertValid("{ 'name' = 'nm', 'workspaces' : { 'cacheSizeInBytes' : 67108864, " +
+                             "'cacheEvictionPolicy' : 'tinylfu' } }");
+        assertEquals(67108864L, config.getWorkspaceCacheSizeInBytes());
+        assertEquals("tinylfu", config.getWorkspaceCacheEvictionPolicy());
+        assertNotValid(1, "{ 'name' = 'nm', 'workspaces' : { 'cacheEvictionPolicy' : 'fifo' } }");
+    }
+
+    @Test
+    public void shouldUseLockStripes() throws Exception {
+        assertEquals(Default.LOCK_STRIPES, assertValid("{ 'name' = 'nm'}").getLockStripes());
+        assertEquals(512, assertValid("{ 'name' = 'nm', 'lockStripes' : 512}").getLockStripes());
+    }
+
+    @Test
+    public void shouldConfigureDocumentCacheSize() throws Exception {
+        assertEquals(Default.DOCUMENT_CACHE_SIZE_IN_BYTES, assertValid("{ 'name' = 'nm'}").getDocumentCacheSizeInBytes());
+        assertEquals(1L << 30, assertValid("{ 'name' = 'nm', 'storage' : { 'documentCacheSizeInBytes' : 1073741824 } }")
+                .getDocumentCacheSizeInBytes());
+    }
+
+    @Test
+    public void shouldConfigureParallelReindexing() throws Exception {
+        RepositoryConfiguration.Reindexing reindexing = assertValid("{ 'name' = 'nm'}").getReindexing();
+        assertEquals(Default.REINDEXING_THREADS, reindexing.threads());
+        assertEquals(Default.REINDEXING_BATCH_SIZE, reindexing.batchSize());
+        reindexing = assertValid("{ 'name' = 'nm', 'reindexing' : { 'threads' : 8, 'batchSize' : 100 } }").getReindexing();
+        assertEquals(8, reindexing.threads());
+        assertEquals(100, reindexing.batchSize());
+    }
+
+    @Test
+    public void shouldConfigureParallelQueryExecution() throws Exception {
+        RepositoryConfiguration.QueryExecution execution = assertValid("{ 'name' = 'nm'}").getQueryExecution();
+        assertEquals(Default.QUERY_PARALLELISM, execution.parallelism());
+        assertEquals(Default.QUERY_BATCH_QUEUE_SIZE, execution.batchQueueSize());
+        execution = assertValid("{ 'name' = 'nm', 'queryExecution' : { 'parallelism' : 4, 'batchQueueSize' : 8 } }")
+                .getQueryExecution();
+        assertEquals(4, execution.parallelism());
+        assertEquals(8, execution.batchQueueSize());
+    }
+
+    @Test
+    public void shouldConfigureQueryPlanCache() throws Exception {
+        RepositoryConfiguration.QueryExecution execution = assertValid("{ 'name' = 'nm'}").getQueryExecution();
+        assertEquals(Default.QUERY_PLAN_CACHE_SIZE, execution.planCacheSize());
+        execution = assertValid("{ 'name' = 'nm', 'queryExecution' : { 'planCacheSize' : 0 } }").getQueryExecution();
+        assertEquals(0, execution.planCacheSize());
+        execution = assertValid("{ 'name' = 'nm', 'queryExecution' : { 'planCacheSize' : 50 } }").getQueryExecution();
+        assertEquals(50, execution.planCacheSize());
+    }
+
+    @Test
+    public void shouldConfigureEventBusWaitStrategy() throws Exception {
+        assertThat(assertValid("{ 'name' = 'nm'}").getEventBusWaitStrategy() instanceof BlockingWaitStrategy, is(true));
+        assertThat(assertValid("{ 'name' = 'nm', 'eventBusWaitStrategy' : 'yielding' }").getEventBusWaitStrategy() instanceof YieldingWaitStrategy,
+                   is(true));
+        assertThat(assertValid("{ 'name' = 'nm', 'eventBusWaitStrategy' : 'busySpin' }").getEventBusWaitStrategy() instanceof BusySpinWaitStrategy,
+                   is(true));
+        assertThat(assertValid("{ 'name' = 'nm', 'eventBusWaitStrategy' : 'phasedBackoff' }").getEventBusWaitStrategy() instanceof PhasedBackoffWaitStrategy,
+                   is(true));
+        assertNotValid(1, "{ 'name' = 'nm', 'eventBusWaitStrategy' : 'sleeping' }");
+    }
+
+    @Test
+    public void shouldConfigureClusterMessageFormat() throws Exception {
+        RepositoryConfiguration.Clustering clustering = assertValid("{ 'name' = 'nm', 'clustering' : {} }").getClustering();
+        assertThat(clustering.useBinaryMessageFormat(), is(false));
+        assertThat(clustering.getMessageCompression(), is("none"));
+        clustering = assertValid("{ 'name' = 'nm', 'clustering' : { 'messageFormat' : 'binary', 'messageCompression' : 'lz4' } }")
+                .getClustering();
+        assertThat(clustering.useBinaryMessageFormat(), is(true));
+        assertThat(clustering.getMessageCompression(), is("lz4"));
+        assertNotValid(1, "{ 'name' = 'nm', 'clustering' : { 'messageFormat' : 'xml' } }");
+    }
     
     protected RepositoryConfiguration assertValid( RepositoryConfiguration config ) {
         Problems results = config.validate();
@@ -0,0 +1,265 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.bus;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetListener;
+import org.modeshape.jcr.cache.change.RecordingChanges;
+import org.modeshape.jcr.clustering.ClusteringService;
+import org.modeshape.jcr.clustering.MessageConsumer;
+import org.modeshape.jcr.value.basic.ModeShapeDateTime;
+
+/**
+ * Unit test for the batching of change sets by the {@link ClusteredChangeBus}, using a clustering service which simply
+ * delivers each message back to the consumers registered with it.
+ */
+public class ChangeSetBatchingTest {
+
+    private ScheduledExecutorService batchingService;
+    private LoopbackClusteringService clusteringService;
+    private RecordingBus delegate;
+
+    @Before
+    public void beforeEach() {
+        batchingService = Executors.newSingleThreadScheduledExecutor();
+        clusteringService = new LoopbackClusteringService();
+        delegate = new RecordingBus();
+    }
+
+    @After
+    public void afterEach() {
+        batchingService.shutdownNow();
+    }
+
+    @Test
+    public void shouldSendChangeSetsMadeWithinDelayInOneMessage() throws Exception {
+        ClusteredChangeBus bus = newBus(200L, 10000);
+        List<ChangeSet> changeSets = notify(bus, 5);
+        assertThat(clusteringService.sent.size(), is(0));
+
+        waitForMessages(1);
+        assertThat(clusteringService.sent.get(0), instanceOf(ChangeSetBatch.class));
+        assertEquals(changeSets, delegate.received);
+    }
+
+    @Test
+    public void shouldSendBatchOnceItHoldsMaximumNumberOfChanges() throws Exception {
+        ClusteredChangeBus bus = newBus(60000L, 4);
+        List<ChangeSet> changeSets = notify(bus, 10);
+        // each change set holds 1 change, so two batches of 4 change sets have been sent and 2 change sets are waiting ...
+        assertThat(clusteringService.sent.size(), is(2));
+        assertEquals(changeSets.subList(0, 8), delegate.received);
+
+        bus.shutdown();
+        assertThat(clusteringService.sent.size(), is(3));
+        assertEquals(changeSets, delegate.received);
+    }
+
+    @Test
+    public void shouldSendSingleChangeSetWithoutBatch() throws Exception {
+        ClusteredChangeBus bus = newBus(10L, 10000);
+        List<ChangeSet> changeSets = notify(bus, 1);
+        waitForMessages(1);
+        assertThat(clusteringService.sent.get(0), instanceOf(ChangeSet.class));
+        assertEquals(changeSets, delegate.received);
+    }
+
+    @Test
+    public void shouldNotifyLocalObserversDirectlyWhenAloneInCluster() throws Exception {
+        clusteringService.members = 1;
+        ClusteredChangeBus bus = newBus(60000L, 3);
+        List<ChangeSet> changeSets = notify(bus, 3);
+        assertThat(clusteringService.sent.size(), is(0));
+        assertEquals(changeSets, delegate.received);
+    }
+
+    @Test
+    public void shouldKeepOrderOfChangeSetsMadeConcurrently() throws Exception {
+        final ClusteredChangeBus bus = newBus(5L, 50);
+        final int threads = 4;
+        final int perThread = 250;
+        final List<ChangeSet> notified = new CopyOnWriteArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t != threads; ++t) {
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i != perThread; ++i) {
+                        ChangeSet changeSet = newChangeSet();
+                        synchronized (notified) {
+                            notified.add(changeSet);
+                            bus.notify(changeSet);
+                        }
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        bus.shutdown();
+        assertEquals(notified, delegate.received);
+        assertTrue(clusteringService.sent.size() < threads * perThread);
+    }
+
+    @Test
+    public void shouldRoundTripBatchWithCodec() throws Exception {
+        List<ChangeSet> changeSets = new ArrayList<>();
+        for (int i = 0; i != 3; ++i) {
+            changeSets.add(newChangeSet());
+        }
+        ChangeSetBatch batch = new ChangeSetBatch(changeSets);
+        assertTrue(ChangeSetBatch.CODEC.canEncode(batch));
+        ChangeSetBatch decoded = ChangeSetBatch.CODEC.decode(ChangeSetBatch.CODEC.encode(batch));
+        assertThat(decoded.changeSets().size(), is(3));
+        for (int i = 0; i != 3; ++i) {
+            assertEquals(changeSets.get(i).getUUID(), decoded.changeSets().get(i).getUUID());
+        }
+    }
+
+    private ClusteredChangeBus newBus( long delayMillis,
+                                       int maxChanges ) throws Exception {
+        ClusteredChangeBus bus = new ClusteredChangeBus(delegate, clusteringService, batchingService, delayMillis, maxChanges, null);
+        bus.start();
+        return bus;
+    }
+
+    private List<ChangeSet> notify( ClusteredChangeBus bus,
+                                    int count ) {
+        List<ChangeSet> changeSets = new ArrayList<>();
+        for (int i = 0; i != count; ++i) {
+            ChangeSet changeSet = newChangeSet();
+            changeSets.add(changeSet);
+            bus.notify(changeSet);
+        }
+        return changeSets;
+    }
+
+    private void waitForMessages( int count ) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (clusteringService.sent.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(clusteringService.sent.size(), is(count));
+    }
+
+    protected static ChangeSet newChangeSet() {
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", null);
+        changes.workspaceAdded("ws");
+        changes.freeze("admin", null, new ModeShapeDateTime());
+        return changes;
+    }
+
+    private static final class LoopbackClusteringService extends ClusteringService {
+        protected final List<Serializable> sent = new CopyOnWriteArrayList<>();
+        private final List<MessageConsumer<Serializable>> consumers = new CopyOnWriteArrayList<>();
+        protected volatile int members = 2;
+
+        protected LoopbackClusteringService() {
+            super("loopback");
+        }
+
+        @Override
+        protected void init() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public boolean multipleMembersInCluster() {
+            return members > 1;
+        }
+
+        @Override
+        @SuppressWarnings( "unchecked" )
+        public synchronized void addConsumer( MessageConsumer<? extends Serializable> consumer ) {
+            consumers.add((MessageConsumer<Serializable>)consumer);
+        }
+
+        @Override
+        public boolean sendMessage( Serializable payload ) {
+            sent.add(payload);
+            for (MessageConsumer<Serializable> consumer : consumers) {
+                if (consumer.getPayloadType().isInstance(payload)) {
+                    consumer.consume(payload);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "loopback";
+        }
+    }
+
+    private static final class RecordingBus implements ChangeBus {
+        protected final List<ChangeSet> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void notify( ChangeSet changeSet ) {
+            received.add(changeSet);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean hasObservers() {
+            return true;
+        }
+
+        @Override
+        public boolean registerInThread( ChangeSetListener observer ) {
+            return false;
+        }
+
+        @Override
+        public boolean register( ChangeSetListener observer ) {
+            return false;
+        }
+
+        @Override
+        public boolean unregister( ChangeSetListener observer ) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.change;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.jcr.value.PropertyFactory;
+import org.modeshape.jcr.value.basic.BasicMultiValueProperty;
+import org.modeshape.jcr.value.basic.ModeShapeDateTime;
+import org.modeshape.jcr.value.basic.NodeKeyReference;
+
+/**
+ * Unit test for {@link ChangeSetCodec}.
+ */
+public class ChangeSetCodecTest {
+
+    private ExecutionContext context;
+    private PropertyFactory properties;
+    private NodeKey root;
+
+    @Before
+    public void beforeEach() {
+        context = new ExecutionContext();
+        properties = context.getPropertyFactory();
+        root = new NodeKey("source1works1-" + UUID.randomUUID());
+    }
+
+    @Test
+    public void shouldRoundTripEmptyChangeSet() throws Exception {
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", null);
+        changes.freeze("admin", null, new ModeShapeDateTime());
+
+        ChangeSet decoded = ChangeSetCodec.decode(ChangeSetCodec.encode(changes));
+        assertSameChangeSet(changes, decoded);
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void shouldRoundTripChangeSetWithAllKindsOfChanges() throws Exception {
+        RecordingChanges changes = newChangeSet();
+        ChangeSet decoded = ChangeSetCodec.decode(ChangeSetCodec.encode(changes));
+        assertSameChangeSet(changes, decoded);
+
+        Iterator<Change> expected = changes.iterator();
+        Iterator<Change> actual = decoded.iterator();
+        NodeAdded added = (NodeAdded)actual.next();
+        assertEquals(expected.next().toString(), added.toString());
+        assertEquals(((NodeAdded)changes.iterator().next()).getProperties(), added.getProperties());
+        while (expected.hasNext()) {
+            Change expectedChange = expected.next();
+            Change actualChange = actual.next();
+            assertEquals(expectedChange.getClass(), actualChange.getClass());
+            if (expectedChange instanceof NodeReordered) {
+                NodeReordered expectedReordered = (NodeReordered)expectedChange;
+                NodeReordered actualReordered = (NodeReordered)actualChange;
+                assertEquals(expectedReordered.getParent(), actualReordered.getParent());
+                assertEquals(expectedReordered.getOldPath(), actualReordered.getOldPath());
+                assertEquals(expectedReordered.getReorderedBeforePath(), actualReordered.getReorderedBeforePath());
+            } else {
+                assertEquals(expectedChange.toString(), actualChange.toString());
+            }
+            if (expectedChange instanceof AbstractNodeChange) {
+                AbstractNodeChange expectedNodeChange = (AbstractNodeChange)expectedChange;
+                AbstractNodeChange actualNodeChange = (AbstractNodeChange)actualChange;
+                assertEquals(expectedNodeChange.getKey(), actualNodeChange.getKey());
+                assertEquals(expectedNodeChange.getPath(), actualNodeChange.getPath());
+                assertEquals(expectedNodeChange.getPrimaryType(), actualNodeChange.getPrimaryType());
+                assertEquals(expectedNodeChange.getMixinTypes(), actualNodeChange.getMixinTypes());
+            }
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    @Test
+    public void shouldRoundTripPropertyValuesOfAllStandardTypes() throws Exception {
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", "journal");
+        NodeKey child = root.withRandomId();
+        Name name = name("values");
+        ModeShapeDateTime date = new ModeShapeDateTime(1234567890123L, "Europe/Paris");
+        Property multiple = new BasicMultiValueProperty(name, Arrays.<Object>asList("text", 42L, -7L, 3.5d, true, false,
+                                                                                    new BigDecimal("12.340"), date,
+                                                                                    name("jcr:content"), path("/a/b[2]/c"),
+                                                                                    path("../d"),
+                                                                                    new NodeKeyReference(child, true, false, false),
+                                                                                    URI.create("http://www.modeshape.org"),
+                                                                                    UUID.randomUUID()));
+        Property single = properties.create(name("single"), Long.MIN_VALUE);
+        Property empty = properties.create(name("empty"));
+        changes.propertyChanged(child, name("nt:unstructured"), Collections.<Name>emptySet(), path("/a"), multiple, single);
+        changes.propertyAdded(child, name("nt:unstructured"), Collections.<Name>emptySet(), path("/a"), empty);
+        changes.freeze("admin", null, new ModeShapeDateTime());
+
+        ChangeSet decoded = ChangeSetCodec.decode(ChangeSetCodec.encode(changes));
+        Iterator<Change> iterator = decoded.iterator();
+        PropertyChanged changed = (PropertyChanged)iterator.next();
+        assertEquals(multiple, changed.getNewProperty());
+        assertEquals(single, changed.getOldProperty());
+        Object[] values = changed.getNewProperty().getValuesAsArray();
+        assertThat(((ModeShapeDateTime)values[7]).getTimeZoneId(), is(date.getTimeZoneId()));
+        assertThat(values[12], instanceOf(URI.class));
+        NodeKeyReference reference = (NodeKeyReference)values[11];
+        assertTrue(reference.isWeak());
+        assertFalse(reference.isForeign());
+        PropertyAdded added = (PropertyAdded)iterator.next();
+        assertEquals(empty, added.getProperty());
+    }
+
+    @Test
+    public void shouldRoundTripKeysWhichAreNotUuids() throws Exception {
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", null);
+        NodeKey key = new NodeKey("source1works1-not-a-uuid");
+        changes.nodeChanged(key, path("/"), name("mode:root"), Collections.<Name>emptySet());
+        changes.binaryValueUsed(new BinaryKey("ABCDEF"));
+        changes.binaryValueNoLongerUsed(new BinaryKey("0123456789abcdef0123456789abcdef01234567"));
+        changes.freeze("admin", null, new ModeShapeDateTime());
+
+        ChangeSet decoded = ChangeSetCodec.decode(ChangeSetCodec.encode(changes));
+        assertSameChangeSet(changes, decoded);
+        assertEquals(key, ((NodeChanged)decoded.iterator().next()).getKey());
+    }
+
+    @Test
+    public void shouldShareDictionariesBetweenChangeSetsInSameWriter() throws Exception {
+        RecordingChanges first = newChangeSet();
+        RecordingChanges second = newChangeSet();
+        byte[] separately = ChangeSetCodec.encode(second);
+        byte[] together = new ChangeSetCodec.Writer().writeChangeSet(first).writeChangeSet(second).toByteArray();
+        assertTrue(together.length < ChangeSetCodec.encode(first).length + separately.length);
+
+        ChangeSetCodec.Reader reader = new ChangeSetCodec.Reader(together);
+        assertSameChangeSet(first, reader.readChangeSet());
+        assertSameChangeSet(second, reader.readChangeSet());
+    }
+
+    @Test
+    public void shouldBeMuchSmallerThanJavaSerialization() throws Exception {
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", "journal");
+        Path parentPath = path("/content/folder");
+        NodeKey parent = root.withRandomId();
+        for (int i = 0; i != 100; ++i) {
+            NodeKey child = root.withRandomId();
+            Path childPath = context.getValueFactories().getPathFactory().create(parentPath, "node" + i);
+            Map<Name, Property> props = new HashMap<>();
+            props.put(name("jcr:primaryType"), properties.create(name("jcr:primaryType"), name("nt:unstructured")));
+            props.put(name("title"), properties.create(name("title"), "Title " + i));
+            changes.nodeCreated(child, parent, childPath, name("nt:unstructured"), Collections.<Name>emptySet(), props);
+        }
+        changes.freeze("admin", null, new ModeShapeDateTime());
+
+        byte[] binary = ChangeSetCodec.encode(changes);
+        ByteArrayOutputStream java = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(java)) {
+            stream.writeObject(changes);
+        }
+        assertTrue("binary: " + binary.length + ", java: " + java.size(), binary.length * 2 < java.size());
+        assertSameChangeSet(changes, ChangeSetCodec.decode(binary));
+    }
+
+    @Test
+    public void shouldRejectNewerVersions() throws Exception {
+        byte[] data = ChangeSetCodec.encode(newChangeSet());
+        data[0] = ChangeSetCodec.VERSION + 1;
+        try {
+            ChangeSetCodec.decode(data);
+            fail("Expected the newer version to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private RecordingChanges newChangeSet() {
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", "journal");
+        NodeKey parent = root.withRandomId();
+        NodeKey child = root.withRandomId();
+        NodeKey other = root.withRandomId();
+        Set<Name> mixins = new HashSet<>();
+        mixins.add(name("mix:referenceable"));
+        mixins.add(name("mix:versionable"));
+        Map<Name, Property> props = new HashMap<>();
+        props.put(name("jcr:primaryType"), properties.create(name("jcr:primaryType"), name("nt:unstructured")));
+        props.put(name("count"), properties.create(name("count"), 3L));
+
+        changes.nodeCreated(child, parent, path("/a/b"), name("nt:unstructured"), mixins, props);
+        changes.nodeChanged(child, path("/a/b"), name("nt:unstructured"), mixins);
+        changes.nodeMoved(child, name("nt:unstructured"), mixins, other, parent, path("/c/b"), path("/a/b"));
+        changes.nodeRenamed(child, path("/c/d"), path("/c/b").getLastSegment(), name("nt:unstructured"), mixins);
+        changes.nodeReordered(child, name("nt:unstructured"), mixins, other, path("/c/d"), path("/c/d[2]"), path("/c/e"));
+        changes.nodeReordered(child, name("nt:unstructured"), mixins, other, path("/c/d"), null, null);
+        changes.propertyAdded(child, name("nt:unstructured"), mixins, path("/c/d"), properties.create(name("p"), "v1"));
+        changes.propertyChanged(child, name("nt:unstructured"), mixins, path("/c/d"), properties.create(name("p"), "v2"),
+                                properties.create(name("p"), "v1"));
+        changes.propertyRemoved(child, name("nt:unstructured"), mixins, path("/c/d"), properties.create(name("p"), "v2"));
+        changes.nodeSequenced(child, path("/c/d"), name("nt:unstructured"), mixins, other, path("/out/d"), "/out", "admin",
+                              "/c", "sequencer");
+        changes.nodeSequencingFailure(child, path("/c/d"), name("nt:unstructured"), mixins, "/out", "admin", "/c", "sequencer",
+                                      new IllegalStateException("failed"));
+        changes.nodeRemoved(child, other, path("/c/d"), name("nt:unstructured"), mixins, name("nt:folder"),
+                            Collections.<Name>emptySet());
+        changes.workspaceAdded("other");
+        changes.workspaceRemoved("other");
+        changes.repositoryMetadataChanged();
+        changes.binaryValueUsed(new BinaryKey("0123456789abcdef0123456789abcdef01234567"));
+        changes.binaryValueNoLongerUsed(new BinaryKey("fedcba9876543210fedcba9876543210fedcba98"));
+
+        Map<String, String> userData = new HashMap<>();
+        userData.put("key", "value");
+        changes.freeze("admin", userData, new ModeShapeDateTime());
+        Set<NodeKey> changedNodes = new HashSet<>();
+        changedNodes.add(child);
+        changedNodes.add(parent);
+        changes.setChangedNodes(changedNodes);
+        return changes;
+    }
+
+    private void assertSameChangeSet( ChangeSet expected,
+                                      ChangeSet actual ) {
+        assertThat(actual, instanceOf(RecordingChanges.class));
+        assertEquals(expected.getUUID(), actual.getUUID());
+        assertEquals(expected.getSessionId(), actual.getSessionId());
+        assertEquals(expected.getProcessKey(), actual.getProcessKey());
+        assertEquals(expected.getRepositoryKey(), actual.getRepositoryKey());
+        assertEquals(expected.getWorkspaceName(), actual.getWorkspaceName());
+        assertEquals(expected.getJournalId(), actual.getJournalId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getUserData(), actual.getUserData());
+        assertEquals(expected.changedNodes(), actual.changedNodes());
+        assertEquals(expected.usedBinaries(), actual.usedBinaries());
+        assertEquals(expected.unusedBinaries(), actual.unusedBinaries());
+        assertEquals(expected.size(), actual.size());
+    }
+
+    private Name name( String name ) {
+        return context.getValueFactories().getNameFactory().create(name);
+    }
+
+    private Path path( String path ) {
+        return context.getValueFactories().getPathFactory().create(path);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.BasicDocument;
+import org.modeshape.schematic.internal.document.CompactDocument;
+
+public class CachedNodeMapTest {
+
+    private final WorkspaceCacheStatistics statistics = new WorkspaceCacheStatistics();
+
+    @Test
+    public void shouldBeBoundedByNumberOfEntries() throws Exception {
+        CachedNodeMap map = new CachedNodeMap(10, 0, CachedNodeMap.EvictionPolicy.LRU, statistics);
+        for (int i = 0; i < 20; i++) {
+            map.putIfAbsent(key(i), node(i, 1));
+        }
+        assertThat(map.size(), is(10));
+        assertThat(map.weightedSize(), is(10L));
+        assertThat(statistics.getEvictions(), is(10L));
+        // the least recently used nodes were evicted
+        assertNull(map.get(key(0)));
+        assertNotNull(map.get(key(19)));
+        assertThat(statistics.getHits(), is(1L));
+        assertThat(statistics.getMisses(), is(1L));
+    }
+
+    @Test
+    public void shouldBeBoundedByEstimatedBytes() throws Exception {
+        CachedNode small = node(0, 1);
+        CachedNode large = node(1, 100);
+        int smallWeight = CachedNodeMap.weigh(small);
+        int largeWeight = CachedNodeMap.weigh(large);
+        assertTrue(largeWeight > 10 * smallWeight);
+
+        CachedNodeMap map = new CachedNodeMap(Integer.MAX_VALUE, largeWeight + 2 * smallWeight, CachedNodeMap.EvictionPolicy.LRU,
+                                              statistics);
+        map.put(key(0), small);
+        map.put(key(2), node(2, 1));
+        assertThat(map.weightedSize(), is(2L * smallWeight));
+        map.put(key(1), large);
+        assertThat(map.size(), is(3));
+        // adding another small node evicts the least recently used one
+        map.put(key(3), node(3, 1));
+        assertThat(map.size(), is(3));
+        assertNull(map.get(key(0)));
+        assertTrue(map.weightedSize() <= map.capacity());
+    }
+
+    @Test
+    public void shouldOnlyAdmitNodesWhichAreUsedMoreFrequentlyThanTheVictim() throws Exception {
+        CachedNodeMap map = new CachedNodeMap(10, 0, CachedNodeMap.EvictionPolicy.TINY_LFU, statistics);
+        for (int i = 0; i < 10; i++) {
+            map.putIfAbsent(key(i), node(i, 1));
+            // make the first nodes popular
+            for (int j = 0; j < 5; j++) {
+                map.get(key(i));
+            }
+        }
+        // a scan over nodes which are read only once should not flush the popular ones ...
+        for (int i = 10; i < 100; i++) {
+            assertNull(map.get(key(i)));
+            assertNull(map.putIfAbsent(key(i), node(i, 1)));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(map.get(key(i)));
+        }
+        assertThat(statistics.getRejections(), is(90L));
+        assertThat(statistics.getEvictions(), is(90L));
+
+        // ... but a node which becomes popular is eventually admitted
+        NodeKey newKey = key(1000);
+        for (int i = 0; i < 10; i++) {
+            map.get(newKey);
+        }
+        map.putIfAbsent(newKey, node(1000, 1));
+        assertNotNull(map.get(newKey));
+        assertThat(map.size(), is(10));
+    }
+
+    @Test
+    public void shouldEstimateLargerSizesForLargerDocuments() throws Exception {
+        long previous = 0;
+        for (int properties = 0; properties < 100; properties += 10) {
+            long size = CachedNodeMap.estimateSize(document(0, properties));
+            assertTrue(size > previous);
+            previous = size;
+        }
+    }
+
+    @Test
+    public void shouldEstimateSmallerSizesForCompactDocuments() throws Exception {
+        Document document = document(0, 20);
+        assertTrue(CachedNodeMap.estimateSize(CompactDocument.copyOf(document)) < CachedNodeMap.estimateSize(document));
+    }
+
+    @Test
+    public void shouldWeighLazyDocumentsByTheirSerializedLength() throws Exception {
+        byte[] bson = Bson.write(document(0, 20));
+        Document lazy = Bson.read(ByteBuffer.wrap(bson));
+        int weight = CachedNodeMap.weigh(new LazyCachedNode(key(0), lazy));
+        assertTrue(weight > bson.length);
+        assertTrue(weight < bson.length + 100);
+    }
+
+    private NodeKey key( int index ) {
+        return new NodeKey("source1works1-node" + index);
+    }
+
+    private CachedNode node( int index, int propertyCount ) {
+        return new LazyCachedNode(key(index), document(index, propertyCount));
+    }
+
+    private Document document( int index, int propertyCount ) {
+        BasicDocument document = new BasicDocument();
+        document.put("key", key(index).toString());
+        BasicDocument properties = new BasicDocument();
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put("property" + i, "value of property " + i);
+        }
+        document.put("properties", properties);
+        return document;
+    }
+}
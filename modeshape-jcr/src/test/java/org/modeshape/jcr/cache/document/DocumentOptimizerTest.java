@@ -16,6 +16,7 @@
 package org.modeshape.jcr.cache.document;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import java.util.Arrays;
@@ -26,6 +27,7 @@ import org.junit.Test;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.RepositoryEnvironment;
 import org.modeshape.jcr.cache.ChildReference;
+import org.modeshape.jcr.cache.ChildReferences;
 import org.modeshape.jcr.cache.MutableCachedNode;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.SessionCache;
@@ -172,6 +174,60 @@ public class DocumentOptimizerTest extends AbstractSessionCacheTest {
         print(document(key), true);
     }
 
+    @Test
+    public void shouldIndexBlocksOfChildReferences() throws Exception {
+        MutableCachedNode nodeB = check(session1).mutableNode("/childB");
+        NodeKey key = nodeB.getKey();
+        for (int i = 0; i != 40; ++i) {
+            nodeB.createChild(session(), key.withId("child" + i), name("child" + i), property("p1a", 344));
+        }
+        session1.save();
+
+        runInTransaction(() -> optimizer.optimizeChildrenBlocks(key, null, 5, 2)); // will merge into a single block ...
+        runInTransaction(() -> optimizer.optimizeChildrenBlocks(key, null, 5, 2)); // will split into blocks ...
+        String indexKey = document(key).getDocument(DocumentTranslator.CHILDREN_INFO).getString(DocumentTranslator.BLOCK_INDEX);
+        assertThat(indexKey != null, is(true));
+        ChildrenBlockIndex index = ChildrenBlockIndex.from(document(new NodeKey(indexKey)));
+        assertThat(index.blockCount(), is(7));
+        int blockReads = 0;
+        for (int i = 0; i != 40; ++i) {
+            for (int block = 0; block != index.blockCount(); ++block) {
+                if (index.mightContain(block, "child" + i)) {
+                    ++blockReads;
+                }
+            }
+        }
+        assertThat(blockReads < 40 + 10, is(true));
+        assertChildReferences(key, 40);
+
+        // Append some children, which changes the filter of the last block ...
+        nodeB = check(session1).mutableNode("/childB");
+        for (int i = 40; i != 45; ++i) {
+            nodeB.createChild(session(), key.withId("child" + i), name("child" + i), property("p1a", 344));
+        }
+        session1.save();
+
+        index = ChildrenBlockIndex.from(document(new NodeKey(indexKey)));
+        assertThat(index.mightContain(index.blockCount() - 1, "child44"), is(true));
+        ChildReferences refs = assertChildReferences(key, 45);
+        assertThat(refs.getChild(name("child45")), is(nullValue()));
+    }
+
+    protected ChildReferences assertChildReferences( NodeKey key,
+                                                     int count ) {
+        ChildReferences refs = workspaceCache.translator().getChildReferences(workspaceCache, document(key));
+        assertThat(refs instanceof ImmutableChildReferences.Segmented, is(true));
+        for (int i = 0; i != count; ++i) {
+            NodeKey childKey = key.withId("child" + i);
+            assertThat(refs.getChild(name("child" + i)).getKey(), is(childKey));
+            assertThat(refs.hasChild(childKey), is(true));
+            assertThat(refs.getChild(childKey).getName(), is(name("child" + i)));
+            assertThat(refs.getChildCount(name("child" + i)), is(1));
+        }
+        assertThat(refs.hasChild(key.withId("unknown")), is(false));
+        return refs;
+    }
+
     protected Document document( NodeKey key ) {
         SchematicEntry entry = workspaceCache.documentStore().get(key.toString());
         return entry.content();
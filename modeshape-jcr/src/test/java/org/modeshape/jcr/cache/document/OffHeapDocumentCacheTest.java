@@ -0,0 +1,126 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.Collections;
+import org.junit.Test;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.BasicDocument;
+
+public class OffHeapDocumentCacheTest {
+
+    private static final long CAPACITY = 1 << 20;
+
+    private final OffHeapDocumentCache cache = new OffHeapDocumentCache(CAPACITY);
+
+    @Test
+    public void shouldReturnCopiesOfCachedDocuments() throws Exception {
+        assertNull(cache.get(key(0)));
+        assertTrue(cache.put(key(0), document(0, 10), cache.stamp(key(0))));
+        Document cached = cache.get(key(0));
+        assertNotNull(cached);
+        assertThat(cached, is(document(0, 10)));
+        assertThat(cache.size(), is(1L));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHitRatio(), is(0.5d));
+        assertTrue(cache.getOffHeapUsed() > 0);
+        assertThat(cache.getOffHeapCapacity(), is(CAPACITY));
+    }
+
+    @Test
+    public void shouldReplaceCachedDocuments() throws Exception {
+        cache.put(key(0), document(0, 10), cache.stamp(key(0)));
+        long used = cache.getOffHeapUsed();
+        cache.put(key(0), document(1, 10), cache.stamp(key(0)));
+        assertThat(cache.get(key(0)), is(document(1, 10)));
+        assertThat(cache.size(), is(1L));
+        assertThat(cache.getOffHeapUsed(), is(used));
+    }
+
+    @Test
+    public void shouldNotCacheDocumentsReadBeforeInvalidation() throws Exception {
+        long stamp = cache.stamp(key(0));
+        // another thread changes the document while it is read ...
+        cache.invalidate(key(0));
+        assertFalse(cache.put(key(0), document(0, 10), stamp));
+        assertNull(cache.get(key(0)));
+    }
+
+    @Test
+    public void shouldInvalidateChangedNodes() throws Exception {
+        cache.put(key(0), document(0, 10), cache.stamp(key(0)));
+        cache.put(key(1), document(1, 10), cache.stamp(key(1)));
+        ChangeSet changeSet = mock(ChangeSet.class);
+        when(changeSet.changedNodes()).thenReturn(Collections.singleton(new NodeKey(key(0))));
+        cache.notify(changeSet);
+        assertNull(cache.get(key(0)));
+        assertNotNull(cache.get(key(1)));
+        cache.clear();
+        assertNull(cache.get(key(1)));
+        assertThat(cache.getOffHeapUsed(), is(0L));
+    }
+
+    @Test
+    public void shouldEvictOldestDocumentsWhenFull() throws Exception {
+        int count = 0;
+        while (cache.getEvictions() == 0) {
+            assertTrue(cache.put(key(count), document(count, 100), cache.stamp(key(count))));
+            ++count;
+        }
+        assertTrue(cache.getOffHeapUsed() <= cache.getOffHeapCapacity());
+        assertThat(cache.size() + cache.getEvictions(), is((long)count));
+        // the most recent document is still there
+        assertThat(cache.get(key(count - 1)), is(document(count - 1, 100)));
+        // and so are all documents once the log has wrapped around a few times
+        for (int i = count; i < 5 * count; i++) {
+            cache.put(key(i), document(i, 100), cache.stamp(key(i)));
+        }
+        for (int i = 4 * count + 1; i < 5 * count; i += 97) {
+            assertThat(cache.get(key(i)), is(document(i, 100)));
+        }
+        assertNull(cache.get(key(0)));
+    }
+
+    @Test
+    public void shouldNotCacheVeryLargeDocuments() throws Exception {
+        assertFalse(cache.put(key(0), document(0, (int)CAPACITY), cache.stamp(key(0))));
+        assertThat(cache.size(), is(0L));
+    }
+
+    private String key( int index ) {
+        return "source1works1-node" + index;
+    }
+
+    private Document document( int index, int properties ) {
+        BasicDocument doc = new BasicDocument();
+        doc.put("index", index);
+        for (int i = 0; i < properties; i++) {
+            doc.put("property" + i, "value" + i);
+        }
+        return doc;
+    }
+}
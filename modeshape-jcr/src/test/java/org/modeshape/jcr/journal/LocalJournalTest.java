@@ -15,26 +15,42 @@
  */
 package org.modeshape.jcr.journal;
 
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mapdb.BTreeKeySerializer;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
 import org.modeshape.common.FixFor;
 import org.modeshape.common.util.FileUtil;
+import org.modeshape.common.util.TimeBasedKeys;
 import org.modeshape.jcr.api.value.DateTime;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.Change;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.RecordingChanges;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.basic.ModeShapeDateTime;
 
@@ -209,6 +225,190 @@ public class LocalJournalTest {
         assertEquals(journalId, journal.journalId());
     }
 
+    @Test
+    public void shouldAppendRecordsToSeveralSegments() throws Exception {
+        LocalJournal localJournal = localJournal().withSegmentSize(1024);
+        int initialEntriesCount = journal.allRecords(false).size();
+        int entriesCount = 200;
+        for (int i = 0; i < entriesCount; i++) {
+            journal.notify(TestChangeSet.create("j1", 2));
+        }
+        assertTrue(localJournal.segmentCount() > 2);
+        assertRecordsInOrder(initialEntriesCount + entriesCount);
+        assertEquals(entriesCount + 1, journal.recordsNewerThan(timestamp3.toLocalDateTime(), true, false).size());
+        assertEquals(entriesCount * 2 + 2, countChangedNodesSince(timestamp3.getMilliseconds()));
+    }
+
+    @Test
+    public void shouldAppendRecordsFromConcurrentThreads() throws Exception {
+        LocalJournal localJournal = localJournal().withSegmentSize(1024);
+        int initialEntriesCount = journal.allRecords(false).size();
+        int threadCount = 8;
+        int entriesPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < entriesPerThread; j++) {
+                        journal.notify(TestChangeSet.create("j1", 1));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(localJournal.segmentCount() > 2);
+        assertRecordsInOrder(initialEntriesCount + threadCount * entriesPerThread);
+
+        // all of the records were written to disk ...
+        journal.shutdown();
+        journal.start();
+        assertRecordsInOrder(initialEntriesCount + threadCount * entriesPerThread);
+    }
+
+    @Test
+    public void shouldMergeRecordsAddedOutOfOrder() throws Exception {
+        List<Long> keys = keys(journal.allRecords(false));
+        int initialEntriesCount = keys.size();
+        // add records older than the last one, as done when reconciling a clustered journal ...
+        journal.addRecords(new JournalRecord(TestChangeSet.create("j4", 1)).withTimeBasedKey(keys.get(0) + 1),
+                           new JournalRecord(TestChangeSet.create("j4", 1)).withTimeBasedKey(keys.get(3) + 1));
+        journal.notify(TestChangeSet.create("j4", 1));
+        assertRecordsInOrder(initialEntriesCount + 3);
+
+        // and a record with the same key as an existing one, which replaces it ...
+        JournalRecord replacement = new JournalRecord(TestChangeSet.create("j5", 1)).withTimeBasedKey(keys.get(1));
+        journal.addRecords(replacement);
+        assertRecordsInOrder(initialEntriesCount + 3);
+        Iterator<JournalRecord> records = journal.allRecords(false).iterator();
+        records.next();
+        records.next();
+        assertEquals(replacement, records.next());
+    }
+
+    @Test
+    public void shouldRemoveOldSegments() throws Exception {
+        LocalJournal localJournal = localJournal().withSegmentSize(1024);
+        int entriesCount = 100;
+        for (int i = 0; i < entriesCount; i++) {
+            journal.notify(TestChangeSet.create("j1", 2));
+        }
+        int segmentCount = localJournal.segmentCount();
+
+        Thread.sleep(1);
+        long currentMillis = System.currentTimeMillis();
+        Thread.sleep(1);
+        for (int i = 0; i < entriesCount; i++) {
+            journal.notify(TestChangeSet.create("j1", 2));
+        }
+
+        localJournal.removeRecordsOlderThan(currentMillis);
+        assertTrue(localJournal.segmentCount() < segmentCount);
+        assertRecordsInOrder(entriesCount);
+        assertEquals(entriesCount * 2, countChangedNodesSince(-1));
+
+        // the removed records are still ignored after a restart ...
+        journal.shutdown();
+        journal.start();
+        assertRecordsInOrder(entriesCount);
+    }
+
+    @Test
+    public void shouldReadRecordsAfterRestart() throws Exception {
+        RecordingChanges changes = new RecordingChanges("session", "process", "repository", "default", journal.journalId());
+        changes.workspaceAdded("ws");
+        changes.freeze("admin", null, new ModeShapeDateTime());
+        changes.setChangedNodes(Collections.singleton(new NodeKey(UUID.randomUUID().toString())));
+        journal.notify(changes);
+
+        journal.shutdown();
+        journal.start();
+        assertRecordsInOrder(9);
+        JournalRecord lastRecord = journal.lastRecord();
+        assertThat(lastRecord.getChangeSet(), instanceOf(RecordingChanges.class));
+        assertEquals(changes.getUUID(), lastRecord.getChangeSet().getUUID());
+        assertEquals(changes.changedNodes(), lastRecord.changedNodes());
+    }
+
+    @Test
+    public void shouldDiscardIncompleteRecordAfterRestart() throws Exception {
+        journal.shutdown();
+        // corrupt the last byte of the last record, as if it had not been completely written ...
+        File[] segmentFiles = new File(localJournal().getJournalLocation()).listFiles(
+                (dir, name) -> JournalSegment.isSegmentFile(name));
+        assertEquals(1, segmentFiles.length);
+        byte[] content = Files.readAllBytes(segmentFiles[0].toPath());
+        int position = content.length - 1;
+        while (content[position] == 0) {
+            --position;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles[0], "rw")) {
+            file.seek(position);
+            file.write(0);
+        }
+
+        journal.start();
+        assertRecordsInOrder(7);
+        journal.notify(TestChangeSet.create("j4", 1));
+        assertRecordsInOrder(8);
+        assertEquals("j4", journal.lastRecord().getJournalId());
+    }
+
+    @Test
+    public void shouldMoveRecordsFromPreviousStore() throws Exception {
+        journal.shutdown();
+        File journalFolder = new File(localJournal().getJournalLocation());
+        FileUtil.delete(journalFolder);
+        assertTrue(journalFolder.mkdirs());
+        // write the records like the journal did when it used a MapDB store ...
+        DB journalDB = DBMaker.newFileDB(new File(journalFolder, "records")).compressionEnable().checksumEnable().make();
+        BTreeMap<Long, JournalRecord> records = journalDB.createTreeMap("records")
+                                                         .keySerializer(BTreeKeySerializer.ZERO_OR_POSITIVE_LONG)
+                                                         .counterEnable()
+                                                         .makeOrGet();
+        TimeBasedKeys timeBasedKeys = TimeBasedKeys.create();
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            JournalRecord record = new JournalRecord(TestChangeSet.create("j1", 1)).withTimeBasedKey(timeBasedKeys.nextKey());
+            records.put(record.getTimeBasedKey(), record);
+            keys.add(record.getTimeBasedKey());
+        }
+        journalDB.getAtomicString("journalId").set("Journal_previous");
+        journalDB.commit();
+        journalDB.close();
+
+        journal.start();
+        assertEquals("Journal_previous", journal.journalId());
+        assertRecordsInOrder(5);
+        assertEquals(keys, keys(journal.allRecords(false)));
+        assertFalse(new File(journalFolder, "records").exists());
+    }
+
+    private void assertRecordsInOrder( int expectedCount ) {
+        List<Long> keys = keys(journal.allRecords(false));
+        assertEquals(expectedCount, keys.size());
+        assertEquals(expectedCount, journal.allRecords(false).size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue("Records are not in ascending order: " + keys, keys.get(i - 1) < keys.get(i));
+        }
+        List<Long> descendingKeys = keys(journal.allRecords(true));
+        Collections.reverse(descendingKeys);
+        assertEquals(keys, descendingKeys);
+    }
+
+    private List<Long> keys( Iterable<JournalRecord> records ) {
+        List<Long> keys = new ArrayList<>();
+        for (JournalRecord record : records) {
+            keys.add(record.getTimeBasedKey());
+        }
+        return keys;
+    }
+
     protected ChangeJournal journal() throws Exception {
         return new LocalJournal("target/local_journal");
     }
@@ -0,0 +1,57 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.locking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link StripedLockingService}
+ */
+public class StripedLockingServiceTest extends StandaloneLockingServiceTest {
+
+    @Override
+    protected LockingService newLockingService() {
+        return new StripedLockingService();
+    }
+
+    @Test
+    public void shouldRoundStripesToPowerOfTwo() throws Exception {
+        assertEquals(1, new StripedLockingService(1, 0).getStripeCount());
+        assertEquals(2, new StripedLockingService(2, 0).getStripeCount());
+        assertEquals(128, new StripedLockingService(100, 0).getStripeCount());
+        assertEquals(1024, new StripedLockingService(1024, 0).getStripeCount());
+    }
+
+    @Test
+    public void shouldKeepStripeLockedWhileAnyOfItsNamesIsHeld() throws Exception {
+        // with a single stripe, all names share the same lock
+        LockingService service = new StripedLockingService(1, 0);
+        assertLock(service, true, "lock1", "lock2", "lock1");
+        assertTrue(service.unlock("lock1"));
+        CompletableFuture.runAsync(() -> assertLock(service, false, "lock3")).get();
+        assertFalse(service.unlock("lock1"));
+        assertTrue(service.unlock("lock2"));
+        CompletableFuture.runAsync(() -> {
+            assertLock(service, true, "lock3");
+            assertTrue(service.unlock("lock3"));
+        }).get();
+        assertTrue(service.shutdown());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.NodeTypes;
+import org.modeshape.jcr.RepositoryIndexes;
+import org.modeshape.jcr.query.model.QueryCommand;
+import org.modeshape.jcr.query.model.SelectorName;
+import org.modeshape.jcr.query.parse.BasicSqlQueryParser;
+import org.modeshape.jcr.query.plan.PlanHints;
+import org.modeshape.jcr.query.plan.PlanNode;
+import org.modeshape.jcr.query.plan.PlanNode.Type;
+import org.modeshape.jcr.query.validate.Schemata;
+
+public class PlanCacheTest {
+
+    private PlanCache cache;
+    private Schemata schemata;
+    private NodeTypes nodeTypes;
+    private RepositoryIndexes indexes;
+    private Map<String, Object> variables;
+
+    @Before
+    public void beforeEach() {
+        cache = new PlanCache(10);
+        schemata = mock(Schemata.class);
+        nodeTypes = mock(NodeTypes.class);
+        when(nodeTypes.getVersion()).thenReturn(1);
+        indexes = mock(RepositoryIndexes.class);
+        variables = new HashMap<>();
+    }
+
+    @Test
+    public void shouldFindPlanOfSameQuery() {
+        assertThat(cache.get(key("SELECT * FROM [nt:base]"), variables), is(nullValue()));
+        PlanNode plan = plan("nt:base");
+        put(key("SELECT * FROM [nt:base]"), plan, Collections.<String>emptySet());
+
+        PlanCache.CachedPlan cached = cache.get(key("SELECT * FROM [nt:base]"), variables);
+        assertThat(cached, is(notNullValue()));
+        assertThat(cached.getPlan().isSameAs(plan), is(true));
+        assertThat(cached.getPlan(), is(not(sameInstance(cached.getPlan()))));
+        assertThat(cache.get(key("SELECT * FROM [nt:unstructured]"), variables), is(nullValue()));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test
+    public void shouldNotFindPlanOfQueryWithOtherHints() {
+        put(key("SELECT * FROM [nt:base]"), plan("nt:base"), Collections.<String>emptySet());
+        PlanHints hints = new PlanHints();
+        hints.includeSystemContent = false;
+        PlanCache.Key key = new PlanCache.Key(parse("SELECT * FROM [nt:base]"), Collections.singleton("default"), hints,
+                                              schemata, nodeTypes, indexes);
+        assertThat(cache.get(key, variables), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReusePlanForOtherValuesOfVariablesNotUsedByPlan() {
+        variables.put("name", "first");
+        put(key("SELECT * FROM [nt:base] WHERE [jcr:name] = $name"), plan("nt:base"), Collections.<String>emptySet());
+        variables.put("name", "second");
+        assertThat(cache.get(key("SELECT * FROM [nt:base] WHERE [jcr:name] = $name"), variables), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldNotReusePlanForOtherValuesOfVariablesUsedByPlan() {
+        String query = "SELECT * FROM [nt:base] WHERE [jcr:path] = $path";
+        variables.put("path", "/a");
+        variables.put("other", "x");
+        put(key(query), plan("nt:base"), Collections.singleton("path"));
+        variables.put("other", "y");
+        assertThat(cache.get(key(query), variables), is(notNullValue()));
+        variables.put("path", "/b");
+        assertThat(cache.get(key(query), variables), is(nullValue()));
+
+        // Plans for several values may be cached at once ...
+        put(key(query), plan("nt:base"), Collections.singleton("path"));
+        assertThat(cache.size(), is(2));
+        variables.put("path", "/a");
+        assertThat(cache.get(key(query), variables), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldClearCacheWhenNodeTypesChange() {
+        put(key("SELECT * FROM [nt:base]"), plan("nt:base"), Collections.<String>emptySet());
+        NodeTypes newNodeTypes = mock(NodeTypes.class);
+        when(newNodeTypes.getVersion()).thenReturn(2);
+        nodeTypes = newNodeTypes;
+        assertThat(cache.get(key("SELECT * FROM [nt:base]"), variables), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldClearCacheWhenIndexesChange() {
+        put(key("SELECT * FROM [nt:base]"), plan("nt:base"), Collections.<String>emptySet());
+        indexes = mock(RepositoryIndexes.class);
+        assertThat(cache.get(key("SELECT * FROM [nt:base]"), variables), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldFindPlanOfSameQueryWrittenDifferently() {
+        put(key("SELECT * FROM [nt:base] WHERE [jcr:name] = 'a'"), plan("nt:base"), Collections.<String>emptySet());
+        assertThat(cache.get(key("SELECT *   FROM [nt:base]\n WHERE [jcr:name] = 'a'"), variables), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldNotFindPlanOfQueryWhoseLiteralReadsLikeOtherCriteria() {
+        String query = "SELECT * FROM [nt:base] AS a WHERE a.p IN ('x','y')";
+        String quoting = "SELECT * FROM [nt:base] AS a WHERE a.p IN (\"x','y\")";
+        // both queries are shown the same way, but only the first has two values ...
+        assertThat(key(quoting).toString(), is(key(query).toString()));
+        put(key(query), plan("nt:base"), Collections.<String>emptySet());
+        assertThat(cache.get(key(quoting), variables), is(nullValue()));
+        assertThat(cache.get(key(query), variables), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldHoldAtMostMaximumNumberOfPlans() {
+        for (int i = 0; i != 50; ++i) {
+            put(key("SELECT * FROM [type" + i + "]"), plan("type" + i), Collections.<String>emptySet());
+        }
+        assertThat(cache.size() <= 10, is(true));
+        assertThat(cache.get(key("SELECT * FROM [type49]"), variables), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldNotReusePlansOlderThanMaximumAge() {
+        AtomicLong nanos = new AtomicLong();
+        cache = new PlanCache(10, 1000L, nanos::get);
+        put(key("SELECT * FROM [nt:base]"), plan("nt:base"), Collections.<String>emptySet());
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000L));
+        assertThat(cache.get(key("SELECT * FROM [nt:base]"), variables), is(notNullValue()));
+        nanos.incrementAndGet();
+        assertThat(cache.get(key("SELECT * FROM [nt:base]"), variables), is(nullValue()));
+        assertThat(cache.size(), is(0));
+
+        // The query is planned again ...
+        put(key("SELECT * FROM [nt:base]"), plan("nt:base"), Collections.<String>emptySet());
+        assertThat(cache.get(key("SELECT * FROM [nt:base]"), variables), is(notNullValue()));
+    }
+
+    protected PlanCache.Key key( String statement ) {
+        return new PlanCache.Key(parse(statement), Collections.singleton("default"), new PlanHints(), schemata, nodeTypes,
+                                 indexes);
+    }
+
+    protected QueryCommand parse( String statement ) {
+        return new BasicSqlQueryParser().parseQuery(statement, new ExecutionContext().getValueFactories().getTypeSystem());
+    }
+
+    protected void put( PlanCache.Key key,
+                        PlanNode plan,
+                        Set<String> variableNames ) {
+        cache.put(key, variableNames, variables, plan, new PlanHints(), Collections.<String>emptySet());
+    }
+
+    protected PlanNode plan( String tableName ) {
+        PlanNode project = new PlanNode(Type.PROJECT, new SelectorName(tableName));
+        new PlanNode(Type.SOURCE, project, new SelectorName(tableName));
+        return project;
+    }
+}
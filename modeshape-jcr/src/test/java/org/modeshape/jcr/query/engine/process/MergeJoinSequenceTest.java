@@ -0,0 +1,139 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine.process;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.query.AbstractNodeSequenceTest;
+import org.modeshape.jcr.query.BufferManager;
+import org.modeshape.jcr.query.NodeSequence;
+import org.modeshape.jcr.query.NodeSequence.RowAccessor;
+import org.modeshape.jcr.query.RowExtractors;
+import org.modeshape.jcr.query.RowExtractors.ExtractFromRow;
+import org.modeshape.jcr.query.model.JoinType;
+import org.modeshape.jcr.query.model.NullOrder;
+import org.modeshape.jcr.query.model.TypeSystem;
+import org.modeshape.jcr.value.ValueTypeSystem;
+
+public class MergeJoinSequenceTest extends AbstractNodeSequenceTest {
+
+    private ExecutionContext context;
+    private BufferManager bufferMgr;
+    private TypeSystem types;
+
+    @Override
+    @Before
+    public void beforeEach() {
+        super.beforeEach();
+        this.context = new ExecutionContext();
+        this.bufferMgr = new BufferManager(context);
+        this.types = new ValueTypeSystem(context.getValueFactories());
+    }
+
+    @Test
+    public void shouldInnerJoinParentToChild() {
+        assertParentToChildJoin(JoinType.INNER);
+    }
+
+    @Test
+    public void shouldLeftOuterJoinParentToChild() {
+        assertParentToChildJoin(JoinType.LEFT_OUTER);
+    }
+
+    @Test
+    public void shouldRightOuterJoinParentToChild() {
+        assertParentToChildJoin(JoinType.RIGHT_OUTER);
+    }
+
+    @Test
+    public void shouldFullOuterJoinParentToChild() {
+        assertParentToChildJoin(JoinType.FULL_OUTER);
+    }
+
+    @Test
+    public void shouldInnerJoinSameNodes() {
+        long nodeCount = countRows(allNodes());
+        MergeJoinSequence join = new MergeJoinSequence(workspaceName(), sortedBy(nodeKey()), sortedBy(nodeKey()), nodeKey(),
+                                                       nodeKey(), JoinType.INNER, cache);
+        assertRowsSatisfy(join, joinVerifier(RowExtractors.extractPath(0, cache, types),
+                                             RowExtractors.extractPath(1, cache, types), nodeCount));
+    }
+
+    @Test
+    public void shouldReturnNoRowsForInnerJoinWithEmptySide() {
+        MergeJoinSequence join = new MergeJoinSequence(workspaceName(), sortedBy(nodeKey()), NodeSequence.emptySequence(1),
+                                                       nodeKey(), nodeKey(), JoinType.INNER, cache);
+        assertThat(countRows(join), is(0L));
+    }
+
+    @Test
+    public void shouldReturnAllLeftRowsForLeftOuterJoinWithEmptyRightSide() {
+        long nodeCount = countRows(allNodes());
+        MergeJoinSequence join = new MergeJoinSequence(workspaceName(), sortedBy(nodeKey()), NodeSequence.emptySequence(1),
+                                                       nodeKey(), nodeKey(), JoinType.LEFT_OUTER, cache);
+        assertThat(countRows(join), is(nodeCount));
+    }
+
+    protected void assertParentToChildJoin( JoinType joinType ) {
+        // The hash join does not need ordered inputs, and returns the same rows ...
+        HashJoinSequence hashJoin = new HashJoinSequence(workspaceName(), allNodes(), allNodes(), nodeKey(), parentKey(),
+                                                         joinType, bufferMgr, cache, null, false, true);
+        long expectedCount = countRows(hashJoin);
+
+        MergeJoinSequence join = new MergeJoinSequence(workspaceName(), sortedBy(nodeKey()), sortedBy(parentKey()), nodeKey(),
+                                                       parentKey(), joinType, cache);
+        assertRowsSatisfy(join, joinVerifier(RowExtractors.extractPath(0, cache, types),
+                                             RowExtractors.extractParentPath(1, cache, types), expectedCount));
+    }
+
+    protected NodeSequence sortedBy( ExtractFromRow extractor ) {
+        return new SortingSequence(workspaceName(), allNodes(), extractor, bufferMgr, cache, false, true, true,
+                                   NullOrder.NULLS_LAST);
+    }
+
+    protected ExtractFromRow nodeKey() {
+        return RowExtractors.extractNodeKey(0, cache, types);
+    }
+
+    protected ExtractFromRow parentKey() {
+        return RowExtractors.extractParentNodeKey(0, cache, types);
+    }
+
+    protected Verifier joinVerifier( final ExtractFromRow leftExtractor,
+                                     final ExtractFromRow rightExtractor,
+                                     final long rowCount ) {
+        return new Verifier() {
+            private long found = 0;
+
+            @Override
+            public void verify( RowAccessor currentRow ) {
+                Object leftValue = leftExtractor.getValueInRow(currentRow);
+                Object rightValue = rightExtractor.getValueInRow(currentRow);
+                ++found;
+                if (currentRow.getNode(0) == null || currentRow.getNode(1) == null) return; // OUTER JOIN
+                assertThat(leftValue, is(rightValue));
+            }
+
+            @Override
+            public void complete() {
+                assertThat(found, is(rowCount));
+            }
+        };
+    }
+}
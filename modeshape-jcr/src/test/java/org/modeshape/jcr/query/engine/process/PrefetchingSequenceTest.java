@@ -0,0 +1,205 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine.process;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.NodeTypes;
+import org.modeshape.jcr.RepositoryIndexes;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.RepositoryCache;
+import org.modeshape.jcr.query.AbstractNodeSequenceTest;
+import org.modeshape.jcr.query.BufferManager;
+import org.modeshape.jcr.query.NodeSequence;
+import org.modeshape.jcr.query.NodeSequence.Batch;
+import org.modeshape.jcr.query.QueryContext;
+import org.modeshape.jcr.query.validate.Schemata;
+
+public class PrefetchingSequenceTest extends AbstractNodeSequenceTest {
+
+    private ForkJoinPool pool;
+    private QueryContext queryContext;
+
+    @Override
+    @Before
+    public void beforeEach() {
+        super.beforeEach();
+        pool = new ForkJoinPool(2);
+        queryContext = new QueryContext(context, mock(RepositoryCache.class), Collections.singleton(workspaceName()),
+                                        mock(Schemata.class), mock(RepositoryIndexes.class), mock(NodeTypes.class),
+                                        mock(BufferManager.class));
+    }
+
+    @Override
+    @After
+    public void afterEach() {
+        try {
+            pool.shutdownNow();
+        } finally {
+            super.afterEach();
+        }
+    }
+
+    @Test
+    public void shouldReturnAllRowsOfDelegateInOrder() {
+        List<NodeKey> expected = keysOf(allNodes(1.0f, 3));
+        NodeSequence prefetched = prefetch(allNodes(1.0f, 3))[0];
+        assertThat(prefetched.width(), is(1));
+        assertThat(keysOf(prefetched), is(expected));
+    }
+
+    @Test
+    public void shouldReadSequencesConcurrently() {
+        long count = countRows(allNodes());
+        NodeSequence[] prefetched = prefetch(allNodes(1.0f, 2), allNodes(1.0f, 5));
+        assertThat(countRows(NodeSequence.append(prefetched[0], prefetched[1])), is(2 * count));
+    }
+
+    @Test
+    public void shouldStartAllSequencesWhenFirstBatchOfAnyIsRequested() throws Exception {
+        TrackingSequence first = new TrackingSequence(allNodes(1.0f, 2));
+        TrackingSequence second = new TrackingSequence(allNodes(1.0f, 2));
+        NodeSequence[] prefetched = prefetch(first, second);
+        assertThat(first.batches, is(0));
+        assertThat(second.batches, is(0));
+        assertThat(prefetched[0].nextBatch() != null, is(true));
+        // the second sequence is read even though none of its batches has been requested ...
+        second.awaitFirstBatch();
+        assertThat(countRows(prefetched[1]), is(countRows(allNodes())));
+        second.awaitClosed();
+        prefetched[0].close();
+        first.awaitClosed();
+    }
+
+    @Test
+    public void shouldNotReadSequencesConcurrentlyWithinTransaction() {
+        RepositoryCache repositoryCache = mock(RepositoryCache.class);
+        when(repositoryCache.isInTransaction()).thenReturn(true);
+        queryContext = new QueryContext(context, repositoryCache, Collections.singleton(workspaceName()), mock(Schemata.class),
+                                        mock(RepositoryIndexes.class), mock(NodeTypes.class), mock(BufferManager.class));
+        NodeSequence first = allNodes(1.0f, 2);
+        NodeSequence second = allNodes(1.0f, 5);
+        NodeSequence[] sequences = prefetch(first, second);
+        // the sequences are read by the thread which is associated with the transaction ...
+        assertThat(sequences[0], is(sameInstance(first)));
+        assertThat(sequences[1], is(sameInstance(second)));
+    }
+
+    @Test
+    public void shouldCloseDelegateWhenClosedBeforeBeingRead() {
+        TrackingSequence delegate = new TrackingSequence(allNodes());
+        prefetch(delegate)[0].close();
+        assertThat(delegate.closed, is(true));
+        assertThat(delegate.batches, is(0));
+    }
+
+    @Test
+    public void shouldReturnNoMoreBatchesWhenQueryIsCancelled() {
+        NodeSequence prefetched = prefetch(allNodes(1.0f, 1))[0];
+        queryContext.cancel();
+        assertThat(prefetched.nextBatch() == null, is(true));
+        prefetched.close();
+    }
+
+    @Test
+    public void shouldPropagateFailureOfDelegate() {
+        NodeSequence failing = new DelegatingSequence(allNodes()) {
+            @Override
+            public Batch nextBatch() {
+                throw new IllegalStateException("expected");
+            }
+        };
+        NodeSequence prefetched = prefetch(failing)[0];
+        try {
+            prefetched.nextBatch();
+            fail("The failure of the delegate should have been propagated");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("expected"));
+        } finally {
+            prefetched.close();
+        }
+    }
+
+    protected NodeSequence[] prefetch( NodeSequence... sequences ) {
+        return PrefetchingSequence.prefetch(pool, 1, queryContext, sequences);
+    }
+
+    protected List<NodeKey> keysOf( NodeSequence sequence ) {
+        List<NodeKey> keys = new ArrayList<>();
+        try {
+            Batch batch = null;
+            while ((batch = sequence.nextBatch()) != null) {
+                while (batch.hasNext()) {
+                    batch.nextRow();
+                    keys.add(batch.getNode().getKey());
+                }
+            }
+        } finally {
+            sequence.close();
+        }
+        return keys;
+    }
+
+    protected static class TrackingSequence extends DelegatingSequence {
+        protected volatile int batches;
+        protected volatile boolean closed;
+
+        protected TrackingSequence( NodeSequence delegate ) {
+            super(delegate);
+        }
+
+        @Override
+        public Batch nextBatch() {
+            Batch batch = super.nextBatch();
+            if (batch != null) ++batches;
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            closed = true;
+        }
+
+        protected void awaitFirstBatch() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (batches == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(batches > 0, is(true));
+        }
+
+        protected void awaitClosed() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!closed && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(closed, is(true));
+        }
+    }
+}
@@ -34,6 +34,8 @@ import org.modeshape.jcr.query.model.ChildNodeJoinCondition;
 import org.modeshape.jcr.query.model.DescendantNodeJoinCondition;
 import org.modeshape.jcr.query.model.JoinCondition;
 import org.modeshape.jcr.query.model.JoinType;
+import org.modeshape.jcr.query.model.SameNode;
+import org.modeshape.jcr.query.model.SameNodeJoinCondition;
 import org.modeshape.jcr.query.plan.JoinAlgorithm;
 import org.modeshape.jcr.query.plan.PlanNode;
 import org.modeshape.jcr.query.plan.PlanNode.Property;
@@ -47,6 +49,7 @@ public class ChooseJoinAlgorithmTest extends AbstractQueryTest {
 
     private ChooseJoinAlgorithm bestRule;
     private ChooseJoinAlgorithm nestedRule;
+    private ChooseJoinAlgorithm orderedRule;
     private QueryContext context;
 
     @Before
@@ -56,6 +59,7 @@ public class ChooseJoinAlgorithmTest extends AbstractQueryTest {
                                    mock(BufferManager.class));
         bestRule = ChooseJoinAlgorithm.USE_BEST_JOIN_ALGORITHM;
         nestedRule = ChooseJoinAlgorithm.USE_ONLY_NESTED_JOIN_ALGORITHM;
+        orderedRule = ChooseJoinAlgorithm.USE_MERGE_JOIN_FOR_ORDERED_INPUTS;
     }
 
     /**
@@ -153,4 +157,114 @@ public class ChooseJoinAlgorithmTest extends AbstractQueryTest {
 
         assertChildren(join, leftDup, rightDup);
     }
+
+    @Test
+    public void shouldHaveOrderedInputsRuleSetJoinAlgorithmToMergeIfBothSidesAreSortedByJoinedNodes() {
+        PlanNode join = new PlanNode(Type.JOIN, selector("Selector1"), selector("Selector2"));
+        PlanNode s1Sort = new PlanNode(Type.SORT, join, selector("Selector1"));
+        s1Sort.setProperty(Property.SORT_ORDER_BY, Collections.singletonList(selector("Selector1")));
+        PlanNode s1Source = new PlanNode(Type.SOURCE, s1Sort, selector("Selector1"));
+        PlanNode s2Access = new PlanNode(Type.ACCESS, join, selector("Selector2"));
+        PlanNode s2Sort = new PlanNode(Type.SORT, s2Access, selector("Selector2"));
+        s2Sort.setProperty(Property.SORT_ORDER_BY, Collections.singletonList(selector("Selector2")));
+        new PlanNode(Type.SOURCE, s2Sort, selector("Selector2"));
+        // Set the join type and condition ...
+        JoinCondition joinCondition = new SameNodeJoinCondition(selector("Selector2"), selector("Selector1"));
+        join.setProperty(Property.JOIN_CONDITION, joinCondition);
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+
+        // Execute the rule ...
+        PlanNode result = orderedRule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(result, is(sameInstance(join)));
+        assertThat(join.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class), is(JoinAlgorithm.MERGE));
+        // The plan is not changed ...
+        assertChildren(join, s1Sort, s2Access);
+        assertChildren(s1Sort, s1Source);
+        assertChildren(s2Access, s2Sort);
+    }
+
+    @Test
+    public void shouldHaveOrderedInputsRuleSetJoinAlgorithmToMergeIfBothSidesHaveSingleJoinedNode() {
+        PlanNode join = new PlanNode(Type.JOIN, selector("Selector1"), selector("Selector2"));
+        PlanNode s1Select = new PlanNode(Type.SELECT, join, selector("Selector1"));
+        s1Select.setProperty(Property.SELECT_CRITERIA, new SameNode(selector("Selector1"), "/a/b"));
+        new PlanNode(Type.SOURCE, s1Select, selector("Selector1"));
+        PlanNode s2Project = new PlanNode(Type.PROJECT, join, selector("Selector2"));
+        PlanNode s2Limit = new PlanNode(Type.LIMIT, s2Project, selector("Selector2"));
+        s2Limit.setProperty(Property.LIMIT_COUNT, 1);
+        new PlanNode(Type.SOURCE, s2Limit, selector("Selector2"));
+        // Set the join type and condition ...
+        JoinCondition joinCondition = new SameNodeJoinCondition(selector("Selector1"), selector("Selector2"));
+        join.setProperty(Property.JOIN_CONDITION, joinCondition);
+        join.setProperty(Property.JOIN_TYPE, JoinType.LEFT_OUTER);
+
+        // Execute the rule ...
+        orderedRule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(join.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class), is(JoinAlgorithm.MERGE));
+    }
+
+    @Test
+    public void shouldHaveOrderedInputsRuleSetJoinAlgorithmToNestedLoopIfEitherSideIsNotOrdered() {
+        PlanNode join = new PlanNode(Type.JOIN, selector("Selector1"), selector("Selector2"));
+        PlanNode s1Sort = new PlanNode(Type.SORT, join, selector("Selector1"));
+        s1Sort.setProperty(Property.SORT_ORDER_BY, Collections.singletonList(selector("Selector1")));
+        new PlanNode(Type.SOURCE, s1Sort, selector("Selector1"));
+        PlanNode s2Source = new PlanNode(Type.SOURCE, join, selector("Selector2"));
+        // Set the join type and condition ...
+        JoinCondition joinCondition = new SameNodeJoinCondition(selector("Selector1"), selector("Selector2"));
+        join.setProperty(Property.JOIN_CONDITION, joinCondition);
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+
+        // Execute the rule ...
+        orderedRule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(join.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class), is(JoinAlgorithm.NESTED_LOOP));
+        assertChildren(join, s1Sort, s2Source);
+    }
+
+    @Test
+    public void shouldHaveOrderedInputsRuleSetJoinAlgorithmToNestedLoopIfConditionIsNotSameNode() {
+        PlanNode join = new PlanNode(Type.JOIN, selector("Parent"), selector("Child"));
+        PlanNode parentSort = new PlanNode(Type.SORT, join, selector("Parent"));
+        parentSort.setProperty(Property.SORT_ORDER_BY, Collections.singletonList(selector("Parent")));
+        new PlanNode(Type.SOURCE, parentSort, selector("Parent"));
+        PlanNode childSort = new PlanNode(Type.SORT, join, selector("Child"));
+        childSort.setProperty(Property.SORT_ORDER_BY, Collections.singletonList(selector("Child")));
+        new PlanNode(Type.SOURCE, childSort, selector("Child"));
+        // Set the join type and condition ...
+        JoinCondition joinCondition = new ChildNodeJoinCondition(selector("Parent"), selector("Child"));
+        join.setProperty(Property.JOIN_CONDITION, joinCondition);
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+
+        // Execute the rule ...
+        orderedRule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(join.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class), is(JoinAlgorithm.NESTED_LOOP));
+    }
+
+    @Test
+    public void shouldHaveOrderedInputsRuleSetJoinAlgorithmToMergeIfLeftSideIsJoinOrderedByJoinedNodes() {
+        PlanNode join = new PlanNode(Type.JOIN, selector("Selector1"), selector("Selector2"), selector("Selector3"));
+        PlanNode innerJoin = new PlanNode(Type.JOIN, join, selector("Selector1"), selector("Selector3"));
+        innerJoin.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+        innerJoin.setProperty(Property.JOIN_CONDITION, new ChildNodeJoinCondition(selector("Selector1"), selector("Selector3")));
+        PlanNode s1Select = new PlanNode(Type.SELECT, innerJoin, selector("Selector1"));
+        s1Select.setProperty(Property.SELECT_CRITERIA, new SameNode(selector("Selector1"), "/a/b"));
+        new PlanNode(Type.SOURCE, s1Select, selector("Selector1"));
+        new PlanNode(Type.SOURCE, innerJoin, selector("Selector3"));
+        PlanNode s2Sort = new PlanNode(Type.SORT, join, selector("Selector2"));
+        s2Sort.setProperty(Property.SORT_ORDER_BY, Collections.singletonList(selector("Selector2")));
+        new PlanNode(Type.SOURCE, s2Sort, selector("Selector2"));
+        // Set the join type and condition ...
+        join.setProperty(Property.JOIN_CONDITION, new SameNodeJoinCondition(selector("Selector1"), selector("Selector2")));
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+
+        // Execute the rule ...
+        orderedRule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(join.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class), is(JoinAlgorithm.MERGE));
+        assertThat(innerJoin.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class), is(JoinAlgorithm.NESTED_LOOP));
+
+        // The rows of a right outer join are not in the order of the left rows ...
+        innerJoin.setProperty(Property.JOIN_TYPE, JoinType.RIGHT_OUTER);
+        orderedRule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(join.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class), is(JoinAlgorithm.NESTED_LOOP));
+    }
 }
@@ -0,0 +1,230 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.optimize;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import java.util.Collections;
+import java.util.LinkedList;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.NodeTypes;
+import org.modeshape.jcr.RepositoryIndexes;
+import org.modeshape.jcr.api.query.qom.Operator;
+import org.modeshape.jcr.cache.RepositoryCache;
+import org.modeshape.jcr.query.AbstractQueryTest;
+import org.modeshape.jcr.query.BufferManager;
+import org.modeshape.jcr.query.QueryContext;
+import org.modeshape.jcr.query.engine.IndexPlan;
+import org.modeshape.jcr.query.model.ChildNodeJoinCondition;
+import org.modeshape.jcr.query.model.Comparison;
+import org.modeshape.jcr.query.model.Constraint;
+import org.modeshape.jcr.query.model.DescendantNodeJoinCondition;
+import org.modeshape.jcr.query.model.EquiJoinCondition;
+import org.modeshape.jcr.query.model.JoinCondition;
+import org.modeshape.jcr.query.model.JoinType;
+import org.modeshape.jcr.query.model.Literal;
+import org.modeshape.jcr.query.model.PropertyValue;
+import org.modeshape.jcr.query.model.SameNodeJoinCondition;
+import org.modeshape.jcr.query.plan.PlanNode;
+import org.modeshape.jcr.query.plan.PlanNode.Property;
+import org.modeshape.jcr.query.plan.PlanNode.Type;
+import org.modeshape.jcr.query.validate.Schemata;
+
+public class CostBasedJoinOrderTest extends AbstractQueryTest {
+
+    private CostBasedJoinOrder rule;
+    private QueryContext context;
+
+    @Before
+    public void beforeEach() {
+        context = new QueryContext(new ExecutionContext(), mock(RepositoryCache.class), Collections.singleton("workspace"),
+                                   mock(Schemata.class), mock(RepositoryIndexes.class), mock(NodeTypes.class),
+                                   mock(BufferManager.class));
+        rule = CostBasedJoinOrder.INSTANCE;
+    }
+
+    @Test
+    public void shouldNotChangeJoinWithoutEstimates() {
+        PlanNode join = innerJoin("s1", "s2");
+        PlanNode s1Source = new PlanNode(Type.SOURCE, join, selector("s1"));
+        PlanNode s2Source = new PlanNode(Type.SOURCE, join, selector("s2"));
+
+        PlanNode result = rule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(result, is(sameInstance(join)));
+        assertChildren(join, s1Source, s2Source);
+        assertThat(join.getProperty(Property.CARDINALITY_ESTIMATE), is(nullValue()));
+        assertThat(join.getProperty(Property.COST_ESTIMATE), is(nullValue()));
+    }
+
+    @Test
+    public void shouldPlaceSmallerSideOfInnerJoinOnTheRight() {
+        PlanNode join = innerJoin("s1", "s2");
+        PlanNode s1Select = new PlanNode(Type.SELECT, join, selector("s1"));
+        s1Select.setProperty(Property.SELECT_CRITERIA, equalTo("s1"));
+        new PlanNode(Type.SOURCE, s1Select, selector("s1"));
+        PlanNode s2Source = new PlanNode(Type.SOURCE, join, selector("s2"));
+
+        PlanNode result = rule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertThat(result, is(sameInstance(join)));
+        assertChildren(join, s2Source, s1Select);
+        assertSelectors(join, "s2", "s1");
+    }
+
+    @Test
+    public void shouldNotReorderOuterJoin() {
+        PlanNode join = innerJoin("s1", "s2");
+        join.setProperty(Property.JOIN_TYPE, JoinType.LEFT_OUTER);
+        PlanNode s1Select = new PlanNode(Type.SELECT, join, selector("s1"));
+        s1Select.setProperty(Property.SELECT_CRITERIA, equalTo("s1"));
+        new PlanNode(Type.SOURCE, s1Select, selector("s1"));
+        PlanNode s2Source = new PlanNode(Type.SOURCE, join, selector("s2"));
+
+        rule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertChildren(join, s1Select, s2Source);
+    }
+
+    @Test
+    public void shouldKeepAncestorOnTheLeftOfDescendantJoin() {
+        PlanNode join = new PlanNode(Type.JOIN, selector("Ancestor"), selector("Descendant"));
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+        join.setProperty(Property.JOIN_CONDITION, new DescendantNodeJoinCondition(selector("Ancestor"), selector("Descendant")));
+        PlanNode ancestorSource = new PlanNode(Type.SOURCE, join, selector("Ancestor"));
+        PlanNode descendantSelect = new PlanNode(Type.SELECT, join, selector("Descendant"));
+        descendantSelect.setProperty(Property.SELECT_CRITERIA, equalTo("Descendant"));
+        new PlanNode(Type.SOURCE, descendantSelect, selector("Descendant"));
+
+        rule.execute(context, join, new LinkedList<OptimizerRule>());
+        assertChildren(join, ancestorSource, descendantSelect);
+    }
+
+    /**
+     * The index on s3 is estimated to return just a few nodes, so this tree:
+     *
+     * <pre>
+     *            JOIN (s2=s3)
+     *           /            \
+     *     JOIN (s1=s2)     SOURCE s3
+     *      /        \
+     * SOURCE s1   SOURCE s2
+     * </pre>
+     *
+     * is changed to start with s3, which is joined first with s2 and then with s1:
+     *
+     * <pre>
+     *            JOIN (s1=s2)
+     *           /            \
+     *     SOURCE s1     JOIN (s2=s3)
+     *                    /        \
+     *               SOURCE s2   SOURCE s3
+     * </pre>
+     */
+    @Test
+    public void shouldStartJoinsWithInputHavingLowestIndexCardinality() {
+        PlanNode top = innerJoin("s2", "s3");
+        top.addSelector(selector("s1"));
+        PlanNode bottom = innerJoin("s1", "s2");
+        top.addLastChild(bottom);
+        PlanNode s1Source = new PlanNode(Type.SOURCE, bottom, selector("s1"));
+        PlanNode s2Source = new PlanNode(Type.SOURCE, bottom, selector("s2"));
+        PlanNode s3Source = new PlanNode(Type.SOURCE, top, selector("s3"));
+        IndexPlan index = new IndexPlan("smallIndex", "workspace", "provider",
+                                        Collections.<javax.jcr.query.qom.Constraint>singletonList(equalTo("s3")), null, 1, 5L,
+                                        null, null);
+        PlanNode indexNode = new PlanNode(Type.INDEX, s3Source, selector("s3"));
+        indexNode.setProperty(Property.INDEX_SPECIFICATION, index);
+
+        PlanNode result = rule.execute(context, top, new LinkedList<OptimizerRule>());
+        assertThat(result, is(sameInstance(top)));
+        assertThat(top.getChildCount(), is(2));
+        assertThat(top.getFirstChild(), is(sameInstance(s1Source)));
+        PlanNode newBottom = top.getLastChild();
+        assertChildren(newBottom, s2Source, s3Source);
+        assertThat(newBottom.getProperty(Property.JOIN_CONDITION, JoinCondition.class),
+                   is((JoinCondition)new SameNodeJoinCondition(selector("s2"), selector("s3"))));
+        assertThat(top.getProperty(Property.JOIN_CONDITION, JoinCondition.class),
+                   is((JoinCondition)new SameNodeJoinCondition(selector("s1"), selector("s2"))));
+        assertSelectors(newBottom, "s2", "s3");
+        assertSelectors(top, "s1", "s2", "s3");
+    }
+
+    @Test
+    public void shouldAnnotateJoinsWithEstimatesWhenPlanIsShown() {
+        context.getHints().showPlan = true;
+        PlanNode join = innerJoin("s1", "s2");
+        new PlanNode(Type.SOURCE, join, selector("s1"));
+        new PlanNode(Type.SOURCE, join, selector("s2"));
+
+        rule.execute(context, join, new LinkedList<OptimizerRule>());
+        long cardinality = CostBasedJoinOrder.DEFAULT_SOURCE_CARDINALITY;
+        assertThat(join.getProperty(Property.CARDINALITY_ESTIMATE, Long.class), is(cardinality));
+        // Both sources are read, the right side is buffered, and the joined rows are returned ...
+        assertThat(join.getProperty(Property.COST_ESTIMATE, Long.class), is(6 * cardinality));
+    }
+
+    @Test
+    public void shouldEstimateChildNodeJoinWithCardinalityOfChildren() {
+        context.getHints().showPlan = true;
+        PlanNode join = new PlanNode(Type.JOIN, selector("Parent"), selector("Child"));
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+        join.setProperty(Property.JOIN_CONDITION, new ChildNodeJoinCondition(selector("Parent"), selector("Child")));
+        PlanNode parentSelect = new PlanNode(Type.SELECT, join, selector("Parent"));
+        parentSelect.setProperty(Property.SELECT_CRITERIA, equalTo("Parent"));
+        new PlanNode(Type.SOURCE, parentSelect, selector("Parent"));
+        new PlanNode(Type.SOURCE, join, selector("Child"));
+
+        rule.execute(context, join, new LinkedList<OptimizerRule>());
+        // Each of the fewer parents has many children ...
+        long children = CostBasedJoinOrder.DEFAULT_SOURCE_CARDINALITY;
+        assertThat(join.getProperty(Property.CARDINALITY_ESTIMATE, Long.class), is(children));
+    }
+
+    @Test
+    public void shouldEstimateEquiJoinWithDistinctValuesOfLargerSide() {
+        context.getHints().showPlan = true;
+        PlanNode join = new PlanNode(Type.JOIN, selector("s1"), selector("s2"));
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+        join.setProperty(Property.JOIN_CONDITION, new EquiJoinCondition(selector("s1"), "id", selector("s2"), "ref"));
+        PlanNode s1Select = new PlanNode(Type.SELECT, join, selector("s1"));
+        s1Select.setProperty(Property.SELECT_CRITERIA, equalTo("s1"));
+        new PlanNode(Type.SOURCE, s1Select, selector("s1"));
+        new PlanNode(Type.SOURCE, join, selector("s2"));
+
+        rule.execute(context, join, new LinkedList<OptimizerRule>());
+        // One row of s1 matches several rows of s2, which has the most distinct values ...
+        double s1 = CostBasedJoinOrder.DEFAULT_SOURCE_CARDINALITY * 0.1d;
+        double s2 = CostBasedJoinOrder.DEFAULT_SOURCE_CARDINALITY;
+        long expected = Math.round(s1 * s2 / (CostBasedJoinOrder.DEFAULT_DISTINCT_VALUE_FRACTION * s2));
+        assertThat(join.getProperty(Property.CARDINALITY_ESTIMATE, Long.class), is(expected));
+        assertThat(expected > Math.round(s1), is(true));
+    }
+
+    protected PlanNode innerJoin( String selector1,
+                                  String selector2 ) {
+        PlanNode join = new PlanNode(Type.JOIN, selector(selector1), selector(selector2));
+        join.setProperty(Property.JOIN_TYPE, JoinType.INNER);
+        join.setProperty(Property.JOIN_CONDITION, new SameNodeJoinCondition(selector(selector1), selector(selector2)));
+        return join;
+    }
+
+    protected Constraint equalTo( String selectorName ) {
+        return new Comparison(new PropertyValue(selector(selectorName), "prop"), Operator.EQUAL_TO, new Literal("value"));
+    }
+}
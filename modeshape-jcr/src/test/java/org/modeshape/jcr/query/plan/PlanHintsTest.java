@@ -15,6 +15,9 @@
  */
 package org.modeshape.jcr.query.plan;
 
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -35,4 +38,25 @@ public class PlanHintsTest {
         this.hints.toString();
     }
 
+    @Test
+    public void shouldBeEqualToClone() {
+        hints.hasJoin = true;
+        hints.qualifyExpandedColumnNames = true;
+        hints.rowsKeptInMemory = 10;
+        PlanHints clone = hints.clone();
+        assertThat(clone, is(hints));
+        assertThat(clone.hashCode(), is(hints.hashCode()));
+        clone.qualifyExpandedColumnNames = false;
+        assertThat(clone, is(not(hints)));
+    }
+
+    @Test
+    public void shouldSetAllHints() {
+        hints.isExistsQuery = true;
+        hints.includeSystemContent = false;
+        PlanHints other = new PlanHints();
+        other.setAll(hints);
+        assertThat(other, is(hints));
+    }
+
 }
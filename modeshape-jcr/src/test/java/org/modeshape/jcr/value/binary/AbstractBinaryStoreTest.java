@@ -142,6 +142,68 @@ public abstract class AbstractBinaryStoreTest {
         assertTrue("Did not expect BinaryStore to contain the key", !getBinaryStore().hasBinary(invalidBinaryKey()));
     }
 
+    @Test
+    public void shouldReadRangeOfBinary() throws BinaryStoreException, IOException {
+        storeAndValidate(STORED_LARGE_KEY, STORED_LARGE_BINARY);
+        BinaryStore binaryStore = getBinaryStore();
+        int position = LARGE_BINARY_SIZE / 3;
+        try (InputStream stream = binaryStore.getInputStream(STORED_LARGE_KEY, position, 100)) {
+            assertArrayEquals(Arrays.copyOfRange(STORED_LARGE_BINARY, position, position + 100), IoUtil.readBytes(stream));
+        }
+        // a range which goes past the end of the value ends with the value ...
+        try (InputStream stream = binaryStore.getInputStream(STORED_LARGE_KEY, LARGE_BINARY_SIZE - 10, 100)) {
+            assertArrayEquals(Arrays.copyOfRange(STORED_LARGE_BINARY, LARGE_BINARY_SIZE - 10, LARGE_BINARY_SIZE),
+                              IoUtil.readBytes(stream));
+        }
+        try (InputStream stream = binaryStore.getInputStream(STORED_LARGE_KEY, LARGE_BINARY_SIZE + 10, 100)) {
+            assertEquals(0, IoUtil.readBytes(stream).length);
+        }
+    }
+
+    @Test
+    public void shouldReadEmptyRangeOfBinary() throws BinaryStoreException, IOException {
+        storeAndValidate(STORED_LARGE_KEY, STORED_LARGE_BINARY);
+        BinaryStore binaryStore = getBinaryStore();
+        // a range which starts at the end of the value, or which has no bytes, is empty ...
+        try (InputStream stream = binaryStore.getInputStream(STORED_LARGE_KEY, LARGE_BINARY_SIZE, 100)) {
+            assertEquals(0, IoUtil.readBytes(stream).length);
+        }
+        try (InputStream stream = binaryStore.getInputStream(STORED_LARGE_KEY, LARGE_BINARY_SIZE / 2, 0)) {
+            assertEquals(0, IoUtil.readBytes(stream).length);
+        }
+        try (InputStream stream = binaryStore.getInputStream(STORED_LARGE_KEY, 0, 0)) {
+            assertEquals(0, IoUtil.readBytes(stream).length);
+        }
+    }
+
+    @Test(expected = BinaryStoreException.class)
+    public void shouldFailWhenReadingEmptyRangeOfInvalidBinary() throws BinaryStoreException {
+        getBinaryStore().getInputStream(invalidBinaryKey(), LARGE_BINARY_SIZE, 0);
+    }
+
+    @Test
+    public void shouldReadBinaryFromPosition() throws BinaryStoreException, IOException, RepositoryException {
+        BinaryValue value = storeAndValidate(STORED_LARGE_KEY, STORED_LARGE_BINARY);
+        BinaryStore binaryStore = getBinaryStore();
+        byte[] buffer = new byte[110];
+        int position = LARGE_BINARY_SIZE / 2;
+        assertEquals(100, binaryStore.read(STORED_LARGE_KEY, position, buffer, 10, 100));
+        assertArrayEquals(Arrays.copyOfRange(STORED_LARGE_BINARY, position, position + 100), Arrays.copyOfRange(buffer, 10, 110));
+        assertEquals(20, binaryStore.read(STORED_LARGE_KEY, LARGE_BINARY_SIZE - 20, buffer, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(STORED_LARGE_BINARY, LARGE_BINARY_SIZE - 20, LARGE_BINARY_SIZE),
+                          Arrays.copyOfRange(buffer, 0, 20));
+        assertEquals(-1, binaryStore.read(STORED_LARGE_KEY, LARGE_BINARY_SIZE, buffer, 0, 100));
+
+        // the value reads from the position through the store ...
+        assertEquals(buffer.length, value.read(buffer, position));
+        assertArrayEquals(Arrays.copyOfRange(STORED_LARGE_BINARY, position, position + buffer.length), buffer);
+    }
+
+    @Test(expected = BinaryStoreException.class)
+    public void shouldFailWhenReadingRangeOfInvalidBinary() throws BinaryStoreException {
+        getBinaryStore().read(invalidBinaryKey(), 0L, new byte[10], 0, 10);
+    }
+
     private BinaryValue storeAndValidate( BinaryKey key,
                                           byte[] data ) throws BinaryStoreException, IOException {
         BinaryValue res = getBinaryStore().storeValue(new ByteArrayInputStream(data), false);
@@ -0,0 +1,218 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.value.binary;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.common.util.FileUtil;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.schematic.codec.Codecs;
+
+public class ChunkedBinaryStoreTest extends AbstractBinaryStoreTest {
+
+    private static final int MIN_BINARY_SIZE = 20;
+    private static final int AVERAGE_CHUNK_SIZE = 1024;
+
+    private File directory;
+    private ChunkedBinaryStore store;
+
+    @Before
+    public void beforeEach() {
+        directory = new File("target/cbs/");
+        FileUtil.delete(directory);
+        directory.mkdirs();
+        store = newStore();
+    }
+
+    @After
+    public void afterEach() {
+        FileUtil.delete(directory);
+    }
+
+    private ChunkedBinaryStore newStore() {
+        ChunkedBinaryStore store = new ChunkedBinaryStore(directory, new File(directory, FileSystemBinaryStore.TRASH_DIRECTORY_NAME),
+                                                          AVERAGE_CHUNK_SIZE, Codecs.GZIP, 4);
+        store.setMinimumBinarySizeInBytes(MIN_BINARY_SIZE);
+        store.setMimeTypeDetector(DEFAULT_DETECTOR);
+        return store;
+    }
+
+    @Override
+    protected BinaryStore getBinaryStore() {
+        return store;
+    }
+
+    @Override
+    @Test( expected = BinaryStoreException.class )
+    public void shouldStoreZeroLengthBinary() throws BinaryStoreException, IOException {
+        // like the file system binary store, the chunked store does not store a 0 byte size content
+        super.shouldStoreZeroLengthBinary();
+    }
+
+    @Test
+    public void shouldShareChunksBetweenVersionsOfLargeValue() throws Exception {
+        byte[] content = randomContent(1 << 20);
+        assertArrayEquals(content, storeAndRead(content));
+        int chunks = countChunks();
+        assertTrue(chunks > 100);
+
+        // insert a few bytes in the middle of the value, which only changes the chunks around them ...
+        ByteArrayOutputStream modified = new ByteArrayOutputStream();
+        modified.write(content, 0, content.length / 2);
+        modified.write(randomContent(100));
+        modified.write(content, content.length / 2, content.length / 2);
+        byte[] newVersion = modified.toByteArray();
+        assertArrayEquals(newVersion, storeAndRead(newVersion));
+        assertTrue("Too many new chunks: " + (countChunks() - chunks), countChunks() - chunks <= 4);
+
+        // the same value is not stored again ...
+        int chunksOfBothVersions = countChunks();
+        assertArrayEquals(content, storeAndRead(content));
+        assertThat(countChunks(), is(chunksOfBothVersions));
+    }
+
+    @Test
+    public void shouldReadRangesAcrossChunks() throws Exception {
+        byte[] content = randomContent(100 * AVERAGE_CHUNK_SIZE);
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(content), false);
+        Random random = new Random();
+        for (int i = 0; i != 50; ++i) {
+            int position = random.nextInt(content.length);
+            int length = random.nextInt(5 * AVERAGE_CHUNK_SIZE);
+            try (InputStream stream = store.getInputStream(value.getKey(), position, length)) {
+                byte[] expected = Arrays.copyOfRange(content, position, Math.min(content.length, position + length));
+                assertArrayEquals(expected, IoUtil.readBytes(stream));
+            }
+        }
+    }
+
+    @Test
+    public void shouldCompressChunks() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 100 * AVERAGE_CHUNK_SIZE) {
+            text.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit ").append(text.length()).append('\n');
+        }
+        byte[] content = text.toString().getBytes("UTF-8");
+        assertArrayEquals(content, storeAndRead(content));
+        long stored = 0L;
+        for (File chunk : chunkFiles()) {
+            stored += chunk.length();
+        }
+        assertTrue("Chunks use " + stored + " bytes", stored < content.length / 2);
+    }
+
+    @Test
+    public void shouldRemoveChunksWhichAreNoLongerReferenced() throws Exception {
+        byte[] shared = randomContent(50 * AVERAGE_CHUNK_SIZE);
+        byte[] first = concat(randomContent(50 * AVERAGE_CHUNK_SIZE), shared);
+        byte[] second = concat(shared, randomContent(50 * AVERAGE_CHUNK_SIZE));
+        BinaryValue firstValue = store.storeValue(new ByteArrayInputStream(first), false);
+        store.storeValue(new ByteArrayInputStream(second), false);
+        int chunks = countChunks();
+
+        store.markAsUnused(Collections.singleton(firstValue.getKey()));
+        Thread.sleep(1100L); // Sleep more than a second, since modified times may only be accurate to nearest second ...
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+
+        assertThat(store.hasBinary(firstValue.getKey()), is(false));
+        int remaining = countChunks();
+        assertTrue(remaining < chunks);
+        assertTrue(remaining > chunks / 2);
+        assertArrayEquals(second, storeAndRead(second));
+    }
+
+    @Test
+    public void shouldReadValuesStoredByFileSystemStore() throws Exception {
+        FileSystemBinaryStore fileStore = new FileSystemBinaryStore(directory);
+        fileStore.setMinimumBinarySizeInBytes(MIN_BINARY_SIZE);
+        byte[] content = randomContent(10 * AVERAGE_CHUNK_SIZE);
+        BinaryValue value = fileStore.storeValue(new ByteArrayInputStream(content), false);
+        assertThat(value, is(instanceOf(StoredBinaryValue.class)));
+        try (InputStream stream = store.getInputStream(value.getKey())) {
+            assertArrayEquals(content, IoUtil.readBytes(stream));
+        }
+        byte[] buffer = new byte[100];
+        assertThat(store.read(value.getKey(), 1000L, buffer, 0, 100), is(100));
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 1100), buffer);
+        assertThat(countChunks(), is(0));
+    }
+
+    private byte[] storeAndRead( byte[] content ) throws Exception {
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(content), false);
+        assertThat(value, is(instanceOf(StoredBinaryValue.class)));
+        assertThat(value.getSize(), is((long)content.length));
+        // read it with another instance, which only has the files ...
+        try (InputStream stream = newStore().getInputStream(value.getKey())) {
+            return IoUtil.readBytes(stream);
+        }
+    }
+
+    private int countChunks() {
+        return chunkFiles().size();
+    }
+
+    private List<File> chunkFiles() {
+        List<File> files = new ArrayList<>();
+        collectFiles(store.getChunkDirectory(), files);
+        return files;
+    }
+
+    private void collectFiles( File directory,
+                               List<File> files ) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectFiles(child, files);
+            } else {
+                files.add(child);
+            }
+        }
+    }
+
+    private static byte[] randomContent( int length ) {
+        byte[] content = new byte[length];
+        new Random().nextBytes(content);
+        return content;
+    }
+
+    private static byte[] concat( byte[] first,
+                                  byte[] second ) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -18,12 +18,14 @@ package org.modeshape.jcr.value.binary;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -59,6 +61,7 @@ import org.modeshape.common.util.SecureHash;
 import org.modeshape.common.util.SecureHash.Algorithm;
 import org.modeshape.jcr.api.Binary;
 import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -217,6 +220,28 @@ public class FileSystemBinaryStoreTest extends AbstractBinaryStoreTest {
         storeAndCheckResource("docs/postgresql-8.4.1-US.pdf", "3d4d11208cd130d92075e1111423667c76e61819", "17MB file", 17714435L);
     }
 
+    @Test
+    public void shouldTransferRangeOfBinaryValueToChannel() throws Exception {
+        byte[] content = new byte[100000];
+        new Random(7).nextBytes(content);
+        BinaryValue stored = store.storeValue(new ByteArrayInputStream(content), false);
+        assertThat(stored, instanceOf(StoredBinaryValue.class));
+        BinaryValue inMemory = new InMemoryBinaryValue(store, content);
+        for (BinaryValue value : Arrays.asList(stored, inMemory)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertThat(value.transferTo(1000L, 5000L, Channels.newChannel(output)), is(5000L));
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 6000), output.toByteArray());
+
+            // the range is cut at the end of the content ...
+            output.reset();
+            assertThat(value.transferTo(99000L, 5000L, Channels.newChannel(output)), is(1000L));
+            assertArrayEquals(Arrays.copyOfRange(content, 99000, 100000), output.toByteArray());
+
+            output.reset();
+            assertThat(value.transferTo(200000L, 10L, Channels.newChannel(output)), is(0L));
+        }
+    }
+
     @Test
     public void shouldCreateFileLock() throws IOException {
         File tmpFile = File.createTempFile("foo", "bar");
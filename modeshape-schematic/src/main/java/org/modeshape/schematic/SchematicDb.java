@@ -15,8 +15,10 @@
  */
 package org.modeshape.schematic;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import org.modeshape.schematic.annotation.RequiresTransaction;
 import org.modeshape.schematic.document.Document;
 import org.modeshape.schematic.document.EditableDocument;
@@ -52,6 +54,49 @@ public interface SchematicDb extends TransactionListener, Lifecycle {
      * @return a {@link List} instance, never {@code null}
      */
     List<String> keys();
+
+    /**
+     * Iterates over all the keys persisted in the DB, passing them to the given consumer in batches of at most 
+     * {@code batchSize} keys. Implementations should not load all the keys into memory at once, so that this can be used on 
+     * very large databases.
+     * <p>
+     * Unlike {@link #keys()}, this method should <b>not take into account</b> the transient transactional context (i.e. any 
+     * local but not yet committed changes). Each batch passed to the consumer is a new list, owned by the consumer.
+     * </p>
+     * <p>
+     * The default implementation simply splits the result of {@link #keys()} into batches.
+     * </p>
+     *
+     * @param batchSize the maximum number of keys in a batch; must be positive
+     * @param consumer a {@link Consumer} which is called for each batch of keys; never {@code null}
+     */
+    default void keysInBatches( int batchSize, Consumer<List<String>> consumer ) {
+        List<String> keys = keys();
+        for (int startIdx = 0; startIdx < keys.size(); startIdx += batchSize) {
+            int endIdx = Math.min(startIdx + batchSize, keys.size());
+            consumer.accept(new ArrayList<>(keys.subList(startIdx, endIdx)));
+        }
+    }
+
+    /**
+     * Iterates over all the entries persisted in the DB, passing them to the given consumer in batches of at most 
+     * {@code batchSize} entries. Implementations should not load all the entries (or keys) into memory at once, so that this 
+     * can be used on very large databases.
+     * <p>
+     * This method should <b>not take into account</b> the transient transactional context (i.e. any local but not yet 
+     * committed changes).
+     * </p>
+     * <p>
+     * The default implementation {@link #load(Collection) loads} each batch of keys returned by 
+     * {@link #keysInBatches(int, Consumer)}.
+     * </p>
+     *
+     * @param batchSize the maximum number of entries in a batch; must be positive
+     * @param consumer a {@link Consumer} which is called for each batch of entries; never {@code null}
+     */
+    default void entriesInBatches( int batchSize, Consumer<List<SchematicEntry>> consumer ) {
+        keysInBatches(batchSize, keys -> consumer.accept(load(keys)));
+    }
     
     /**
      * Get the document with the supplied key. This will represent the full {@link SchematicEntry} document if one exists. 
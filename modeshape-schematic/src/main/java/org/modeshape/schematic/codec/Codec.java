@@ -0,0 +1,66 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.codec;
+
+/**
+ * Service interface for the codecs which {@link org.modeshape.schematic.SchematicDb} implementations can use to transform
+ * (typically compress) the binary (BSON) representation of documents before storing them.
+ * <p>
+ * Besides the built-in codecs exposed by {@link Codecs}, custom codecs can be made available using the standard
+ * {@link java.util.ServiceLoader} mechanism. Each codec must have a unique {@link #id()}, because the id is stored alongside
+ * the encoded data and is used to find the codec when the data is decoded. The ids {@code 0} to {@code 63} are reserved for
+ * the built-in codecs, so custom codecs must use ids from {@code 64} to {@code 127}.
+ * </p>
+ * <p>
+ * Implementations are expected to be thread-safe.
+ * </p>
+ *
+ * @since 5.1
+ */
+public interface Codec {
+
+    /**
+     * Returns the unique identifier of this codec, which is stored in the header of the encoded data.
+     *
+     * @return the id of the codec
+     */
+    byte id();
+
+    /**
+     * Returns the name of this codec, which is used to select it via configuration.
+     *
+     * @return the name of the codec; never {@code null}
+     */
+    String name();
+
+    /**
+     * Encodes the given data.
+     *
+     * @param data the data to encode; never {@code null}
+     * @return the encoded data; never {@code null}
+     */
+    byte[] encode( byte[] data );
+
+    /**
+     * Decodes a region of a byte array which holds data previously produced by {@link #encode(byte[])}.
+     *
+     * @param data the array containing the encoded data; never {@code null}
+     * @param offset the offset in the array where the encoded data starts
+     * @param length the length of the encoded data
+     * @return the decoded data; never {@code null}
+     */
+    byte[] decode( byte[] data, int offset, int length );
+}
@@ -0,0 +1,313 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.function.Supplier;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.codec.GzipCodec;
+import org.modeshape.schematic.internal.codec.IdentityCodec;
+import org.modeshape.schematic.internal.codec.Lz4Codec;
+import org.modeshape.schematic.internal.codec.ZstdCodec;
+import org.modeshape.schematic.internal.codec.ZstdDictionaryCodec;
+
+/**
+ * Factory and utility methods for {@link Codec codecs}.
+ * <p>
+ * Data written via {@link #encode(Codec, byte[])} is prefixed by a small, self-describing header which records the id of the
+ * codec used, so it can always be decoded regardless of the codec which is currently configured. The header starts and ends
+ * with the byte {@code 0xFE}, which means it can never be confused with either a GZIP stream (which starts with {@code 0x1F})
+ * or a raw BSON document (whose 4-byte little-endian length would be negative). This allows stores to keep reading data written
+ * before codecs were introduced (see {@link #isEncoded(byte[])}).
+ * </p>
+ *
+ * @since 5.1
+ */
+public final class Codecs {
+
+    /**
+     * The name of the codec which does not transform the data in any way.
+     */
+    public static final String NONE = "none";
+
+    /**
+     * The name of the codec which uses GZIP compression.
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The name of the codec which uses LZ4 compression; requires the {@code org.lz4:lz4-java} library.
+     */
+    public static final String LZ4 = "lz4";
+
+    /**
+     * The name of the codec which uses Zstandard compression; requires the {@code com.github.luben:zstd-jni} library.
+     */
+    public static final String ZSTD = "zstd";
+
+    /**
+     * The name of the codec which uses Zstandard compression with a pre-trained dictionary; requires the
+     * {@code com.github.luben:zstd-jni} library.
+     *
+     * @see #zstdWithDictionary(byte[])
+     */
+    public static final String ZSTD_DICTIONARY = "zstd-dictionary";
+
+    /**
+     * The length, in bytes, of the header which precedes the encoded data.
+     */
+    public static final int HEADER_LENGTH = 4;
+
+    private static final byte MARKER = (byte) 0xFE;
+    private static final byte MAGIC = 'M';
+    private static final byte FIRST_CUSTOM_ID = 64;
+
+    private static final String LZ4_LIBRARY = "org.lz4:lz4-java";
+    private static final String LZ4_LIBRARY_CLASS = "net.jpountz.lz4.LZ4Factory";
+    private static final String ZSTD_LIBRARY = "com.github.luben:zstd-jni";
+    private static final String ZSTD_LIBRARY_CLASS = "com.github.luben.zstd.Zstd";
+
+    private Codecs() {
+    }
+
+    /**
+     * Returns the codec with the given name. This can be either one of the built-in codecs, or a custom codec which has been
+     * registered via the {@link ServiceLoader} mechanism. The {@link #ZSTD_DICTIONARY} codec requires a dictionary, so it must be
+     * obtained via {@link #zstdWithDictionary(byte[])} instead.
+     *
+     * @param name the name of the codec; may not be null
+     * @return the codec; never {@code null}
+     * @throws IllegalArgumentException if there is no codec with the given name
+     * @throws IllegalStateException if the library required by the codec is not available
+     */
+    public static Codec forName( String name ) {
+        switch (name.toLowerCase()) {
+            case NONE: {
+                return IdentityCodec.INSTANCE;
+            }
+            case GZIP: {
+                return GzipCodec.INSTANCE;
+            }
+            case LZ4: {
+                return requireLibrary(LZ4, LZ4_LIBRARY, LZ4_LIBRARY_CLASS, () -> Lz4Codec.INSTANCE);
+            }
+            case ZSTD: {
+                return requireLibrary(ZSTD, ZSTD_LIBRARY, ZSTD_LIBRARY_CLASS, () -> ZstdCodec.INSTANCE);
+            }
+            case ZSTD_DICTIONARY: {
+                throw new IllegalArgumentException("The '" + ZSTD_DICTIONARY + "' codec requires a dictionary");
+            }
+            default: {
+                return CustomCodecs.CODECS.values()
+                                          .stream()
+                                          .filter(codec -> codec.name().equalsIgnoreCase(name))
+                                          .findFirst()
+                                          .orElseThrow(() -> new IllegalArgumentException("Unknown codec: " + name));
+            }
+        }
+    }
+
+    /**
+     * Returns the codec with the given id. This can be either one of the built-in codecs, or a custom codec which has been
+     * registered via the {@link ServiceLoader} mechanism.
+     *
+     * @param id the id of a codec
+     * @return the codec; never {@code null}
+     * @throws IllegalArgumentException if there is no codec with the given id or if the codec requires a dictionary
+     * @throws IllegalStateException if the library required by the codec is not available
+     */
+    public static Codec forId( byte id ) {
+        switch (id) {
+            case IdentityCodec.ID: {
+                return forName(NONE);
+            }
+            case GzipCodec.ID: {
+                return forName(GZIP);
+            }
+            case Lz4Codec.ID: {
+                return forName(LZ4);
+            }
+            case ZstdCodec.ID: {
+                return forName(ZSTD);
+            }
+            case ZstdDictionaryCodec.ID: {
+                return forName(ZSTD_DICTIONARY);
+            }
+            default: {
+                Codec codec = CustomCodecs.CODECS.get(id);
+                if (codec == null) {
+                    throw new IllegalArgumentException("Unknown codec id: " + id);
+                }
+                return codec;
+            }
+        }
+    }
+
+    /**
+     * Returns a new Zstandard codec which uses the given dictionary and the default compression level.
+     *
+     * @param dictionary the content of the dictionary, typically obtained via {@link #trainZstdDictionary(Iterable, int)}; may
+     * not be null
+     * @return the codec; never {@code null}
+     * @throws IllegalStateException if the Zstandard library is not available
+     */
+    public static Codec zstdWithDictionary( byte[] dictionary ) {
+        return requireLibrary(ZSTD_DICTIONARY, ZSTD_LIBRARY, ZSTD_LIBRARY_CLASS,
+                              () -> new ZstdDictionaryCodec(dictionary, ZstdCodec.DEFAULT_LEVEL));
+    }
+
+    /**
+     * Trains a Zstandard dictionary from a number of samples. The samples should be representative of the data which will be
+     * compressed with the dictionary, for example the BSON representation of a few thousand documents from a repository.
+     *
+     * @param samples the samples; may not be null
+     * @param dictionarySize the maximum size of the dictionary, in bytes; typically 16 to 128 KB
+     * @return the content of the dictionary; never {@code null}
+     * @throws IllegalStateException if the Zstandard library is not available
+     */
+    public static byte[] trainZstdDictionary( Iterable<byte[]> samples, int dictionarySize ) {
+        return requireLibrary(ZSTD_DICTIONARY, ZSTD_LIBRARY, ZSTD_LIBRARY_CLASS,
+                              () -> ZstdDictionaryCodec.train(samples, dictionarySize));
+    }
+
+    /**
+     * Encodes some data with the given codec and prefixes the result with a header which identifies the codec.
+     *
+     * @param codec the codec; may not be null
+     * @param data the data; may not be null
+     * @return the header followed by the encoded data; never {@code null}
+     */
+    public static byte[] encode( Codec codec, byte[] data ) {
+        byte[] encoded = codec.encode(data);
+        byte[] result = new byte[HEADER_LENGTH + encoded.length];
+        result[0] = MARKER;
+        result[1] = MAGIC;
+        result[2] = codec.id();
+        result[3] = MARKER;
+        System.arraycopy(encoded, 0, result, HEADER_LENGTH, encoded.length);
+        return result;
+    }
+
+    /**
+     * Checks whether the given data starts with the header written by {@link #encode(Codec, byte[])}.
+     *
+     * @param data the data; may not be null
+     * @return {@code true} if the data has been encoded by a codec, {@code false} otherwise
+     */
+    public static boolean isEncoded( byte[] data ) {
+        return data.length >= HEADER_LENGTH && data[0] == MARKER && data[1] == MAGIC && data[3] == MARKER;
+    }
+
+    /**
+     * Decodes data previously written by {@link #encode(Codec, byte[])}. The codec recorded in the header is used, unless it
+     * has the same id as the given codec in which case the latter is used. This is how codecs which cannot be obtained by
+     * id (e.g. {@link #ZSTD_DICTIONARY}) are provided.
+     *
+     * @param data the data, including the header; may not be null
+     * @param codec the codec which is currently configured; may be null
+     * @return the decoded data; never {@code null}
+     * @throws IllegalArgumentException if the data does not start with a valid header
+     */
+    public static byte[] decode( byte[] data, Codec codec ) {
+        if (!isEncoded(data)) {
+            throw new IllegalArgumentException("The data has not been encoded by a codec");
+        }
+        byte id = data[2];
+        Codec actualCodec = codec != null && codec.id() == id ? codec : forId(id);
+        return actualCodec.decode(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+    }
+
+    /**
+     * Writes a document as BSON and {@link #encode(Codec, byte[]) encodes} it with the given codec.
+     *
+     * @param document the document; may not be null
+     * @param codec the codec; may not be null
+     * @return the encoded document, including the header; never {@code null}
+     * @throws IOException if the document cannot be written
+     */
+    public static byte[] writeDocument( Document document, Codec codec ) throws IOException {
+        return encode(codec, Bson.write(document));
+    }
+
+    /**
+     * Reads a document previously written by {@link #writeDocument(Document, Codec)}.
+     *
+     * @param data the encoded document, including the header; may not be null
+     * @param codec the codec which is currently configured; may be null
+     * @return the document; never {@code null}
+     * @throws IOException if the document cannot be read
+     * @see #decode(byte[], Codec)
+     */
+    public static Document readDocument( byte[] data, Codec codec ) throws IOException {
+        return readDocument(data, codec, false);
+    }
+
+    /**
+     * Reads a document previously written by {@link #writeDocument(Document, Codec)}, optionally as a read-only view which is
+     * decoded lazily.
+     *
+     * @param data the encoded document, including the header; may not be null
+     * @param codec the codec which is currently configured; may be null
+     * @param lazily {@code true} if the document should be a {@link Bson#read(ByteBuffer) read-only view} over the decoded
+     * data, {@code false} if it should be fully decoded
+     * @return the document; never {@code null}
+     * @throws IOException if the document cannot be read
+     * @see #decode(byte[], Codec)
+     */
+    public static Document readDocument( byte[] data, Codec codec, boolean lazily ) throws IOException {
+        byte[] bson = decode(data, codec);
+        return lazily ? Bson.read(ByteBuffer.wrap(bson)) : Bson.read(new ByteArrayInputStream(bson));
+    }
+
+    private static <T> T requireLibrary( String codecName, String library, String libraryClass, Supplier<T> supplier ) {
+        try {
+            // initialize the entry point of the library (which loads its native code, if any) so that a missing library is
+            // reported here rather than the first time some data is encoded or decoded...
+            Class.forName(libraryClass, true, Codecs.class.getClassLoader());
+            return supplier.get();
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IllegalStateException("The '" + codecName + "' codec requires the '" + library + "' library, which is " +
+                                            "not available", e);
+        }
+    }
+
+    /**
+     * Lazily loads the custom codecs registered via the {@link ServiceLoader} mechanism.
+     */
+    private static final class CustomCodecs {
+        private static final Map<Byte, Codec> CODECS;
+
+        static {
+            Map<Byte, Codec> codecs = new HashMap<>();
+            for (Codec codec : ServiceLoader.load(Codec.class, Codecs.class.getClassLoader())) {
+                if (codec.id() < FIRST_CUSTOM_ID) {
+                    throw new IllegalStateException("The id of the codec '" + codec.name() + "' is reserved: " + codec.id());
+                }
+                if (codecs.putIfAbsent(codec.id(), codec) != null) {
+                    throw new IllegalStateException("Multiple codecs with the same id: " + codec.id());
+                }
+            }
+            CODECS = Collections.unmodifiableMap(codecs);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -201,6 +202,19 @@ public class Bson {
         return SHARED_READER.read(input);
     }
 
+    /**
+     * Create a read-only {@link Document} view over the binary BSON representation held in the supplied buffer, starting at its
+     * current position. The fields are decoded lazily, directly from the buffer, so the content of the buffer must not be
+     * changed while the document is in use.
+     * 
+     * @param buffer the buffer; may not be null
+     * @return the read-only {@link Document} view
+     * @throws IOException if the buffer does not contain a complete BSON document
+     */
+    public static Document read( ByteBuffer buffer ) throws IOException {
+        return SHARED_READER.read(buffer);
+    }
+
     /**
      * Get the {@link Type} constant that describes the type of value for the given field name.
      * 
@@ -0,0 +1,78 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.modeshape.schematic.annotation.Immutable;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+
+/**
+ * {@link Codec} implementation which uses the JDK's GZIP streams. This produces the same data as the original compression
+ * of the relational persistence provider.
+ *
+ * @since 5.1
+ */
+@Immutable
+public final class GzipCodec implements Codec {
+
+    public static final byte ID = 1;
+    public static final GzipCodec INSTANCE = new GzipCodec();
+
+    private GzipCodec() {
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return Codecs.GZIP;
+    }
+
+    @Override
+    public byte[] encode( byte[] data ) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public byte[] decode( byte[] data, int offset, int length ) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length * 4);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data, offset, length))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.codec;
+
+import org.modeshape.schematic.annotation.Immutable;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+
+/**
+ * {@link Codec} implementation which leaves the data unchanged.
+ *
+ * @since 5.1
+ */
+@Immutable
+public final class IdentityCodec implements Codec {
+
+    public static final byte ID = 0;
+    public static final IdentityCodec INSTANCE = new IdentityCodec();
+
+    private IdentityCodec() {
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return Codecs.NONE;
+    }
+
+    @Override
+    public byte[] encode( byte[] data ) {
+        return data;
+    }
+
+    @Override
+    public byte[] decode( byte[] data, int offset, int length ) {
+        if (offset == 0 && length == data.length) {
+            return data;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(data, offset, result, 0, length);
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.modeshape.schematic.annotation.Immutable;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+
+/**
+ * {@link Codec} implementation which uses the LZ4 block format, trading some compression ratio for much faster compression 
+ * and decompression than GZIP. The encoded data is the length of the original data (4 bytes, big-endian) followed by the LZ4 
+ * compressed block.
+ * <p>
+ * This codec requires the {@code org.lz4:lz4-java} library; the fastest available implementation (JNI or pure Java) is used.
+ * </p>
+ *
+ * @since 5.1
+ */
+@Immutable
+public final class Lz4Codec implements Codec {
+
+    public static final byte ID = 2;
+    public static final Lz4Codec INSTANCE = new Lz4Codec();
+
+    private static final int LENGTH_PREFIX = 4;
+
+    private final LZ4Compressor compressor;
+    private final LZ4SafeDecompressor decompressor;
+
+    private Lz4Codec() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return Codecs.LZ4;
+    }
+
+    @Override
+    public byte[] encode( byte[] data ) {
+        byte[] result = new byte[LENGTH_PREFIX + compressor.maxCompressedLength(data.length)];
+        writeInt(data.length, result);
+        int compressedLength = compressor.compress(data, 0, data.length, result, LENGTH_PREFIX);
+        return trim(result, LENGTH_PREFIX + compressedLength);
+    }
+
+    @Override
+    public byte[] decode( byte[] data, int offset, int length ) {
+        byte[] result = new byte[readInt(data, offset)];
+        decompressor.decompress(data, offset + LENGTH_PREFIX, length - LENGTH_PREFIX, result, 0);
+        return result;
+    }
+
+    private static void writeInt( int value, byte[] dest ) {
+        dest[0] = (byte) (value >>> 24);
+        dest[1] = (byte) (value >>> 16);
+        dest[2] = (byte) (value >>> 8);
+        dest[3] = (byte) value;
+    }
+
+    private static int readInt( byte[] src, int offset ) {
+        return ((src[offset] & 0xFF) << 24) | ((src[offset + 1] & 0xFF) << 16) | ((src[offset + 2] & 0xFF) << 8) |
+               (src[offset + 3] & 0xFF);
+    }
+
+    private static byte[] trim( byte[] data, int length ) {
+        if (data.length == length) {
+            return data;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(data, 0, result, 0, length);
+        return result;
+    }
+}
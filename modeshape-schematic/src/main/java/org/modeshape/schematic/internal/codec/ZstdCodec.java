@@ -0,0 +1,80 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.codec;
+
+import com.github.luben.zstd.Zstd;
+import org.modeshape.schematic.annotation.Immutable;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+
+/**
+ * {@link Codec} implementation which uses the Zstandard format, which typically compresses better than GZIP while being 
+ * considerably faster. Each encoded value is a complete Zstandard frame, which records the size of the original data.
+ * <p>
+ * This codec requires the {@code com.github.luben:zstd-jni} library.
+ * </p>
+ *
+ * @since 5.1
+ */
+@Immutable
+public final class ZstdCodec implements Codec {
+
+    public static final byte ID = 3;
+    public static final int DEFAULT_LEVEL = 3;
+    public static final ZstdCodec INSTANCE = new ZstdCodec(DEFAULT_LEVEL);
+
+    private final int level;
+
+    public ZstdCodec( int level ) {
+        this.level = level;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return Codecs.ZSTD;
+    }
+
+    @Override
+    public byte[] encode( byte[] data ) {
+        return Zstd.compress(data, level);
+    }
+
+    @Override
+    public byte[] decode( byte[] data, int offset, int length ) {
+        byte[] result = new byte[contentSize(data, offset, length)];
+        checkResult(Zstd.decompressByteArray(result, 0, result.length, data, offset, length));
+        return result;
+    }
+
+    static int contentSize( byte[] data, int offset, int length ) {
+        long size = Zstd.decompressedSize(data, offset, length);
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The data is not a Zstandard frame with a known content size");
+        }
+        return (int) size;
+    }
+
+    static void checkResult( long result ) {
+        if (Zstd.isError(result)) {
+            throw new IllegalArgumentException("Cannot decode Zstandard frame: " + Zstd.getErrorName(result));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.codec;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import org.modeshape.schematic.annotation.Immutable;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+
+/**
+ * {@link Codec} implementation which uses the Zstandard format together with a pre-trained dictionary. Repository documents 
+ * are usually small and share most of their structure (field names, node types, namespaces), so a dictionary trained on a 
+ * sample of them allows each document to be compressed well on its own.
+ * <p>
+ * Zstandard frames record the id of the dictionary they were compressed with, so data compressed with a different dictionary
+ * will fail to decode instead of being silently corrupted. This means that a dictionary must be kept for as long as there is
+ * data which was compressed with it.
+ * </p>
+ * <p>
+ * This codec requires the {@code com.github.luben:zstd-jni} library.
+ * </p>
+ *
+ * @since 5.1
+ */
+@Immutable
+public final class ZstdDictionaryCodec implements Codec {
+
+    public static final byte ID = 4;
+
+    private final ZstdDictCompress compressDictionary;
+    private final ZstdDictDecompress decompressDictionary;
+
+    public ZstdDictionaryCodec( byte[] dictionary, int level ) {
+        this.compressDictionary = new ZstdDictCompress(dictionary, level);
+        this.decompressDictionary = new ZstdDictDecompress(dictionary);
+    }
+
+    /**
+     * Trains a new dictionary from a number of samples.
+     *
+     * @param samples the samples, typically the BSON representation of a number of documents; may not be null
+     * @param dictionarySize the maximum size of the dictionary, in bytes
+     * @return the content of the dictionary; never {@code null}
+     */
+    public static byte[] train( Iterable<byte[]> samples, int dictionarySize ) {
+        long totalSize = 0;
+        for (byte[] sample : samples) {
+            totalSize += sample.length;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(totalSize, Integer.MAX_VALUE), dictionarySize);
+        samples.forEach(trainer::addSample);
+        return trainer.trainSamples();
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return Codecs.ZSTD_DICTIONARY;
+    }
+
+    @Override
+    public byte[] encode( byte[] data ) {
+        return Zstd.compress(data, compressDictionary);
+    }
+
+    @Override
+    public byte[] decode( byte[] data, int offset, int length ) {
+        byte[] result = new byte[ZstdCodec.contentSize(data, offset, length)];
+        ZstdCodec.checkResult(Zstd.decompressFastDict(result, 0, data, offset, length, decompressDictionary));
+        return result;
+    }
+}
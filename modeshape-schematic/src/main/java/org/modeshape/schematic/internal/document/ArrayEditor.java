@@ -591,9 +591,14 @@ public class ArrayEditor implements EditableArray {
         if (doc == null) return null;
         assert !(doc instanceof DocumentEditor) : "The document value should not be a DocumentEditor instance";
         if (doc instanceof MutableArray) {
-            return createEditableArray((MutableArray)doc, index, factory);
+            return editable((List<?>)doc, index);
+        }
+        if (!(doc instanceof MutableDocument)) {
+            // a read-only document (e.g. one read lazily from a buffer), so replace it with an equivalent mutable copy
+            MutableDocument copy = (MutableDocument)doc.clone();
+            array.setValue(index, copy);
+            doc = copy;
         }
-        assert doc instanceof MutableDocument;
         return createEditableDocument((MutableDocument)doc, index, factory);
     }
 
@@ -601,6 +606,12 @@ public class ArrayEditor implements EditableArray {
                                       int index ) {
         if (array == null) return null;
         assert !(array instanceof ArrayEditor) : "The array value should not be an ArrayEditor instance";
+        if (array instanceof CompactDocument.CompactArray) {
+            // a read-only array (e.g. one of a compact document), so replace it with an equivalent mutable copy
+            BasicArray copy = (BasicArray)((BasicArray)array).clone();
+            this.array.setValue(index, copy);
+            array = copy;
+        }
         return createEditableArray((BasicArray)array, index, factory);
     }
 
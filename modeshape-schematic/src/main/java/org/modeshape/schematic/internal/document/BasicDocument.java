@@ -377,45 +377,7 @@ public class BasicDocument extends LinkedHashMap<String, Object> implements Muta
 
     @Override
     public boolean equals( Object obj ) {
-        if (this == obj) {
-            return true;
-        }
-        if (obj instanceof Iterable) {
-            // Probably an array
-            return false;
-        }
-        if (obj instanceof Document) {
-            Document that = (Document)obj;
-            if (this.size() != that.size()) {
-                return false;
-            }
-            for (Field thisField : fields()) {
-                Object thisValue = thisField.getValue();
-                Object thatValue = that.get(thisField.getName());
-                if (!BsonUtils.valuesAreEqual(thisValue, thatValue)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-        if (obj instanceof Map) {
-            Map<?, ?> that = (Map<?, ?>)obj;
-            if (this.size() != that.size()) {
-                return false;
-            }
-            if (!this.keySet().equals(that.keySet())) {
-                return false;
-            }
-            for (Field thisField : fields()) {
-                Object thisValue = thisField.getValue();
-                Object thatValue = that.get(thisField.getName());
-                if (!BsonUtils.valuesAreEqual(thisValue, thatValue)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-        return false;
+        return BsonUtils.documentsAreEqual(this, obj);
     }
 
     @Override
@@ -19,6 +19,8 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.UUID;
 import org.modeshape.schematic.annotation.ThreadSafe;
 import org.modeshape.schematic.document.Array;
@@ -69,6 +71,37 @@ public class BsonReader {
         return reader.endDocument();
     }
 
+    /**
+     * Create a read-only {@link Document} view over the binary BSON representation which starts at the current position of the
+     * supplied buffer. Unlike the other methods, nothing is decoded upfront: each field is decoded directly from the buffer the
+     * first time it is accessed, and nested documents are views over the same buffer. The position, limit and byte order of the
+     * buffer are not changed, but its content must not be changed while the document is in use.
+     * 
+     * @param buffer the buffer; may not be null
+     * @return the read-only {@link Document} view
+     * @throws IOException if the buffer does not contain a complete BSON document
+     */
+    public Document read( ByteBuffer buffer ) throws IOException {
+        ByteBuffer view = buffer.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        int length = view.remaining() >= 5 ? view.getInt(0) : -1;
+        if (length < 5 || length > view.remaining() || view.get(length - 1) != Bson.END_OF_DOCUMENT) {
+            throw new IOException("The buffer does not contain a complete BSON document");
+        }
+        view.limit(length);
+        return new LazyDocument(view, 0);
+    }
+
+    /**
+     * Returns the number of bytes of the binary BSON representation of the supplied document, if it is a view created by
+     * {@link #read(ByteBuffer)}. This does not decode any of the fields of the document.
+     * 
+     * @param document the document; may not be null
+     * @return the length in bytes, or -1 if the document is not such a view
+     */
+    public static int lengthOfView( Document document ) {
+        return document instanceof LazyDocument ? ((LazyDocument)document).length() : -1;
+    }
+
     /**
      * Read the binary BSON representation from supplied input stream and construct the {@link Array} representation.
      * 
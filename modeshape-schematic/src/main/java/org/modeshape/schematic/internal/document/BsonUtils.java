@@ -15,7 +15,9 @@
  */
 package org.modeshape.schematic.internal.document;
 
+import java.util.Map;
 import java.util.regex.Pattern;
+import org.modeshape.schematic.document.Document;
 import org.modeshape.schematic.document.Null;
 import org.modeshape.schematic.document.ObjectId;
 
@@ -183,4 +185,51 @@ public class BsonUtils {
       return thisValue.equals(thatValue);
    }
 
+   /**
+    * Compares a document with another object. All the document implementations use this method, so that comparing any two
+    * documents gives the same result in both directions. A document is equal to another document which has the same fields
+    * with equal values, in any order; a document which is also a {@link Map} is equal to a map with the same entries.
+    *
+    * @param document the document; may not be null
+    * @param obj the object to compare with the document; may be null
+    * @return true if the object is equal to the document, or false otherwise
+    */
+   public static boolean documentsAreEqual(Document document, Object obj) {
+      if (document == obj) {
+         return true;
+      }
+      if (obj instanceof Iterable) {
+         // Probably an array
+         return false;
+      }
+      if (obj instanceof Document) {
+         Document that = (Document) obj;
+         if (document.size() != that.size()) {
+            return false;
+         }
+         for (Document.Field field : document.fields()) {
+            String name = field.getName();
+            if (!that.containsField(name) || !valuesAreEqual(field.getValue(), that.get(name))) {
+               return false;
+            }
+         }
+         return true;
+      }
+      if (obj instanceof Map && document instanceof Map) {
+         // only documents which are maps can be equal to other maps, since a map is never equal to a document which isn't one
+         Map<?, ?> that = (Map<?, ?>) obj;
+         if (document.size() != that.size()) {
+            return false;
+         }
+         for (Document.Field field : document.fields()) {
+            String name = field.getName();
+            if (!that.containsKey(name) || !valuesAreEqual(field.getValue(), that.get(name))) {
+               return false;
+            }
+         }
+         return true;
+      }
+      return false;
+   }
+
 }
@@ -0,0 +1,529 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.document;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import org.modeshape.schematic.annotation.Immutable;
+import org.modeshape.schematic.document.Array;
+import org.modeshape.schematic.document.Binary;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Code;
+import org.modeshape.schematic.document.CodeWithScope;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableDocument;
+import org.modeshape.schematic.document.Editor;
+import org.modeshape.schematic.document.Json;
+import org.modeshape.schematic.document.MaxKey;
+import org.modeshape.schematic.document.MinKey;
+import org.modeshape.schematic.document.Null;
+import org.modeshape.schematic.document.ObjectId;
+import org.modeshape.schematic.document.Symbol;
+
+/**
+ * An immutable {@link Document} which stores its field names and values in two parallel arrays, instead of the hash table and
+ * per-field entries of a {@link BasicDocument}. The field names are {@link String#intern() interned}, so documents with the
+ * same structure share the same name instances. Nested documents are compact documents as well, and nested arrays are
+ * {@link CompactArray read-only arrays} backed by arrays of the exact size.
+ * <p>
+ * Fields are found using a linear scan, which for the typical (small) documents is as fast as a hash lookup. Because the
+ * document cannot be changed, {@link #edit(boolean)} and {@link #editable()} always operate on a {@link #clone() copy} of the
+ * document.
+ * </p>
+ *
+ * @since 5.1
+ */
+@Immutable
+public final class CompactDocument implements Document {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final CompactDocument EMPTY = new CompactDocument(new String[0], new Object[0]);
+
+    private final String[] names;
+    private final Object[] values;
+
+    private CompactDocument( String[] names,
+                             Object[] values ) {
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * Returns a compact, immutable copy of the supplied document.
+     *
+     * @param document the document to copy; may not be null
+     * @return the compact document, which is the supplied document if it already is immutable; never null
+     */
+    public static Document copyOf( Document document ) {
+        if (document instanceof CompactDocument || document instanceof LazyDocument) {
+            // these are already immutable; decoding a lazy document would defeat its purpose
+            return document;
+        }
+        return compact(document);
+    }
+
+    private static CompactDocument compact( Document document ) {
+        int size = document.size();
+        if (size == 0) {
+            return EMPTY;
+        }
+        String[] names = new String[size];
+        Object[] values = new Object[size];
+        int i = 0;
+        for (Field field : document.fields()) {
+            names[i] = field.getName().intern();
+            values[i] = compactValue(field.getValue());
+            ++i;
+        }
+        return i == size ? new CompactDocument(names, values) : new CompactDocument(Arrays.copyOf(names, i),
+                                                                                    Arrays.copyOf(values, i));
+    }
+
+    private static Object compactValue( Object value ) {
+        if (value instanceof Array) {
+            Array array = (Array)value;
+            Object[] elements = new Object[array.size()];
+            int i = 0;
+            for (Object element : array) {
+                elements[i++] = compactValue(element);
+            }
+            return new CompactArray(i == elements.length ? elements : Arrays.copyOf(elements, i));
+        }
+        if (value instanceof Document) {
+            return copyOf((Document)value);
+        }
+        // every other kind of value is immutable
+        return value;
+    }
+
+    private int indexOf( String name ) {
+        if (name == null) {
+            return -1;
+        }
+        int hash = name.hashCode();
+        for (int i = 0; i != names.length; ++i) {
+            String candidate = names[i];
+            // names are usually constants (which are interned) and String caches its hash, so this is cheap
+            if (candidate == name || (candidate.hashCode() == hash && candidate.equals(name))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Object get( String name ) {
+        int i = indexOf(name);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public Boolean getBoolean( String name ) {
+        Object value = get(name);
+        return (value instanceof Boolean) ? (Boolean)value : null;
+    }
+
+    @Override
+    public boolean getBoolean( String name,
+                               boolean defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Boolean) ? ((Boolean)value).booleanValue() : defaultValue;
+    }
+
+    @Override
+    public Integer getInteger( String name ) {
+        Object value = get(name);
+        return (value instanceof Integer) ? (Integer)value : null;
+    }
+
+    @Override
+    public int getInteger( String name,
+                           int defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Integer) ? ((Integer)value).intValue() : defaultValue;
+    }
+
+    @Override
+    public Long getLong( String name ) {
+        Object value = get(name);
+        if (value instanceof Long) return (Long)value;
+        if (value instanceof Integer) return ((Integer)value).longValue();
+        return null;
+    }
+
+    @Override
+    public long getLong( String name,
+                         long defaultValue ) {
+        Object value = get(name);
+        if (value instanceof Long) return ((Long)value).longValue();
+        if (value instanceof Integer) return ((Integer)value).longValue();
+        return defaultValue;
+    }
+
+    @Override
+    public Double getDouble( String name ) {
+        Object value = get(name);
+        return (value instanceof Double) ? (Double)value : null;
+    }
+
+    @Override
+    public double getDouble( String name,
+                             double defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Double) ? ((Double)value).doubleValue() : defaultValue;
+    }
+
+    @Override
+    public Number getNumber( String name ) {
+        Object value = get(name);
+        return (value instanceof Number) ? (Number)value : null;
+    }
+
+    @Override
+    public Number getNumber( String name,
+                             Number defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Number) ? (Number)value : defaultValue;
+    }
+
+    @Override
+    public String getString( String name ) {
+        return getString(name, null);
+    }
+
+    @Override
+    public String getString( String name,
+                             String defaultValue ) {
+        Object value = get(name);
+        if (value instanceof String) {
+            return (String)value;
+        }
+        if (value instanceof Symbol) {
+            return ((Symbol)value).getSymbol();
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public List<?> getArray( String name ) {
+        Object value = get(name);
+        return (value instanceof List) ? (List<?>)value : null;
+    }
+
+    @Override
+    public Document getDocument( String name ) {
+        Object value = get(name);
+        return (value instanceof Document) ? (Document)value : null;
+    }
+
+    @Override
+    public boolean isNull( String name ) {
+        return get(name) instanceof Null;
+    }
+
+    @Override
+    public boolean isNullOrMissing( String name ) {
+        return Null.matches(get(name));
+    }
+
+    @Override
+    public MaxKey getMaxKey( String name ) {
+        Object value = get(name);
+        return (value instanceof MaxKey) ? (MaxKey)value : null;
+    }
+
+    @Override
+    public MinKey getMinKey( String name ) {
+        Object value = get(name);
+        return (value instanceof MinKey) ? (MinKey)value : null;
+    }
+
+    @Override
+    public Code getCode( String name ) {
+        Object value = get(name);
+        return (value instanceof Code) ? (Code)value : null;
+    }
+
+    @Override
+    public CodeWithScope getCodeWithScope( String name ) {
+        Object value = get(name);
+        return (value instanceof CodeWithScope) ? (CodeWithScope)value : null;
+    }
+
+    @Override
+    public ObjectId getObjectId( String name ) {
+        Object value = get(name);
+        return (value instanceof ObjectId) ? (ObjectId)value : null;
+    }
+
+    @Override
+    public Binary getBinary( String name ) {
+        Object value = get(name);
+        return (value instanceof Binary) ? (Binary)value : null;
+    }
+
+    @Override
+    public Symbol getSymbol( String name ) {
+        Object value = get(name);
+        if (value instanceof Symbol) {
+            return (Symbol)value;
+        }
+        if (value instanceof String) {
+            return new Symbol((String)value);
+        }
+        return null;
+    }
+
+    @Override
+    public Pattern getPattern( String name ) {
+        Object value = get(name);
+        return (value instanceof Pattern) ? (Pattern)value : null;
+    }
+
+    @Override
+    public UUID getUuid( String name ) {
+        return getUuid(name, null);
+    }
+
+    @Override
+    public UUID getUuid( String name,
+                         UUID defaultValue ) {
+        Object value = get(name);
+        if (value instanceof UUID) {
+            return (UUID)value;
+        }
+        if (value instanceof String) {
+            try {
+                return UUID.fromString((String)value);
+            } catch (IllegalArgumentException e) {
+                // do nothing ...
+            }
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public int getType( String name ) {
+        return Bson.getTypeForValue(get(name));
+    }
+
+    @Override
+    public Map<String, ?> toMap() {
+        return new AbstractMap<String, Object>() {
+            @Override
+            public Set<Map.Entry<String, Object>> entrySet() {
+                return new AbstractSet<Map.Entry<String, Object>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, Object>> iterator() {
+                        return new FieldIterator<Map.Entry<String, Object>>() {
+                            @Override
+                            protected Map.Entry<String, Object> create( int i ) {
+                                return new SimpleImmutableEntry<>(names[i], values[i]);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return names.length;
+                    }
+                };
+            }
+
+            @Override
+            public Object get( Object key ) {
+                return key instanceof String ? CompactDocument.this.get((String)key) : null;
+            }
+
+            @Override
+            public boolean containsKey( Object key ) {
+                return key instanceof String && containsField((String)key);
+            }
+        };
+    }
+
+    @Override
+    public Iterable<Field> fields() {
+        return () -> new FieldIterator<Field>() {
+            @Override
+            protected Field create( int i ) {
+                return new ImmutableField(names[i], values[i]);
+            }
+        };
+    }
+
+    @Override
+    public boolean containsField( String name ) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public boolean containsAll( Document document ) {
+        if (document == null) {
+            return true;
+        }
+        for (Field field : document.fields()) {
+            if (!BsonUtils.valuesAreEqual(get(field.getName()), field.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return toMap().keySet();
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    @Override
+    public MutableDocument clone() {
+        BasicDocument clone = new BasicDocument(names.length);
+        for (int i = 0; i != names.length; ++i) {
+            Object value = values[i];
+            if (value instanceof Array) {
+                value = ((Array)value).clone();
+            } else if (value instanceof Document) {
+                value = ((Document)value).clone();
+            } // every other kind of value is immutable
+            clone.put(names[i], value);
+        }
+        return clone;
+    }
+
+    @Override
+    public Document with( Map<String, Object> changedFields ) {
+        return new BasicDocument(this).with(changedFields);
+    }
+
+    @Override
+    public Document with( String fieldName,
+                          Object value ) {
+        return new BasicDocument(this).with(fieldName, value);
+    }
+
+    @Override
+    public Document with( ValueTransformer transformer ) {
+        BasicDocument copy = new BasicDocument(this);
+        Document result = copy.with(transformer);
+        return result == copy ? this : result;
+    }
+
+    @Override
+    public Document withVariablesReplaced( Properties properties ) {
+        Document result = new BasicDocument(this).withVariablesReplaced(properties);
+        return result.equals(this) ? this : result;
+    }
+
+    @Override
+    public Document withVariablesReplacedWithSystemProperties() {
+        Document result = new BasicDocument(this).withVariablesReplacedWithSystemProperties();
+        return result.equals(this) ? this : result;
+    }
+
+    @Override
+    public Editor edit( boolean clone ) {
+        // this document cannot be changed, so always edit a copy
+        return clone().edit(false);
+    }
+
+    @Override
+    public EditableDocument editable() {
+        return clone().editable();
+    }
+
+    @Override
+    public int hashCode() {
+        // the same as BasicDocument (i.e. LinkedHashMap)
+        int hash = 0;
+        for (int i = 0; i != names.length; ++i) {
+            Object value = values[i];
+            hash += names[i].hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        return BsonUtils.documentsAreEqual(this, obj);
+    }
+
+    @Override
+    public String toString() {
+        return Json.write(this);
+    }
+
+    private Object writeReplace() {
+        // serialize a regular document, so that the names are interned again when the document is compacted
+        return clone();
+    }
+
+    /**
+     * A read-only array nested in a {@link CompactDocument}. Every attempt to change it fails, so that the documents held in
+     * caches cannot be changed through their arrays; the editors replace it with a mutable {@link #clone() copy} instead.
+     */
+    static final class CompactArray extends BasicArray {
+        private static final long serialVersionUID = 1L;
+
+        protected CompactArray( Object[] elements ) {
+            super(Collections.unmodifiableList(Arrays.asList(elements)));
+        }
+
+        private Object writeReplace() {
+            // serialize a regular array, like the compact document does
+            return clone();
+        }
+    }
+
+    private abstract class FieldIterator<T> implements Iterator<T> {
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            return next < names.length;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return create(next++);
+        }
+
+        protected abstract T create( int i );
+    }
+}
@@ -36,7 +36,6 @@ import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.UUID;
 import java.util.regex.Pattern;
 import org.modeshape.schematic.document.Binary;
@@ -87,7 +86,7 @@ public class CompactJsonWriter implements JsonWriter {
             write(((DocumentEditor)object).unwrap(), writer);
         } else if (object instanceof Iterable) { // must check before 'BsonObject' because of inheritance
             write((Iterable<?>)object, writer);
-        } else if (object instanceof Map) {
+        } else if (object instanceof Document) { // not only maps, but also read-only documents
             write((Document)object, writer);
         } else if (object instanceof Binary) {
             write((Binary)object, writer);
@@ -618,9 +618,14 @@ public class DocumentEditor implements EditableDocument {
         if (doc == null) return null;
         assert !(doc instanceof DocumentEditor) : "The document value should not be a DocumentEditor instance";
         if (doc instanceof MutableArray) {
-            return createEditableArray((MutableArray)doc, fieldName, factory);
+            return editable((List<?>)doc, fieldName);
+        }
+        if (!(doc instanceof MutableDocument)) {
+            // a read-only document (e.g. one read lazily from a buffer), so replace it with an equivalent mutable copy
+            MutableDocument copy = (MutableDocument)doc.clone();
+            document.put(fieldName, copy);
+            doc = copy;
         }
-        assert doc instanceof MutableDocument;
         return createEditableDocument((MutableDocument)doc, fieldName, factory);
     }
 
@@ -628,6 +633,12 @@ public class DocumentEditor implements EditableDocument {
                                       String fieldName ) {
         if (array == null) return null;
         assert !(array instanceof ArrayEditor) : "The array value should not be an ArrayEditor instance";
+        if (array instanceof CompactDocument.CompactArray) {
+            // a read-only array (e.g. one of a compact document), so replace it with an equivalent mutable copy
+            BasicArray copy = (BasicArray)((BasicArray)array).clone();
+            document.put(fieldName, copy);
+            array = copy;
+        }
         return createEditableArray((BasicArray)array, fieldName, factory);
     }
 
@@ -653,16 +664,12 @@ public class DocumentEditor implements EditableDocument {
         if (this == o) {
             return true;
         }
-        if (!(o instanceof MutableDocument) && ! (o instanceof DocumentEditor)) {
-            return false;
-        }
-        
-        if (o instanceof MutableDocument) {
-            return Objects.equals(document, o); 
-        } else {
+        if (o instanceof DocumentEditor) {
             DocumentEditor that = (DocumentEditor) o;
             return Objects.equals(this.document, that.document);
         }
+        // any other kind of document, including the read-only ones
+        return o instanceof Document && Objects.equals(document, o);
     }
 
     @Override
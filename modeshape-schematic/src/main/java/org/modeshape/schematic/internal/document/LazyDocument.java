@@ -0,0 +1,679 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.document;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+import org.modeshape.schematic.annotation.ThreadSafe;
+import org.modeshape.schematic.document.Array;
+import org.modeshape.schematic.document.Binary;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Code;
+import org.modeshape.schematic.document.CodeWithScope;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableDocument;
+import org.modeshape.schematic.document.Editor;
+import org.modeshape.schematic.document.Json;
+import org.modeshape.schematic.document.MaxKey;
+import org.modeshape.schematic.document.MinKey;
+import org.modeshape.schematic.document.Null;
+import org.modeshape.schematic.document.ObjectId;
+import org.modeshape.schematic.document.Symbol;
+
+/**
+ * A read-only {@link Document} which is a view over the binary BSON representation of a document held in a {@link ByteBuffer}.
+ * Nothing is decoded when the view is created: the offsets of the fields are found the first time any field is accessed, and
+ * each value is only decoded (and then kept) the first time it is accessed. Nested documents are views over the same buffer.
+ * <p>
+ * Because the view is read-only, {@link #edit(boolean)} and {@link #editable()} always operate on a {@link #clone() copy} of the
+ * document. The buffer must not be changed while the view is in use.
+ * </p>
+ *
+ * @see BsonReader#read(ByteBuffer)
+ * @since 5.1
+ */
+@ThreadSafe
+final class LazyDocument implements Document {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DocumentValueFactory VALUES = BsonReader.VALUE_FACTORY;
+    private static final Object NOT_DECODED = new Object();
+
+    private final transient ByteBuffer buffer;
+    private final transient int start;
+    private transient volatile Index index;
+
+    /**
+     * Creates a view over the document which starts at the given position of the buffer.
+     *
+     * @param buffer the buffer, whose byte order must be {@link ByteOrder#LITTLE_ENDIAN little-endian}; may not be null
+     * @param start the position of the length of the document
+     */
+    LazyDocument( ByteBuffer buffer,
+                  int start ) {
+        assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        this.buffer = buffer;
+        this.start = start;
+    }
+
+    /**
+     * Returns the number of bytes of the BSON representation of this document.
+     *
+     * @return the length in bytes
+     */
+    int length() {
+        return buffer.getInt(start);
+    }
+
+    @Override
+    public Object get( String name ) {
+        Index index = index();
+        int i = index.indexOf(name);
+        return i < 0 ? null : index.value(i);
+    }
+
+    @Override
+    public Boolean getBoolean( String name ) {
+        Object value = get(name);
+        return (value instanceof Boolean) ? (Boolean)value : null;
+    }
+
+    @Override
+    public boolean getBoolean( String name,
+                               boolean defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Boolean) ? ((Boolean)value).booleanValue() : defaultValue;
+    }
+
+    @Override
+    public Integer getInteger( String name ) {
+        Object value = get(name);
+        return (value instanceof Integer) ? (Integer)value : null;
+    }
+
+    @Override
+    public int getInteger( String name,
+                           int defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Integer) ? ((Integer)value).intValue() : defaultValue;
+    }
+
+    @Override
+    public Long getLong( String name ) {
+        Object value = get(name);
+        if (value instanceof Long) return (Long)value;
+        if (value instanceof Integer) return ((Integer)value).longValue();
+        return null;
+    }
+
+    @Override
+    public long getLong( String name,
+                         long defaultValue ) {
+        Object value = get(name);
+        if (value instanceof Long) return ((Long)value).longValue();
+        if (value instanceof Integer) return ((Integer)value).longValue();
+        return defaultValue;
+    }
+
+    @Override
+    public Double getDouble( String name ) {
+        Object value = get(name);
+        return (value instanceof Double) ? (Double)value : null;
+    }
+
+    @Override
+    public double getDouble( String name,
+                             double defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Double) ? ((Double)value).doubleValue() : defaultValue;
+    }
+
+    @Override
+    public Number getNumber( String name ) {
+        Object value = get(name);
+        return (value instanceof Number) ? (Number)value : null;
+    }
+
+    @Override
+    public Number getNumber( String name,
+                             Number defaultValue ) {
+        Object value = get(name);
+        return (value instanceof Number) ? (Number)value : defaultValue;
+    }
+
+    @Override
+    public String getString( String name ) {
+        return getString(name, null);
+    }
+
+    @Override
+    public String getString( String name,
+                             String defaultValue ) {
+        Object value = get(name);
+        if (value instanceof String) {
+            return (String)value;
+        }
+        if (value instanceof Symbol) {
+            return ((Symbol)value).getSymbol();
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public List<?> getArray( String name ) {
+        Object value = get(name);
+        return (value instanceof List) ? (List<?>)value : null;
+    }
+
+    @Override
+    public Document getDocument( String name ) {
+        Object value = get(name);
+        return (value instanceof Document) ? (Document)value : null;
+    }
+
+    @Override
+    public boolean isNull( String name ) {
+        return get(name) instanceof Null;
+    }
+
+    @Override
+    public boolean isNullOrMissing( String name ) {
+        return Null.matches(get(name));
+    }
+
+    @Override
+    public MaxKey getMaxKey( String name ) {
+        Object value = get(name);
+        return (value instanceof MaxKey) ? (MaxKey)value : null;
+    }
+
+    @Override
+    public MinKey getMinKey( String name ) {
+        Object value = get(name);
+        return (value instanceof MinKey) ? (MinKey)value : null;
+    }
+
+    @Override
+    public Code getCode( String name ) {
+        Object value = get(name);
+        return (value instanceof Code) ? (Code)value : null;
+    }
+
+    @Override
+    public CodeWithScope getCodeWithScope( String name ) {
+        Object value = get(name);
+        return (value instanceof CodeWithScope) ? (CodeWithScope)value : null;
+    }
+
+    @Override
+    public ObjectId getObjectId( String name ) {
+        Object value = get(name);
+        return (value instanceof ObjectId) ? (ObjectId)value : null;
+    }
+
+    @Override
+    public Binary getBinary( String name ) {
+        Object value = get(name);
+        return (value instanceof Binary) ? (Binary)value : null;
+    }
+
+    @Override
+    public Symbol getSymbol( String name ) {
+        Object value = get(name);
+        if (value instanceof Symbol) {
+            return (Symbol)value;
+        }
+        if (value instanceof String) {
+            return new Symbol((String)value);
+        }
+        return null;
+    }
+
+    @Override
+    public Pattern getPattern( String name ) {
+        Object value = get(name);
+        return (value instanceof Pattern) ? (Pattern)value : null;
+    }
+
+    @Override
+    public UUID getUuid( String name ) {
+        return getUuid(name, null);
+    }
+
+    @Override
+    public UUID getUuid( String name,
+                         UUID defaultValue ) {
+        Object value = get(name);
+        if (value instanceof UUID) {
+            return (UUID)value;
+        }
+        if (value instanceof String) {
+            try {
+                return UUID.fromString((String)value);
+            } catch (IllegalArgumentException e) {
+                // do nothing ...
+            }
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public int getType( String name ) {
+        return Bson.getTypeForValue(get(name));
+    }
+
+    @Override
+    public Map<String, ?> toMap() {
+        Index index = index();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < index.size(); i++) {
+            map.put(index.name(i), index.value(i));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public Iterable<Field> fields() {
+        return () -> {
+            final Index index = index();
+            return new Iterator<Field>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < index.size();
+                }
+
+                @Override
+                public Field next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int i = next++;
+                    return new ImmutableField(index.name(i), index.value(i));
+                }
+            };
+        };
+    }
+
+    @Override
+    public boolean containsField( String name ) {
+        return index().indexOf(name) >= 0;
+    }
+
+    @Override
+    public boolean containsAll( Document document ) {
+        if (document == null) {
+            return true;
+        }
+        for (Field field : document.fields()) {
+            if (!BsonUtils.valuesAreEqual(get(field.getName()), field.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        Index index = index();
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < index.size(); i++) {
+            names.add(index.name(i));
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    @Override
+    public int size() {
+        return index().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public MutableDocument clone() {
+        BasicDocument clone = new BasicDocument(size());
+        for (Field field : fields()) {
+            Object value = field.getValue();
+            if (value instanceof Array) {
+                value = ((Array)value).clone();
+            } else if (value instanceof Document) {
+                value = ((Document)value).clone();
+            } // every other kind of value is immutable
+            clone.put(field.getName(), value);
+        }
+        return clone;
+    }
+
+    @Override
+    public Document with( Map<String, Object> changedFields ) {
+        return new BasicDocument(this).with(changedFields);
+    }
+
+    @Override
+    public Document with( String fieldName,
+                          Object value ) {
+        return new BasicDocument(this).with(fieldName, value);
+    }
+
+    @Override
+    public Document with( ValueTransformer transformer ) {
+        BasicDocument copy = new BasicDocument(this);
+        Document result = copy.with(transformer);
+        return result == copy ? this : result;
+    }
+
+    @Override
+    public Document withVariablesReplaced( Properties properties ) {
+        Document result = new BasicDocument(this).withVariablesReplaced(properties);
+        return result.equals(this) ? this : result;
+    }
+
+    @Override
+    public Document withVariablesReplacedWithSystemProperties() {
+        Document result = new BasicDocument(this).withVariablesReplacedWithSystemProperties();
+        return result.equals(this) ? this : result;
+    }
+
+    @Override
+    public Editor edit( boolean clone ) {
+        // this document cannot be changed, so always edit a copy
+        return clone().edit(false);
+    }
+
+    @Override
+    public EditableDocument editable() {
+        return clone().editable();
+    }
+
+    @Override
+    public int hashCode() {
+        // the same as BasicDocument (i.e. LinkedHashMap)
+        Index index = index();
+        int hash = 0;
+        for (int i = 0; i < index.size(); i++) {
+            Object value = index.value(i);
+            hash += index.name(i).hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        return BsonUtils.documentsAreEqual(this, obj);
+    }
+
+    @Override
+    public String toString() {
+        return Json.write(this);
+    }
+
+    private Object writeReplace() {
+        // the buffer is not serializable, so serialize a regular document instead
+        return clone();
+    }
+
+    private Index index() {
+        Index index = this.index;
+        if (index == null) {
+            // several threads may build the index at the same time, but they'll all build the same one
+            index = new Index();
+            this.index = index;
+        }
+        return index;
+    }
+
+    /**
+     * The positions of the fields of the document, along with the values which have already been decoded.
+     */
+    private final class Index {
+        private final int[] names;
+        private final int[] values;
+        private final AtomicReferenceArray<Object> decoded;
+
+        private Index() {
+            int end = start + buffer.getInt(start) - 1;
+            int[] names = new int[8];
+            int[] values = new int[8];
+            int count = 0;
+            int position = start + 4;
+            while (position < end) {
+                byte type = buffer.get(position);
+                if (type == Bson.END_OF_DOCUMENT) {
+                    break;
+                }
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                names[count] = position + 1;
+                int valuePosition = skipCString(position + 1);
+                values[count] = valuePosition;
+                ++count;
+                position = valuePosition + valueLength(type, valuePosition);
+            }
+            this.names = Arrays.copyOf(names, count);
+            this.values = Arrays.copyOf(values, count);
+            this.decoded = new AtomicReferenceArray<>(count);
+            for (int i = 0; i < count; i++) {
+                decoded.lazySet(i, NOT_DECODED);
+            }
+        }
+
+        private int size() {
+            return names.length;
+        }
+
+        private int indexOf( String name ) {
+            for (int i = 0; i < names.length; i++) {
+                if (nameEquals(names[i], name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String name( int i ) {
+            return readCString(names[i]);
+        }
+
+        private Object value( int i ) {
+            Object value = decoded.get(i);
+            if (value == NOT_DECODED) {
+                // the type is the byte before the name
+                value = readValue(buffer.get(names[i] - 1), values[i]);
+                // keep the first decoded value, so that the same nested documents are always returned
+                if (!decoded.compareAndSet(i, NOT_DECODED, value)) {
+                    value = decoded.get(i);
+                }
+            }
+            return value;
+        }
+    }
+
+    private boolean nameEquals( int position,
+                                String name ) {
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            byte b = buffer.get(position + i);
+            if (c >= 0x80 || b < 0) {
+                // not ASCII, so compare the decoded name
+                return readCString(position).equals(name);
+            }
+            if (b != c) {
+                return false;
+            }
+        }
+        return buffer.get(position + length) == 0;
+    }
+
+    private int skipCString( int position ) {
+        while (buffer.get(position) != 0) {
+            ++position;
+        }
+        return position + 1;
+    }
+
+    private String readCString( int position ) {
+        return readUTF(position, skipCString(position) - position - 1);
+    }
+
+    private String readUTF( int position,
+                            int length ) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String readString( int position ) {
+        // the length includes the zero-byte terminator
+        return VALUES.createString(readUTF(position + 4, buffer.getInt(position) - 1));
+    }
+
+    private int valueLength( byte type,
+                             int position ) {
+        switch (type) {
+            case Bson.Type.DOUBLE:
+            case Bson.Type.DATETIME:
+            case Bson.Type.TIMESTAMP:
+            case Bson.Type.INT64:
+                return 8;
+            case Bson.Type.STRING:
+            case Bson.Type.JAVASCRIPT:
+            case Bson.Type.SYMBOL:
+                return 4 + buffer.getInt(position);
+            case Bson.Type.DOCUMENT:
+            case Bson.Type.ARRAY:
+            case Bson.Type.JAVASCRIPT_WITH_SCOPE:
+                return buffer.getInt(position);
+            case Bson.Type.BINARY:
+                return 5 + buffer.getInt(position);
+            case Bson.Type.OBJECTID:
+                return 12;
+            case Bson.Type.BOOLEAN:
+                return 1;
+            case Bson.Type.INT32:
+                return 4;
+            case Bson.Type.REGEX:
+                return skipCString(skipCString(position)) - position;
+            case Bson.Type.DBPOINTER:
+                return 4 + buffer.getInt(position) + 12;
+            case Bson.Type.UNDEFINED:
+            case Bson.Type.NULL:
+            case Bson.Type.MINKEY:
+            case Bson.Type.MAXKEY:
+                return 0;
+            default:
+                throw new IllegalStateException("Unknown BSON type " + type + " at position " + position);
+        }
+    }
+
+    private Object readValue( byte type,
+                              int position ) {
+        switch (type) {
+            case Bson.Type.ARRAY:
+                return readArray(position);
+            case Bson.Type.BINARY:
+                int length = buffer.getInt(position);
+                byte subtype = buffer.get(position + 4);
+                if (subtype == Bson.BinaryType.UUID) {
+                    return new UUID(buffer.getLong(position + 5), buffer.getLong(position + 13));
+                }
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = buffer.get(position + 5 + i);
+                }
+                return VALUES.createBinary(subtype, bytes);
+            case Bson.Type.BOOLEAN:
+                return VALUES.createBoolean(buffer.get(position) != 0);
+            case Bson.Type.DATETIME:
+                return VALUES.createDate(buffer.getLong(position));
+            case Bson.Type.DOCUMENT:
+                return new LazyDocument(buffer, position);
+            case Bson.Type.DOUBLE:
+                return VALUES.createDouble(buffer.getDouble(position));
+            case Bson.Type.INT32:
+                return VALUES.createInt(buffer.getInt(position));
+            case Bson.Type.INT64:
+                return VALUES.createLong(buffer.getLong(position));
+            case Bson.Type.JAVASCRIPT:
+                return VALUES.createCode(readString(position));
+            case Bson.Type.JAVASCRIPT_WITH_SCOPE:
+                // skip the total length
+                int codePosition = position + 4;
+                String code = readString(codePosition);
+                return VALUES.createCode(code, new LazyDocument(buffer, codePosition + 4 + buffer.getInt(codePosition)));
+            case Bson.Type.MAXKEY:
+                return MaxKey.getInstance();
+            case Bson.Type.MINKEY:
+                return MinKey.getInstance();
+            case Bson.Type.NULL:
+                return VALUES.createNull();
+            case Bson.Type.OBJECTID:
+                byte[] objectIdBytes = new byte[12];
+                for (int i = 0; i < objectIdBytes.length; i++) {
+                    objectIdBytes[i] = buffer.get(position + i);
+                }
+                return VALUES.createObjectId(objectIdBytes);
+            case Bson.Type.REGEX:
+                int optionsPosition = skipCString(position);
+                return VALUES.createRegex(readCString(position), readCString(optionsPosition));
+            case Bson.Type.STRING:
+            case Bson.Type.SYMBOL:
+                return readString(position);
+            case Bson.Type.TIMESTAMP:
+                int inc = buffer.getInt(position);
+                int time = buffer.getInt(position + 4);
+                return VALUES.createTimestamp(time, inc);
+            default:
+                // DBPOINTER and UNDEFINED are ignored, like BsonReader does
+                return null;
+        }
+    }
+
+    private BasicArray readArray( int position ) {
+        // arrays are small and are usually read entirely, so decode all the values ...
+        LazyDocument elements = new LazyDocument(buffer, position);
+        Index index = elements.index();
+        BasicArray array = new BasicArray(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            array.addValue(index.value(i));
+        }
+        return array;
+    }
+}
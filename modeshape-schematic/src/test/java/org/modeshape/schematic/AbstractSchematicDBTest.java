@@ -200,6 +200,32 @@ public abstract class AbstractSchematicDBTest {
         assertTrue(db.keys().isEmpty());
     }
 
+    @Test
+    public void shouldIterateOverKeysAndEntriesInBatches() throws Exception {
+        int count = 25;
+        int batchSize = 10;
+        List<SchematicEntry> dbEntries = randomEntries(count);
+        simulateTransaction(() -> {
+            dbEntries.forEach(entry -> db.put(entry.id(), entry.content()));
+            return null;
+        });
+        Set<String> expectedIds = dbEntries.stream().map(SchematicEntry::id).collect(Collectors.toCollection(TreeSet::new));
+
+        Set<String> keys = new TreeSet<>();
+        db.keysInBatches(batchSize, batch -> {
+            assertTrue(!batch.isEmpty() && batch.size() <= batchSize);
+            keys.addAll(batch);
+        });
+        assertTrue(keys.containsAll(expectedIds));
+
+        Set<String> entryIds = new TreeSet<>();
+        db.entriesInBatches(batchSize, batch -> {
+            assertTrue(!batch.isEmpty() && batch.size() <= batchSize);
+            batch.forEach(entry -> entryIds.add(entry.id()));
+        });
+        assertTrue(entryIds.containsAll(expectedIds));
+    }
+
     @Test
     public void shouldIsolateChangesWithinTransaction() throws Exception {
         SchematicEntry entry1 = SchematicEntry.create(UUID.randomUUID().toString(), DEFAULT_CONTENT);
@@ -0,0 +1,127 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.BasicArray;
+import org.modeshape.schematic.internal.document.BasicDocument;
+
+public class CodecsTest {
+
+    @Test
+    public void shouldRoundTripDocumentsWithBuiltInCodecs() throws Exception {
+        Document document = sampleDocument(1);
+        for (String name : new String[] { Codecs.NONE, Codecs.GZIP, Codecs.LZ4, Codecs.ZSTD }) {
+            Codec codec = Codecs.forName(name);
+            assertEquals(name, codec.name());
+            assertEquals(codec, Codecs.forId(codec.id()));
+            byte[] encoded = Codecs.writeDocument(document, codec);
+            assertTrue(Codecs.isEncoded(encoded));
+            // decoding should not depend on the codec which is currently configured
+            assertEquals(document, Codecs.readDocument(encoded, null));
+            assertEquals(document, Codecs.readDocument(encoded, Codecs.forName(Codecs.NONE)));
+        }
+    }
+
+    @Test
+    public void shouldRoundTripDocumentsWithDictionary() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(Bson.write(sampleDocument(i)));
+        }
+        byte[] dictionary = Codecs.trainZstdDictionary(samples, 16 * 1024);
+        Codec codec = Codecs.zstdWithDictionary(dictionary);
+        assertEquals(Codecs.ZSTD_DICTIONARY, codec.name());
+
+        Document document = sampleDocument(1001);
+        byte[] bson = Bson.write(document);
+        byte[] encoded = Codecs.writeDocument(document, codec);
+        assertTrue(encoded.length < Codecs.writeDocument(document, Codecs.forName(Codecs.ZSTD)).length);
+        assertTrue(encoded.length < bson.length);
+        assertEquals(document, Codecs.readDocument(encoded, codec));
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void shouldNotDecodeDictionaryDataWithoutDictionary() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(Bson.write(sampleDocument(i)));
+        }
+        Codec codec = Codecs.zstdWithDictionary(Codecs.trainZstdDictionary(samples, 16 * 1024));
+        Codecs.readDocument(Codecs.writeDocument(sampleDocument(1), codec), null);
+    }
+
+    @Test
+    public void shouldNotConfuseLegacyDataWithEncodedData() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            byte[] bson = Bson.write(sampleDocument(i));
+            assertFalse(Codecs.isEncoded(bson));
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+                out.write(bson);
+            }
+            assertFalse(Codecs.isEncoded(bos.toByteArray()));
+        }
+    }
+
+    @Test
+    public void shouldDecodeRegionsOfArrays() throws Exception {
+        byte[] data = Bson.write(sampleDocument(1));
+        for (String name : new String[] { Codecs.NONE, Codecs.GZIP, Codecs.LZ4, Codecs.ZSTD }) {
+            Codec codec = Codecs.forName(name);
+            byte[] encoded = codec.encode(data);
+            byte[] padded = new byte[encoded.length + 10];
+            System.arraycopy(encoded, 0, padded, 5, encoded.length);
+            assertArrayEquals(data, codec.decode(padded, 5, encoded.length));
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void shouldFailForUnknownCodec() {
+        Codecs.forName("unknown");
+    }
+
+    private Document sampleDocument( int index ) {
+        BasicDocument properties = new BasicDocument();
+        properties.put("jcr:primaryType", "nt:unstructured");
+        properties.put("jcr:created", "2016-01-01T00:00:00.000Z");
+        properties.put("title", "Node number " + index);
+        properties.put("count", index);
+        BasicArray children = new BasicArray();
+        for (int i = 0; i < 5; i++) {
+            BasicDocument child = new BasicDocument();
+            child.put("key", "87a4d5f7-" + index + "-" + i);
+            child.put("name", "child" + i);
+            children.addValue(child);
+        }
+        BasicDocument content = new BasicDocument();
+        content.put("key", "87a4d5f7abc" + index);
+        content.put("parent", "87a4d5f7abc" + (index / 10));
+        content.put("properties", properties);
+        content.put("children", children);
+        return new BasicDocument("content", content);
+    }
+}
@@ -378,6 +378,10 @@ public class BsonReadingAndWritingTest {
         Assert.assertEquals("Round trip failed", input, output);
     }
 
+    protected Document read( byte[] bytes ) throws IOException {
+        return reader.read(new ByteArrayInputStream(bytes));
+    }
+
     protected Document writeThenRead( Document object,
                                       boolean compareToOtherImpls ) {
         try {
@@ -386,7 +390,7 @@ public class BsonReadingAndWritingTest {
             long writeTime = System.nanoTime() - start;
 
             start = System.nanoTime();
-            Document result = reader.read(new ByteArrayInputStream(bytes));
+            Document result = read(bytes);
             long readTime = System.nanoTime() - start;
 
             if (compareToOtherImpls) {
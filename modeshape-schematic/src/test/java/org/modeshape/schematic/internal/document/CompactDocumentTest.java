@@ -0,0 +1,147 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableDocument;
+import org.modeshape.schematic.document.Json;
+
+/**
+ * Runs all the {@link BsonReadingAndWritingTest round-trip tests} against {@link CompactDocument compact copies} of the
+ * documents which are read, plus a few tests specific to compact documents.
+ */
+public class CompactDocumentTest extends BsonReadingAndWritingTest {
+
+    @Override
+    protected Document read( byte[] bytes ) throws IOException {
+        return CompactDocument.copyOf(super.read(bytes));
+    }
+
+    @Test
+    public void shouldShareInternedFieldNames() throws Exception {
+        Document first = CompactDocument.copyOf(new BasicDocument(new String("name"), "Joe"));
+        Document second = CompactDocument.copyOf(new BasicDocument(new String("name"), "Jane"));
+        Assert.assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+        assertEquals("Joe", first.getString(new String("name")));
+        assertNull(first.get("nam"));
+        assertNull(first.get(null));
+    }
+
+    @Test
+    public void shouldCompactNestedDocumentsAndArrays() throws Exception {
+        Document doc = CompactDocument.copyOf(nestedDocument());
+        assertEquals(nestedDocument(), doc);
+        assertTrue(doc.getDocument("address") instanceof CompactDocument);
+        assertTrue(((Document)doc.getArray("tags").get(1)) instanceof CompactDocument);
+        Assert.assertSame(doc, CompactDocument.copyOf(doc));
+        assertEquals(nestedDocument().hashCode(), doc.hashCode());
+        assertEquals(Arrays.asList("name", "age", "address", "nick", "tags"), Arrays.asList(doc.keySet().toArray()));
+        assertEquals(Json.write(nestedDocument()), Json.write(doc));
+    }
+
+    @Test
+    public void shouldEditCopies() throws Exception {
+        Document doc = CompactDocument.copyOf(nestedDocument());
+        EditableDocument editable = doc.editable();
+        editable.setString("nick", "jo");
+        editable.getDocument("address").setString("city", "Shelbyville");
+        editable.getArray("tags").addString("c");
+        assertEquals("joey", doc.getString("nick"));
+        assertEquals("Springfield", doc.getDocument("address").getString("city"));
+        assertEquals(2, doc.getArray("tags").size());
+        assertEquals("jo", editable.getString("nick"));
+        assertEquals("Shelbyville", editable.getDocument("address").getString("city"));
+        assertFalse(doc.equals(editable));
+    }
+
+    @Test
+    public void shouldEditNestedCompactDocuments() throws Exception {
+        BasicDocument copy = new BasicDocument(CompactDocument.copyOf(nestedDocument()));
+        copy.editable().getDocument("address").setString("city", "Shelbyville");
+        assertEquals("Shelbyville", copy.getDocument("address").getString("city"));
+    }
+
+    @Test
+    public void shouldNotChangeNestedArrays() throws Exception {
+        Document doc = CompactDocument.copyOf(nestedDocument());
+        BasicArray tags = (BasicArray)doc.getArray("tags");
+        try {
+            tags.set(0, "b");
+            fail("The array of a compact document should not be changed");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            tags.put("0", "b");
+            fail("The array of a compact document should not be changed");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            tags.addValue("c");
+            fail("The array of a compact document should not be changed");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(nestedDocument(), doc);
+    }
+
+    @Test
+    public void shouldEditCopiesOfNestedArrays() throws Exception {
+        Document doc = CompactDocument.copyOf(nestedDocument());
+        // a shallow copy still shares the nested array of the compact document ...
+        BasicDocument copy = new BasicDocument(doc);
+        copy.editable().getArray("tags").setString(0, "b");
+        assertEquals("b", copy.getArray("tags").get(0));
+        assertEquals("a", doc.getArray("tags").get(0));
+    }
+
+    @Test
+    public void shouldSerializeAsRegularDocument() throws Exception {
+        Document doc = CompactDocument.copyOf(nestedDocument());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(doc);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Document read = (Document)in.readObject();
+            assertTrue(read instanceof BasicDocument);
+            assertEquals(doc, read);
+        }
+        assertEquals(doc, read(Bson.write(doc)));
+    }
+
+    private Document nestedDocument() {
+        BasicDocument address = new BasicDocument("street", "100 Main", "city", "Springfield", "zip", 12345);
+        BasicDocument doc = new BasicDocument("name", "Joe", "age", 35, "address", address, "nick", "joey");
+        doc.put("tags", new BasicArray("a", new BasicDocument("b", 1)));
+        return doc;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.schematic.internal.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableDocument;
+
+/**
+ * Runs all the {@link BsonReadingAndWritingTest round-trip tests} against the read-only views returned by
+ * {@link BsonReader#read(ByteBuffer)}, plus a few tests specific to those views.
+ */
+public class LazyDocumentTest extends BsonReadingAndWritingTest {
+
+    @Override
+    protected Document read( byte[] bytes ) throws IOException {
+        return reader.read(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void shouldReadFromDirectBufferAtCurrentPosition() throws Exception {
+        byte[] bytes = Bson.write(nestedDocument());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 10);
+        buffer.position(7);
+        buffer.put(bytes);
+        buffer.position(7);
+        Document doc = reader.read(buffer);
+        assertEquals(nestedDocument(), doc);
+        assertEquals(7, buffer.position());
+        assertEquals("Springfield", doc.getDocument("address").getString("city"));
+    }
+
+    @Test
+    public void shouldReturnSameNestedDocumentEachTime() throws Exception {
+        Document doc = lazy(nestedDocument());
+        assertTrue(doc instanceof LazyDocument);
+        assertTrue(doc.getDocument("address") instanceof LazyDocument);
+        Assert.assertSame(doc.getDocument("address"), doc.getDocument("address"));
+        assertEquals(12345, doc.getDocument("address").getInteger("zip").intValue());
+        assertNull(doc.get("missing"));
+        assertFalse(doc.containsField("missing"));
+        assertEquals(Arrays.asList("name", "age", "address", "nick", "tags"), Arrays.asList(doc.keySet().toArray()));
+        assertEquals(nestedDocument().hashCode(), doc.hashCode());
+    }
+
+    @Test
+    public void shouldEditCopies() throws Exception {
+        Document doc = lazy(nestedDocument());
+        EditableDocument editable = doc.editable();
+        editable.setString("name", "Jane");
+        editable.getDocument("address").setNumber("zip", 54321);
+        assertEquals("Joe", doc.getString("name"));
+        assertEquals(12345, doc.getDocument("address").getInteger("zip").intValue());
+
+        Document clone = doc.clone();
+        assertTrue(clone instanceof MutableDocument);
+        assertTrue(clone.getDocument("address") instanceof MutableDocument);
+        assertEquals(doc, clone);
+        assertEquals(doc.with("name", "Jane").getString("name"), "Jane");
+    }
+
+    @Test
+    public void shouldEditNestedReadOnlyDocuments() throws Exception {
+        Document doc = lazy(nestedDocument());
+        // a shallow copy still contains the read-only nested documents ...
+        BasicDocument copy = new BasicDocument(doc);
+        EditableDocument editable = copy.editable();
+        editable.getDocument("address").setString("city", "Shelbyville");
+        assertEquals("Shelbyville", copy.getDocument("address").getString("city"));
+        assertEquals("Springfield", doc.getDocument("address").getString("city"));
+    }
+
+    @Test
+    public void shouldSerializeAsRegularDocument() throws Exception {
+        Document doc = lazy(nestedDocument());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(doc);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Document read = (Document)in.readObject();
+            assertNotSame(doc, read);
+            assertTrue(read instanceof BasicDocument);
+            assertEquals(doc, read);
+        }
+    }
+
+    @Test
+    public void shouldMatchNonAsciiFieldNames() throws Exception {
+        Document doc = lazy(new BasicDocument("café", "crème", "cafe", "latte"));
+        assertEquals("crème", doc.getString("café"));
+        assertEquals("latte", doc.getString("cafe"));
+        assertNull(doc.get("caf"));
+    }
+
+    @Test
+    public void shouldBeEqualToBasicDocumentInBothDirections() throws Exception {
+        BasicDocument basic = (BasicDocument)nestedDocument();
+        Document lazy = lazy(basic);
+        assertEquals(basic, lazy);
+        assertEquals(lazy, basic);
+        assertEquals(basic.hashCode(), lazy.hashCode());
+
+        // the fields are compared, not only the values ...
+        BasicDocument withNull = new BasicDocument("a", null);
+        Document otherWithNull = lazy(new BasicDocument("b", null));
+        assertFalse(withNull.equals(otherWithNull));
+        assertFalse(otherWithNull.equals(withNull));
+
+        BasicDocument different = new BasicDocument(basic);
+        different.put("age", 36);
+        assertFalse(different.equals(lazy));
+        assertFalse(lazy.equals(different));
+
+        // a view is not a map, so it is never equal to a map which is not a document ...
+        Map<String, Object> map = new LinkedHashMap<>(basic);
+        assertFalse(lazy.equals(map));
+        assertFalse(map.equals(lazy));
+    }
+
+    @Test( expected = IOException.class )
+    public void shouldNotReadIncompleteDocuments() throws Exception {
+        byte[] bytes = Bson.write(nestedDocument());
+        reader.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+    }
+
+    private Document lazy( Document document ) throws IOException {
+        return reader.read(ByteBuffer.wrap(Bson.write(document)));
+    }
+
+    private Document nestedDocument() {
+        BasicDocument address = new BasicDocument("street", "100 Main", "city", "Springfield", "zip", 12345);
+        BasicDocument doc = new BasicDocument("name", "Joe", "age", 35, "address", address, "nick", "joey");
+        doc.put("tags", new BasicArray("a", new BasicDocument("b", 1)));
+        return doc;
+    }
+}
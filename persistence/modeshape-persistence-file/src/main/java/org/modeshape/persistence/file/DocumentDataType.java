@@ -0,0 +1,121 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.ObjectDataType;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
+import org.modeshape.schematic.document.Bson;
+import org.modeshape.schematic.document.Document;
+
+/**
+ * MVStore {@link DataType} which stores {@link Document documents} as BSON, encoded with a {@link Codec}, instead of relying on 
+ * Java serialization like MVStore's default {@link ObjectDataType} does. Any other values are delegated to an
+ * {@link ObjectDataType} instance.
+ * <p>
+ * Encoded documents are prefixed by a marker byte which is never used by {@link ObjectDataType}, so values written before a 
+ * codec was configured can still be read.
+ * </p>
+ * <p>
+ * Optionally, documents can be read as lazily decoded, read-only views over their BSON representation (see
+ * {@link Bson#read(java.nio.ByteBuffer)}), which avoids building the complete document up-front.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public final class DocumentDataType implements DataType {
+
+    private static final byte ENCODED_DOCUMENT = (byte) 0xFE;
+    private static final int DEFAULT_MEMORY = 1024;
+
+    private final ObjectDataType delegate = new ObjectDataType();
+    private final Codec codec;
+    private final boolean lazily;
+    private volatile int averageMemory = DEFAULT_MEMORY;
+
+    protected DocumentDataType( Codec codec, boolean lazily ) {
+        this.codec = codec;
+        this.lazily = lazily;
+    }
+
+    @Override
+    public int compare( Object a, Object b ) {
+        return delegate.compare(a, b);
+    }
+
+    @Override
+    public int getMemory( Object obj ) {
+        // this is only an estimate used by MVStore to size its cache and pages, so avoid serializing the document 
+        return obj instanceof Document ? averageMemory : delegate.getMemory(obj);
+    }
+
+    @Override
+    public void write( WriteBuffer buff, Object obj ) {
+        if (!(obj instanceof Document)) {
+            delegate.write(buff, obj);
+            return;
+        }
+        try {
+            byte[] bson = Bson.write(obj);
+            updateAverageMemory(bson.length);
+            byte[] data = Codecs.encode(codec, bson);
+            buff.put(ENCODED_DOCUMENT).putVarInt(data.length).put(data);
+        } catch (IOException e) {
+            throw new FileProviderException(e);
+        }
+    }
+
+    @Override
+    public void write( WriteBuffer buff, Object[] obj, int len, boolean key ) {
+        for (int i = 0; i < len; i++) {
+            write(buff, obj[i]);
+        }
+    }
+
+    @Override
+    public Object read( ByteBuffer buff ) {
+        if (buff.get(buff.position()) != ENCODED_DOCUMENT) {
+            return delegate.read(buff);
+        }
+        buff.get();
+        byte[] data = new byte[DataUtils.readVarInt(buff)];
+        buff.get(data);
+        try {
+            return Codecs.readDocument(data, codec, lazily);
+        } catch (IOException e) {
+            throw new FileProviderException(e);
+        }
+    }
+
+    @Override
+    public void read( ByteBuffer buff, Object[] obj, int len, boolean key ) {
+        for (int i = 0; i < len; i++) {
+            obj[i] = read(buff);
+        }
+    }
+
+    private void updateAverageMemory( int bsonLength ) {
+        // the in-memory representation of a document is typically a few times larger than its BSON representation
+        averageMemory = (averageMemory * 15 + bsonLength * 3) / 16;
+    }
+}
@@ -21,20 +21,26 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.db.TransactionStore;
+import org.h2.mvstore.type.ObjectDataType;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.FileUtil;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.schematic.SchematicDb;
 import org.modeshape.schematic.SchematicEntry;
+import org.modeshape.schematic.codec.Codec;
 import org.modeshape.schematic.document.Document;
 import org.modeshape.schematic.document.EditableDocument;
+import org.modeshape.schematic.internal.document.MutableDocument;
 
 /**
  * {@link SchematicDb} implementation which uses H2's MV Store to store data in memory or on disk.
@@ -51,24 +57,45 @@ public class FileDb implements SchematicDb {
 
     private final boolean compress;
     private final String path;
+    private final Codec codec;
+    private final boolean lazyDocuments;
     
     private final ConcurrentMap<String, TransactionStore.TransactionMap<String, Document>> transactionalContentById = new ConcurrentHashMap<>();
 
     private MVStore store;
     private TransactionStore txStore; 
+    private DocumentDataType documentType;
     private TransactionStore.TransactionMap<String, Document> persistedContent;
     
     protected static FileDb inMemory(boolean compress) {
-        return new FileDb(null, compress);
+        return inMemory(compress, null);
+    }    
+
+    protected static FileDb inMemory(boolean compress, Codec codec) {
+        return inMemory(compress, codec, false);
+    }    
+
+    protected static FileDb inMemory(boolean compress, Codec codec, boolean lazyDocuments) {
+        return new FileDb(null, compress, codec, lazyDocuments);
     }    
 
     protected static FileDb onDisk(boolean compress, String path) {
+        return onDisk(compress, path, null);
+    }    
+
+    protected static FileDb onDisk(boolean compress, String path, Codec codec) {
+        return onDisk(compress, path, codec, false);
+    }    
+
+    protected static FileDb onDisk(boolean compress, String path, Codec codec, boolean lazyDocuments) {
         path = Objects.requireNonNull(path, "The 'path' configuration parameter is required by the FS persistence provider");
-        return new FileDb(path, compress);
+        return new FileDb(path, compress, codec, lazyDocuments);
     }    
     
-    private FileDb( String path, boolean compress ) {
+    private FileDb( String path, boolean compress, Codec codec, boolean lazyDocuments ) {
         this.path = path;
+        this.codec = codec;
+        this.lazyDocuments = lazyDocuments;
         this.compress = compress;
     }
 
@@ -89,6 +116,43 @@ public class FileDb implements SchematicDb {
         return keys;
     }
 
+    @Override
+    public void keysInBatches( int batchSize, Consumer<List<String>> consumer ) {
+        inBatches(persistedContent.keyIterator(persistedContent.firstKey()), batchSize, consumer);
+    }
+
+    @Override
+    public void entriesInBatches( int batchSize, Consumer<List<SchematicEntry>> consumer ) {
+        Iterator<Map.Entry<String, Document>> entries = persistedContent.entryIterator(persistedContent.firstKey());
+        Iterator<SchematicEntry> iterator = new Iterator<SchematicEntry>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public SchematicEntry next() {
+                Document document = entries.next().getValue();
+                return () -> document;
+            }
+        };
+        inBatches(iterator, batchSize, consumer);
+    }
+
+    private <T> void inBatches( Iterator<T> iterator, int batchSize, Consumer<List<T>> consumer ) {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() == batchSize) {
+                consumer.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
     @Override
     public Document get( String key ) {
         LOGGER.debug("reading {0}", key);
@@ -139,8 +203,9 @@ public class FileDb implements SchematicDb {
             return null;
         } 
         
-        if (!txContent.isSameTransaction(key)) {
-            // this transaction is processing this key for the first time, so we need to clone it
+        if (!txContent.isSameTransaction(key) || !(existingTxDoc instanceof MutableDocument)) {
+            // this transaction is processing this key for the first time (or the document is a read-only view), 
+            // so we need to clone it
             existingTxDoc = existingTxDoc.clone();
             if (!txContent.trySet(key, existingTxDoc, true)) {
                 throw new FileProviderException("cannot write new value for the first time");
@@ -198,11 +263,13 @@ public class FileDb implements SchematicDb {
             builder.fileName(path + "/" + FILENAME);
         }
         this.store = builder.open();
-        this.txStore = new TransactionStore(store);
+        // when a codec is configured, documents are stored as encoded BSON instead of using Java serialization
+        this.documentType = codec != null ? new DocumentDataType(codec, lazyDocuments) : null;
+        this.txStore = documentType != null ? new TransactionStore(store, documentType) : new TransactionStore(store);
         this.txStore.init();
         // start a new transaction (which has READ_COMMITTED isolation) which will give us the view of the latest persisted data
         TransactionStore.Transaction tx = this.txStore.begin();
-        this.persistedContent = tx.openMap(REPOSITORY_CONTENT);
+        this.persistedContent = openContent(tx);
     }
 
     @Override
@@ -212,11 +279,18 @@ public class FileDb implements SchematicDb {
         this.store.close();
     }
 
+    private TransactionStore.TransactionMap<String, Document> openContent( TransactionStore.Transaction tx ) {
+        if (documentType == null) {
+            return tx.openMap(REPOSITORY_CONTENT);
+        }
+        return tx.openMap(REPOSITORY_CONTENT, new ObjectDataType(), documentType);
+    }
+
     @Override
     public void txStarted( String id ) {
         LOGGER.debug("New tx '{0}' started...", id);
         ACTIVE_TX_ID.set(id);
-        this.transactionalContentById.putIfAbsent(id, this.txStore.begin().openMap(REPOSITORY_CONTENT));
+        this.transactionalContentById.putIfAbsent(id, openContent(this.txStore.begin()));
     }
 
     @Override
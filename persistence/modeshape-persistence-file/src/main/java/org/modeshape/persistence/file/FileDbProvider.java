@@ -15,8 +15,13 @@
  */
 package org.modeshape.persistence.file;
 
+import java.io.File;
+import java.io.IOException;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.IoUtil;
 import org.modeshape.schematic.SchematicDbProvider;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
 import org.modeshape.schematic.document.Document;
 
 /**
@@ -31,6 +36,9 @@ public class FileDbProvider implements SchematicDbProvider<FileDb> {
     public static final String TYPE_FILE = "file";
     public static final String PATH_FIELD = "path";
     public static final String COMPRESS_FIELD = "compress";
+    public static final String CODEC_FIELD = "codec";
+    public static final String CODEC_DICTIONARY_FIELD = "codecDictionary";
+    public static final String LAZY_DOCUMENTS_FIELD = "lazyDocuments";
     
     private static final Logger LOGGER = Logger.getLogger(FileDbProvider.class);
 
@@ -38,13 +46,39 @@ public class FileDbProvider implements SchematicDbProvider<FileDb> {
     public FileDb getDB( String type, Document configuration ) {
         if (TYPE_MEM.equalsIgnoreCase(type)) {
             LOGGER.debug("Returning new in-memory schematic DB...");
-            return FileDb.inMemory(configuration.getBoolean(COMPRESS_FIELD, false));
+            return FileDb.inMemory(configuration.getBoolean(COMPRESS_FIELD, false), codec(configuration), 
+                                  lazyDocuments(configuration));
         } else if (TYPE_FILE.equalsIgnoreCase(type)) {
             boolean compress = configuration.getBoolean(COMPRESS_FIELD, true);
             String path = configuration.getString(PATH_FIELD, null);
             LOGGER.debug("Returning new disk schematic DB at {0}...", path);
-            return FileDb.onDisk(compress, path);
+            return FileDb.onDisk(compress, path, codec(configuration), lazyDocuments(configuration));
         }
         return null;
     }
+
+    private boolean lazyDocuments( Document configuration ) {
+        // lazily decoded documents require documents to be stored as BSON, so they're only used together with a codec
+        return configuration.getBoolean(LAZY_DOCUMENTS_FIELD, false);
+    }
+
+    private Codec codec( Document configuration ) {
+        String name = configuration.getString(CODEC_FIELD, null);
+        if (name == null) {
+            return null;
+        }
+        if (!Codecs.ZSTD_DICTIONARY.equalsIgnoreCase(name)) {
+            return Codecs.forName(name);
+        }
+        String dictionaryPath = configuration.getString(CODEC_DICTIONARY_FIELD, null);
+        if (dictionaryPath == null) {
+            throw new FileProviderException("The '" + name + "' codec requires the path to a dictionary file, configured via the '" +
+                                            CODEC_DICTIONARY_FIELD + "' field");
+        }
+        try {
+            return Codecs.zstdWithDictionary(IoUtil.readBytes(new File(dictionaryPath)));
+        } catch (IOException e) {
+            throw new FileProviderException(e);
+        }
+    }
 }
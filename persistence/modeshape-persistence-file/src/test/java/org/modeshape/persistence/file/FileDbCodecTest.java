@@ -0,0 +1,82 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.file;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.modeshape.common.util.FileUtil;
+import org.modeshape.schematic.AbstractSchematicDBTest;
+import org.modeshape.schematic.SchematicDb;
+import org.modeshape.schematic.SchematicEntry;
+import org.modeshape.schematic.codec.Codecs;
+
+/**
+ * Unit test for {@link FileDb} when documents are stored on disk using a codec.
+ */
+public class FileDbCodecTest extends AbstractSchematicDBTest {
+
+    private static final SchematicDb DB = FileDb.onDisk(false, "target/fstest-codec", Codecs.forName(Codecs.LZ4));
+
+    @Override
+    protected SchematicDb getDb() throws Exception {
+        return DB;
+    }
+
+    @Override
+    public void after() throws Exception {
+        simulateTransaction(() -> {
+            db.removeAll();
+            return null;
+        });
+        super.after();
+    }
+
+    @Test
+    public void shouldReadDocumentsWrittenBeforeCodecWasConfigured() throws Exception {
+        String path = "target/fstest-legacy";
+        FileUtil.delete(path);
+        SchematicEntry entry = SchematicEntry.create("legacy", DEFAULT_CONTENT);
+        FileDb legacyDb = FileDb.onDisk(false, path);
+        legacyDb.start();
+        try {
+            legacyDb.txStarted("0");
+            legacyDb.put(entry.id(), entry.content());
+            legacyDb.txCommitted("0");
+        } finally {
+            legacyDb.stop();
+        }
+
+        FileDb codecDb = FileDb.onDisk(false, path, Codecs.forName(Codecs.ZSTD));
+        codecDb.start();
+        try {
+            assertEquals(entry.content(), codecDb.getEntry(entry.id()).content());
+            // update the document, which is now written using the codec
+            codecDb.txStarted("1");
+            codecDb.put(entry.id(), entry.content());
+            codecDb.txCommitted("1");
+        } finally {
+            codecDb.stop();
+        }
+
+        codecDb = FileDb.onDisk(false, path, Codecs.forName(Codecs.ZSTD));
+        codecDb.start();
+        try {
+            assertEquals(entry.content(), codecDb.getEntry(entry.id()).content());
+        } finally {
+            codecDb.stop();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import org.modeshape.common.util.FileUtil;
+import org.modeshape.schematic.AbstractSchematicDBTest;
+import org.modeshape.schematic.SchematicDb;
+import org.modeshape.schematic.SchematicEntry;
+import org.modeshape.schematic.codec.Codecs;
+import org.modeshape.schematic.document.EditableDocument;
+import org.modeshape.schematic.internal.document.MutableDocument;
+
+/**
+ * Unit test for {@link FileDb} when documents are read as lazily decoded, read-only views.
+ */
+public class FileDbLazyDocumentsTest extends AbstractSchematicDBTest {
+
+    private static final SchematicDb DB = FileDb.onDisk(false, "target/fstest-lazy", Codecs.forName(Codecs.LZ4), true);
+
+    @Override
+    protected SchematicDb getDb() throws Exception {
+        return DB;
+    }
+
+    @Override
+    public void after() throws Exception {
+        simulateTransaction(() -> {
+            db.removeAll();
+            return null;
+        });
+        super.after();
+    }
+
+    @Test
+    public void shouldEditDocumentsReadLazily() throws Exception {
+        String path = "target/fstest-lazy-reopen";
+        FileUtil.delete(path);
+        SchematicEntry entry = SchematicEntry.create("lazy", DEFAULT_CONTENT);
+        FileDb lazyDb = FileDb.onDisk(false, path, Codecs.forName(Codecs.LZ4), true);
+        lazyDb.start();
+        try {
+            lazyDb.txStarted("0");
+            lazyDb.put(entry.id(), entry.content());
+            lazyDb.txCommitted("0");
+        } finally {
+            lazyDb.stop();
+        }
+
+        // documents which are loaded from the store are read-only views, but can still be edited
+        lazyDb = FileDb.onDisk(false, path, Codecs.forName(Codecs.LZ4), true);
+        lazyDb.start();
+        try {
+            assertFalse(lazyDb.getEntry(entry.id()).source() instanceof MutableDocument);
+            assertEquals(entry.content(), lazyDb.getEntry(entry.id()).content());
+            lazyDb.txStarted("1");
+            EditableDocument editable = lazyDb.editContent(entry.id(), false);
+            editable.setString("lazy", "edited");
+            lazyDb.txCommitted("1");
+            assertEquals("edited", lazyDb.getEntry(entry.id()).content().getString("lazy"));
+        } finally {
+            lazyDb.stop();
+        }
+    }
+}
@@ -15,26 +15,36 @@
  */
 package org.modeshape.persistence.relational;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
 import org.modeshape.schematic.document.Bson;
 import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.MutableDocument;
 
 /**
  * Default implementation for the {@link Statements} interface which applies to all databases.
@@ -44,6 +54,9 @@ import org.modeshape.schematic.document.Document;
  */
 public class DefaultStatements implements Statements {
     
+    private static final int MAX_DELTA_INSERT_ATTEMPTS = 10;
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
     protected final Logger logger = Logger.getLogger(getClass());
     
     private final Map<String, String> statements;
@@ -56,43 +69,72 @@ public class DefaultStatements implements Statements {
 
     @Override
     public Void createTable( Connection connection ) throws SQLException {
-        logTableInfo("Creating table {0}...");
-        try (PreparedStatement createStmt = connection.prepareStatement(statements.get(CREATE_TABLE))) {
+        createTable(connection, CREATE_TABLE, tableName());
+        if (config.deltaPersistence()) {
+            createTable(connection, CREATE_DELTA_TABLE, deltaTableName());
+        }
+        return null;
+    }
+
+    protected void createTable( Connection connection, String statementKey, String tableName ) throws SQLException {
+        logTableInfo("Creating table {0}...", tableName);
+        try (PreparedStatement createStmt = connection.prepareStatement(statements.get(statementKey))) {
             if (createStmt.executeUpdate() > 0) {
-                logTableInfo("Table {0} created");
+                logTableInfo("Table {0} created", tableName);
             } else {
-                logTableInfo("Table {0} already exists");
+                logTableInfo("Table {0} already exists", tableName);
             }
         }
-        return null;
     }
 
     @Override
     public Void dropTable( Connection connection ) throws SQLException {
-        logTableInfo("Dropping table {0}...");
-        try (PreparedStatement createStmt = connection.prepareStatement(statements.get(DELETE_TABLE))) {
+        if (config.deltaPersistence()) {
+            dropTable(connection, DELETE_DELTA_TABLE, deltaTableName());
+        }
+        dropTable(connection, DELETE_TABLE, tableName());
+        return null;
+    }
+
+    protected void dropTable( Connection connection, String statementKey, String tableName ) throws SQLException {
+        logTableInfo("Dropping table {0}...", tableName);
+        try (PreparedStatement createStmt = connection.prepareStatement(statements.get(statementKey))) {
             if (createStmt.executeUpdate() > 0) {
-                logTableInfo("Table {0} dropped");
+                logTableInfo("Table {0} dropped", tableName);
             } else {
-                logTableInfo("Table {0} does not exist");
+                logTableInfo("Table {0} does not exist", tableName);
             }
         }
-        return null;
     }
 
     @Override
     public List<String> getAllIds(Connection connection) throws SQLException {
+        List<String> result = new ArrayList<>();
+        getAllIds(connection, config.fetchSize(), result::addAll);
+        return result;
+    }
+
+    @Override
+    public Void getAllIds( Connection connection, int batchSize, Consumer<List<String>> consumer ) throws SQLException {
         logTableInfo("Returning all ids from {0}");
-        try (PreparedStatement ps = connection.prepareStatement(statements.get(GET_ALL_IDS))) {
-            List<String> result = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(statements.get(GET_ALL_IDS), ResultSet.TYPE_FORWARD_ONLY,
+                                                                ResultSet.CONCUR_READ_ONLY)) {
             ps.setFetchSize(config.fetchSize());
             try (ResultSet rs = ps.executeQuery()) {
+                List<String> batch = new ArrayList<>(batchSize);
                 while (rs.next()) {
-                    result.add(rs.getString(1));                    
+                    batch.add(rs.getString(1));
+                    if (batch.size() == batchSize) {
+                        consumer.accept(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    consumer.accept(batch);
                 }
             }
-            return result;
         }
+        return null;
     }
 
     @Override
@@ -100,13 +142,36 @@ public class DefaultStatements implements Statements {
         if (logger.isDebugEnabled()) {
             logger.debug("Searching for entry by id {0} in {1}", id, tableName());
         }
+        if (config.deltaPersistence()) {
+            return getByIdWithDeltas(connection, id);
+        }
         try (PreparedStatement ps = connection.prepareStatement(statements.get(GET_BY_ID))) {
             ps.setString(1, id);
             try (ResultSet rs = ps.executeQuery()) {
                 if (!rs.next()) {
                     return null;
                 }
-                return readDocument(rs.getBinaryStream(1));
+                return readDocument(rs.getBinaryStream(1), readLazily());
+            }
+        }
+    }
+
+    private Document getByIdWithDeltas( Connection connection, String id ) throws SQLException {
+        // the document and its deltas are read by the same statement, so that a concurrent compaction (which folds the deltas
+        // into the document and then removes them) can never be observed half-way
+        try (PreparedStatement ps = connection.prepareStatement(statements.get(GET_BY_ID_WITH_DELTAS))) {
+            ps.setString(1, id);
+            ps.setString(2, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getLong(1) != 0) {
+                    // either nothing at all or only the deltas of a removed document
+                    return null;
+                }
+                Document document = readDocument(rs.getBinaryStream(2));
+                while (rs.next()) {
+                    DocumentDeltas.apply(readDocument(rs.getBinaryStream(2)), (MutableDocument) document);
+                }
+                return document;
             }
         }
     }
@@ -116,35 +181,70 @@ public class DefaultStatements implements Statements {
         if (logger.isDebugEnabled()) {
             logger.debug("Loading ids {0} from {1}", ids.toString(), tableName());
         }
-        String getMultipleStatement = statements.get(GET_MULTIPLE);
+        boolean withDeltas = config.deltaPersistence();
+        String getMultipleStatement = statements.get(withDeltas ? GET_MULTIPLE_WITH_DELTAS : GET_MULTIPLE);
         int batchLoadSize = batchLoadSize();
         List<R> results = new ArrayList<>();
         runBatchOperation(connection, getMultipleStatement, ids, batchLoadSize,
-                          ( dbConnection, statement, startIdx1, endIdx1, data ) -> results.addAll(loadIDs(dbConnection, statement,
-                                                                                                         startIdx1, endIdx1,
-                                                                                                          ids, parser)));
+                          ( dbConnection, statement, startIdx1, endIdx1, data ) -> {
+                              List<String> sublist = ids.subList(startIdx1, endIdx1);
+                              List<Document> documents = withDeltas ?
+                                                         loadIDsWithDeltas(dbConnection, statement, sublist) :
+                                                         loadIDs(dbConnection, statement, sublist);
+                              documents.stream().map(parser).forEach(results::add);
+                          });
         return results;
     }
                     
-    private <R> List<R> loadIDs( Connection connection, String statement, int startIdx, int endIdx, List<String> ids,
-                                 Function<Document, R> parser) throws SQLException {
-        List<String> sublist = ids.subList(startIdx, endIdx);
-        String params = sublist.stream().map(id -> "?").collect(Collectors.joining(","));
+    private List<Document> loadIDs( Connection connection, String statement, List<String> ids ) throws SQLException {
+        String params = ids.stream().map(id -> "?").collect(Collectors.joining(","));
         String statementString = statement.replaceAll("#", params);
         try (PreparedStatement ps = connection.prepareStatement(statementString)) {
             AtomicInteger counter = new AtomicInteger(1);
-            for (String id : sublist) {
+            for (String id : ids) {
                 ps.setString(counter.getAndIncrement(), id);
             }
             
+            List<Document> documents = new ArrayList<>();
             try (ResultSet rs = ps.executeQuery()) {
-                List<R> results = new ArrayList<>();
                 while (rs.next()) {
-                    Document document = readDocument(rs.getBinaryStream(1));
-                    results.add(parser.apply(document));
+                    documents.add(readDocument(rs.getBinaryStream(1), readLazily()));
                 }
-                return results;
             }
+            return documents;
+        }
+    }
+
+    private List<Document> loadIDsWithDeltas( Connection connection, String statement, List<String> ids ) throws SQLException {
+        String params = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+        String statementString = statement.replaceAll("#", params);
+        try (PreparedStatement ps = connection.prepareStatement(statementString)) {
+            // the ids are bound once for the documents and once for their deltas
+            AtomicInteger counter = new AtomicInteger(1);
+            for (String id : ids) {
+                ps.setString(counter.getAndIncrement(), id);
+            }
+            for (String id : ids) {
+                ps.setString(counter.getAndIncrement(), id);
+            }
+
+            List<Document> documents = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                // the rows are ordered by id, and the document itself (with sequence 0) precedes its deltas
+                String documentId = null;
+                Document document = null;
+                while (rs.next()) {
+                    String id = rs.getString(1);
+                    if (rs.getLong(2) == 0) {
+                        documentId = id;
+                        document = readDocument(rs.getBinaryStream(3));
+                        documents.add(document);
+                    } else if (id.equals(documentId)) {
+                        DocumentDeltas.apply(readDocument(rs.getBinaryStream(3)), (MutableDocument) document);
+                    }
+                }
+            }
+            return documents;
         }
     }
                     
@@ -172,16 +272,86 @@ public class DefaultStatements implements Statements {
         try (PreparedStatement ps = connection.prepareStatement(statements.get(REMOVE_ALL_CONTENT))) {
             ps.executeUpdate();
         }
+        if (config.deltaPersistence()) {
+            try (PreparedStatement ps = connection.prepareStatement(statements.get(REMOVE_ALL_DELTAS))) {
+                ps.executeUpdate();
+            }
+        }
         return null;
     }
+
+    @Override
+    public List<String> getIdsWithDeltas( Connection connection, int minDeltas ) throws SQLException {
+        logTableInfo("Returning the ids of the documents with pending deltas from {0}", deltaTableName());
+        try (PreparedStatement ps = connection.prepareStatement(statements.get(GET_IDS_WITH_DELTAS))) {
+            ps.setInt(1, minDeltas);
+            ps.setFetchSize(config.fetchSize());
+            List<String> result = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public int compactDeltas( Connection connection, String id ) throws SQLException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compacting the deltas of {0} from {1}", id, deltaTableName());
+        }
+        // lock the document row first, so that nobody else can compact or rewrite this document until we're done
+        Document document;
+        try (PreparedStatement ps = connection.prepareStatement(statements.get(LOCK_CONTENT))) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                document = readDocument(rs.getBinaryStream(1));
+            }
+        }
+        long lastSequence = -1;
+        int count = 0;
+        try (PreparedStatement ps = connection.prepareStatement(statements.get(GET_DELTAS_BY_ID))) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    lastSequence = rs.getLong(1);
+                    DocumentDeltas.apply(readDocument(rs.getBinaryStream(2)), (MutableDocument) document);
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        try (PreparedStatement update = connection.prepareStatement(statements.get(UPDATE_CONTENT))) {
+            update.setBytes(1, writeDocument(document));
+            update.setString(2, id);
+            update.executeUpdate();
+        }
+        // deltas added after we've read them are relative to the compacted document, so they must be kept
+        try (PreparedStatement remove = connection.prepareStatement(statements.get(REMOVE_DELTAS_UP_TO))) {
+            remove.setString(1, id);
+            remove.setLong(2, lastSequence);
+            remove.executeUpdate();
+        }
+        return count;
+    }
     
     protected int batchLoadSize() {
         return 500;
     }
    
     protected void logTableInfo( String message ) {
+        logTableInfo(message, tableName());
+    }
+
+    protected void logTableInfo( String message, String tableName ) {
         if (logger.isDebugEnabled()) {
-            logger.debug(message, tableName());
+            logger.debug(message, tableName);
         }
     }
 
@@ -189,9 +359,42 @@ public class DefaultStatements implements Statements {
         return config.tableName();
     }
 
+    protected String deltaTableName() {
+        return config.tableName() + "_DELTA";
+    }
+
     protected Document readDocument(InputStream is) {
-        try (InputStream contentStream = config.compress() ? new GZIPInputStream(is) : is) {
-            return Bson.read(contentStream);
+        return readDocument(is, false);
+    }
+
+    /**
+     * Whether the documents which are returned to callers (and are not changed by this class) can be read-only views.
+     * 
+     * @return {@code true} if such documents should be decoded lazily
+     */
+    protected boolean readLazily() {
+        // change records are applied to the documents after they are read, so those have to be mutable
+        return config.lazyDocuments() && !config.deltaPersistence();
+    }
+
+    protected Document readDocument(InputStream is, boolean lazily) {
+        try (InputStream contentStream = new BufferedInputStream(is)) {
+            // documents written by a codec are self-describing, the others depend on the "compress" flag
+            contentStream.mark(Codecs.HEADER_LENGTH);
+            byte[] header = new byte[Codecs.HEADER_LENGTH];
+            int headerLength = 0;
+            int read;
+            while (headerLength < header.length &&
+                   (read = contentStream.read(header, headerLength, header.length - headerLength)) != -1) {
+                headerLength += read;
+            }
+            contentStream.reset();
+            if (headerLength == header.length && Codecs.isEncoded(header)) {
+                return Codecs.readDocument(IoUtil.readBytes(contentStream), config.codec(), lazily);
+            }
+            try (InputStream legacyStream = config.compress() ? new GZIPInputStream(contentStream) : contentStream) {
+                return lazily ? Bson.read(ByteBuffer.wrap(IoUtil.readBytes(legacyStream))) : Bson.read(legacyStream);
+            }
         } catch (IOException e) {
             throw new RelationalProviderException(e);
         }
@@ -199,6 +402,10 @@ public class DefaultStatements implements Statements {
 
     protected byte[] writeDocument(Document content)  {
         try {
+            Codec codec = config.codec();
+            if (codec != null) {
+                return Codecs.writeDocument(content, codec);
+            }
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
             try (OutputStream out = config.compress() ? new GZIPOutputStream(bos) : bos) {
                 Bson.write(content, out);
@@ -278,6 +485,94 @@ public class DefaultStatements implements Statements {
                 updateDocument(update, id, document);
             });
             update.executeBatch();
+            if (config.deltaPersistence() && !documentsById.isEmpty()) {
+                // the entire document has been rewritten, so any previous deltas are obsolete
+                removeDeltas(new ArrayList<>(documentsById.keySet()));
+            }
+        }
+
+        @Override
+        public void updateDeltas( Map<String, Document> changesById ) throws SQLException {
+            if (changesById.isEmpty()) {
+                return;
+            }
+            // another transaction may append a delta to the same document between reading the last sequence numbers and
+            // inserting the new deltas, in which case the primary key rejects the duplicate sequence number and the deltas are
+            // simply numbered again from the (now committed) last sequence numbers
+            for (int attempt = 1; ; attempt++) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    insertDeltas(changesById);
+                    return;
+                } catch (SQLException e) {
+                    connection.rollback(savepoint);
+                    if (attempt >= MAX_DELTA_INSERT_ATTEMPTS || !isDuplicateKey(e)) {
+                        throw e;
+                    }
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Conflicting delta sequence numbers for {0}; retrying (attempt {1})", changesById.keySet(),
+                                     attempt);
+                    }
+                }
+            }
+        }
+
+        private void insertDeltas( Map<String, Document> changesById ) throws SQLException {
+            List<String> ids = new ArrayList<>(changesById.keySet());
+            Map<String, Long> lastSequences = new HashMap<>();
+            runBatchOperation(connection, statements.get(GET_LAST_DELTA_SEQUENCES), ids, batchLoadSize(),
+                              ( dbConnection, statement, startIdx, endIdx, data ) -> 
+                                      lastSequences.putAll(lastDeltaSequences(dbConnection, statement, 
+                                                                              data.subList(startIdx, endIdx))));
+            String sql = statements.get(INSERT_DELTA);
+            try (PreparedStatement insert = connection.prepareStatement(sql)) {
+                for (Map.Entry<String, Document> entry : changesById.entrySet()) {
+                    String id = entry.getKey();
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("adding batch statement: {0}", sql.replaceFirst("\\?", id));
+                    }
+                    insert.setString(1, id);
+                    insert.setLong(2, lastSequences.getOrDefault(id, 0L) + 1);
+                    insert.setBytes(3, writeDocument(entry.getValue()));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+
+        private boolean isDuplicateKey( SQLException e ) {
+            // the exception chain of a batch holds the failures of the individual statements
+            for (Throwable t : e) {
+                if (t instanceof SQLIntegrityConstraintViolationException) {
+                    return true;
+                }
+                if (t instanceof SQLException) {
+                    String state = ((SQLException) t).getSQLState();
+                    if (state != null && state.startsWith(INTEGRITY_CONSTRAINT_VIOLATION)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private Map<String, Long> lastDeltaSequences( Connection connection, String statement, List<String> ids )
+                throws SQLException {
+            String params = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+            String statementString = statement.replaceAll("#", params);
+            try (PreparedStatement ps = connection.prepareStatement(statementString)) {
+                AtomicInteger counter = new AtomicInteger(1);
+                for (String id : ids) {
+                    ps.setString(counter.getAndIncrement(), id);
+                }
+                Map<String, Long> result = new HashMap<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.put(rs.getString(1), rs.getLong(2));
+                    }
+                }
+                return result;
+            }
         }
 
         protected void updateDocument(PreparedStatement statement, String id, Document document) {
@@ -295,6 +590,13 @@ public class DefaultStatements implements Statements {
         public void remove( List<String> ids ) throws SQLException {
             String sql = statements.get(REMOVE_CONTENT);
             runBatchOperation(connection, sql, ids, batchLoadSize(), this::batchRemove);    
+            if (config.deltaPersistence()) {
+                removeDeltas(ids);
+            }
+        }
+
+        private void removeDeltas( List<String> ids ) throws SQLException {
+            runBatchOperation(connection, statements.get(REMOVE_DELTAS), ids, batchLoadSize(), this::batchRemove);
         }
 
         private void batchRemove( Connection connection, String statement, int startIdx, int endIdx, List<String> ids )
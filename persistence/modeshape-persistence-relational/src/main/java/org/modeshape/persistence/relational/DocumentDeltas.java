@@ -0,0 +1,191 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.relational;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.modeshape.schematic.document.Array;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.Path;
+import org.modeshape.schematic.internal.delta.AddValueOperation;
+import org.modeshape.schematic.internal.delta.Operation;
+import org.modeshape.schematic.internal.delta.PutOperation;
+import org.modeshape.schematic.internal.delta.RemoveOperation;
+import org.modeshape.schematic.internal.document.BasicArray;
+import org.modeshape.schematic.internal.document.BasicDocument;
+import org.modeshape.schematic.internal.document.BsonUtils;
+import org.modeshape.schematic.internal.document.MutableDocument;
+import org.modeshape.schematic.internal.document.Paths;
+
+/**
+ * Utility which computes, encodes and replays the changes made to a document during a transaction, as a list of
+ * {@link Operation operations}. This is used by {@link RelationalDb} when delta persistence is enabled so that an update only
+ * writes the fields which have changed instead of the entire document.
+ * <p>
+ * A change record is a {@link Document} with a single {@link #OPERATIONS} array, where each element describes one operation:
+ * <pre>
+ *     { "op" : "put", "path" : [ "content" ], "field" : "name", "value" : ... }
+ *     { "op" : "remove", "path" : [ "content" ], "field" : "name" }
+ *     { "op" : "add", "path" : [ "content", "children" ], "value" : ... }
+ * </pre>
+ * </p>
+ *
+ * @since 5.1
+ */
+public final class DocumentDeltas {
+
+    protected static final String OPERATIONS = "ops";
+
+    private static final String OPERATION_TYPE = "op";
+    private static final String PATH = "path";
+    private static final String FIELD = "field";
+    private static final String VALUE = "value";
+
+    private static final String PUT = "put";
+    private static final String REMOVE = "remove";
+    private static final String ADD = "add";
+
+    private DocumentDeltas() {
+    }
+
+    /**
+     * Computes the list of operations which, when replayed on the {@code original} document, produce the {@code changed}
+     * document. Nested documents are compared field by field and arrays which have only been appended to are described by
+     * {@link AddValueOperation}s; any other change is described by either a {@link PutOperation} or a {@link RemoveOperation}.
+     *
+     * @param original the document as it was read from the database; may not be null
+     * @param changed the document as it should be persisted; may not be null
+     * @return the list of operations, never {@code null} but empty if the two documents are equal
+     */
+    protected static List<Operation> diff( Document original, Document changed ) {
+        List<Operation> operations = new ArrayList<>();
+        diff(Paths.rootPath(), original, changed, operations);
+        return operations;
+    }
+
+    private static void diff( Path path, Document original, Document changed, List<Operation> operations ) {
+        for (Document.Field field : changed.fields()) {
+            String name = field.getName();
+            Object newValue = field.getValue();
+            if (!original.containsField(name)) {
+                operations.add(new PutOperation(path, name, null, newValue));
+                continue;
+            }
+            Object oldValue = original.get(name);
+            if (BsonUtils.valuesAreEqual(oldValue, newValue)) {
+                continue;
+            }
+            if (oldValue instanceof Array && newValue instanceof Array) {
+                diffArrays(path, name, (Array) oldValue, (Array) newValue, operations);
+            } else if (oldValue instanceof Document && !(oldValue instanceof Array) &&
+                       newValue instanceof Document && !(newValue instanceof Array)) {
+                diff(path.with(name), (Document) oldValue, (Document) newValue, operations);
+            } else {
+                operations.add(new PutOperation(path, name, oldValue, newValue));
+            }
+        }
+        for (String name : original.keySet()) {
+            if (!changed.containsField(name)) {
+                operations.add(new RemoveOperation(path, name, original.get(name)));
+            }
+        }
+    }
+
+    private static void diffArrays( Path path, String name, Array original, Array changed, List<Operation> operations ) {
+        int originalSize = original.size();
+        boolean appendOnly = changed.size() > originalSize;
+        for (int i = 0; appendOnly && i < originalSize; i++) {
+            appendOnly = BsonUtils.valuesAreEqual(original.get(i), changed.get(i));
+        }
+        if (!appendOnly) {
+            operations.add(new PutOperation(path, name, original, changed));
+            return;
+        }
+        Path arrayPath = path.with(name);
+        for (int i = originalSize; i < changed.size(); i++) {
+            operations.add(new AddValueOperation(arrayPath, changed.get(i)));
+        }
+    }
+
+    /**
+     * Encodes a list of operations into a change record document.
+     *
+     * @param operations the list of operations produced by {@link #diff(Document, Document)}; may not be null
+     * @return the change record, never {@code null}
+     */
+    protected static Document encode( List<Operation> operations ) {
+        BasicArray encoded = new BasicArray(operations.size());
+        for (Operation operation : operations) {
+            BasicDocument op = new BasicDocument();
+            op.put(PATH, new BasicArray(pathSegments(operation.getParentPath())));
+            if (operation instanceof PutOperation) {
+                PutOperation put = (PutOperation) operation;
+                op.put(OPERATION_TYPE, PUT);
+                op.put(FIELD, put.getFieldName());
+                op.put(VALUE, put.getNewValue());
+            } else if (operation instanceof RemoveOperation) {
+                op.put(OPERATION_TYPE, REMOVE);
+                op.put(FIELD, ((RemoveOperation) operation).getFieldName());
+            } else if (operation instanceof AddValueOperation) {
+                op.put(OPERATION_TYPE, ADD);
+                op.put(VALUE, ((AddValueOperation) operation).getValue());
+            } else {
+                throw new IllegalArgumentException("Unsupported operation: " + operation);
+            }
+            encoded.addValue(op);
+        }
+        return new BasicDocument(OPERATIONS, encoded);
+    }
+
+    /**
+     * Replays the operations from a change record on top of the given document.
+     *
+     * @param changes a change record produced by {@link #encode(List)}; may not be null
+     * @param document the document which should be updated; may not be null
+     */
+    protected static void apply( Document changes, MutableDocument document ) {
+        for (Object value : changes.getArray(OPERATIONS)) {
+            decode((Document) value).replay(document);
+        }
+    }
+
+    private static Operation decode( Document op ) {
+        List<String> segments = new ArrayList<>();
+        op.getArray(PATH).forEach(segment -> segments.add(segment.toString()));
+        Path path = Paths.path(segments);
+        String type = op.getString(OPERATION_TYPE);
+        switch (type) {
+            case PUT: {
+                return new PutOperation(path, op.getString(FIELD), null, op.get(VALUE));
+            }
+            case REMOVE: {
+                return new RemoveOperation(path, op.getString(FIELD), null);
+            }
+            case ADD: {
+                return new AddValueOperation(path, op.get(VALUE));
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown operation type: " + type);
+            }
+        }
+    }
+
+    private static List<Object> pathSegments( Path path ) {
+        List<Object> segments = new ArrayList<>(path.size());
+        path.forEach(segments::add);
+        return segments;
+    }
+}
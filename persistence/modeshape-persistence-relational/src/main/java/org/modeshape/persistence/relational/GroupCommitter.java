@@ -0,0 +1,301 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.relational;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.NamedThreadFactory;
+
+/**
+ * Component which merges the changes of concurrently committing transactions into a single database transaction, so that the
+ * cost of a database commit (typically an fsync) is shared by all of them.
+ * <p>
+ * Each committing thread {@link #commit(TransactionChanges) submits} its changes and blocks until they are durably stored.
+ * A single background thread collects the submitted changes for at most {@link RelationalDbConfig#groupCommitWindowMillis()}
+ * (or until {@link RelationalDbConfig#groupCommitMaxBatchSize()} transactions are waiting), writes them using one connection
+ * and commits once. If the shared commit fails, each transaction from the group is retried on its own so that a failure
+ * is only reported to the transaction which caused it.
+ * </p>
+ *
+ * @since 5.1
+ */
+@ThreadSafe
+public final class GroupCommitter {
+
+    private static final Logger LOGGER = Logger.getLogger(GroupCommitter.class);
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final DataSourceManager dsManager;
+    private final Statements statements;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingCommit> queue;
+    private final NamedThreadFactory threadFactory;
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong maxGroupSize = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private volatile boolean running;
+    private Thread flusher;
+
+    protected GroupCommitter( DataSourceManager dsManager, Statements statements, RelationalDbConfig config ) {
+        this.dsManager = dsManager;
+        this.statements = statements;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(config.groupCommitWindowMillis());
+        this.maxBatchSize = config.groupCommitMaxBatchSize();
+        this.queue = new LinkedBlockingQueue<>();
+        this.threadFactory = new NamedThreadFactory("modeshape-db-group-commit");
+    }
+
+    /**
+     * Starts accepting changes. A stopped committer may be started again, in which case it uses a new background thread.
+     */
+    protected synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        flusher = threadFactory.newThread(this::run);
+        flusher.start();
+    }
+
+    /**
+     * Stops accepting new changes, waiting for the changes which have already been submitted to be flushed.
+     */
+    protected synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher = null;
+        // fail anything which may have been submitted while stopping
+        List<PendingCommit> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(pending -> pending.result.completeExceptionally(
+                new IllegalStateException("The group committer has been stopped")));
+    }
+
+    /**
+     * Submits the changes of a transaction and waits until they have been committed to the database.
+     *
+     * @param changes the changes of a transaction; may not be null
+     * @throws RelationalProviderException if the changes could not be committed
+     */
+    protected void commit( TransactionChanges changes ) {
+        if (!running) {
+            throw new IllegalStateException("The group committer is not running");
+        }
+        PendingCommit pending = new PendingCommit(changes);
+        queue.add(pending);
+        try {
+            pending.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RelationalProviderException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RelationalProviderException ? (RelationalProviderException) cause :
+                  new RelationalProviderException(cause);
+        }
+    }
+
+    /**
+     * Returns the number of database transactions used to commit all the groups so far.
+     *
+     * @return the number of groups
+     */
+    public long getGroupCount() {
+        return groups.get();
+    }
+
+    /**
+     * Returns the number of ModeShape transactions committed so far.
+     *
+     * @return the number of transactions
+     */
+    public long getTransactionCount() {
+        return transactions.get();
+    }
+
+    /**
+     * Returns the largest number of transactions committed as part of a single group.
+     *
+     * @return the size of the largest group
+     */
+    public long getMaxGroupSize() {
+        return maxGroupSize.get();
+    }
+
+    /**
+     * Returns the average number of transactions committed as part of a single group.
+     *
+     * @return the average group size
+     */
+    public double getAverageGroupSize() {
+        long groupCount = groups.get();
+        return groupCount == 0 ? 0 : (double) transactions.get() / groupCount;
+    }
+
+    /**
+     * Returns the average time a transaction has waited, from submission until its changes were committed.
+     *
+     * @param unit the unit of the returned value; may not be null
+     * @return the average wait time
+     */
+    public long getAverageWaitTime( TimeUnit unit ) {
+        long transactionCount = transactions.get();
+        return transactionCount == 0 ? 0 : unit.convert(totalWaitNanos.get() / transactionCount, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time a transaction has waited, from submission until its changes were committed.
+     *
+     * @param unit the unit of the returned value; may not be null
+     * @return the maximum wait time
+     */
+    public long getMaxWaitTime( TimeUnit unit ) {
+        return unit.convert(maxWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    private void run() {
+        List<PendingCommit> group = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCommit first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                long deadline = first.submittedAt + windowNanos;
+                while (group.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingCommit next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+                flush(group);
+            } catch (InterruptedException e) {
+                // we only stop once all the pending commits have been flushed
+                Thread.interrupted();
+            } catch (Throwable t) {
+                group.forEach(pending -> pending.result.completeExceptionally(t));
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void flush( List<PendingCommit> group ) {
+        try {
+            write(group);
+            completed(group);
+        } catch (SQLException | RuntimeException e) {
+            if (group.size() == 1) {
+                group.get(0).result.completeExceptionally(e instanceof RelationalProviderException ? e :
+                                                          new RelationalProviderException(e));
+                return;
+            }
+            LOGGER.debug(e, "Group commit of {0} transactions failed; committing each transaction separately", group.size());
+            for (PendingCommit pending : group) {
+                flush(Collections.singletonList(pending));
+            }
+        }
+    }
+
+    private void write( List<PendingCommit> group ) throws SQLException {
+        try (Connection connection = dsManager.newConnection(false, false)) {
+            try {
+                Statements.BatchUpdate batchUpdate = statements.batchUpdate(connection);
+                // merge as many transactions as possible, but make sure that transactions which touch the same documents are
+                // written in the order in which they were submitted
+                TransactionChanges merged = new TransactionChanges();
+                for (PendingCommit pending : group) {
+                    if (merged.overlaps(pending.changes)) {
+                        merged.writeTo(batchUpdate);
+                        merged = new TransactionChanges();
+                    }
+                    merged.merge(pending.changes);
+                }
+                if (!merged.isEmpty()) {
+                    merged.writeTo(batchUpdate);
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void completed( List<PendingCommit> group ) {
+        long now = System.nanoTime();
+        groups.incrementAndGet();
+        transactions.addAndGet(group.size());
+        maxGroupSize.accumulateAndGet(group.size(), Math::max);
+        for (PendingCommit pending : group) {
+            long waitNanos = now - pending.submittedAt;
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            pending.result.complete(null);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Committed a group of {0} transactions; {1}", group.size(), this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitter[" +
+               "groups=" + getGroupCount() +
+               ", transactions=" + getTransactionCount() +
+               ", averageGroupSize=" + getAverageGroupSize() +
+               ", maxGroupSize=" + getMaxGroupSize() +
+               ", averageWaitMicros=" + getAverageWaitTime(TimeUnit.MICROSECONDS) +
+               ", maxWaitMicros=" + getMaxWaitTime(TimeUnit.MICROSECONDS) +
+               ']';
+    }
+
+    private static final class PendingCommit {
+        private final TransactionChanges changes;
+        private final long submittedAt;
+        private final CompletableFuture<Void> result;
+
+        private PendingCommit( TransactionChanges changes ) {
+            this.changes = changes;
+            this.submittedAt = System.nanoTime();
+            this.result = new CompletableFuture<>();
+        }
+    }
+}
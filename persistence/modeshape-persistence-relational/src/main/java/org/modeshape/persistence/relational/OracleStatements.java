@@ -36,28 +36,28 @@ public class OracleStatements extends DefaultStatements {
     }
 
     @Override
-    public Void createTable( Connection connection ) throws SQLException {
+    protected void createTable( Connection connection, String statementKey, String tableName ) throws SQLException {
         try {
-            return super.createTable(connection);
+            super.createTable(connection, statementKey, tableName);
         } catch (SQLException e) {
             int errorCode = e.getErrorCode();
             if (IGNORABLE_ERROR_CODES.contains(errorCode)) {
-                logger.debug(e, "Ignoring Oracle SQL exception for database {0} with error code {1}", tableName(), errorCode);
-                return null;
+                logger.debug(e, "Ignoring Oracle SQL exception for database {0} with error code {1}", tableName, errorCode);
+                return;
             }
             throw e;
         }
     }
 
     @Override
-    public Void dropTable( Connection connection ) throws SQLException {
+    protected void dropTable( Connection connection, String statementKey, String tableName ) throws SQLException {
         try {
-            return super.dropTable(connection);
+            super.dropTable(connection, statementKey, tableName);
         } catch (SQLException e) {
             int errorCode = e.getErrorCode();
             if (IGNORABLE_ERROR_CODES.contains(e.getErrorCode())) {
-                logger.debug(e, "Ignoring Oracle SQL exception for database {0} with error code {1}", tableName(), errorCode);
-                return null;
+                logger.debug(e, "Ignoring Oracle SQL exception for database {0} with error code {1}", tableName, errorCode);
+                return;
             }
             throw e;
         }
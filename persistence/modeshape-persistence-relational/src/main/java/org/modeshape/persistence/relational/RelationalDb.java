@@ -21,23 +21,29 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.modeshape.common.database.DatabaseType;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.NamedThreadFactory;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.schematic.SchematicDb;
 import org.modeshape.schematic.SchematicEntry;
 import org.modeshape.schematic.document.Document;
 import org.modeshape.schematic.document.EditableDocument;
+import org.modeshape.schematic.internal.delta.Operation;
 
 /**
  * {@link SchematicDb} implementation which stores data in Relational databases.
@@ -50,13 +56,17 @@ public class RelationalDb implements SchematicDb {
     private static final Logger LOGGER = Logger.getLogger(RelationalDb.class);
 
     private final ConcurrentMap<String, Connection> connectionsByTxId;
+    private final Set<String> txIdsWithDirectWrites;
     private final DataSourceManager dsManager;
     private final RelationalDbConfig config;
     private final Statements statements;
     private final TransactionalCaches transactionalCaches;
+    private final GroupCommitter groupCommitter;
+    private volatile ScheduledExecutorService compactionService;
 
     protected RelationalDb(Document configDoc) {
         this.connectionsByTxId = new ConcurrentHashMap<>();
+        this.txIdsWithDirectWrites = ConcurrentHashMap.newKeySet();
         configDoc = Objects.requireNonNull(configDoc, "Configuration document cannot be null");
         this.config = new RelationalDbConfig(configDoc);
         this.dsManager = new DataSourceManager(config);
@@ -72,6 +82,7 @@ public class RelationalDb implements SchematicDb {
             }
         }
         this.transactionalCaches = new TransactionalCaches();
+        this.groupCommitter = config.groupCommit() ? new GroupCommitter(dsManager, statements, config) : null;
     }
 
     @Override
@@ -84,6 +95,15 @@ public class RelationalDb implements SchematicDb {
         if (config.createOnStart()) {
             runWithConnection(statements::createTable, false);
         }
+        if (groupCommitter != null) {
+            groupCommitter.start();
+        }
+        int compactionInterval = config.deltaCompactionIntervalSeconds();
+        if (config.deltaPersistence() && compactionInterval > 0) {
+            compactionService = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("modeshape-db-compaction"));
+            compactionService.scheduleWithFixedDelay(() -> compactDeltas(config.deltaCompactionThreshold()),
+                                                     compactionInterval, compactionInterval, TimeUnit.SECONDS);
+        }
     }
 
     @Override
@@ -91,8 +111,22 @@ public class RelationalDb implements SchematicDb {
         // remove the active tx Id
         TransactionsHolder.clearActiveTransaction();
         
+        // wait for any pending group commits...
+        if (groupCommitter != null) {
+            groupCommitter.stop();
+        }
+
         // cleanup any possible active connections....
         cleanupConnections();
+
+        // stop the background compaction and fold any remaining deltas into their documents
+        if (compactionService != null) {
+            compactionService.shutdownNow();
+            compactionService = null;
+        }
+        if (config.deltaPersistence() && !config.dropOnExit()) {
+            compactDeltas(1);
+        }
        
         // drop the table if configured to do so 
         if (config.dropOnExit()) {
@@ -141,6 +175,17 @@ public class RelationalDb implements SchematicDb {
         return persistedKeys.stream().filter(id -> !transactionalCaches.isRemoved(id)).collect(Collectors.toList());
     }
     
+    @Override
+    public void keysInBatches(int batchSize, Consumer<List<String>> consumer) {
+        // always use a separate connection (not the one from the active tx, if any), because the cursor stays open while the
+        // consumer processes each batch; some drivers (e.g. PostgreSQL) only use cursors for non auto-commit connections
+        try (Connection connection = newConnection(false, true)) {
+            statements.getAllIds(connection, batchSize, consumer);
+        } catch (SQLException e) {
+            throw new RelationalProviderException(e);
+        }
+    }
+
     @Override
     public Document get(String key) {
         if (!TransactionsHolder.hasActiveTransaction()) {
@@ -240,6 +285,10 @@ public class RelationalDb implements SchematicDb {
 
     @Override
     public void removeAll() {
+        if (TransactionsHolder.hasActiveTransaction()) {
+            // this is written via the connection of the transaction, so it has to be committed together with the other changes
+            txIdsWithDirectWrites.add(TransactionsHolder.requireActiveTransaction());
+        }
         runWithConnection(statements::removeAll, false);
     }
 
@@ -282,7 +331,7 @@ public class RelationalDb implements SchematicDb {
         // make sure the id that was there when the tx started matches this id...
         TransactionsHolder.validateTransaction(id);
         try {
-            runWithConnection(this::persistContent, false);
+            runWithConnection(groupCommitter != null ? this::persistContentInGroup : this::persistContent, false);
         } finally {
             cleanupTransaction(id);
         }
@@ -291,6 +340,7 @@ public class RelationalDb implements SchematicDb {
     private void cleanupTransaction(String id) {
         // clear the tx cache
         transactionalCaches.clearCache();
+        txIdsWithDirectWrites.remove(id);
         // release any existing connection for this thread because a transaction has been committed...
         logDebug("Releasing DB connection for transaction {0}", id);
         releaseConnectionForActiveTx();
@@ -299,33 +349,101 @@ public class RelationalDb implements SchematicDb {
     }
 
     private Void persistContent(Connection tlConnection) throws SQLException {
+        TransactionChanges changes = collectChanges();
+        try {
+            changes.writeTo(statements.batchUpdate(tlConnection));
+        } catch (SQLException e) {
+            throw new RelationalProviderException(e);
+        }
+        tlConnection.commit();
+        return null;
+    }
+
+    private Void persistContentInGroup(Connection tlConnection) throws SQLException {
+        if (txIdsWithDirectWrites.contains(TransactionsHolder.requireActiveTransaction())) {
+            // something has been written directly via the tx connection (e.g. removeAll), so the changes must be written and
+            // committed via the same connection or the transaction would not be atomic
+            return persistContent(tlConnection);
+        }
+        TransactionChanges changes = collectChanges();
+        // nothing has been written via the tx connection, so it only has to be released
+        tlConnection.rollback();
+        if (!changes.isEmpty()) {
+            groupCommitter.commit(changes);
+        }
+        return null;
+    }
+
+    private TransactionChanges collectChanges() {
         ConcurrentMap<String, Document> writeCache = transactionalCaches.writeCache();
         logDebug("Committing the active connection for transaction {0} with the changes: {1}",
                  TransactionsHolder.requireActiveTransaction(),
                  writeCache);
-        Statements.BatchUpdate batchUpdate = statements.batchUpdate(tlConnection);
-        Map<String, Document> toInsert = new HashMap<>();
-        Map<String, Document> toUpdate = new HashMap<>();
-        List<String> toRemove = new ArrayList<>();
+        TransactionChanges changes = new TransactionChanges();
         writeCache.forEach(( key, document ) -> {
             if (TransactionalCaches.REMOVED == document) {
-                toRemove.add(key);
+                changes.remove(key);
             } else if (transactionalCaches.hasBeenRead(key)) {
-                toUpdate.put(key, document);
+                Document original = transactionalCaches.getForReading(key);
+                if (!config.deltaPersistence() || original == document) {
+                    changes.update(key, document);
+                    return;
+                }
+                List<Operation> operations = DocumentDeltas.diff(original, document);
+                if (!operations.isEmpty()) {
+                    changes.updateDelta(key, DocumentDeltas.encode(operations));
+                }
             } else {
-                toInsert.put(key, document);
+                changes.insert(key, document);
             }
         });
+        return changes;
+    }
 
-        try {
-            batchUpdate.insert(toInsert);
-            batchUpdate.update(toUpdate);
-            batchUpdate.remove(toRemove);
+    /**
+     * Returns the component which commits transactions in groups, if group commit is enabled.
+     * 
+     * @return a {@link GroupCommitter} instance or {@code null} if group commit is not enabled
+     */
+    public GroupCommitter groupCommitter() {
+        return groupCommitter;
+    }
+
+    /**
+     * Folds the change records (deltas) of all the documents which have at least a given number of such records back into the
+     * documents. Each document is compacted in its own transaction, so a failure only affects that particular document.
+     * 
+     * @param minDeltas the minimum number of change records a document must have in order to be compacted
+     * @return the number of documents which were compacted
+     */
+    protected int compactDeltas(int minDeltas) {
+        List<String> ids;
+        try (Connection connection = newConnection(true, true)) {
+            ids = statements.getIdsWithDeltas(connection, minDeltas);
         } catch (SQLException e) {
             throw new RelationalProviderException(e);
         }
-        tlConnection.commit();
-        return null;
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        logDebug("Compacting the deltas of {0} documents", ids.size());
+        int compacted = 0;
+        try (Connection connection = newConnection(false, false)) {
+            for (String id : ids) {
+                try {
+                    if (statements.compactDeltas(connection, id) > 0) {
+                        compacted++;
+                    }
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    LOGGER.warn(e, RelationalProviderI18n.deltaCompactionFailed, id, e.getMessage());
+                    connection.rollback();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RelationalProviderException(e);
+        }
+        return compacted;
     }
 
     @Override
@@ -15,8 +15,13 @@
  */
 package org.modeshape.persistence.relational;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.schematic.codec.Codec;
+import org.modeshape.schematic.codec.Codecs;
 import org.modeshape.schematic.document.Document;
 
 /**
@@ -36,12 +41,21 @@ public final class RelationalDbConfig {
     public static final String TABLE_NAME = "tableName";
     public static final String FETCH_SIZE = "fetchSize";
     public static final String COMPRESS = "compress";
+    public static final String CODEC = "codec";
+    public static final String CODEC_DICTIONARY = "codecDictionary";
+    public static final String LAZY_DOCUMENTS = "lazyDocuments";
     public static final String CONNECTION_URL = "connectionUrl";
     public static final String DRIVER = "driver";
     public static final String USERNAME = "username";
     public static final String PASSWORD = "password";
     public static final String DATASOURCE_JNDI_NAME = "dataSourceJndiName";
     public static final String POOL_SIZE = "poolSize";
+    public static final String DELTA_PERSISTENCE = "deltaPersistence";
+    public static final String DELTA_COMPACTION_THRESHOLD = "deltaCompactionThreshold";
+    public static final String DELTA_COMPACTION_INTERVAL_SECONDS = "deltaCompactionIntervalSeconds";
+    public static final String GROUP_COMMIT = "groupCommit";
+    public static final String GROUP_COMMIT_WINDOW_MILLIS = "groupCommitWindowMillis";
+    public static final String GROUP_COMMIT_MAX_BATCH_SIZE = "groupCommitMaxBatchSize";
 
     protected static final String DEFAULT_CONNECTION_URL = "jdbc:h2:mem:modeshape;DB_CLOSE_DELAY=0;MVCC=TRUE";
     protected static final String DEFAULT_DRIVER = "org.h2.Driver";
@@ -50,18 +64,32 @@ public final class RelationalDbConfig {
     protected static final String DEFAULT_TABLE_NAME = "MODESHAPE_REPOSITORY";
     protected static final int DEFAULT_FETCH_SIZE = 1000;
     protected static final int DEFAULT_POOL_SIZE = 50;
+    protected static final int DEFAULT_DELTA_COMPACTION_THRESHOLD = 10;
+    protected static final int DEFAULT_DELTA_COMPACTION_INTERVAL_SECONDS = 60;
+    protected static final int DEFAULT_GROUP_COMMIT_WINDOW_MILLIS = 2;
+    protected static final int DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE = 100;
   
     private final boolean createOnStart;
     private final boolean dropOnExit;
     private final String tableName;
     private final int fetchSize;
     private final boolean compress;
+    private final String codecName;
+    private final String codecDictionary;
+    private final Codec codec;
+    private final boolean lazyDocuments;
     private final String connectionUrl;
     private final String driver;
     private final String username;
     private final String password;
     private final String datasourceJNDIName; 
     private final int poolSize;
+    private final boolean deltaPersistence;
+    private final int deltaCompactionThreshold;
+    private final int deltaCompactionIntervalSeconds;
+    private final boolean groupCommit;
+    private final int groupCommitWindowMillis;
+    private final int groupCommitMaxBatchSize;
 
     protected RelationalDbConfig(Document document) {
         this.connectionUrl = document.getString(CONNECTION_URL, DEFAULT_CONNECTION_URL);
@@ -74,7 +102,18 @@ public final class RelationalDbConfig {
         this.tableName = document.getString(TABLE_NAME, DEFAULT_TABLE_NAME);
         this.fetchSize = propertyAsInt(document, FETCH_SIZE, DEFAULT_FETCH_SIZE);
         this.compress = propertyAsBoolean(document, COMPRESS, false);
+        this.codecName = document.getString(CODEC, null);
+        this.codecDictionary = document.getString(CODEC_DICTIONARY, null);
+        this.codec = codecName != null ? createCodec(codecName, codecDictionary) : null;
+        this.lazyDocuments = propertyAsBoolean(document, LAZY_DOCUMENTS, false);
         this.poolSize = propertyAsInt(document, POOL_SIZE, DEFAULT_POOL_SIZE);
+        this.deltaPersistence = propertyAsBoolean(document, DELTA_PERSISTENCE, false);
+        this.deltaCompactionThreshold = propertyAsInt(document, DELTA_COMPACTION_THRESHOLD, DEFAULT_DELTA_COMPACTION_THRESHOLD);
+        this.deltaCompactionIntervalSeconds = propertyAsInt(document, DELTA_COMPACTION_INTERVAL_SECONDS,
+                                                            DEFAULT_DELTA_COMPACTION_INTERVAL_SECONDS);
+        this.groupCommit = propertyAsBoolean(document, GROUP_COMMIT, false);
+        this.groupCommitWindowMillis = propertyAsInt(document, GROUP_COMMIT_WINDOW_MILLIS, DEFAULT_GROUP_COMMIT_WINDOW_MILLIS);
+        this.groupCommitMaxBatchSize = propertyAsInt(document, GROUP_COMMIT_MAX_BATCH_SIZE, DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE);
     }
 
     protected String connectionUrl() {
@@ -113,14 +152,115 @@ public final class RelationalDbConfig {
         return fetchSize;
     }
 
+    /**
+     * Whether documents should be compressed with GZIP when no {@link #codec() codec} is configured. This also indicates how
+     * the documents which were stored before a codec was configured should be read.
+     * 
+     * @return {@code true} if documents are GZIP compressed, {@code false} otherwise
+     */
     protected boolean compress() {
         return compress;
     }
+
+    /**
+     * The codec used to encode the documents before they are stored. Documents encoded by a codec are self-describing, so they 
+     * can be read regardless of the codec which is currently configured.
+     * 
+     * @return a {@link Codec} instance, or {@code null} if documents should be stored as they were before codecs were 
+     * introduced (see {@link #compress()})
+     */
+    protected Codec codec() {
+        return codec;
+    }
+
+    /**
+     * Whether the documents read from the database should be read-only views which are decoded lazily, directly from the 
+     * stored BSON, instead of being fully decoded. This is ignored when {@link #deltaPersistence() delta persistence} is enabled,
+     * because change records are applied to the documents after they are read.
+     * 
+     * @return {@code true} if documents should be decoded lazily, {@code false} otherwise
+     * @see org.modeshape.schematic.document.Bson#read(java.nio.ByteBuffer)
+     */
+    protected boolean lazyDocuments() {
+        return lazyDocuments;
+    }
     
     protected int poolSize() { 
         return poolSize; 
     }
+
+    /**
+     * Whether updates to existing documents should be stored as change records in a separate table, which are periodically
+     * folded back into the documents, instead of rewriting the entire document on each change.
+     * 
+     * @return {@code true} if delta persistence is enabled, {@code false} otherwise
+     */
+    protected boolean deltaPersistence() {
+        return deltaPersistence;
+    }
+
+    /**
+     * The minimum number of change records a document must have before the background compaction folds them into the document.
+     * 
+     * @return a positive number
+     */
+    protected int deltaCompactionThreshold() {
+        return deltaCompactionThreshold;
+    }
+
+    /**
+     * The interval, in seconds, at which the background compaction runs; a value less than 1 disables it.
+     * 
+     * @return the number of seconds
+     */
+    protected int deltaCompactionIntervalSeconds() {
+        return deltaCompactionIntervalSeconds;
+    }
+
+    /**
+     * Whether the changes of concurrently committing transactions should be written to the database using a single, shared
+     * database transaction.
+     * 
+     * @return {@code true} if group commit is enabled, {@code false} otherwise
+     * @see GroupCommitter
+     */
+    protected boolean groupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * The maximum amount of time, in milliseconds, that a committing transaction waits for other transactions to join its group.
+     * 
+     * @return the number of milliseconds
+     */
+    protected int groupCommitWindowMillis() {
+        return groupCommitWindowMillis;
+    }
+
+    /**
+     * The maximum number of transactions which are committed as part of a single group.
+     * 
+     * @return a positive number
+     */
+    protected int groupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
     
+    private Codec createCodec(String name, String dictionaryPath) {
+        if (!Codecs.ZSTD_DICTIONARY.equalsIgnoreCase(name)) {
+            return Codecs.forName(name);
+        }
+        if (dictionaryPath == null) {
+            throw new RelationalProviderException(RelationalProviderI18n.codecDictionaryRequired, name, CODEC_DICTIONARY);
+        }
+        try {
+            return Codecs.zstdWithDictionary(IoUtil.readBytes(new File(dictionaryPath)));
+        } catch (IOException e) {
+            throw new RelationalProviderException(RelationalProviderI18n.cannotReadCodecDictionary, dictionaryPath,
+                                                  e.getMessage());
+        }
+    }
+
     private int propertyAsInt(Document document, String propertyName, int defaultValue) {
         Object value = document.get(propertyName);
         if (value == null) {
@@ -151,11 +291,20 @@ public final class RelationalDbConfig {
                ", tableName='" + tableName + '\'' +
                ", fetchSize=" + fetchSize +
                ", compress=" + compress +
+               ", codec='" + codecName + '\'' +
+               ", codecDictionary='" + codecDictionary + '\'' +
+               ", lazyDocuments=" + lazyDocuments +
                ", connectionUrl='" + connectionUrl + '\'' +
                ", driver='" + driver + '\'' +
                ", username='" + username + '\'' +
                ", password='" + password + '\'' +
                ", datasourceJNDIName='" + datasourceJNDIName + '\'' +
+               ", deltaPersistence=" + deltaPersistence +
+               ", deltaCompactionThreshold=" + deltaCompactionThreshold +
+               ", deltaCompactionIntervalSeconds=" + deltaCompactionIntervalSeconds +
+               ", groupCommit=" + groupCommit +
+               ", groupCommitWindowMillis=" + groupCommitWindowMillis +
+               ", groupCommitMaxBatchSize=" + groupCommitMaxBatchSize +
                ']';
     }
 }
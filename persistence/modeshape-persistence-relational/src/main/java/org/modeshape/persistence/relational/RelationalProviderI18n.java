@@ -31,6 +31,9 @@ public final class RelationalProviderI18n {
     public static I18n threadNotAssociatedWithTransaction;
     public static I18n threadAssociatedWithAnotherTransaction;
     public static I18n warnConnectionsNeedCleanup;
+    public static I18n deltaCompactionFailed;
+    public static I18n codecDictionaryRequired;
+    public static I18n cannotReadCodecDictionary;
 
     private RelationalProviderI18n() {
     }
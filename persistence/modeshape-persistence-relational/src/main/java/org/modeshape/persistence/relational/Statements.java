@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import org.modeshape.schematic.document.Document;
 
@@ -43,6 +44,18 @@ public interface Statements {
     String REMOVE_CONTENT = "remove_content";
     String REMOVE_ALL_CONTENT = "remove_all_content";
     String GET_MULTIPLE = "get_multiple";
+    String LOCK_CONTENT = "lock_content";
+    String CREATE_DELTA_TABLE = "create_delta_table";
+    String DELETE_DELTA_TABLE = "delete_delta_table";
+    String GET_DELTAS_BY_ID = "get_deltas_by_id";
+    String GET_BY_ID_WITH_DELTAS = "get_by_id_with_deltas";
+    String GET_MULTIPLE_WITH_DELTAS = "get_multiple_with_deltas";
+    String GET_IDS_WITH_DELTAS = "get_ids_with_deltas";
+    String GET_LAST_DELTA_SEQUENCES = "get_last_delta_sequences";
+    String INSERT_DELTA = "insert_delta";
+    String REMOVE_DELTAS = "remove_deltas";
+    String REMOVE_DELTAS_UP_TO = "remove_deltas_up_to";
+    String REMOVE_ALL_DELTAS = "remove_all_deltas";
 
     /**
      * Create a new table.
@@ -71,6 +84,17 @@ public interface Statements {
      */
     List<String> getAllIds(Connection connection) throws SQLException;
 
+    /**
+     * Iterates over all the ids from a table using a database cursor, passing them to a consumer in batches.
+     *
+     * @param connection a {@link Connection} instance; may not be null
+     * @param batchSize the maximum number of ids passed to the consumer at once
+     * @param consumer a {@link Consumer} which is called for each batch of ids; may not be null
+     * @return nothing
+     * @throws SQLException if the operation fails.
+     */
+    Void getAllIds(Connection connection, int batchSize, Consumer<List<String>> consumer) throws SQLException;
+
     /**
      * Searches for a document with a certain id.
      *
@@ -129,6 +153,28 @@ public interface Statements {
      */
     Void removeAll( Connection connection ) throws SQLException;
 
+    /**
+     * Returns the ids of all the documents which have at least a given number of change records (deltas) that have not yet
+     * been folded into the documents. This is only used when delta persistence is enabled.
+     *
+     * @param connection a {@link Connection} instance; may not be null
+     * @param minDeltas the minimum number of change records a document should have
+     * @return a {@link List} of ids; never {@code null}
+     * @throws SQLException if the operation fails.
+     */
+    List<String> getIdsWithDeltas( Connection connection, int minDeltas ) throws SQLException;
+
+    /**
+     * Folds all the change records of a document into the document itself and removes those change records. This is only used
+     * when delta persistence is enabled.
+     *
+     * @param connection a {@link Connection} instance; may not be null
+     * @param id a {@link String} the id of a document; may not be null
+     * @return the number of change records which were folded into the document
+     * @throws SQLException if the operation fails.
+     */
+    int compactDeltas( Connection connection, String id ) throws SQLException;
+
     /**
      * A batch of table update operations.
      */
@@ -150,6 +196,16 @@ public interface Statements {
          */
         void update( Map<String, Document> documentsById ) throws SQLException;
 
+        /**
+         * Appends a change record for each of a bunch of existing documents. 
+         *
+         * @param changesById a {@link Map} of change records keyed by the id of the document they apply to; may not be 
+         * {@code null}
+         * @throws SQLException if the operation fails.
+         * @see DocumentDeltas
+         */
+        void updateDeltas( Map<String, Document> changesById ) throws SQLException;
+
         /**
          * Removes a bunch of documents with a list of ids.
          *
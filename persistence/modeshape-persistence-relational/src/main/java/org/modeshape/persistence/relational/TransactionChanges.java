@@ -0,0 +1,114 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.relational;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.modeshape.common.annotation.NotThreadSafe;
+import org.modeshape.schematic.document.Document;
+
+/**
+ * The set of changes which a transaction (or a group of non-overlapping transactions) writes to the database on commit.
+ *
+ * @since 5.1
+ */
+@NotThreadSafe
+public final class TransactionChanges {
+
+    private final Map<String, Document> toInsert = new HashMap<>();
+    private final Map<String, Document> toUpdate = new HashMap<>();
+    private final Map<String, Document> deltas = new HashMap<>();
+    private final List<String> toRemove = new ArrayList<>();
+    private final Set<String> keys = new HashSet<>();
+
+    protected void insert( String key, Document document ) {
+        toInsert.put(key, document);
+        keys.add(key);
+    }
+
+    protected void update( String key, Document document ) {
+        toUpdate.put(key, document);
+        keys.add(key);
+    }
+
+    protected void updateDelta( String key, Document changes ) {
+        deltas.put(key, changes);
+        keys.add(key);
+    }
+
+    protected void remove( String key ) {
+        toRemove.add(key);
+        keys.add(key);
+    }
+
+    /**
+     * Checks whether any of the documents changed by this instance are also changed by another instance.
+     *
+     * @param other another set of changes; may not be null
+     * @return {@code true} if the two sets of changes touch at least one common document, {@code false} otherwise
+     */
+    protected boolean overlaps( TransactionChanges other ) {
+        Set<String> smaller = keys.size() <= other.keys.size() ? keys : other.keys;
+        Set<String> larger = smaller == keys ? other.keys : keys;
+        return smaller.stream().anyMatch(larger::contains);
+    }
+
+    /**
+     * Adds all the changes from another instance to this one. The caller is expected to make sure the two instances do not
+     * {@link #overlaps(TransactionChanges) overlap}.
+     *
+     * @param other another set of changes; may not be null
+     */
+    protected void merge( TransactionChanges other ) {
+        toInsert.putAll(other.toInsert);
+        toUpdate.putAll(other.toUpdate);
+        deltas.putAll(other.deltas);
+        toRemove.addAll(other.toRemove);
+        keys.addAll(other.keys);
+    }
+
+    protected boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    /**
+     * Writes all the changes using the given batch, without committing them.
+     *
+     * @param batchUpdate a {@link Statements.BatchUpdate} instance; may not be null
+     * @throws SQLException if any of the statements fail
+     */
+    protected void writeTo( Statements.BatchUpdate batchUpdate ) throws SQLException {
+        batchUpdate.insert(toInsert);
+        batchUpdate.update(toUpdate);
+        batchUpdate.updateDeltas(deltas);
+        batchUpdate.remove(toRemove);
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionChanges[" +
+               "toInsert=" + toInsert +
+               ", toUpdate=" + toUpdate +
+               ", deltas=" + deltas +
+               ", toRemove=" + toRemove +
+               ']';
+    }
+}
@@ -62,6 +62,10 @@ public final class TransactionalCaches {
         return cacheForTransaction().readCache().containsKey(key);
     }
 
+    protected Document getForReading(String key) {
+        return cacheForTransaction().getFromReadCache(key);
+    }
+
     protected Document getForWriting(String key) {
         return cacheForTransaction().getFromWriteCache(key);                     
     }
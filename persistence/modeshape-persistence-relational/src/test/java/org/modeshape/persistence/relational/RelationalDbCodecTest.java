@@ -0,0 +1,68 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.relational;
+
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import org.junit.Test;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.SchematicDb;
+import org.modeshape.schematic.codec.Codecs;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.BasicDocument;
+
+/**
+ * Unit test for {@link RelationalDb} when documents are stored using a codec. The configuration used for this test is 
+ * filtered by Maven based on the active DB profile.
+ */
+public class RelationalDbCodecTest extends RelationalDbTest {
+
+    @Override
+    protected SchematicDb getDb() throws Exception {
+        return Schematic.getDb(RelationalDbCodecTest.class.getClassLoader().getResourceAsStream("db-config-codec.json"));
+    }
+
+    @Test
+    public void shouldReadDocumentsWrittenBeforeCodecWasConfigured() throws Exception {
+        Document document = DEFAULT_CONTENT;
+        for (boolean compress : new boolean[] { true, false }) {
+            DefaultStatements legacy = statements(new BasicDocument(RelationalDbConfig.COMPRESS, compress));
+            DefaultStatements withCodec = statements(new BasicDocument(RelationalDbConfig.COMPRESS, compress,
+                                                                       RelationalDbConfig.CODEC, Codecs.LZ4));
+            assertEquals(document, withCodec.readDocument(new ByteArrayInputStream(legacy.writeDocument(document))));
+        }
+    }
+
+    @Test
+    public void shouldReadDocumentsWrittenWithAnyCodec() throws Exception {
+        Document document = DEFAULT_CONTENT;
+        DefaultStatements reader = statements(new BasicDocument(RelationalDbConfig.CODEC, Codecs.LZ4));
+        for (String codec : new String[] { Codecs.NONE, Codecs.GZIP, Codecs.LZ4, Codecs.ZSTD }) {
+            DefaultStatements writer = statements(new BasicDocument(RelationalDbConfig.CODEC, codec));
+            assertEquals(document, reader.readDocument(new ByteArrayInputStream(writer.writeDocument(document))));
+        }
+    }
+
+    @Test( expected = RelationalProviderException.class )
+    public void shouldRequireDictionaryForDictionaryCodec() throws Exception {
+        new RelationalDbConfig(new BasicDocument(RelationalDbConfig.CODEC, Codecs.ZSTD_DICTIONARY));
+    }
+
+    private DefaultStatements statements( Document config ) {
+        return new DefaultStatements(new RelationalDbConfig(config), Collections.emptyMap());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.relational;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.SchematicDb;
+import org.modeshape.schematic.SchematicEntry;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableDocument;
+import org.modeshape.schematic.internal.delta.Operation;
+import org.modeshape.schematic.internal.document.BasicArray;
+import org.modeshape.schematic.internal.document.BasicDocument;
+
+/**
+ * Unit test for {@link RelationalDb} with delta persistence enabled. The configuration used for this test is filtered by Maven 
+ * based on the active DB profile.
+ * 
+ */
+public class RelationalDbDeltaTest extends RelationalDbTest {
+
+    @Override
+    protected SchematicDb getDb() throws Exception {
+        return Schematic.getDb(RelationalDbDeltaTest.class.getClassLoader().getResourceAsStream("db-config-deltas.json"));
+    }
+
+    @Test
+    public void shouldDiffAndReplayChanges() throws Exception {
+        Document original = DEFAULT_CONTENT.clone();
+        EditableDocument changed = original.clone().editable();
+        changed.setString("firstName", "John");
+        changed.remove("phone");
+        changed.getDocument("address").setNumber("zip", 54321);
+        changed.setArray("children", new BasicArray("a", "b"));
+
+        List<Operation> operations = DocumentDeltas.diff(original, changed);
+        assertEquals(4, operations.size());
+
+        BasicDocument replayed = (BasicDocument) original.clone();
+        DocumentDeltas.apply(DocumentDeltas.encode(operations), replayed);
+        assertEquals(changed, replayed);
+
+        // appending to an array should only record the new values
+        EditableDocument appended = changed.clone().editable();
+        appended.getArray("children").addString("c");
+        operations = DocumentDeltas.diff(changed, appended);
+        assertEquals(1, operations.size());
+        DocumentDeltas.apply(DocumentDeltas.encode(operations), replayed);
+        assertEquals(appended, replayed);
+    }
+
+    @Test
+    public void shouldReadDocumentsWithPendingDeltas() throws Exception {
+        SchematicEntry entry = writeSingleEntry();
+        SchematicEntry otherEntry = writeSingleEntry();
+        for (int i = 2; i <= 5; i++) {
+            int value = i;
+            simulateTransaction(() -> {
+                db.editContent(entry.id(), false).setNumber("value", value);
+                return null;
+            });
+        }
+        assertEquals(5, (int) db.getEntry(entry.id()).content().getInteger("value"));
+        List<String> ids = Arrays.asList(entry.id(), otherEntry.id());
+        List<Integer> values = db.load(ids).stream()
+                                  .sorted((e1, e2) -> Integer.compare(ids.indexOf(e1.id()), ids.indexOf(e2.id())))
+                                  .map(loaded -> loaded.content().getInteger("value"))
+                                  .collect(Collectors.toList());
+        assertEquals(Arrays.asList(5, 1), values);
+    }
+
+    @Test
+    public void shouldCompactDeltasIntoDocuments() throws Exception {
+        List<SchematicEntry> entries = IntStream.range(0, 3).mapToObj(i -> {
+            try {
+                return writeSingleEntry();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }).collect(Collectors.toList());
+        // only the first entry goes over the compaction threshold
+        for (int i = 0; i < 3; i++) {
+            simulateTransaction(() -> {
+                entries.forEach(entry -> db.editContent(entry.id(), false).setString("lastName", "Smith"));
+                db.editContent(entries.get(0).id(), false).setNumber("value", System.nanoTime());
+                return null;
+            });
+        }
+        RelationalDb relationalDb = (RelationalDb) db;
+        assertEquals(1, relationalDb.compactDeltas(3));
+        assertEquals(2, relationalDb.compactDeltas(1));
+        assertEquals(0, relationalDb.compactDeltas(1));
+        entries.forEach(entry -> assertEquals("Smith", db.getEntry(entry.id()).content().getString("lastName")));
+
+        // documents should still be editable after compaction
+        simulateTransaction(() -> db.editContent(entries.get(1).id(), false).remove("address"));
+        assertTrue(!db.getEntry(entries.get(1).id()).content().containsField("address"));
+    }
+
+    @Test
+    public void shouldNumberDeltasOfConcurrentWritersWithoutConflicts() throws Exception {
+        SchematicEntry entry = writeSingleEntry();
+        int threads = 4;
+        int changesPerThread = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = IntStream.range(0, threads).mapToObj(thread -> executor.submit(() -> {
+                String txId = "tx" + thread;
+                for (int i = 1; i <= changesPerThread; i++) {
+                    db.txStarted(txId);
+                    db.editContent(entry.id(), false).setNumber("thread" + thread, i);
+                    db.txCommitted(txId);
+                }
+                return (Void) null;
+            })).collect(Collectors.toList());
+            for (Future<Void> result : results) {
+                result.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Document content = db.getEntry(entry.id()).content();
+        IntStream.range(0, threads).forEach(thread -> assertEquals(changesPerThread,
+                                                                   (int) content.getInteger("thread" + thread)));
+        assertEquals(1, ((RelationalDb) db).compactDeltas(threads * changesPerThread));
+        assertEquals(content, db.getEntry(entry.id()).content());
+    }
+
+    @Test
+    public void shouldNotReadDeltasOfRemovedDocuments() throws Exception {
+        SchematicEntry entry = writeSingleEntry();
+        simulateTransaction(() -> {
+            db.editContent(entry.id(), false).setNumber("value", 2);
+            return null;
+        });
+        simulateTransaction(() -> db.remove(entry.id()));
+        assertTrue(db.getEntry(entry.id()) == null);
+        assertTrue(db.load(Arrays.asList(entry.id())).isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.relational;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.SchematicDb;
+import org.modeshape.schematic.SchematicEntry;
+
+/**
+ * Unit test for {@link RelationalDb} with group commit enabled. The configuration used for this test is filtered by Maven 
+ * based on the active DB profile.
+ */
+public class RelationalDbGroupCommitTest extends RelationalDbTest {
+
+    @Override
+    protected SchematicDb getDb() throws Exception {
+        return Schematic.getDb(RelationalDbGroupCommitTest.class.getClassLoader().getResourceAsStream("db-config-group-commit.json"));
+    }
+
+    @Test
+    public void shouldCommitConcurrentTransactionsInGroups() throws Exception {
+        int threadsCount = 20;
+        ExecutorService executors = Executors.newFixedThreadPool(threadsCount);
+        try {
+            List<Future<List<String>>> results = IntStream.range(0, threadsCount)
+                                                          .mapToObj(i -> insertMultipleEntries(10, executors))
+                                                          .collect(Collectors.toList());
+            for (Future<List<String>> result : results) {
+                result.get(1, TimeUnit.MINUTES).forEach(id -> assertTrue(db.containsKey(id)));
+            }
+        } finally {
+            executors.shutdownNow();
+        }
+
+        GroupCommitter groupCommitter = ((RelationalDb) db).groupCommitter();
+        assertNotNull(groupCommitter);
+        assertEquals(threadsCount, groupCommitter.getTransactionCount());
+        assertTrue(groupCommitter.getGroupCount() <= groupCommitter.getTransactionCount());
+        assertTrue(groupCommitter.getMaxGroupSize() >= 1);
+        assertTrue(groupCommitter.getMaxWaitTime(TimeUnit.NANOSECONDS) >= groupCommitter.getAverageWaitTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void shouldCommitDirectWritesTogetherWithOtherChanges() throws Exception {
+        SchematicEntry existing = writeSingleEntry();
+        SchematicEntry added = simulateTransaction(() -> {
+            db.removeAll();
+            SchematicEntry entry = SchematicEntry.create(UUID.randomUUID().toString(), DEFAULT_CONTENT);
+            db.putEntry(entry.source());
+            return entry;
+        });
+        assertFalse(db.containsKey(existing.id()));
+        assertTrue(db.containsKey(added.id()));
+        // the transaction was committed via its own connection and not as part of a group
+        assertEquals(1, ((RelationalDb) db).groupCommitter().getTransactionCount());
+    }
+
+    @Test
+    public void shouldRestartGroupCommitter() throws Exception {
+        GroupCommitter groupCommitter = ((RelationalDb) db).groupCommitter();
+        groupCommitter.stop();
+        try {
+            writeSingleEntry();
+            fail("Changes should not be accepted by a stopped group committer");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        groupCommitter.start();
+        assertTrue(db.containsKey(writeSingleEntry().id()));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.persistence.relational;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import org.junit.Test;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.SchematicDb;
+import org.modeshape.schematic.codec.Codecs;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.internal.document.BasicDocument;
+import org.modeshape.schematic.internal.document.MutableDocument;
+
+/**
+ * Unit test for {@link RelationalDb} when documents are read as lazily decoded, read-only views. The configuration used for
+ * this test is filtered by Maven based on the active DB profile.
+ */
+public class RelationalDbLazyDocumentsTest extends RelationalDbTest {
+
+    @Override
+    protected SchematicDb getDb() throws Exception {
+        return Schematic.getDb(RelationalDbLazyDocumentsTest.class.getClassLoader().getResourceAsStream("db-config-lazy.json"));
+    }
+
+    @Test
+    public void shouldReadDocumentsLazilyWithAnyEncoding() throws Exception {
+        Document document = DEFAULT_CONTENT;
+        for (String codec : new String[] { null, Codecs.NONE, Codecs.LZ4 }) {
+            for (boolean compress : new boolean[] { true, false }) {
+                DefaultStatements statements = statements(codec, compress, false);
+                assertTrue(statements.readLazily());
+                Document read = statements.readDocument(new ByteArrayInputStream(statements.writeDocument(document)), true);
+                assertFalse(read instanceof MutableDocument);
+                assertEquals(document, read);
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotReadDocumentsLazilyWithDeltaPersistence() throws Exception {
+        assertFalse(statements(null, false, true).readLazily());
+    }
+
+    private DefaultStatements statements( String codec, boolean compress, boolean deltaPersistence ) {
+        BasicDocument config = new BasicDocument(RelationalDbConfig.LAZY_DOCUMENTS, true, RelationalDbConfig.COMPRESS, compress,
+                                                 RelationalDbConfig.DELTA_PERSISTENCE, deltaPersistence);
+        if (codec != null) {
+            config.put(RelationalDbConfig.CODEC, codec);
+        }
+        return new DefaultStatements(new RelationalDbConfig(config), Collections.emptyMap());
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import javax.ws.rs.core.MediaType;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
@@ -108,6 +109,14 @@ public abstract class AbstractRestTest {
         return new Response(newDefaultRequest(HttpGet.class, null, null, url));
     }
 
+    protected Response doGet( String url,
+                              String headerName,
+                              String headerValue ) throws Exception {
+        HttpGet get = newDefaultRequest(HttpGet.class, null, null, url);
+        get.setHeader(headerName, headerValue);
+        return new Response(get);
+    }
+
     protected Response doPost( String payloadFile,
                                String url ) throws Exception {
         InputStream is = null;
@@ -377,6 +386,11 @@ public abstract class AbstractRestTest {
             return this;
         }
 
+        protected String header( String name ) {
+            Header header = response.getFirstHeader(name);
+            return header != null ? header.getValue() : null;
+        }
+
         protected String getContentTypeHeader() {
             return response.getFirstHeader("Content-Type").getValue();
         }
@@ -395,6 +409,18 @@ public abstract class AbstractRestTest {
             return hasCode(HttpURLConnection.HTTP_OK);
         }
 
+        protected Response isPartialContent() throws Exception {
+            return hasCode(HttpURLConnection.HTTP_PARTIAL);
+        }
+
+        protected Response isNotModified() throws Exception {
+            return hasCode(HttpURLConnection.HTTP_NOT_MODIFIED);
+        }
+
+        protected Response isRangeNotSatisfiable() throws Exception {
+            return hasCode(416);
+        }
+
         protected Response isCreated() throws Exception {
             return hasCode(HttpURLConnection.HTTP_CREATED);
         }
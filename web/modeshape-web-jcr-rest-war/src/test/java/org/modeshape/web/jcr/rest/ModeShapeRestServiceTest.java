@@ -377,6 +377,40 @@ public class ModeShapeRestServiceTest extends AbstractRestTest {
         assertArrayEquals(expectedBinaryContent, response.contentAsBytes());
     }
 
+    @Test
+    public void shouldRetrieveRangeOfBinaryPropertyValue() throws Exception {
+        doPost((String)null, itemsUrl(TEST_NODE)).isCreated();
+        doPost(fileStream("post/binary.pdf"), binaryUrl(TEST_NODE, "testProperty")).isCreated();
+        byte[] content = IoUtil.readBytes(fileStream("post/binary.pdf"));
+        String url = binaryUrl(TEST_NODE, "testProperty");
+
+        Response response = doGet(url, "Range", "bytes=10-109").isPartialContent();
+        assertEquals("bytes 10-109/" + content.length, response.header("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 110), response.contentAsBytes());
+
+        response = doGet(url, "Range", "bytes=-20").isPartialContent();
+        assertArrayEquals(Arrays.copyOfRange(content, content.length - 20, content.length), response.contentAsBytes());
+
+        doGet(url, "Range", "bytes=" + content.length + "-").isRangeNotSatisfiable();
+        // several ranges are not supported, so the whole content is returned ...
+        response = doGet(url, "Range", "bytes=0-9,20-29").isOk();
+        assertEquals("bytes", response.header("Accept-Ranges"));
+        assertArrayEquals(content, response.contentAsBytes());
+    }
+
+    @Test
+    public void shouldReturnNotModifiedForBinaryPropertyValueWithSameETag() throws Exception {
+        doPost("put/node_with_binary_property.json", itemsUrl(TEST_NODE)).isCreated();
+        String url = binaryUrl(TEST_NODE, "testProperty");
+        String etag = doGet(url).isOk().header("ETag");
+        assertNotNull(etag);
+
+        Response response = doGet(url, "If-None-Match", etag).isNotModified();
+        assertEquals(etag, response.header("ETag"));
+        response = doGet(url, "If-None-Match", "\"0000\"").isOk();
+        assertEquals("testValue", response.contentAsString());
+    }
+
     @Test
     public void shouldUpdateBinaryPropertyViaPost() throws Exception {
         doPost("put/node_with_binary_property.json", itemsUrl(TEST_NODE)).isCreated();
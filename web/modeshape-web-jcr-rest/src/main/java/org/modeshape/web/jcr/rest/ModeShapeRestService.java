@@ -193,6 +193,7 @@ public final class ModeShapeRestService {
      * @param documentsPerFile the number of nodes each backup file will contains; defaults to {@code 100k}
      * @param compress whether or not each documents file should be compressed or not; default to {@code true}
      * @param batchSize how many documents to backup in a single batch; default to {@code 10000}
+     * @param parallelism how many threads write the documents and binary values; defaults to {@code 1}
      * @return a {@link Response} instance which if successful will contain the name of the backup file and the location on the 
      * server where the backup was performed.
      * @throws RepositoryException if there is any unexpected error while performing the backup
@@ -208,7 +209,8 @@ public final class ModeShapeRestService {
                             @QueryParam( "includeBinaries" ) @DefaultValue( "true" ) final boolean includeBinaries,
                             @QueryParam( "documentsPerFile" ) @DefaultValue( "100000" ) final long documentsPerFile,
                             @QueryParam( "compress" ) @DefaultValue( "true" ) final boolean compress,
-                            @QueryParam( "batchSize" ) @DefaultValue( "10000" ) final int batchSize ) throws RepositoryException {
+                            @QueryParam( "batchSize" ) @DefaultValue( "10000" ) final int batchSize,
+                            @QueryParam( "parallelism" ) @DefaultValue( "1" ) final int parallelism ) throws RepositoryException {
         return repositoryHandler.backupRepository(servletContext, request, repositoryName, new BackupOptions() {
             @Override
             public boolean includeBinaries() {
@@ -229,6 +231,11 @@ public final class ModeShapeRestService {
             public int batchSize() {
                 return batchSize;
             }
+
+            @Override
+            public int parallelism() {
+                return parallelism;
+            }
         });
     }  
     
@@ -252,6 +259,7 @@ public final class ModeShapeRestService {
      * @param includeBinaries whether or not binary values should be part of the backup or not; defaults to {@code true}
      * @param reindexContent whether or not a full repository reindexing should be performed, once restore has completed; defaults to {@code true}
      * @param batchSize how many documents to restore in a single batch; defaults to {@code 1000}
+     * @param parallelism how many threads restore the documents and binary values; defaults to {@code 1}
      * @return a {@link Response} instance, never {@code null}
      * @throws RepositoryException if there is any unexpected error while performing the restore
      * 
@@ -266,7 +274,8 @@ public final class ModeShapeRestService {
                             @QueryParam("name") final String backupName,
                             @QueryParam( "includeBinaries" ) @DefaultValue( "true" ) final boolean includeBinaries,
                             @QueryParam( "reindexContent" ) @DefaultValue( "true" ) final boolean reindexContent,
-                            @QueryParam( "batchSize" ) @DefaultValue( "1000" ) final int batchSize) throws RepositoryException {
+                            @QueryParam( "batchSize" ) @DefaultValue( "1000" ) final int batchSize,
+                            @QueryParam( "parallelism" ) @DefaultValue( "1" ) final int parallelism) throws RepositoryException {
         return repositoryHandler.restoreRepository(servletContext, request, repositoryName, backupName, new RestoreOptions() {
             @Override
             public boolean reindexContentOnFinish() {
@@ -282,6 +291,11 @@ public final class ModeShapeRestService {
             public int batchSize() {
                 return batchSize;
             }
+
+            @Override
+            public int parallelism() {
+                return parallelism;
+            }
         });
     }
 
@@ -296,8 +310,9 @@ public final class ModeShapeRestService {
      * @param mimeType an optional {@link String} representing the "already-known" mime-type of the binary. Can be {@code null}
      * @param contentDisposition an optional {@link String} representing the client-preferred content disposition of the respose.
      *        Can be {@code null}
-     * @return the binary stream of the requested binary property or NOT_FOUND if either the property isn't found or it isn't a
-     *         binary
+     * @return the binary stream of the requested binary property (or of the byte range given by the {@code Range} header), NOT_MODIFIED
+     *         if the {@code If-None-Match} header holds the ETag of the binary value, or NOT_FOUND if either the property isn't found
+     *         or it isn't a binary
      * @throws RepositoryException if any JCR related operation fails, including the case when the path to the property isn't
      *         valid.
      */
@@ -323,7 +338,7 @@ public final class ModeShapeRestService {
             contentDisposition = binaryHandler.getDefaultContentDisposition(binaryProperty);
         }
 
-        return Response.ok(binary.getStream(), mimeType).header("Content-Disposition", contentDisposition).build();
+        return binaryHandler.getBinaryResponse(request, binary, mimeType, contentDisposition);
     }
 
     /**
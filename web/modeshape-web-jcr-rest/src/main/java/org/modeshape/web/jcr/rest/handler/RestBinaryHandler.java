@@ -18,6 +18,7 @@ package org.modeshape.web.jcr.rest.handler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
 import javax.jcr.Binary;
@@ -27,9 +28,14 @@ import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.jcr.api.JcrConstants;
 import org.modeshape.web.jcr.rest.model.RestItem;
@@ -47,6 +53,12 @@ public final class RestBinaryHandler extends AbstractHandler {
      */
     public static final String DEFAULT_CONTENT_DISPOSITION_PREFIX = "attachment;filename=";
     private static final String DEFAULT_MIME_TYPE = MediaType.APPLICATION_OCTET_STREAM;
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String RANGE = "Range";
+    private static final String IF_RANGE = "If-Range";
+    private static final String BYTES_UNIT = "bytes";
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
 
     /**
      * Returns a binary {@link Property} for the given repository, workspace and path.
@@ -239,4 +251,141 @@ public final class RestBinaryHandler extends AbstractHandler {
             }
         }
     }
+
+    /**
+     * Creates the response which holds the content of a binary value. The response carries an {@code ETag} computed from the
+     * SHA-1 hash of the content, so that a client which already has the content is answered with {@code 304 Not Modified} when
+     * it sends an {@code If-None-Match} header. A {@code Range} header asking for a single range of bytes (optionally subject to
+     * an {@code If-Range} header) is answered with {@code 206 Partial Content}, or with
+     * {@code 416 Requested Range Not Satisfiable} if the range is beyond the end of the content.
+     *
+     * @param request a non-null {@link HttpServletRequest} request
+     * @param binary a non-null {@link Binary} value
+     * @param mimeType a non-null {@link String} representing the mime-type of the response
+     * @param contentDisposition a non-null {@link String} representing the content disposition of the response
+     * @return a {@link Response} object, never {@code null}
+     * @throws RepositoryException if the size of the binary value cannot be determined
+     */
+    public Response getBinaryResponse( HttpServletRequest request,
+                                       final Binary binary,
+                                       String mimeType,
+                                       String contentDisposition ) throws RepositoryException {
+        String hash = binary instanceof org.modeshape.jcr.api.Binary ? ((org.modeshape.jcr.api.Binary)binary).getHexHash() : null;
+        EntityTag etag = hash != null ? new EntityTag(hash) : null;
+        if (etag != null && matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return Response.notModified(etag).build();
+        }
+
+        long size = binary.getSize();
+        long first = 0L;
+        long last = size - 1;
+        Response.ResponseBuilder builder = Response.ok();
+        if (binary instanceof org.modeshape.jcr.api.Binary) {
+            builder.header(ACCEPT_RANGES, BYTES_UNIT);
+            String range = request.getHeader(RANGE);
+            String ifRange = request.getHeader(IF_RANGE);
+            if (range != null && (ifRange == null || (etag != null && matchesStrongly(ifRange, etag)))) {
+                long[] bounds = parseRange(range, size);
+                if (bounds == UNSATISFIABLE_RANGE) {
+                    return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                   .header(CONTENT_RANGE, BYTES_UNIT + " */" + size).build();
+                } else if (bounds != null) {
+                    first = bounds[0];
+                    last = bounds[1];
+                    builder.status(Response.Status.PARTIAL_CONTENT)
+                           .header(CONTENT_RANGE, BYTES_UNIT + " " + first + "-" + last + "/" + size);
+                }
+            }
+        }
+
+        final long position = first;
+        final long length = last - first + 1;
+        StreamingOutput content = output -> {
+            try {
+                if (binary instanceof org.modeshape.jcr.api.Binary) {
+                    ((org.modeshape.jcr.api.Binary)binary).transferTo(position, length, Channels.newChannel(output));
+                } else {
+                    IoUtil.write(binary.getStream(), output);
+                }
+            } catch (RepositoryException e) {
+                throw new WebApplicationException(e);
+            }
+        };
+        if (etag != null) {
+            builder.tag(etag);
+        }
+        return builder.entity(content).type(mimeType).header(HttpHeaders.CONTENT_LENGTH, length)
+                      .header("Content-Disposition", contentDisposition).build();
+    }
+
+    /**
+     * Checks whether the value of an {@code If-None-Match} header designates a given entity tag, using the weak comparison
+     * required for that header (RFC 7232, section 3.2).
+     */
+    private static boolean matches( String header,
+                                    EntityTag etag ) {
+        if (header == null) {
+            return false;
+        }
+        for (String value : header.split(",")) {
+            value = value.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals("\"" + etag.getValue() + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the value of an {@code If-Range} header is the given (strong) entity tag. RFC 7233, section 3.2 requires
+     * the strong comparison, so a weak entity tag or a date never matches and the whole content is sent instead of the range.
+     */
+    private static boolean matchesStrongly( String header,
+                                            EntityTag etag ) {
+        return header.trim().equals("\"" + etag.getValue() + "\"");
+    }
+
+    /**
+     * Parses the value of a {@code Range} header asking for a single range of bytes.
+     *
+     * @param range the value of the header; may not be null
+     * @param size the size of the content, in bytes
+     * @return the first and last positions of the range, {@link #UNSATISFIABLE_RANGE} if the range starts after the end of the
+     *         content, or null if the header is not valid or asks for several ranges, in which case it is ignored
+     */
+    static long[] parseRange( String range,
+                              long size ) {
+        String prefix = BYTES_UNIT + "=";
+        if (!range.startsWith(prefix) || range.indexOf(',') != -1) {
+            return null;
+        }
+        String spec = range.substring(prefix.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return null;
+        }
+        try {
+            String start = spec.substring(0, dash).trim();
+            String end = spec.substring(dash + 1).trim();
+            if (start.isEmpty()) {
+                // the last bytes of the content ...
+                long suffix = Long.parseLong(end);
+                if (suffix <= 0L) {
+                    return suffix == 0L ? UNSATISFIABLE_RANGE : null;
+                }
+                return size == 0L ? UNSATISFIABLE_RANGE : new long[] {Math.max(0L, size - suffix), size - 1};
+            }
+            long first = Long.parseLong(start);
+            long last = end.isEmpty() ? size - 1 : Math.min(Long.parseLong(end), size - 1);
+            if (first < 0L || (!end.isEmpty() && Long.parseLong(end) < first)) {
+                return null;
+            }
+            return first >= size ? UNSATISFIABLE_RANGE : new long[] {first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 }